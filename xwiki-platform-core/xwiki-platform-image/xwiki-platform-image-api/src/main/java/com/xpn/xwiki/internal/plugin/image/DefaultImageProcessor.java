@@ -32,9 +32,12 @@
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
 import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
 import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
 import javax.inject.Singleton;
 
@@ -52,12 +55,64 @@
 @Singleton
 public class DefaultImageProcessor implements ImageProcessor
 {
+    /**
+     * The minimum ratio between the dimensions of a subsampled image and the dimensions it is scaled to, so that the
+     * scaling still has enough pixels to produce a smooth result.
+     */
+    private static final int MIN_SCALE_RATIO = 2;
+
     @Override
     public Image readImage(InputStream inputStream) throws IOException
     {
         return ImageIO.read(inputStream);
     }
 
+    @Override
+    public Image readImage(InputStream inputStream, int width, int height) throws IOException
+    {
+        if (width <= 0 && height <= 0) {
+            return readImage(inputStream);
+        }
+
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+            Iterator<ImageReader> readers =
+                imageInputStream != null ? ImageIO.getImageReaders(imageInputStream) : null;
+            if (readers == null || !readers.hasNext()) {
+                // Same as ImageIO#read(InputStream)
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+
+                // Only decode one pixel out of N in both directions when the image is a lot bigger than needed
+                ImageReadParam parameters = reader.getDefaultReadParam();
+                int subsampling = getSubsampling(reader.getWidth(0), reader.getHeight(0), width, height);
+                if (subsampling > 1) {
+                    parameters.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+
+                return reader.read(0, parameters);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private int getSubsampling(int currentWidth, int currentHeight, int width, int height)
+    {
+        int subsampling = Integer.MAX_VALUE;
+        if (width > 0) {
+            subsampling = currentWidth / (width * MIN_SCALE_RATIO);
+        }
+        if (height > 0) {
+            subsampling = Math.min(subsampling, currentHeight / (height * MIN_SCALE_RATIO));
+        }
+
+        return Math.max(1, subsampling);
+    }
+
     @Override
     public void writeImage(RenderedImage image, String mimeType, float quality, OutputStream out) throws IOException
     {
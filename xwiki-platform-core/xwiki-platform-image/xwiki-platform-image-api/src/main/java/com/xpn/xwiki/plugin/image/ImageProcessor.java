@@ -26,6 +26,7 @@
 import java.io.OutputStream;
 
 import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
 
 /**
  * Component used to process images.
@@ -45,6 +46,25 @@
      */
     Image readImage(InputStream inputStream) throws IOException;
 
+    /**
+     * Reads an image from an input stream, knowing that it is going to be scaled down to the specified dimensions.
+     * The implementations can skip some of the pixels of the source while decoding it when it is a lot bigger than
+     * the requested dimensions, which reduces the memory and the time needed to read it. The returned image is never
+     * smaller than the requested dimensions, unless the source image is.
+     *
+     * @param inputStream the input stream to read the image from
+     * @param width the width the image is going to be scaled to, ignored if not greater than zero
+     * @param height the height the image is going to be scaled to, ignored if not greater than zero
+     * @return the read image
+     * @throws IOException if reading the image fails
+     * @since 10.1RC1
+     */
+    @Unstable
+    default Image readImage(InputStream inputStream, int width, int height) throws IOException
+    {
+        return readImage(inputStream);
+    }
+
     /**
      * Encodes the given image to match the specified mime type, if possible, and writes it to the output stream, using
      * the specified compression quality if appropriate.
@@ -0,0 +1,96 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.plugin.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit tests for {@link DefaultImageProcessor}.
+ *
+ * @version $Id$
+ */
+public class DefaultImageProcessorTest
+{
+    private DefaultImageProcessor processor = new DefaultImageProcessor();
+
+    private byte[] image;
+
+    @Before
+    public void before() throws IOException
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB), "png", output);
+        this.image = output.toByteArray();
+    }
+
+    private BufferedImage readImage(int width, int height) throws IOException
+    {
+        return (BufferedImage) this.processor.readImage(new ByteArrayInputStream(this.image), width, height);
+    }
+
+    @Test
+    public void readImageWithSubsampling() throws IOException
+    {
+        // The decoded image stays at least twice as big as the requested size
+        BufferedImage image = readImage(50, 0);
+        assertEquals(100, image.getWidth());
+        assertEquals(75, image.getHeight());
+
+        image = readImage(0, 50);
+        assertEquals(134, image.getWidth());
+        assertEquals(100, image.getHeight());
+
+        // The smallest subsampling wins when both dimensions are requested
+        image = readImage(100, 25);
+        assertEquals(200, image.getWidth());
+        assertEquals(150, image.getHeight());
+    }
+
+    @Test
+    public void readImageWithoutSubsampling() throws IOException
+    {
+        // No size
+        BufferedImage image = readImage(0, 0);
+        assertEquals(400, image.getWidth());
+        assertEquals(300, image.getHeight());
+
+        // Requested size too close to the original size
+        image = readImage(300, 200);
+        assertEquals(400, image.getWidth());
+        assertEquals(300, image.getHeight());
+    }
+
+    @Test
+    public void readImageWhichIsNotAnImage() throws IOException
+    {
+        assertNull(this.processor.readImage(new ByteArrayInputStream("text".getBytes()), 50, 50));
+    }
+}
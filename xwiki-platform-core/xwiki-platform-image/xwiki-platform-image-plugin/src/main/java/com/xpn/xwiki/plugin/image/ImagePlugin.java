@@ -21,24 +21,32 @@
 
 import java.awt.Image;
 import java.awt.image.RenderedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Arrays;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xwiki.cache.Cache;
-import org.xwiki.cache.CacheException;
-import org.xwiki.cache.CacheManager;
-import org.xwiki.cache.config.CacheConfiguration;
-import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.environment.Environment;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.api.Api;
 import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiAttachmentContent;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.event.AbstractAttachmentEvent;
+import com.xpn.xwiki.internal.event.AttachmentDeletedEvent;
+import com.xpn.xwiki.internal.event.AttachmentUpdatedEvent;
 import com.xpn.xwiki.plugin.XWikiDefaultPlugin;
 import com.xpn.xwiki.plugin.XWikiPluginInterface;
 import com.xpn.xwiki.web.Utils;
@@ -62,16 +70,38 @@ public class ImagePlugin extends XWikiDefaultPlugin
      */
     private static final String PLUGIN_NAME = "image";
 
+    /**
+     * The name of the listener removing the thumbnails of the modified attachments.
+     */
+    private static final String LISTENER_NAME = "ImagePlugin.thumbnails";
+
     /**
      * Cache for already served images.
      */
-    private Cache<XWikiAttachment> imageCache;
+    private ThumbnailCache imageCache;
 
     /**
      * The size of the cache. This parameter can be configured using the key {@code xwiki.plugin.image.cache.capacity}.
      */
     private int capacity = 50;
 
+    /**
+     * The maximum number of bytes of the images kept in memory. This parameter can be configured using the key
+     * {@code xwiki.plugin.image.cache.memorySize}.
+     */
+    private long memorySize = 10L * 1024 * 1024;
+
+    /**
+     * The maximum number of bytes of the images stored on disk. This parameter can be configured using the key
+     * {@code xwiki.plugin.image.cache.diskSize}.
+     */
+    private long diskSize = 1024L * 1024 * 1024;
+
+    /**
+     * The hint of the image processor, part of the key of the cached images.
+     */
+    private String imageProcessorHint;
+
     /**
      * Default JPEG image quality.
      */
@@ -82,6 +112,11 @@ public class ImagePlugin extends XWikiDefaultPlugin
      */
     private ImageProcessor imageProcessor;
 
+    /**
+     * Executes the image transformations out of the request threads.
+     */
+    private ImageResizeExecutor resizeExecutor;
+
     /**
      * Creates a new instance of this plugin.
      *
@@ -116,8 +151,15 @@ public void init(XWikiContext context)
 
         initCache(context);
 
-        String imageProcessorHint = context.getWiki().Param("xwiki.plugin.image.processorHint", "thumbnailator");
-        this.imageProcessor = Utils.getComponent(ImageProcessor.class, imageProcessorHint);
+        if (this.resizeExecutor == null) {
+            // Limit the number of images decoded at the same time, each of them can use a lot of memory
+            long threads = context.getWiki().ParamAsLong("xwiki.plugin.image.resize.threads",
+                Runtime.getRuntime().availableProcessors());
+            this.resizeExecutor = new ImageResizeExecutor((int) Math.max(1, threads));
+        }
+
+        this.imageProcessorHint = context.getWiki().Param("xwiki.plugin.image.processorHint", "thumbnailator");
+        this.imageProcessor = Utils.getComponent(ImageProcessor.class, this.imageProcessorHint);
 
         String defaultQualityParam = context.getWiki().Param("xwiki.plugin.image.defaultQuality");
         if (!StringUtils.isBlank(defaultQualityParam)) {
@@ -138,14 +180,6 @@ public void init(XWikiContext context)
     private void initCache(XWikiContext context)
     {
         if (this.imageCache == null) {
-            CacheConfiguration configuration = new CacheConfiguration();
-
-            configuration.setConfigurationId("xwiki.plugin.image");
-
-            // Set cache constraints.
-            LRUEvictionConfiguration lru = new LRUEvictionConfiguration();
-            configuration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
-
             String capacityParam = context.getWiki().Param("xwiki.plugin.image.cache.capacity");
             if (!StringUtils.isBlank(capacityParam) && StringUtils.isNumeric(capacityParam.trim())) {
                 try {
@@ -156,13 +190,33 @@ private void initCache(XWikiContext context)
                             + "Using %s as the cache capacity.", this.capacity), e);
                 }
             }
-            lru.setMaxEntries(this.capacity);
 
-            try {
-                this.imageCache = Utils.getComponent(CacheManager.class).createNewLocalCache(configuration);
-            } catch (CacheException e) {
-                LOG.error("Error initializing the image cache.", e);
+            this.memorySize = context.getWiki().ParamAsLong("xwiki.plugin.image.cache.memorySize", this.memorySize);
+
+            // Store the images on disk so that they survive restarts
+            File directory = null;
+            if (context.getWiki().ParamAsLong("xwiki.plugin.image.cache.persistent", 1) == 1) {
+                directory = new File(Utils.getComponent(Environment.class).getPermanentDirectory(),
+                    "cache/image/thumbnails");
             }
+
+            this.diskSize = context.getWiki().ParamAsLong("xwiki.plugin.image.cache.diskSize", this.diskSize);
+
+            this.imageCache = new ThumbnailCache(this.capacity, this.memorySize, directory, this.diskSize);
+
+            // The thumbnails of a deleted or replaced attachment are useless
+            ObservationManager observation = Utils.getComponent(ObservationManager.class);
+            observation.removeListener(LISTENER_NAME);
+            observation.addListener(new AbstractEventListener(LISTENER_NAME, new AttachmentDeletedEvent(),
+                new AttachmentUpdatedEvent())
+            {
+                @Override
+                public void onEvent(Event event, Object source, Object data)
+                {
+                    imageCache.remove(new AttachmentReference(((AbstractAttachmentEvent) event).getName(),
+                        ((XWikiDocument) source).getDocumentReference()));
+                }
+            });
         }
     }
 
@@ -170,9 +224,8 @@ private void initCache(XWikiContext context)
     public void flushCache()
     {
         if (this.imageCache != null) {
-            this.imageCache.dispose();
+            this.imageCache.flush();
         }
-        this.imageCache = null;
     }
 
     /**
@@ -208,7 +261,10 @@ public XWikiAttachment downloadAttachment(XWikiAttachment attachment, XWikiConte
 
         float quality = -1;
         try {
-            quality = Float.parseFloat(context.getRequest().getParameter("quality"));
+            // Only a hundred different qualities are supported to limit the number of thumbnails produced for the
+            // same image
+            quality = Math.round(Math.min(Float.parseFloat(context.getRequest().getParameter("quality")), 1) * 100)
+                / 100F;
         } catch (NumberFormatException e) {
             // Ignore.
         } catch (NullPointerException e) {
@@ -280,15 +336,35 @@ private XWikiAttachment downloadImage(XWikiAttachment image, int width, int heig
     private XWikiAttachment downloadImageFromCache(XWikiAttachment image, int width, int height,
         boolean keepAspectRatio, float quality, XWikiContext context) throws Exception
     {
-        String key =
-            String.format("%s;%s;%s;%s;%s;%s", image.getId(), image.getVersion(), width, height, keepAspectRatio,
-                quality);
-
-        XWikiAttachment thumbnail = this.imageCache.get(key);
-        if (thumbnail == null) {
-            thumbnail = shrinkImage(image, width, height, keepAspectRatio, quality, context);
-            this.imageCache.set(key, thumbnail);
+        String transformation = String.format("%s;%s;%s;%s;%s", width, height, keepAspectRatio, quality,
+            this.imageProcessorHint);
+
+        XWikiAttachmentContent content = this.imageCache.get(image, transformation);
+        if (content == null) {
+            String mimeType = image.getMimeType(context);
+            try (InputStream source = image.getContentInputStream(context)) {
+                // The same thumbnail is often requested by several users at the same time (e.g. a new image displayed
+                // on the home page) so make sure it's computed and cached only once
+                content = this.resizeExecutor.execute(this.imageCache.getKey(image, transformation), () -> {
+                    byte[] bytes = shrinkImage(source, mimeType, width, height, keepAspectRatio, quality);
+                    return this.imageCache.set(image, transformation,
+                        bytes != null ? new ByteArrayInputStream(bytes) : null);
+                });
+            }
+            // Each request gets its own instance since it's modified below
+            content = (XWikiAttachmentContent) content.clone();
         }
+
+        // An empty content means that the original image is returned
+        if (content.getLongSize() == 0) {
+            return image;
+        }
+
+        XWikiAttachment thumbnail = (XWikiAttachment) image.clone();
+        thumbnail.setAttachment_content(content);
+        content.setAttachment(thumbnail);
+        thumbnail.setLongSize(content.getLongSize());
+
         return thumbnail;
     }
 
@@ -312,7 +388,49 @@ private XWikiAttachment downloadImageFromCache(XWikiAttachment image, int width,
     private XWikiAttachment shrinkImage(XWikiAttachment attachment, int requestedWidth, int requestedHeight,
         boolean keepAspectRatio, float requestedQuality, XWikiContext context) throws Exception
     {
-        Image image = this.imageProcessor.readImage(attachment.getContentInputStream(context));
+        String mimeType = attachment.getMimeType(context);
+        byte[] bytes;
+        try (InputStream source = attachment.getContentInputStream(context)) {
+            bytes = this.resizeExecutor.execute(null, () -> shrinkImage(source, mimeType, requestedWidth,
+                requestedHeight, keepAspectRatio, requestedQuality));
+        }
+
+        if (bytes == null) {
+            return attachment;
+        }
+
+        // Create an image attachment for the shrunk image.
+        XWikiAttachment thumbnail = (XWikiAttachment) attachment.clone();
+        thumbnail.loadAttachmentContent(context);
+
+        try (OutputStream acos = thumbnail.getAttachment_content().getContentOutputStream()) {
+            acos.write(bytes);
+        }
+
+        return thumbnail;
+    }
+
+    /**
+     * Reduces the size (i.e. the number of bytes) of an image by scaling its width and height and by reducing its
+     * compression quality.
+     *
+     * @param source the content of the image to be shrunk
+     * @param mimeType the mime type of the image
+     * @param requestedWidth the desired image width; this value is taken into account only if it is greater than zero
+     *            and less than the current image width
+     * @param requestedHeight the desired image height; this value is taken into account only if it is greater than zero
+     *            and less than the current image height
+     * @param keepAspectRatio {@code true} to preserve the image aspect ratio even when both requested dimensions are
+     *            properly specified, {@code false} otherwise
+     * @param requestedQuality the desired compression quality
+     * @return the content of the shrunk image, {@code null} if the original image doesn't need to be modified
+     * @throws IOException if shrinking the image fails
+     */
+    private byte[] shrinkImage(InputStream source, String mimeType, int requestedWidth, int requestedHeight,
+        boolean keepAspectRatio, float requestedQuality) throws IOException
+    {
+        // Don't decode all the pixels of a big image when it's scaled down a lot
+        Image image = this.imageProcessor.readImage(source, requestedWidth, requestedHeight);
 
         // Compute the new image dimension.
         int currentWidth = image.getWidth(null);
@@ -324,7 +442,7 @@ private XWikiAttachment shrinkImage(XWikiAttachment attachment, int requestedWid
         if (quality < 0) {
             // If no scaling is needed and the quality parameter is not specified, return the original image.
             if (dimensions[0] == currentWidth && dimensions[1] == currentHeight) {
-                return attachment;
+                return null;
             }
             quality = this.defaultQuality;
         }
@@ -332,19 +450,10 @@ private XWikiAttachment shrinkImage(XWikiAttachment attachment, int requestedWid
         // Scale the image to the new dimensions.
         RenderedImage shrunkImage = this.imageProcessor.scaleImage(image, dimensions[0], dimensions[1]);
 
-        // Create an image attachment for the shrunk image.
-        XWikiAttachment thumbnail = (XWikiAttachment) attachment.clone();
-        thumbnail.loadAttachmentContent(context);
-
-        OutputStream acos = thumbnail.getAttachment_content().getContentOutputStream();
-        this.imageProcessor.writeImage(shrunkImage,
-            attachment.getMimeType(context),
-            quality,
-            acos);
-
-        IOUtils.closeQuietly(acos);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.imageProcessor.writeImage(shrunkImage, mimeType, quality, out);
 
-        return thumbnail;
+        return out.toByteArray();
     }
 
     /**
@@ -402,6 +511,52 @@ private int[] reduceImageDimensions(int currentWidth, int currentHeight, int req
         return new int[] { width, height };
     }
 
+    /**
+     * @return the number of image transformations waiting for a free thread
+     * @since 10.1RC1
+     */
+    public int getResizeQueueSize()
+    {
+        return this.resizeExecutor.getQueueSize();
+    }
+
+    /**
+     * @return the number of image transformations being executed
+     * @since 10.1RC1
+     */
+    public int getActiveResizeCount()
+    {
+        return this.resizeExecutor.getActiveCount();
+    }
+
+    /**
+     * @return the number of image transformations executed since the start
+     * @since 10.1RC1
+     */
+    public long getResizeCount()
+    {
+        return this.resizeExecutor.getExecutedCount();
+    }
+
+    /**
+     * @return the average time spent executing an image transformation, in milliseconds
+     * @since 10.1RC1
+     */
+    public long getAverageResizeTime()
+    {
+        return this.resizeExecutor.getAverageExecutionTime();
+    }
+
+    /**
+     * @return the number of image transformations which reused the result of an identical transformation already
+     *         running
+     * @since 10.1RC1
+     */
+    public long getCoalescedResizeCount()
+    {
+        return this.resizeExecutor.getCoalescedCount();
+    }
+
     /**
      * @param attachment an image attachment
      * @param context the XWiki context
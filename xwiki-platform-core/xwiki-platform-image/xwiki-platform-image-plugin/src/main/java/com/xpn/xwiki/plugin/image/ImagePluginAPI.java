@@ -94,6 +94,52 @@ public int getWidth(String pageName, String attachmentName)
         }
     }
 
+    /**
+     * @return the number of image transformations waiting for a free thread
+     * @since 10.1RC1
+     */
+    public int getResizeQueueSize()
+    {
+        return getProtectedPlugin().getResizeQueueSize();
+    }
+
+    /**
+     * @return the number of image transformations being executed
+     * @since 10.1RC1
+     */
+    public int getActiveResizeCount()
+    {
+        return getProtectedPlugin().getActiveResizeCount();
+    }
+
+    /**
+     * @return the number of image transformations executed since the start
+     * @since 10.1RC1
+     */
+    public long getResizeCount()
+    {
+        return getProtectedPlugin().getResizeCount();
+    }
+
+    /**
+     * @return the average time spent executing an image transformation, in milliseconds
+     * @since 10.1RC1
+     */
+    public long getAverageResizeTime()
+    {
+        return getProtectedPlugin().getAverageResizeTime();
+    }
+
+    /**
+     * @return the number of image transformations which reused the result of an identical transformation already
+     *         running
+     * @since 10.1RC1
+     */
+    public long getCoalescedResizeCount()
+    {
+        return getProtectedPlugin().getCoalescedResizeCount();
+    }
+
     /**
      * @param pageName the name of a wiki page
      * @param attachmentName the name of an attachment of the specified page
@@ -0,0 +1,220 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.image;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Execute the image transformations on a limited number of threads, so that a burst of requests for big images
+ * cannot use all the request threads and all the memory at the same time. Identical transformations requested while
+ * one is already running wait for its result instead of transforming the same image again.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+class ImageResizeExecutor
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImageResizeExecutor.class);
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The transformations being executed or waiting to be executed, indexed by key.
+     */
+    private final ConcurrentMap<String, Future<?>> running = new ConcurrentHashMap<>();
+
+    private final AtomicLong executedCount = new AtomicLong();
+
+    private final AtomicLong executionTime = new AtomicLong();
+
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * A transformation which forgets its key before publishing its result, so that a thread woken up by the result
+     * cannot find the finished transformation anymore.
+     *
+     * @param <T> the type of the result of the transformation
+     */
+    private class ResizeTask<T> extends FutureTask<T>
+    {
+        private final String key;
+
+        ResizeTask(String key, Callable<T> callable)
+        {
+            super(callable);
+
+            this.key = key;
+        }
+
+        @Override
+        protected void set(T result)
+        {
+            forget();
+
+            super.set(result);
+        }
+
+        @Override
+        protected void setException(Throwable t)
+        {
+            forget();
+
+            super.setException(t);
+        }
+
+        @Override
+        protected void done()
+        {
+            // Cancelled tasks don't publish any result
+            forget();
+        }
+
+        private void forget()
+        {
+            if (this.key != null) {
+                running.remove(this.key, this);
+            }
+        }
+    }
+
+    /**
+     * @param threads the maximum number of transformations executed at the same time
+     */
+    ImageResizeExecutor(int threads)
+    {
+        BasicThreadFactory factory = new BasicThreadFactory.Builder().namingPattern("XWiki image resize %d")
+            .daemon(true).build();
+        this.executor =
+            new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory);
+        // Don't keep idle threads when no image is being resized
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Execute the transformation on one of the image threads and wait for its result.
+     *
+     * @param <T> the type of the result of the transformation
+     * @param key the identifier of the transformation, {@code null} if it cannot be shared
+     * @param transformation the transformation to execute
+     * @return the result of the transformation, or of the identical transformation already running
+     * @throws Exception if the transformation fails
+     */
+    <T> T execute(String key, Callable<T> transformation) throws Exception
+    {
+        ResizeTask<T> task = new ResizeTask<>(key, () -> {
+            long start = System.currentTimeMillis();
+            try {
+                return transformation.call();
+            } finally {
+                long time = System.currentTimeMillis() - start;
+                this.executedCount.incrementAndGet();
+                this.executionTime.addAndGet(time);
+                LOGGER.debug("Image transformation [{}] took [{}] ms", key, time);
+            }
+        });
+
+        Future<?> future = task;
+        if (key != null) {
+            Future<?> runningTask = this.running.putIfAbsent(key, task);
+            if (runningTask != null) {
+                this.coalescedCount.incrementAndGet();
+                future = runningTask;
+            }
+        }
+
+        if (future == task) {
+            try {
+                this.executor.execute(task);
+            } catch (RuntimeException e) {
+                task.cancel(false);
+
+                throw e;
+            }
+        }
+
+        try {
+            @SuppressWarnings("unchecked")
+            T result = (T) future.get();
+
+            return result;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of transformations waiting for a free thread
+     */
+    int getQueueSize()
+    {
+        return this.executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of transformations being executed
+     */
+    int getActiveCount()
+    {
+        return this.executor.getActiveCount();
+    }
+
+    /**
+     * @return the number of transformations executed since the start
+     */
+    long getExecutedCount()
+    {
+        return this.executedCount.get();
+    }
+
+    /**
+     * @return the average time spent executing a transformation, in milliseconds
+     */
+    long getAverageExecutionTime()
+    {
+        long count = this.executedCount.get();
+
+        return count > 0 ? this.executionTime.get() / count : 0;
+    }
+
+    /**
+     * @return the number of transformations which reused the result of an identical transformation already running
+     */
+    long getCoalescedCount()
+    {
+        return this.coalescedCount.get();
+    }
+}
@@ -0,0 +1,478 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.image;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.AutoCloseInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.model.reference.AttachmentReference;
+
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiAttachmentContent;
+
+/**
+ * Store the transformed images in two tiers: the small ones are kept in memory, within a limit in bytes, and all of
+ * them are stored on disk so that they survive restarts. The images are streamed from the disk so a thumbnail which is
+ * not in memory is never fully loaded in the heap.
+ * <p>
+ * A thumbnail is identified by the content of its source attachment (the reference, version, size and date of the
+ * attachment, which all change when a new content is uploaded) and by the parameters of the transformation. The disk
+ * only keeps the thumbnails of the last transformed version of each attachment, within a limit in bytes (the least
+ * recently used thumbnails are deleted first).
+ * <p>
+ * A thumbnail with an empty content means that the transformation returns the original image.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+class ThumbnailCache
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailCache.class);
+
+    private static final String SEPARATOR = "-";
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private static final byte[] ORIGINAL = new byte[0];
+
+    /**
+     * The thumbnails kept in memory, the least recently used first.
+     */
+    private final Map<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final int maxEntries;
+
+    private final long memorySize;
+
+    private long memoryUsed;
+
+    private final File directory;
+
+    /**
+     * The thumbnails stored on disk with their size, the least recently used first.
+     */
+    private final Map<File, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final long diskSize;
+
+    private long diskUsed;
+
+    /**
+     * A thumbnail content which is not stored in the database.
+     */
+    static class ThumbnailContent extends XWikiAttachmentContent
+    {
+        private final byte[] bytes;
+
+        private final File file;
+
+        ThumbnailContent(byte[] bytes, File file)
+        {
+            this.bytes = bytes;
+            this.file = file;
+        }
+
+        @Override
+        public Object clone()
+        {
+            ThumbnailContent clone = new ThumbnailContent(this.bytes, this.file);
+            clone.setAttachment(getAttachment());
+            return clone;
+        }
+
+        @Override
+        @Deprecated
+        public byte[] getContent()
+        {
+            if (this.bytes != null) {
+                return this.bytes;
+            }
+
+            try (InputStream stream = getContentInputStream()) {
+                return IOUtils.toByteArray(stream);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to load the thumbnail content", e);
+            }
+        }
+
+        @Override
+        public InputStream getContentInputStream()
+        {
+            if (this.bytes != null) {
+                return new ByteArrayInputStream(this.bytes);
+            }
+
+            try {
+                return new AutoCloseInputStream(new FileInputStream(this.file));
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read the thumbnail content", e);
+            }
+        }
+
+        @Override
+        public long getLongSize()
+        {
+            return this.bytes != null ? this.bytes.length : this.file.length();
+        }
+    }
+
+    /**
+     * @param maxEntries the maximum number of thumbnails kept in memory
+     * @param memorySize the maximum number of bytes of the thumbnails kept in memory
+     * @param directory the directory where to store the thumbnails, {@code null} to only keep them in memory
+     * @param diskSize the maximum number of bytes of the thumbnails stored on disk
+     */
+    ThumbnailCache(int maxEntries, long memorySize, File directory, long diskSize)
+    {
+        this.maxEntries = maxEntries;
+        this.memorySize = memorySize;
+        this.directory = directory;
+        this.diskSize = diskSize;
+
+        if (directory != null) {
+            loadDiskIndex();
+        }
+    }
+
+    /**
+     * Find the thumbnails stored before a restart, the oldest ones are the first to be deleted.
+     */
+    private void loadDiskIndex()
+    {
+        List<File> files = new ArrayList<>();
+        for (File prefixDirectory : listFiles(this.directory)) {
+            for (File attachmentDirectory : listFiles(prefixDirectory)) {
+                for (File file : listFiles(attachmentDirectory)) {
+                    if (file.getName().endsWith(TEMPORARY_SUFFIX)) {
+                        // Left by a crash
+                        delete(file);
+                    } else {
+                        files.add(file);
+                    }
+                }
+            }
+        }
+
+        files.sort(Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            addToDisk(file);
+        }
+    }
+
+    /**
+     * @param attachment the transformed attachment
+     * @param transformation the parameters of the transformation
+     * @return the content of the thumbnail (empty if the transformation returns the original image), {@code null} if
+     *         it's not in the cache
+     */
+    XWikiAttachmentContent get(XWikiAttachment attachment, String transformation)
+    {
+        String attachmentKey = getAttachmentKey(attachment);
+        String key = getKey(attachmentKey, transformation);
+
+        byte[] bytes;
+        synchronized (this.memory) {
+            bytes = this.memory.get(key);
+        }
+        if (bytes != null) {
+            return new ThumbnailContent(bytes, null);
+        }
+
+        if (this.directory != null) {
+            File file = getFile(attachment, attachmentKey, transformation);
+            if (file.exists()) {
+                synchronized (this.disk) {
+                    // Mark the thumbnail as recently used
+                    this.disk.get(file);
+                }
+
+                // Load back in memory the small thumbnails
+                if (isSmall(file)) {
+                    try {
+                        bytes = file.length() == 0 ? ORIGINAL : Files.readAllBytes(file.toPath());
+                        remember(key, bytes);
+
+                        return new ThumbnailContent(bytes, null);
+                    } catch (IOException e) {
+                        LOGGER.warn("Failed to read the thumbnail of attachment [{}]: {}", attachment.getReference(),
+                            e.getMessage());
+                    }
+                }
+
+                return new ThumbnailContent(null, file);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param attachment the transformed attachment
+     * @param transformation the parameters of the transformation
+     * @param content the content of the thumbnail, {@code null} if the transformation returns the original image
+     * @return the cached content of the thumbnail
+     * @throws IOException if the thumbnail content cannot be read
+     */
+    XWikiAttachmentContent set(XWikiAttachment attachment, String transformation, InputStream content)
+        throws IOException
+    {
+        String attachmentKey = getAttachmentKey(attachment);
+        String key = getKey(attachmentKey, transformation);
+
+        File file = null;
+        if (this.directory != null) {
+            file = getFile(attachment, attachmentKey, transformation);
+            try {
+                store(file, hash(attachmentKey), content);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to store the thumbnail of attachment [{}] on disk: {}",
+                    attachment.getReference(), e.getMessage());
+                file = null;
+            }
+        }
+
+        if (file != null) {
+            addToDisk(file);
+
+            if (isSmall(file)) {
+                remember(key, file.length() == 0 ? ORIGINAL : Files.readAllBytes(file.toPath()));
+            }
+
+            return new ThumbnailContent(null, file);
+        } else {
+            byte[] bytes = content != null ? IOUtils.toByteArray(content) : ORIGINAL;
+            remember(key, bytes);
+
+            return new ThumbnailContent(bytes, null);
+        }
+    }
+
+    /**
+     * @param attachment the transformed attachment
+     * @param transformation the parameters of the transformation
+     * @return the identifier of the thumbnail
+     */
+    String getKey(XWikiAttachment attachment, String transformation)
+    {
+        return getKey(getAttachmentKey(attachment), transformation);
+    }
+
+    /**
+     * Forget all the thumbnails of an attachment (e.g. when it's deleted).
+     *
+     * @param reference the reference of the attachment
+     */
+    void remove(AttachmentReference reference)
+    {
+        String prefix = reference.toString() + '/';
+        synchronized (this.memory) {
+            Iterator<Map.Entry<String, byte[]>> iterator = this.memory.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, byte[]> entry = iterator.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    this.memoryUsed -= entry.getValue().length;
+                    iterator.remove();
+                }
+            }
+        }
+
+        if (this.directory != null) {
+            File attachmentDirectory = getAttachmentDirectory(reference.toString());
+            for (File file : listFiles(attachmentDirectory)) {
+                removeFromDisk(file);
+            }
+            attachmentDirectory.delete();
+        }
+    }
+
+    /**
+     * Forget the thumbnails kept in memory. The thumbnails stored on disk are kept.
+     */
+    void flush()
+    {
+        synchronized (this.memory) {
+            this.memory.clear();
+            this.memoryUsed = 0;
+        }
+    }
+
+    private boolean isSmall(File file)
+    {
+        // Keep in memory only the thumbnails small enough to not evict most of the other ones
+        return file.length() <= this.memorySize / 10;
+    }
+
+    private void remember(String key, byte[] bytes)
+    {
+        synchronized (this.memory) {
+            byte[] previous = this.memory.put(key, bytes);
+            if (previous != null) {
+                this.memoryUsed -= previous.length;
+            }
+            this.memoryUsed += bytes.length;
+
+            // Evict the least recently used thumbnails
+            Iterator<byte[]> iterator = this.memory.values().iterator();
+            while ((this.memoryUsed > this.memorySize || this.memory.size() > this.maxEntries)
+                && iterator.hasNext()) {
+                this.memoryUsed -= iterator.next().length;
+                iterator.remove();
+            }
+        }
+    }
+
+    private void addToDisk(File file)
+    {
+        synchronized (this.disk) {
+            Long previous = this.disk.put(file, file.length());
+            if (previous != null) {
+                this.diskUsed -= previous;
+            }
+            this.diskUsed += file.length();
+
+            // Delete the least recently used thumbnails
+            Iterator<Map.Entry<File, Long>> iterator = this.disk.entrySet().iterator();
+            while (this.diskUsed > this.diskSize && iterator.hasNext()) {
+                Map.Entry<File, Long> entry = iterator.next();
+                if (!entry.getKey().equals(file)) {
+                    this.diskUsed -= entry.getValue();
+                    iterator.remove();
+                    delete(entry.getKey());
+                    // Don't leave empty attachment directories behind
+                    entry.getKey().getParentFile().delete();
+                }
+            }
+        }
+    }
+
+    private void removeFromDisk(File file)
+    {
+        synchronized (this.disk) {
+            Long size = this.disk.remove(file);
+            if (size != null) {
+                this.diskUsed -= size;
+            }
+        }
+
+        delete(file);
+    }
+
+    private void delete(File file)
+    {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete the thumbnail [{}]: {}", file, e.getMessage());
+        }
+    }
+
+    private static File[] listFiles(File directory)
+    {
+        File[] files = directory.listFiles();
+
+        return files != null ? files : new File[0];
+    }
+
+    private void store(File file, String attachmentHash, InputStream content) throws IOException
+    {
+        File attachmentDirectory = file.getParentFile();
+        if (attachmentDirectory.exists()) {
+            // Forget the thumbnails of the previous versions of the attachment
+            for (File previous : listFiles(attachmentDirectory)) {
+                if (!previous.getName().startsWith(attachmentHash)) {
+                    removeFromDisk(previous);
+                }
+            }
+        } else {
+            attachmentDirectory.mkdirs();
+        }
+
+        // Write in a temporary file first so that a thumbnail being written is never read
+        File temporaryFile = File.createTempFile(file.getName(), TEMPORARY_SUFFIX, attachmentDirectory);
+        try {
+            try (OutputStream out = new FileOutputStream(temporaryFile)) {
+                if (content != null) {
+                    IOUtils.copyLarge(content, out);
+                }
+            }
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile.toPath());
+        }
+    }
+
+    private String getAttachmentKey(XWikiAttachment attachment)
+    {
+        StringBuilder key = new StringBuilder(String.valueOf(attachment.getReference()));
+        key.append('/');
+        key.append(attachment.getVersion());
+        key.append('/');
+        key.append(attachment.getLongSize());
+        key.append('/');
+        key.append(attachment.getDate() != null ? attachment.getDate().getTime() : 0);
+
+        return key.toString();
+    }
+
+    private String getKey(String attachmentKey, String transformation)
+    {
+        return attachmentKey + '/' + transformation;
+    }
+
+    private File getFile(XWikiAttachment attachment, String attachmentKey, String transformation)
+    {
+        File attachmentDirectory = getAttachmentDirectory(String.valueOf(attachment.getReference()));
+
+        return new File(attachmentDirectory, hash(attachmentKey) + SEPARATOR + hash(transformation));
+    }
+
+    private File getAttachmentDirectory(String attachmentReference)
+    {
+        String attachmentHash = hash(attachmentReference);
+
+        // Spread the attachments over several directories to avoid huge directories
+        return new File(new File(this.directory, attachmentHash.substring(0, 2)), attachmentHash);
+    }
+
+    private static String hash(String value)
+    {
+        return UUID.nameUUIDFromBytes(value.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+}
@@ -24,21 +24,31 @@
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
-import org.xwiki.cache.Cache;
-import org.xwiki.cache.CacheManager;
+import org.xwiki.environment.Environment;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
 
 import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiAttachment;
 import com.xpn.xwiki.doc.XWikiAttachmentContent;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.event.AttachmentDeletedEvent;
 import com.xpn.xwiki.test.MockitoOldcoreRule;
 import com.xpn.xwiki.web.XWikiServletRequest;
 
@@ -89,10 +99,15 @@
     @Rule
     public MockitoOldcoreRule oldCore = new MockitoOldcoreRule();
 
+    @Rule
+    public TemporaryFolder permanentDirectory = new TemporaryFolder();
+
     private ImagePlugin plugin;
 
     private ImageProcessor imageProcessor;
 
+    private ObservationManager observation;
+
     @Before
     public void configure() throws Exception
     {
@@ -101,11 +116,14 @@ public void configure() throws Exception
         Mockito.doReturn("test").when(xwiki).Param(
                 ArgumentMatchers.eq("xwiki.plugin.image.processorHint"), ArgumentMatchers.anyString());
 
-        this.oldCore.getMocker().registerMockComponent(CacheManager.class);
+        Environment environment = this.oldCore.getMocker().registerMockComponent(Environment.class);
+        Mockito.when(environment.getPermanentDirectory()).thenReturn(this.permanentDirectory.getRoot());
 
         this.imageProcessor = this.oldCore.getMocker().registerMockComponent(ImageProcessor.class, "test");
         Mockito.when(this.imageProcessor.isMimeTypeSupported("image/png")).thenReturn(true);
 
+        this.observation = this.oldCore.getMocker().registerMockComponent(ObservationManager.class);
+
         this.plugin = new ImagePlugin("image", ImagePlugin.class.getName(), this.oldCore.getXWikiContext());
     }
 
@@ -124,19 +142,17 @@ public void testCacheOfScaledAttachment() throws Exception
 
         XWikiAttachment attachment = Mockito.mock(XWikiAttachment.class);
         Mockito.when(attachment.getMimeType(xcontext)).thenReturn("image/png");
+        Mockito.when(attachment.getReference()).thenReturn(
+            new AttachmentReference("image.png", new DocumentReference("wiki", "Space", "Page")));
+        Mockito.when(attachment.getVersion()).thenReturn("1.1");
         InputStream attachmentInputStream = new ByteArrayInputStream(testPngImageContent);
         Mockito.when(attachment.getContentInputStream(xcontext)).thenReturn(attachmentInputStream);
-        Mockito.when(attachment.clone()).thenReturn(attachment);
 
-        XWikiAttachmentContent attachmentContent = Mockito.mock(XWikiAttachmentContent.class);
-        Mockito.when(attachment.getAttachment_content()).thenReturn(attachmentContent);
-        Mockito.when(attachmentContent.getContentInputStream()).thenReturn(attachmentInputStream);
-        OutputStream attachmentOutputStream = Mockito.mock(OutputStream.class);
-        Mockito.when(attachmentContent.getContentOutputStream()).thenReturn(attachmentOutputStream);
-
-        CacheManager cacheManager = this.oldCore.getMocker().getInstance(CacheManager.class);
-        Cache<Object> imageCache = Mockito.mock(Cache.class);
-        Mockito.when(cacheManager.createNewLocalCache(ArgumentMatchers.any())).thenReturn(imageCache);
+        // The attachments returned to the client
+        XWikiAttachment thumbnail1 = Mockito.mock(XWikiAttachment.class);
+        XWikiAttachment thumbnail2 = Mockito.mock(XWikiAttachment.class);
+        XWikiAttachment thumbnail3 = Mockito.mock(XWikiAttachment.class);
+        Mockito.when(attachment.clone()).thenReturn(thumbnail1, thumbnail2, thumbnail3);
 
         XWikiServletRequest request = Mockito.mock(XWikiServletRequest.class);
         Mockito.when(request.getParameter("width")).thenReturn("30");
@@ -146,20 +162,112 @@ public void testCacheOfScaledAttachment() throws Exception
         Image image = Mockito.mock(Image.class);
         Mockito.when(image.getWidth(null)).thenReturn(400);
         Mockito.when(image.getHeight(null)).thenReturn(300);
-        Mockito.when(imageProcessor.readImage(attachmentInputStream)).thenReturn(image);
+        Mockito.when(imageProcessor.readImage(attachmentInputStream, 30, 30)).thenReturn(image);
         RenderedImage renderedImage = Mockito.mock(RenderedImage.class);
         Mockito.when(imageProcessor.scaleImage(image, 30, 30)).thenReturn(renderedImage);
+        Mockito.doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(3).write("thumbnail".getBytes());
+            return null;
+        }).when(imageProcessor).writeImage(ArgumentMatchers.eq(renderedImage), ArgumentMatchers.eq("image/png"),
+            ArgumentMatchers.eq(.5F), ArgumentMatchers.any(OutputStream.class));
+
+        Assert.assertSame(thumbnail1, plugin.downloadAttachment(attachment, xcontext));
+        assertContent("thumbnail", thumbnail1);
+
+        // Load again, this time from the memory cache.
+        Assert.assertSame(thumbnail2, plugin.downloadAttachment(attachment, xcontext));
+        assertContent("thumbnail", thumbnail2);
+
+        // Load again after a restart, this time from the disk.
+        this.plugin = new ImagePlugin("image", ImagePlugin.class.getName(), xcontext);
+        Assert.assertSame(thumbnail3, plugin.downloadAttachment(attachment, xcontext));
+        assertContent("thumbnail", thumbnail3);
+
+        Mockito.verify(imageProcessor, Mockito.times(1)).readImage(attachmentInputStream, 30, 30);
+    }
+
+    @Test
+    public void testCacheOfNotScaledAttachment() throws Exception
+    {
+        XWikiContext xcontext = this.oldCore.getXWikiContext();
 
-        XWikiAttachment scaled = plugin.downloadAttachment(attachment, xcontext);
+        XWikiAttachment attachment = Mockito.mock(XWikiAttachment.class);
+        Mockito.when(attachment.getMimeType(xcontext)).thenReturn("image/png");
+        Mockito.when(attachment.getReference()).thenReturn(
+            new AttachmentReference("image.png", new DocumentReference("wiki", "Space", "Page")));
+        InputStream attachmentInputStream = new ByteArrayInputStream(testPngImageContent);
+        Mockito.when(attachment.getContentInputStream(xcontext)).thenReturn(attachmentInputStream);
 
-        String cacheKey = "0;null;30;30;false;-1.0";
-        Mockito.when(imageCache.get(cacheKey)).thenReturn(scaled);
+        XWikiServletRequest request = Mockito.mock(XWikiServletRequest.class);
+        Mockito.when(request.getParameter("width")).thenReturn("500");
+        xcontext.setRequest(request);
 
-        // Load again, this time from cache.
-        Assert.assertSame(scaled, plugin.downloadAttachment(attachment, xcontext));
+        // The image is smaller than the requested width
+        Image image = Mockito.mock(Image.class);
+        Mockito.when(image.getWidth(null)).thenReturn(400);
+        Mockito.when(image.getHeight(null)).thenReturn(300);
+        Mockito.when(imageProcessor.readImage(attachmentInputStream, 500, -1)).thenReturn(image);
+
+        Assert.assertSame(attachment, plugin.downloadAttachment(attachment, xcontext));
+        Assert.assertSame(attachment, plugin.downloadAttachment(attachment, xcontext));
+
+        Mockito.verify(imageProcessor, Mockito.times(1)).readImage(attachmentInputStream, 500, -1);
+        Mockito.verify(attachment, Mockito.never()).clone();
+    }
 
-        Mockito.verify(imageProcessor, Mockito.times(1)).writeImage(renderedImage,
-                "image/png", .5F, attachmentOutputStream);
-        Mockito.verify(imageCache, Mockito.times(1)).set(cacheKey, attachment);
+    @Test
+    public void testThumbnailsRemovedWithAttachment() throws Exception
+    {
+        XWikiContext xcontext = this.oldCore.getXWikiContext();
+
+        DocumentReference documentReference = new DocumentReference("wiki", "Space", "Page");
+        XWikiAttachment attachment = Mockito.mock(XWikiAttachment.class);
+        Mockito.when(attachment.getMimeType(xcontext)).thenReturn("image/png");
+        Mockito.when(attachment.getReference()).thenReturn(new AttachmentReference("image.png", documentReference));
+        Mockito.when(attachment.getVersion()).thenReturn("1.1");
+        InputStream attachmentInputStream = new ByteArrayInputStream(testPngImageContent);
+        Mockito.when(attachment.getContentInputStream(xcontext)).thenReturn(attachmentInputStream);
+        Mockito.when(attachment.clone()).thenReturn(Mockito.mock(XWikiAttachment.class));
+
+        XWikiServletRequest request = Mockito.mock(XWikiServletRequest.class);
+        Mockito.when(request.getParameter("width")).thenReturn("30");
+        xcontext.setRequest(request);
+
+        Image image = Mockito.mock(Image.class);
+        Mockito.when(image.getWidth(null)).thenReturn(400);
+        Mockito.when(image.getHeight(null)).thenReturn(300);
+        Mockito.when(imageProcessor.readImage(attachmentInputStream, 30, -1)).thenReturn(image);
+        RenderedImage renderedImage = Mockito.mock(RenderedImage.class);
+        Mockito.when(imageProcessor.scaleImage(image, 30, 22)).thenReturn(renderedImage);
+        Mockito.doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(3).write("thumbnail".getBytes());
+            return null;
+        }).when(imageProcessor).writeImage(ArgumentMatchers.eq(renderedImage), ArgumentMatchers.eq("image/png"),
+            ArgumentMatchers.eq(.5F), ArgumentMatchers.any(OutputStream.class));
+
+        plugin.downloadAttachment(attachment, xcontext);
+
+        ArgumentCaptor<EventListener> listenerCaptor = ArgumentCaptor.forClass(EventListener.class);
+        Mockito.verify(this.observation).addListener(listenerCaptor.capture());
+        XWikiDocument document = Mockito.mock(XWikiDocument.class);
+        Mockito.when(document.getDocumentReference()).thenReturn(documentReference);
+        listenerCaptor.getValue().onEvent(new AttachmentDeletedEvent("wiki:Space.Page", "image.png"), document,
+            xcontext);
+
+        Assert.assertEquals(0, FileUtils.listFiles(this.permanentDirectory.getRoot(), null, true).size());
+
+        // The thumbnail is computed again
+        plugin.downloadAttachment(attachment, xcontext);
+
+        Mockito.verify(imageProcessor, Mockito.times(2)).readImage(attachmentInputStream, 30, -1);
+    }
+
+    private void assertContent(String expected, XWikiAttachment thumbnail) throws Exception
+    {
+        ArgumentCaptor<XWikiAttachmentContent> contentCaptor = ArgumentCaptor.forClass(XWikiAttachmentContent.class);
+        Mockito.verify(thumbnail).setAttachment_content(contentCaptor.capture());
+        try (InputStream stream = contentCaptor.getValue().getContentInputStream()) {
+            Assert.assertEquals(expected, IOUtils.toString(stream, StandardCharsets.UTF_8));
+        }
     }
 }
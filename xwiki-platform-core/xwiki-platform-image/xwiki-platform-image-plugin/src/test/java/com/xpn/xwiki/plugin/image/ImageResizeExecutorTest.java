@@ -0,0 +1,100 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.image;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ImageResizeExecutor}.
+ *
+ * @version $Id$
+ */
+public class ImageResizeExecutorTest
+{
+    private ImageResizeExecutor executor = new ImageResizeExecutor(2);
+
+    @Test
+    public void executeCoalescesIdenticalTransformations() throws Exception
+    {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService requests = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = requests.submit(() -> this.executor.execute("key", () -> {
+                executions.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "thumbnail";
+            }));
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            Future<String> second = requests.submit(() -> this.executor.execute("key", () -> {
+                executions.incrementAndGet();
+                return "other";
+            }));
+            while (this.executor.getCoalescedCount() == 0) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            Assert.assertEquals("thumbnail", first.get(10, TimeUnit.SECONDS));
+            Assert.assertEquals("thumbnail", second.get(10, TimeUnit.SECONDS));
+        } finally {
+            requests.shutdownNow();
+        }
+
+        Assert.assertEquals(1, executions.get());
+        Assert.assertEquals(1, this.executor.getExecutedCount());
+
+        // The transformation is forgotten before its result is published so it's executed again right away
+        Assert.assertEquals("new", this.executor.execute("key", () -> "new"));
+        Assert.assertEquals(2, this.executor.getExecutedCount());
+    }
+
+    @Test
+    public void executeRethrowsTheFailure() throws Exception
+    {
+        try {
+            this.executor.execute("key", () -> {
+                throw new IllegalStateException("failed");
+            });
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("failed", e.getMessage());
+        }
+
+        Assert.assertEquals(0, this.executor.getQueueSize());
+        Assert.assertEquals(1, this.executor.getExecutedCount());
+
+        // The failed transformation is not reused
+        Assert.assertEquals("thumbnail", this.executor.execute("key", () -> "thumbnail"));
+        Assert.assertEquals(0, this.executor.getCoalescedCount());
+    }
+}
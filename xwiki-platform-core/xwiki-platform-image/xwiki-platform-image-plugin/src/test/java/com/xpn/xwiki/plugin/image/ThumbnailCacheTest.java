@@ -0,0 +1,152 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.image;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiAttachmentContent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link ThumbnailCache}.
+ *
+ * @version $Id$
+ */
+public class ThumbnailCacheTest
+{
+    @Rule
+    public TemporaryFolder directory = new TemporaryFolder();
+
+    private XWikiAttachment mockAttachment(String name)
+    {
+        XWikiAttachment attachment = mock(XWikiAttachment.class);
+        when(attachment.getReference())
+            .thenReturn(new AttachmentReference(name, new DocumentReference("wiki", "Space", "Page")));
+        when(attachment.getVersion()).thenReturn("1.1");
+
+        return attachment;
+    }
+
+    private InputStream content(String content)
+    {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void assertContent(String expected, XWikiAttachmentContent content) throws Exception
+    {
+        assertNotNull(content);
+        try (InputStream stream = content.getContentInputStream()) {
+            assertEquals(expected, IOUtils.toString(stream, StandardCharsets.UTF_8));
+        }
+    }
+
+    private long getDiskUsage()
+    {
+        return FileUtils.sizeOfDirectory(this.directory.getRoot());
+    }
+
+    @Test
+    public void diskSizeIsLimited() throws Exception
+    {
+        // Nothing is kept in memory
+        ThumbnailCache cache = new ThumbnailCache(0, 0, this.directory.getRoot(), 20);
+
+        XWikiAttachment image1 = mockAttachment("image1.png");
+        XWikiAttachment image2 = mockAttachment("image2.png");
+        XWikiAttachment image3 = mockAttachment("image3.png");
+
+        cache.set(image1, "10", content("0123456789"));
+        cache.set(image2, "10", content("0123456789"));
+
+        // Use the first image so that the second one is the least recently used
+        assertContent("0123456789", cache.get(image1, "10"));
+
+        cache.set(image3, "10", content("0123456789"));
+
+        assertContent("0123456789", cache.get(image1, "10"));
+        assertNull(cache.get(image2, "10"));
+        assertContent("0123456789", cache.get(image3, "10"));
+        assertEquals(20, getDiskUsage());
+    }
+
+    @Test
+    public void diskSizeIsLimitedAfterRestart() throws Exception
+    {
+        ThumbnailCache cache = new ThumbnailCache(0, 0, this.directory.getRoot(), 20);
+        XWikiAttachment image1 = mockAttachment("image1.png");
+        XWikiAttachment image2 = mockAttachment("image2.png");
+        cache.set(image1, "10", content("0123456789"));
+        // Make sure the first thumbnail is the oldest one
+        for (File file : FileUtils.listFiles(this.directory.getRoot(), null, true)) {
+            file.setLastModified(System.currentTimeMillis() - 60000);
+        }
+        cache.set(image2, "10", content("0123456789"));
+
+        cache = new ThumbnailCache(0, 0, this.directory.getRoot(), 20);
+        XWikiAttachment image3 = mockAttachment("image3.png");
+        cache.set(image3, "10", content("0123456789"));
+
+        assertNull(cache.get(image1, "10"));
+        assertContent("0123456789", cache.get(image2, "10"));
+        assertContent("0123456789", cache.get(image3, "10"));
+        assertEquals(20, getDiskUsage());
+    }
+
+    @Test
+    public void remove() throws Exception
+    {
+        ThumbnailCache cache = new ThumbnailCache(10, 1000, this.directory.getRoot(), 1000);
+
+        XWikiAttachment image1 = mockAttachment("image1.png");
+        XWikiAttachment image2 = mockAttachment("image2.png");
+        cache.set(image1, "10", content("thumbnail1"));
+        cache.set(image1, "20", content("thumbnail1"));
+        cache.set(image2, "10", content("thumbnail2"));
+
+        cache.remove(image1.getReference());
+
+        assertNull(cache.get(image1, "10"));
+        assertNull(cache.get(image1, "20"));
+        assertContent("thumbnail2", cache.get(image2, "10"));
+
+        // The thumbnails are not found on disk after a restart either
+        cache = new ThumbnailCache(10, 1000, this.directory.getRoot(), 1000);
+        assertNull(cache.get(image1, "10"));
+        assertContent("thumbnail2", cache.get(image2, "10"));
+        assertEquals(10, getDiskUsage());
+    }
+}
@@ -42,6 +42,19 @@
      */
     T get(LESSResourceReference lessResourceReference, SkinReference skin, ColorThemeReference colorTheme);
 
+    /**
+     * Get the object which was associated with the passed key before the last invalidation of the cache (e.g. before
+     * the skin or the color theme has been modified).
+     *
+     * @param lessResourceReference reference of the code to compile
+     * @param skin reference of the skin
+     * @param colorTheme reference of the color theme
+     * @return the previous object, or {@code null} if no object has been invalidated for this key or if a new object
+     *         has been added since then
+     * @since 10.1RC1
+     */
+    T getPrevious(LESSResourceReference lessResourceReference, SkinReference skin, ColorThemeReference colorTheme);
+
     /**
      * Add an object in the cache.
      *
@@ -56,4 +56,23 @@ public boolean isGenerateInlineSourceMaps()
     {
         return configurationSource.getProperty(CONFIGURATION_PREFIX + "generateInlineSourceMaps", false);
     }
+
+    /**
+     * @return whether the compiled LESS resources should also be stored on disk to survive restarts
+     * @since 10.1RC1
+     */
+    public boolean isPersistentCacheEnabled()
+    {
+        return configurationSource.getProperty(CONFIGURATION_PREFIX + "persistentCache.enabled", false);
+    }
+
+    /**
+     * @return the path of the directory where the compiled LESS resources are stored, {@code null} to use the
+     *         permanent directory
+     * @since 10.1RC1
+     */
+    public String getPersistentCacheDirectory()
+    {
+        return configurationSource.getProperty(CONFIGURATION_PREFIX + "persistentCache.directory", String.class);
+    }
 }
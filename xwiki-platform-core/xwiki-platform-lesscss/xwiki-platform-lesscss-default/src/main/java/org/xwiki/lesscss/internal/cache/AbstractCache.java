@@ -20,7 +20,9 @@
 package org.xwiki.lesscss.internal.cache;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -42,6 +44,11 @@
  */
 public abstract class AbstractCache<T> implements LESSCache<T>
 {
+    /**
+     * The maximum number of previous objects to keep, the least recently used ones being forgotten first.
+     */
+    private static final int MAX_PREVIOUS_OBJECTS = 100;
+
     @Inject
     protected CacheManager cacheManager;
 
@@ -78,6 +85,22 @@
 
     private Map<String, String> mutexList = new HashMap<>();
 
+    /**
+     * The objects removed from the cache by the last invalidation, which can be used while the new objects are
+     * computed. The objects which are not requested anymore after an invalidation are never recomputed, so the map is
+     * bounded.
+     */
+    private Map<String, T> previousObjects = Collections.synchronizedMap(new LinkedHashMap<String, T>(16, 0.75F, true)
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, T> eldest)
+        {
+            return size() > MAX_PREVIOUS_OBJECTS;
+        }
+    });
+
     @Override
     public T get(LESSResourceReference lessResourceReference, SkinReference skin, ColorThemeReference colorTheme)
     {
@@ -85,12 +108,21 @@ public T get(LESSResourceReference lessResourceReference, SkinReference skin, Co
     }
 
     @Override
-    public void set(LESSResourceReference lessResourceReference, SkinReference skin,
+    public T getPrevious(LESSResourceReference lessResourceReference, SkinReference skin,
+        ColorThemeReference colorTheme)
+    {
+        return previousObjects
+            .get(cacheKeyFactory.getCacheKey(lessResourceReference, skin, colorTheme, isContextHandled));
+    }
+
+    @Override
+    public synchronized void set(LESSResourceReference lessResourceReference, SkinReference skin,
         ColorThemeReference colorTheme, T content)
     {
         // Store the content in the cache
         String cacheKey = cacheKeyFactory.getCacheKey(lessResourceReference, skin, colorTheme, isContextHandled);
         cache.set(cacheKey, content);
+        previousObjects.remove(cacheKey);
 
         // Add the new key to maps
         registerCacheKey(cachedFilesKeysMapPerSkin, cacheKey, skin);
@@ -120,8 +152,15 @@ private void registerCacheKey(Map<Object, List<String>> cachedFilesKeysMap, Stri
     }
 
     @Override
-    public void clear()
+    public synchronized void clear()
     {
+        // All the keys are registered for a skin
+        for (List<String> cachedFilesKeys : cachedFilesKeysMapPerSkin.values()) {
+            for (String cachedFileKey : cachedFilesKeys) {
+                keepPrevious(cachedFileKey);
+            }
+        }
+
         cache.removeAll();
         cachedFilesKeysMapPerSkin.clear();
         cachedFilesKeysMapPerColorTheme.clear();
@@ -137,26 +176,46 @@ private void clearFromCriteria(Map<Object, List<String>> cachedFilesKeysMap, Obj
         }
         // Remove all the cached files corresponding to the cached keys
         for (String cachedFileKey : cachedFilesKeys) {
-            cache.remove(cachedFileKey);
+            remove(cachedFileKey);
         }
         // Remove the list of cached keys corresponding to the criteria
         cachedFilesKeysMap.remove(criteria);
     }
 
+    /**
+     * Remove an entry from the cache, keeping its value as the previous one.
+     *
+     * @param cacheKey the key of the entry to remove
+     * @since 10.1RC1
+     */
+    protected void remove(String cacheKey)
+    {
+        keepPrevious(cacheKey);
+        cache.remove(cacheKey);
+    }
+
+    private void keepPrevious(String cacheKey)
+    {
+        T object = cache.get(cacheKey);
+        if (object != null) {
+            previousObjects.put(cacheKey, object);
+        }
+    }
+
     @Override
-    public void clearFromSkin(SkinReference skin)
+    public synchronized void clearFromSkin(SkinReference skin)
     {
         clearFromCriteria(cachedFilesKeysMapPerSkin, skin);
     }
 
     @Override
-    public void clearFromColorTheme(ColorThemeReference colorTheme)
+    public synchronized void clearFromColorTheme(ColorThemeReference colorTheme)
     {
         clearFromCriteria(cachedFilesKeysMapPerColorTheme, colorTheme);
     }
 
     @Override
-    public void clearFromLESSResource(LESSResourceReference lessResourceReference)
+    public synchronized void clearFromLESSResource(LESSResourceReference lessResourceReference)
     {
         clearFromCriteria(cachedFilesKeysMapPerLESSResource, lessResourceReference);
     }
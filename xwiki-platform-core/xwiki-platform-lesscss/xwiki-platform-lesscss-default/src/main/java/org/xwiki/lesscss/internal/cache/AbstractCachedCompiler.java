@@ -19,6 +19,10 @@
  */
 package org.xwiki.lesscss.internal.cache;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
 import javax.inject.Inject;
 import javax.inject.Provider;
 
@@ -67,6 +71,11 @@
     @Inject
     protected Logger logger;
 
+    /**
+     * The locks of the cache keys being computed. A lock is forgotten as soon as nobody holds it or waits for it.
+     */
+    private final ConcurrentMap<Object, ReentrantLock> locks = new ConcurrentHashMap<>();
+
     /**
      * Get the result of the compilation.
      * @param lessResourceReference reference to the LESS content
@@ -104,51 +113,186 @@ public T getResult(LESSResourceReference lessResourceReference, boolean includeS
             return compiler.compute(lessResourceReference, includeSkinStyle, useVelocity, true, skin);
         }
 
-        T result = null;
-
         SkinReference skinReference = skinReferenceFactory.createReference(skin);
         ColorThemeReference colorThemeReference = colorThemeReferenceFactory.createReference(
                 currentColorThemeGetter.getCurrentColorTheme(true, "default"));
 
-        // Only one computation is allowed in the same time per color theme, then the waiting threads will be able to
+        // Only one computation is allowed in the same time per cache key, then the waiting threads will be able to
         // use the last result stored in the cache.
         Object mutex = cache.getMutex(lessResourceReference, skinReference, colorThemeReference);
-        synchronized (mutex) {
 
+        if (!force) {
             // Check if the result is in the cache
-            if (!force) {
-                result = cache.get(lessResourceReference, skinReference, colorThemeReference);
-                if (result != null) {
-                    // The LESS file contains Velocity code that call resources (ie: $xwiki.getSkinFile), and the HTML
-                    // exporter listens these calls to know which resources must be exported.
-                    // If we only use the cache, we would have a correct CSS file but some resources will be missing.
-                    // So we need to execute the velocity again, even if the LESS file is cached.
-                    // To perform this quickly, we do not recompile the LESS code (which would be useless anyway), but
-                    // we only do the Velocity Execution step.
-                    if (lessContext.isHtmlExport() && useVelocity && this instanceof DefaultLESSCompiler) {
-                        compiler.compute(lessResourceReference, includeSkinStyle, true, false, skin);
+            T result = getCachedResult(lessResourceReference, includeSkinStyle, useVelocity, skin, skinReference,
+                colorThemeReference);
+            if (result != null) {
+                return result;
+            }
+
+            // The result has been invalidated (e.g. the skin or the color theme has been modified): while another
+            // thread computes the new result, serve the previous one instead of waiting (except for the HTML export
+            // which needs the Velocity code to be executed).
+            if (isPreviousResultServed() && !lessContext.isHtmlExport()) {
+                T previousResult = cache.getPrevious(lessResourceReference, skinReference, colorThemeReference);
+                if (previousResult != null) {
+                    ReentrantLock lock = lock(mutex, false);
+                    if (lock == null) {
+                        return cloneResult(previousResult);
+                    }
+                    try {
+                        return compute(lessResourceReference, includeSkinStyle, useVelocity, skin, skinReference,
+                            colorThemeReference, false);
+                    } finally {
+                        unlock(mutex, lock);
                     }
-                    return cloneResult(result);
                 }
             }
+        }
+
+        ReentrantLock lock = lock(mutex, true);
+        try {
+            return compute(lessResourceReference, includeSkinStyle, useVelocity, skin, skinReference,
+                colorThemeReference, force);
+        } finally {
+            unlock(mutex, lock);
+        }
+    }
+
+    /**
+     * @param mutex the mutex of the cache key
+     * @param wait true to wait for the lock, false to give up if it is held by another thread
+     * @return the acquired lock, or {@code null} if it is held by another thread and {@code wait} is false
+     */
+    private ReentrantLock lock(Object mutex, boolean wait)
+    {
+        while (true) {
+            ReentrantLock lock = this.locks.computeIfAbsent(mutex, key -> new ReentrantLock());
+            if (wait) {
+                lock.lock();
+            } else if (!lock.tryLock()) {
+                return null;
+            }
+
+            // The lock might have been forgotten before we acquired it, in which case another thread could use a new
+            // one for the same key
+            if (this.locks.get(mutex) == lock) {
+                return lock;
+            }
+            lock.unlock();
+        }
+    }
 
-            // Either the result was in the cache or the force flag is set to true, we need to compile
-            try {
-                result = compiler.compute(lessResourceReference, includeSkinStyle, useVelocity, true, skin);
-            } catch (LESSCompilerException e) {
-                logger.error("Error during the compilation of the resource [{}].", lessResourceReference, e);
-                // We must cache the result, even if the compilation have failed, to prevent re-compiling again and
-                // again (the compilation will still fail until the LESS resource is updated so it useless to retry).
-                result = exceptionAsResult(e);
-            } finally {
-                // Put the result in the cache
+    private void unlock(Object mutex, ReentrantLock lock)
+    {
+        lock.unlock();
+
+        // Forget the lock when nobody needs it anymore so that the map does not keep a lock for every key ever computed
+        this.locks.computeIfPresent(mutex,
+            (key, value) -> value == lock && !lock.isLocked() && !lock.hasQueuedThreads() ? null : value);
+    }
+
+    private T getCachedResult(LESSResourceReference lessResourceReference, boolean includeSkinStyle,
+        boolean useVelocity, String skin, SkinReference skinReference, ColorThemeReference colorThemeReference)
+        throws LESSCompilerException
+    {
+        T result = cache.get(lessResourceReference, skinReference, colorThemeReference);
+        if (result == null) {
+            // The result might have been computed before the last restart
+            result = getPersistedResult(lessResourceReference, skinReference, colorThemeReference);
+            if (result != null) {
                 cache.set(lessResourceReference, skinReference, colorThemeReference, result);
             }
         }
+        if (result != null) {
+            // The LESS file contains Velocity code that call resources (ie: $xwiki.getSkinFile), and the HTML
+            // exporter listens these calls to know which resources must be exported.
+            // If we only use the cache, we would have a correct CSS file but some resources will be missing.
+            // So we need to execute the velocity again, even if the LESS file is cached.
+            // To perform this quickly, we do not recompile the LESS code (which would be useless anyway), but
+            // we only do the Velocity Execution step.
+            if (lessContext.isHtmlExport() && useVelocity && this instanceof DefaultLESSCompiler) {
+                compiler.compute(lessResourceReference, includeSkinStyle, true, false, skin);
+            }
+            return cloneResult(result);
+        }
+
+        return null;
+    }
+
+    /**
+     * Must be called with the lock of the cache key.
+     */
+    private T compute(LESSResourceReference lessResourceReference, boolean includeSkinStyle, boolean useVelocity,
+        String skin, SkinReference skinReference, ColorThemeReference colorThemeReference, boolean force)
+        throws LESSCompilerException
+    {
+        if (!force) {
+            // The result might have been computed while we were waiting for the lock
+            T result = getCachedResult(lessResourceReference, includeSkinStyle, useVelocity, skin, skinReference,
+                colorThemeReference);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        T result = null;
+
+        // Either the result was not in the cache or the force flag is set to true, we need to compile
+        try {
+            result = compiler.compute(lessResourceReference, includeSkinStyle, useVelocity, true, skin);
+            persistResult(lessResourceReference, skinReference, colorThemeReference, result);
+        } catch (LESSCompilerException e) {
+            logger.error("Error during the compilation of the resource [{}].", lessResourceReference, e);
+            // We must cache the result, even if the compilation have failed, to prevent re-compiling again and
+            // again (the compilation will still fail until the LESS resource is updated so it useless to retry).
+            result = exceptionAsResult(e);
+        } finally {
+            // Put the result in the cache
+            cache.set(lessResourceReference, skinReference, colorThemeReference, result);
+        }
 
         return cloneResult(result);
     }
 
+    /**
+     * @param lessResourceReference reference to the LESS content
+     * @param skinReference the skin for which the resource has been compiled
+     * @param colorThemeReference the color theme for which the resource has been compiled
+     * @return the result stored by {@link #persistResult} before the last restart if it is still valid, {@code null}
+     *         otherwise
+     * @since 10.1RC1
+     */
+    protected T getPersistedResult(LESSResourceReference lessResourceReference, SkinReference skinReference,
+        ColorThemeReference colorThemeReference)
+    {
+        return null;
+    }
+
+    /**
+     * Store a successfully computed result so that it can survive restarts. Does nothing by default.
+     *
+     * @param lessResourceReference reference to the LESS content
+     * @param skinReference the skin for which the resource has been compiled
+     * @param colorThemeReference the color theme for which the resource has been compiled
+     * @param result the computed result
+     * @since 10.1RC1
+     */
+    protected void persistResult(LESSResourceReference lessResourceReference, SkinReference skinReference,
+        ColorThemeReference colorThemeReference, T result)
+    {
+        // Results are not persisted by default
+    }
+
+    /**
+     * @return true if the previous result of an invalidated cache entry can be returned while another thread computes
+     *         the new result
+     * @since 10.1RC1
+     */
+    protected boolean isPreviousResultServed()
+    {
+        return true;
+    }
+
     /**
      * Returns a clone of the result to avoid returning the instance stored in the cache. Need to be implemented by
      * subclasses.
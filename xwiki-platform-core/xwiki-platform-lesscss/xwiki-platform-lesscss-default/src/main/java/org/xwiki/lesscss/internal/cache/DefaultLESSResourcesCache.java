@@ -49,6 +49,9 @@ public class DefaultLESSResourcesCache extends AbstractCache<String> implements
     @Inject
     private CacheManager cacheManager;
 
+    @Inject
+    private PersistentLESSResourcesCache persistentCache;
+
     @Override
     public void initialize() throws InitializationException
     {
@@ -61,4 +64,20 @@ public void initialize() throws InitializationException
                     String.format("Failed to initialize LESS skin files cache [%s].", LESS_FILES_CACHE_ID), e);
         }
     }
+
+    @Override
+    public synchronized void clear()
+    {
+        super.clear();
+
+        this.persistentCache.clear();
+    }
+
+    @Override
+    protected void remove(String cacheKey)
+    {
+        super.remove(cacheKey);
+
+        this.persistentCache.remove(cacheKey);
+    }
 }
@@ -0,0 +1,290 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.lesscss.internal.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.environment.Environment;
+import org.xwiki.lesscss.internal.LESSConfiguration;
+import org.xwiki.lesscss.internal.colortheme.ColorThemeReference;
+import org.xwiki.lesscss.internal.colortheme.DocumentColorThemeReference;
+import org.xwiki.lesscss.internal.resources.LESSObjectPropertyResourceReference;
+import org.xwiki.lesscss.internal.skin.DocumentSkinReference;
+import org.xwiki.lesscss.internal.skin.SkinReference;
+import org.xwiki.lesscss.resources.LESSResourceReference;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+
+/**
+ * Keep on disk the CSS compiled from the LESS resources so that it survives restarts and can be shared by the nodes
+ * of a cluster.
+ * <p>
+ * An entry is identified by the same key as the in-memory cache and by a fingerprint of the sources it was compiled
+ * from: the XWiki version (for the skins on the filesystem) and the versions of the skin, color theme and LESS object
+ * documents. A new fingerprint is computed each time an entry is read, so an entry compiled from outdated sources is
+ * never used, even when it was modified while this node was stopped. Only the last compiled entry of each key is kept.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Component(roles = PersistentLESSResourcesCache.class)
+@Singleton
+public class PersistentLESSResourcesCache implements Initializable
+{
+    private static final String EXTENSION = ".css.gz";
+
+    private static final char SEPARATOR = '/';
+
+    @Inject
+    private LESSConfiguration configuration;
+
+    @Inject
+    private CacheKeyFactory cacheKeyFactory;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private Logger logger;
+
+    private File directory;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        if (this.configuration.isPersistentCacheEnabled()) {
+            String path = this.configuration.getPersistentCacheDirectory();
+            if (StringUtils.isNotEmpty(path)) {
+                this.directory = new File(path);
+            } else {
+                this.directory = new File(this.environment.getPermanentDirectory(), "cache/lesscss");
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if the persistent cache is enabled
+     */
+    public boolean isEnabled()
+    {
+        return this.directory != null;
+    }
+
+    /**
+     * @param lessResourceReference the compiled LESS resource
+     * @param skin the skin for which the resource has been compiled
+     * @param colorTheme the color theme for which the resource has been compiled
+     * @return the CSS compiled from the current version of the sources, {@code null} if unknown
+     */
+    public String get(LESSResourceReference lessResourceReference, SkinReference skin, ColorThemeReference colorTheme)
+    {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        String cacheKey = this.cacheKeyFactory.getCacheKey(lessResourceReference, skin, colorTheme, true);
+        String key = getKey(cacheKey, lessResourceReference, skin, colorTheme);
+        if (key == null) {
+            return null;
+        }
+
+        File file = getFile(cacheKey, key);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new FileInputStream(file)))) {
+            // Make sure it's not a hash collision
+            if (key.equals(in.readUTF())) {
+                return IOUtils.toString(in, StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            this.logger.warn("Failed to read the persisted CSS of the LESS resource [{}]: {}", lessResourceReference,
+                e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Store the CSS compiled from the current version of the sources, and forget the CSS compiled from the previous
+     * versions.
+     *
+     * @param lessResourceReference the compiled LESS resource
+     * @param skin the skin for which the resource has been compiled
+     * @param colorTheme the color theme for which the resource has been compiled
+     * @param css the result of the compilation
+     */
+    public void set(LESSResourceReference lessResourceReference, SkinReference skin, ColorThemeReference colorTheme,
+        String css)
+    {
+        if (!isEnabled() || css == null) {
+            return;
+        }
+
+        String cacheKey = this.cacheKeyFactory.getCacheKey(lessResourceReference, skin, colorTheme, true);
+        String key = getKey(cacheKey, lessResourceReference, skin, colorTheme);
+        if (key == null) {
+            return;
+        }
+
+        File file = getFile(cacheKey, key);
+        File keyDirectory = file.getParentFile();
+
+        try {
+            // Forget the CSS compiled from the previous versions
+            if (keyDirectory.exists()) {
+                FileUtils.cleanDirectory(keyDirectory);
+            } else {
+                keyDirectory.mkdirs();
+            }
+
+            // Write in a temporary file first so that an entry being written is never read (several nodes might
+            // compile the same resource at the same time)
+            File temporaryFile = File.createTempFile(file.getName(), null, keyDirectory);
+            try (DataOutputStream out =
+                new DataOutputStream(new GZIPOutputStream(new FileOutputStream(temporaryFile)))) {
+                out.writeUTF(key);
+                out.write(css.getBytes(StandardCharsets.UTF_8));
+            }
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            this.logger.warn("Failed to persist the CSS of the LESS resource [{}]: {}", lessResourceReference,
+                e.getMessage());
+        }
+    }
+
+    /**
+     * Remove the entry associated to the given key of the in-memory cache.
+     *
+     * @param cacheKey the key of the entry in the in-memory cache
+     */
+    public void remove(String cacheKey)
+    {
+        if (isEnabled()) {
+            delete(getKeyDirectory(cacheKey));
+        }
+    }
+
+    /**
+     * Remove all the entries.
+     */
+    public void clear()
+    {
+        if (isEnabled()) {
+            delete(this.directory);
+        }
+    }
+
+    private void delete(File file)
+    {
+        try {
+            FileUtils.deleteDirectory(file);
+        } catch (IOException e) {
+            this.logger.warn("Failed to delete the persisted CSS stored in [{}]: {}", file, e.getMessage());
+        }
+    }
+
+    private String getKey(String cacheKey, LESSResourceReference lessResourceReference, SkinReference skin,
+        ColorThemeReference colorTheme)
+    {
+        XWikiContext xcontext = this.xcontextProvider.get();
+
+        StringBuilder key = new StringBuilder(cacheKey);
+        key.append(SEPARATOR);
+        key.append(xcontext.getWiki().getVersion());
+
+        try {
+            if (skin instanceof DocumentSkinReference) {
+                appendVersion(key, ((DocumentSkinReference) skin).getSkinDocument(), xcontext);
+            }
+            if (colorTheme instanceof DocumentColorThemeReference) {
+                appendVersion(key, ((DocumentColorThemeReference) colorTheme).getColorThemeDocument(), xcontext);
+            }
+            if (lessResourceReference instanceof LESSObjectPropertyResourceReference) {
+                appendVersion(key, new DocumentReference(((LESSObjectPropertyResourceReference) lessResourceReference)
+                    .getObjectPropertyReference().extractReference(EntityType.DOCUMENT)), xcontext);
+            }
+        } catch (XWikiException e) {
+            this.logger.warn("Failed to get the version of the sources of the LESS resource [{}]: {}",
+                lessResourceReference, e.getMessage());
+
+            return null;
+        }
+
+        return key.toString();
+    }
+
+    private void appendVersion(StringBuilder key, DocumentReference documentReference, XWikiContext xcontext)
+        throws XWikiException
+    {
+        key.append(SEPARATOR);
+        key.append(documentReference);
+        key.append('@');
+        key.append(xcontext.getWiki().getDocument(documentReference, xcontext).getVersion());
+    }
+
+    private File getKeyDirectory(String cacheKey)
+    {
+        String cacheKeyHash = hash(cacheKey);
+
+        // Spread the entries over several directories to avoid huge directories
+        return new File(new File(this.directory, cacheKeyHash.substring(0, 2)), cacheKeyHash);
+    }
+
+    private File getFile(String cacheKey, String key)
+    {
+        return new File(getKeyDirectory(cacheKey), hash(key) + EXTENSION);
+    }
+
+    private static String hash(String value)
+    {
+        return UUID.nameUUIDFromBytes(value.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+}
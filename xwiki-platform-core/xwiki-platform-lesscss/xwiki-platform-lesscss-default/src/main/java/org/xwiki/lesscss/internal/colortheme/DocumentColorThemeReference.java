@@ -47,6 +47,15 @@ public DocumentColorThemeReference(DocumentReference colorThemeDocument,
         this.entityReferenceSerializer = entityReferenceSerializer;
     }
 
+    /**
+     * @return the color theme document
+     * @since 10.1RC1
+     */
+    public DocumentReference getColorThemeDocument()
+    {
+        return colorThemeDocument;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (o instanceof DocumentColorThemeReference) {
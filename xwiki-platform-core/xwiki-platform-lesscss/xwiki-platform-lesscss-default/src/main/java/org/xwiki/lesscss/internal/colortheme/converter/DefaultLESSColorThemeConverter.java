@@ -75,6 +75,13 @@ public ColorTheme getColorThemeFromSkinFile(String fileName, String skin, boolea
             force);
     }
 
+    @Override
+    protected boolean isPreviousResultServed()
+    {
+        // The color theme is used to compile the CSS, which would then be cached with outdated colors
+        return false;
+    }
+
     @Override
     protected ColorTheme cloneResult(ColorTheme toClone)
     {
@@ -32,6 +32,9 @@
 import org.xwiki.lesscss.compiler.LESSCompiler;
 import org.xwiki.lesscss.compiler.LESSCompilerException;
 import org.xwiki.lesscss.internal.cache.AbstractCachedCompiler;
+import org.xwiki.lesscss.internal.cache.PersistentLESSResourcesCache;
+import org.xwiki.lesscss.internal.colortheme.ColorThemeReference;
+import org.xwiki.lesscss.internal.skin.SkinReference;
 import org.xwiki.lesscss.resources.LESSResourceReference;
 
 /**
@@ -52,6 +55,9 @@ public class DefaultLESSCompiler extends AbstractCachedCompiler<String> implemen
     @Inject
     private CachedLESSCompiler cachedLESSCompiler;
 
+    @Inject
+    private PersistentLESSResourcesCache persistentCache;
+
     @Override
     public void initialize() throws InitializationException
     {
@@ -73,6 +79,20 @@ public String compile(LESSResourceReference lessResourceReference, boolean inclu
         return super.getResult(lessResourceReference, includeSkinStyle, useVelocity, skin, force);
     }
 
+    @Override
+    protected String getPersistedResult(LESSResourceReference lessResourceReference, SkinReference skinReference,
+        ColorThemeReference colorThemeReference)
+    {
+        return persistentCache.get(lessResourceReference, skinReference, colorThemeReference);
+    }
+
+    @Override
+    protected void persistResult(LESSResourceReference lessResourceReference, SkinReference skinReference,
+        ColorThemeReference colorThemeReference, String result)
+    {
+        persistentCache.set(lessResourceReference, skinReference, colorThemeReference, result);
+    }
+
     @Override
     protected String cloneResult(String toClone)
     {
@@ -62,4 +62,14 @@ public void generateSourceMaps() throws Exception
         boolean b  = mocker.getComponentUnderTest().isGenerateInlineSourceMaps();
         assertTrue(b);
     }
+
+    @Test
+    public void persistentCache() throws Exception
+    {
+        when(xwikiPropertiesSource.getProperty("lesscss.persistentCache.enabled", false)).thenReturn(true);
+        when(xwikiPropertiesSource.getProperty("lesscss.persistentCache.directory", String.class))
+            .thenReturn("/shared/lesscss");
+        assertTrue(mocker.getComponentUnderTest().isPersistentCacheEnabled());
+        assertEquals("/shared/lesscss", mocker.getComponentUnderTest().getPersistentCacheDirectory());
+    }
 }
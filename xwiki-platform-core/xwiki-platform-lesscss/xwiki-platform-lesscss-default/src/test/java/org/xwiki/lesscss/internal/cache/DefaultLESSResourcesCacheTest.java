@@ -32,6 +32,7 @@
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -113,6 +114,7 @@ public void clear() throws Exception
 
         // Verify
         verify(cache).removeAll();
+        verify(mocker.getInstance(PersistentLESSResourcesCache.class)).clear();
     }
 
     @Test
@@ -218,4 +220,56 @@ public void clearFromLESSResource() throws Exception
         verify(cache, never()).remove("k3");
     }
 
+    @Test
+    public void getPreviousAfterClearFromSkin() throws Exception
+    {
+        // Mocks
+        LESSSkinFileResourceReference file1 = createLESSSkinFileResourceReference("file1");
+        when(cacheKeyFactory.getCacheKey(eq(file1), eq(new FSSkinReference("skin1")),
+                eq(new NamedColorThemeReference("colorTheme")), eq(true))).thenReturn("k1");
+        when(cache.get("k1")).thenReturn("css1");
+
+        mocker.getComponentUnderTest().set(file1, new FSSkinReference("skin1"),
+                new NamedColorThemeReference("colorTheme"), "css1");
+        assertNull(mocker.getComponentUnderTest().getPrevious(file1, new FSSkinReference("skin1"),
+                new NamedColorThemeReference("colorTheme")));
+
+        // Test
+        mocker.getComponentUnderTest().clearFromSkin(new FSSkinReference("skin1"));
+
+        // Verify
+        verify(cache).remove("k1");
+        verify(mocker.getInstance(PersistentLESSResourcesCache.class)).remove("k1");
+        assertEquals("css1", mocker.getComponentUnderTest().getPrevious(file1, new FSSkinReference("skin1"),
+                new NamedColorThemeReference("colorTheme")));
+
+        // The previous value is forgotten as soon as a new one is computed
+        mocker.getComponentUnderTest().set(file1, new FSSkinReference("skin1"),
+                new NamedColorThemeReference("colorTheme"), "css2");
+        assertNull(mocker.getComponentUnderTest().getPrevious(file1, new FSSkinReference("skin1"),
+                new NamedColorThemeReference("colorTheme")));
+    }
+
+    @Test
+    public void getPreviousIsBounded() throws Exception
+    {
+        // Mocks
+        FSSkinReference skin = new FSSkinReference("skin1");
+        NamedColorThemeReference colorTheme = new NamedColorThemeReference("colorTheme");
+        for (int i = 0; i <= 100; i++) {
+            LESSSkinFileResourceReference file = createLESSSkinFileResourceReference("file" + i);
+            when(cacheKeyFactory.getCacheKey(eq(file), eq(skin), eq(colorTheme), eq(true))).thenReturn("k" + i);
+            when(cache.get("k" + i)).thenReturn("css" + i);
+            mocker.getComponentUnderTest().set(file, skin, colorTheme, "css" + i);
+        }
+
+        // Test
+        mocker.getComponentUnderTest().clearFromSkin(skin);
+
+        // Verify: the previous values which are never requested again must not be kept forever
+        assertNull(mocker.getComponentUnderTest().getPrevious(createLESSSkinFileResourceReference("file0"), skin,
+                colorTheme));
+        assertEquals("css100", mocker.getComponentUnderTest().getPrevious(
+                createLESSSkinFileResourceReference("file100"), skin, colorTheme));
+    }
 }
@@ -0,0 +1,150 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.lesscss.internal.cache;
+
+import javax.inject.Provider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xwiki.environment.Environment;
+import org.xwiki.lesscss.internal.LESSConfiguration;
+import org.xwiki.lesscss.internal.colortheme.ColorThemeReference;
+import org.xwiki.lesscss.internal.colortheme.DocumentColorThemeReference;
+import org.xwiki.lesscss.internal.resources.LESSSkinFileResourceReference;
+import org.xwiki.lesscss.internal.skin.FSSkinReference;
+import org.xwiki.lesscss.internal.skin.SkinReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for {@link PersistentLESSResourcesCache}.
+ *
+ * @since 10.1RC1
+ * @version $Id$
+ */
+public class PersistentLESSResourcesCacheTest
+{
+    @Rule
+    public MockitoComponentMockingRule<PersistentLESSResourcesCache> mocker =
+        new MockitoComponentMockingRule<>(PersistentLESSResourcesCache.class);
+
+    @Rule
+    public TemporaryFolder permanentDirectory = new TemporaryFolder();
+
+    private XWiki xwiki;
+
+    private XWikiContext xcontext;
+
+    private XWikiDocument colorThemeDocument;
+
+    private LESSSkinFileResourceReference lessResourceReference =
+        new LESSSkinFileResourceReference("style.less", null, null);
+
+    private SkinReference skinReference = new FSSkinReference("flamingo");
+
+    private DocumentReference colorThemeDocumentReference = new DocumentReference("wiki", "FlamingoThemes", "Iceberg");
+
+    private ColorThemeReference colorThemeReference =
+        new DocumentColorThemeReference(colorThemeDocumentReference, mock(EntityReferenceSerializer.class));
+
+    @Before
+    public void setUp() throws Exception
+    {
+        LESSConfiguration configuration = mocker.getInstance(LESSConfiguration.class);
+        when(configuration.isPersistentCacheEnabled()).thenReturn(true);
+
+        Environment environment = mocker.getInstance(Environment.class);
+        when(environment.getPermanentDirectory()).thenReturn(permanentDirectory.getRoot());
+
+        CacheKeyFactory cacheKeyFactory = mocker.getInstance(CacheKeyFactory.class);
+        when(cacheKeyFactory.getCacheKey(eq(lessResourceReference), eq(skinReference), eq(colorThemeReference),
+            eq(true))).thenReturn("key");
+
+        Provider<XWikiContext> xcontextProvider = mocker.registerMockComponent(XWikiContext.TYPE_PROVIDER);
+        xcontext = mock(XWikiContext.class);
+        when(xcontextProvider.get()).thenReturn(xcontext);
+        xwiki = mock(XWiki.class);
+        when(xcontext.getWiki()).thenReturn(xwiki);
+        when(xwiki.getVersion()).thenReturn("10.1");
+        colorThemeDocument = mock(XWikiDocument.class);
+        when(xwiki.getDocument(colorThemeDocumentReference, xcontext)).thenReturn(colorThemeDocument);
+        when(colorThemeDocument.getVersion()).thenReturn("1.1");
+    }
+
+    @Test
+    public void setAndGet() throws Exception
+    {
+        PersistentLESSResourcesCache cache = mocker.getComponentUnderTest();
+
+        assertNull(cache.get(lessResourceReference, skinReference, colorThemeReference));
+
+        cache.set(lessResourceReference, skinReference, colorThemeReference, "css");
+
+        assertEquals("css", cache.get(lessResourceReference, skinReference, colorThemeReference));
+    }
+
+    @Test
+    public void getWhenSourcesHaveChanged() throws Exception
+    {
+        PersistentLESSResourcesCache cache = mocker.getComponentUnderTest();
+        cache.set(lessResourceReference, skinReference, colorThemeReference, "css");
+
+        // The color theme has been modified
+        when(colorThemeDocument.getVersion()).thenReturn("2.1");
+        assertNull(cache.get(lessResourceReference, skinReference, colorThemeReference));
+
+        cache.set(lessResourceReference, skinReference, colorThemeReference, "css2");
+        assertEquals("css2", cache.get(lessResourceReference, skinReference, colorThemeReference));
+
+        // XWiki has been upgraded (the skins on the filesystem might have been modified)
+        when(xwiki.getVersion()).thenReturn("10.2");
+        assertNull(cache.get(lessResourceReference, skinReference, colorThemeReference));
+    }
+
+    @Test
+    public void removeAndClear() throws Exception
+    {
+        PersistentLESSResourcesCache cache = mocker.getComponentUnderTest();
+        cache.set(lessResourceReference, skinReference, colorThemeReference, "css");
+
+        cache.remove("key");
+        assertNull(cache.get(lessResourceReference, skinReference, colorThemeReference));
+
+        cache.set(lessResourceReference, skinReference, colorThemeReference, "css");
+
+        cache.clear();
+        assertNull(cache.get(lessResourceReference, skinReference, colorThemeReference));
+        assertFalse(permanentDirectory.getRoot().toPath().resolve("cache/lesscss").toFile().exists());
+    }
+}
@@ -19,9 +19,16 @@
  */
 package org.xwiki.lesscss.internal.compiler;
 
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import javax.inject.Provider;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.reflect.FieldUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -217,4 +224,45 @@ public void compileWhenError() throws Exception
                 eq(lessResourceReference), eq(expectedException));
     }
 
+    @Test
+    public void compileWhenInvalidatedAndAlreadyCompiling() throws Exception
+    {
+        // Mocks
+        when(cache.getPrevious(eq(lessResourceReference), eq(skinReference), eq(colorThemeReference)))
+            .thenReturn("previous output");
+        CountDownLatch compiling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(cachedLESSCompiler.compute(eq(lessResourceReference), eq(false), eq(false), eq(true), eq("skin")))
+            .thenAnswer(invocation -> {
+                compiling.countDown();
+                release.await();
+                return "compiled output";
+            });
+
+        // Test
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> first = executor.submit(
+                () -> mocker.getComponentUnderTest().compile(lessResourceReference, false, false, false));
+            compiling.await();
+
+            // Another thread is compiling the same resource: don't wait for it
+            assertEquals("previous output",
+                mocker.getComponentUnderTest().compile(lessResourceReference, false, false, false));
+
+            release.countDown();
+            assertEquals("compiled output", first.get());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Verify
+        verify(cachedLESSCompiler, times(1)).compute(eq(lessResourceReference), eq(false), eq(false), eq(true),
+            eq("skin"));
+        verify(cache).set(eq(lessResourceReference), eq(skinReference), eq(colorThemeReference),
+            eq("compiled output"));
+
+        // The lock of the cache key is forgotten once nobody uses it
+        assertTrue(((Map<?, ?>) FieldUtils.readField(mocker.getComponentUnderTest(), "locks", true)).isEmpty());
+    }
 }
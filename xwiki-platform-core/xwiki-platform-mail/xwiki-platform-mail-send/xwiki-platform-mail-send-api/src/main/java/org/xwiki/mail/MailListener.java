@@ -22,6 +22,7 @@
 import java.util.Map;
 
 import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
 
 /**
  * Allows listening to Mail sending results.
@@ -116,4 +117,15 @@
      * @since 6.4M3
      */
     MailStatusResult getMailStatusResult();
+
+    /**
+     * @return {@code true} if the prepared messages must be persisted in the mail content store before being sent, so
+     *         that they can be resent later on, {@code false} if they can be handed over to the sender thread in memory
+     * @since 10.1RC1
+     */
+    @Unstable
+    default boolean isContentPersistenceRequired()
+    {
+        return true;
+    }
 }
@@ -23,6 +23,7 @@
 import java.util.Properties;
 
 import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
 
 /**
  * Represents all XWiki configuration options for the Mail Sending feature.
@@ -101,4 +102,27 @@
      * @since 6.4RC1
      */
     long getSendWaitTime();
+
+    /**
+     * @return the number of threads sending mails in parallel, each of them using its own connection to the SMTP
+     *         server
+     * @since 10.1RC1
+     */
+    @Unstable
+    default int getSendThreadCount()
+    {
+        return 1;
+    }
+
+    /**
+     * @return the maximum number of connections opened at the same time to the same SMTP server (whatever the number
+     *         of sender threads), 0 or less for no limit. A sender thread keeps its connection open between two mails
+     *         and only gives it up when it has nothing left to send, so the other threads wait for it meanwhile.
+     * @since 10.1RC1
+     */
+    @Unstable
+    default int getMaxConnectionsPerHost()
+    {
+        return 0;
+    }
 }
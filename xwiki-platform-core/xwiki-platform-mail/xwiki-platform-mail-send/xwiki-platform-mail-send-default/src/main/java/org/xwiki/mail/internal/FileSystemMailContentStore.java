@@ -19,10 +19,13 @@
  */
 package org.xwiki.mail.internal;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 
@@ -79,7 +82,9 @@ public void save(String batchId, ExtendedMimeMessage message) throws MailStoreEx
                 uniqueMessageId = message.getUniqueMessageId();
                 messageFile = getMessageFile(batchId, uniqueMessageId);
             }
-            message.writeTo(new FileOutputStream(messageFile));
+            try (OutputStream os = new BufferedOutputStream(new FileOutputStream(messageFile))) {
+                message.writeTo(os);
+            }
         } catch (Exception e) {
             throw new MailStoreException(String.format(
                 "Failed to save message (id [%s], batch id [%s]) into file [%s]",
@@ -93,8 +98,10 @@ public ExtendedMimeMessage load(Session session, String batchId, String uniqueMe
         File messageFile = null;
         try {
             messageFile = getMessageFile(batchId, uniqueMessageId);
-            InputStream is = new FileInputStream(messageFile);
-            return new ExtendedMimeMessage(session, is);
+            // Note: the whole content is parsed when the message is created so the stream can be closed right away
+            try (InputStream is = new BufferedInputStream(new FileInputStream(messageFile))) {
+                return new ExtendedMimeMessage(session, is);
+            }
         } catch (Exception e) {
             throw new MailStoreException(String.format(
                 "Failed to load message (id [%s], batch id [%s]) from file [%s]",
@@ -122,4 +122,11 @@ public MailStatusResult getMailStatusResult()
     {
         return this.mailStatusResult;
     }
+
+    @Override
+    public boolean isContentPersistenceRequired()
+    {
+        // The statuses are lost with the listener so the messages cannot be resent anyway.
+        return false;
+    }
 }
@@ -103,6 +103,8 @@ public class DefaultMailSenderConfiguration implements MailSenderConfiguration
     private static final String PASSWORD_PROPERTY = "password";
     private static final String PROPERTIES_PROPERTY = "properties";
     private static final String SEND_WAIT_TIME = "sendWaitTime";
+    private static final String SEND_THREADS = "sendThreads";
+    private static final String MAX_CONNECTIONS_PER_HOST = "maxConnectionsPerHost";
 
     @Inject
     private Logger logger;
@@ -318,4 +320,16 @@ public long getSendWaitTime()
 
         return waitTime;
     }
+
+    @Override
+    public int getSendThreadCount()
+    {
+        return Math.max(1, this.xwikiPropertiesSource.getProperty(PREFIX + SEND_THREADS, 1));
+    }
+
+    @Override
+    public int getMaxConnectionsPerHost()
+    {
+        return this.xwikiPropertiesSource.getProperty(PREFIX + MAX_CONNECTIONS_PER_HOST, 0);
+    }
 }
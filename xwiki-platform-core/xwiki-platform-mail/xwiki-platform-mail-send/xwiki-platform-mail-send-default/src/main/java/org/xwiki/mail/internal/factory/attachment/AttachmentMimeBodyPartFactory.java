@@ -22,7 +22,9 @@
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.activation.DataHandler;
 import javax.activation.DataSource;
@@ -42,6 +44,7 @@
 import org.xwiki.mail.internal.factory.AbstractMimeBodyPartFactory;
 
 import com.xpn.xwiki.api.Attachment;
+import com.xpn.xwiki.api.Document;
 import com.xpn.xwiki.internal.file.TemporaryFile;
 
 /**
@@ -68,6 +71,13 @@ public class AttachmentMimeBodyPartFactory extends AbstractMimeBodyPartFactory<A
 
     private File temporaryDirectory;
 
+    /**
+     * The temporary files already holding the content of an attachment version, shared by all the messages (e.g. all
+     * the recipients of a group mailing) sending that attachment. The files are weakly referenced so that they are
+     * deleted as soon as the last message using them has been garbage collected.
+     */
+    private final Map<String, WeakReference<File>> sharedFiles = new ConcurrentHashMap<>();
+
     @Override
     public void initialize() throws InitializationException
     {
@@ -102,6 +112,15 @@ public MimeBodyPart create(Attachment attachment, Map<String, Object> parameters
 
     private DataSource createTemporaryAttachmentDataSource(Attachment attachment) throws MessagingException
     {
+        String key = getKey(attachment);
+        if (key != null) {
+            WeakReference<File> reference = this.sharedFiles.get(key);
+            File sharedFile = reference != null ? reference.get() : null;
+            if (sharedFile != null && sharedFile.exists()) {
+                return new FileDataSource(sharedFile);
+            }
+        }
+
         File temporaryAttachmentFile;
         FileOutputStream fos = null;
         try {
@@ -124,6 +143,33 @@ private DataSource createTemporaryAttachmentDataSource(Attachment attachment) th
             }
         }
 
+        if (key != null) {
+            // Forget the files of the attachments which are not used anymore
+            this.sharedFiles.values().removeIf(reference -> reference.get() == null);
+            this.sharedFiles.put(key, new WeakReference<>(temporaryAttachmentFile));
+        }
+
         return new FileDataSource(temporaryAttachmentFile);
     }
+
+    private String getKey(Attachment attachment)
+    {
+        // Attachments which are not bound to a document cannot be identified reliably
+        Document document = attachment.getDocument();
+        if (document == null) {
+            return null;
+        }
+
+        StringBuilder key = new StringBuilder(document.getDocumentReference().toString());
+        key.append('@');
+        key.append(attachment.getFilename());
+        key.append('/');
+        key.append(attachment.getVersion());
+        key.append('/');
+        key.append(attachment.getLongSize());
+        key.append('/');
+        key.append(attachment.getDate() != null ? attachment.getDate().getTime() : 0);
+
+        return key.toString();
+    }
 }
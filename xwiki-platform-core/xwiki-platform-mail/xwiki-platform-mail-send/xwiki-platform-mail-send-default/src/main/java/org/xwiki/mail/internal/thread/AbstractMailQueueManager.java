@@ -21,6 +21,7 @@
 
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Handles all operations on the Mail Queues.
@@ -37,6 +38,12 @@
      */
     private Queue<T> mailQueue = new ConcurrentLinkedQueue<>();
 
+    /**
+     * The number of mails on the queue, maintained separately since {@link ConcurrentLinkedQueue#size()} has to go
+     * through the whole queue.
+     */
+    private AtomicInteger size = new AtomicInteger();
+
     /**
      * @return the mail queue containing all pending mails to be sent
      */
@@ -49,6 +56,7 @@ private Queue<T> getMailQueue()
     public void addToQueue(T mailQueueItem)
     {
         getMailQueue().add(mailQueueItem);
+        this.size.incrementAndGet();
     }
 
     @Override
@@ -66,6 +74,16 @@ public T peekMessage()
     @Override
     public boolean removeMessageFromQueue(T mailQueueItem)
     {
-        return getMailQueue().remove(mailQueueItem);
+        boolean removed = getMailQueue().remove(mailQueueItem);
+        if (removed) {
+            this.size.decrementAndGet();
+        }
+        return removed;
+    }
+
+    @Override
+    public int size()
+    {
+        return this.size.get();
     }
 }
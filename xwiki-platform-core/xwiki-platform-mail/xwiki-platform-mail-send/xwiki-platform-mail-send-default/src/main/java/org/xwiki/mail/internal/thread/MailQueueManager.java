@@ -55,4 +55,10 @@
      * @return true if the removal was successful, false otherwise
      */
     boolean removeMessageFromQueue(T mailQueueItem);
+
+    /**
+     * @return the number of mails waiting on the queue
+     * @since 10.1RC1
+     */
+    int size();
 }
@@ -54,6 +54,12 @@
 @Singleton
 public class PrepareMailRunnable extends AbstractMailRunnable
 {
+    /**
+     * The maximum number of mails waiting on the send queue for a prepared message to be kept in memory instead of
+     * being persisted in the mail content store, so that a slow SMTP server cannot make the messages pile up in memory.
+     */
+    private static final int MAX_MEMORY_QUEUE_SIZE = 100;
+
     @Inject
     private MailQueueManager<PrepareMailQueueItem> prepareMailQueueManager;
 
@@ -168,10 +174,17 @@ private void prepareSingleMail(MimeMessage mimeMessage, PrepareMailQueueItem ite
         // Ensure mimeMessage to be extended
         ExtendedMimeMessage message = ExtendedMimeMessage.wrap(mimeMessage);
 
-        // Step 2: Persist the MimeMessage
+        // Step 2: Persist the MimeMessage, unless nobody needs to resend it and the sender thread keeps up, in which
+        // case the message is handed over in memory to avoid serializing it to disk only to parse it again.
         // Note: Message identifier is stabilized at this step by the serialization process
+        boolean inMemory = (listener == null || !listener.isContentPersistenceRequired())
+            && this.sendMailQueueManager.size() < MAX_MEMORY_QUEUE_SIZE;
         try {
-            this.mailContentStore.save(item.getBatchId(), message);
+            if (inMemory) {
+                message.ensureSaved();
+            } else {
+                this.mailContentStore.save(item.getBatchId(), message);
+            }
         } catch (Exception e) {
             // An error occurred, notify the user if a listener has been provided
             if (listener != null) {
@@ -187,9 +200,13 @@ private void prepareSingleMail(MimeMessage mimeMessage, PrepareMailQueueItem ite
 
         // Step 4: Put the MimeMessage id on the Mail Send Queue for sending
         // Extract the wiki id from the context
-        this.sendMailQueueManager.addToQueue(new SendMailQueueItem(message.getUniqueMessageId(),
-            item.getSession(), listener, item.getBatchId(), extractWikiId(item)));
-
+        if (inMemory) {
+            this.sendMailQueueManager.addToQueue(new SendMailQueueItem(message, item.getSession(), listener,
+                item.getBatchId(), extractWikiId(item)));
+        } else {
+            this.sendMailQueueManager.addToQueue(new SendMailQueueItem(message.getUniqueMessageId(),
+                item.getSession(), listener, item.getBatchId(), extractWikiId(item)));
+        }
     }
 
     private String extractWikiId(PrepareMailQueueItem item)
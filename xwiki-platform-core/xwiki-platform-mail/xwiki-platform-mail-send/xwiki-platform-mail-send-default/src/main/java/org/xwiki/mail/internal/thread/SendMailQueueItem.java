@@ -21,6 +21,7 @@
 
 import javax.mail.Session;
 
+import org.xwiki.mail.ExtendedMimeMessage;
 import org.xwiki.mail.MailListener;
 
 /**
@@ -35,6 +36,8 @@ public class SendMailQueueItem extends AbstractMailQueueItem
 
     private String wikiId;
 
+    private ExtendedMimeMessage message;
+
     /**
      * @param uniqueMessageId see {@link #getUniqueMessageId()}
      * @param session see {@link #getSession()}
@@ -50,6 +53,21 @@ public SendMailQueueItem(String uniqueMessageId, Session session, MailListener l
         this.wikiId = wikiId;
     }
 
+    /**
+     * @param message see {@link #getMessage()}
+     * @param session see {@link #getSession()}
+     * @param listener see {@link #getListener()}
+     * @param batchId see {@link #getBatchId()}
+     * @param wikiId see {@link #getWikiId()}
+     * @since 10.1RC1
+     */
+    public SendMailQueueItem(ExtendedMimeMessage message, Session session, MailListener listener, String batchId,
+        String wikiId)
+    {
+        this(message.getUniqueMessageId(), session, listener, batchId, wikiId);
+        this.message = message;
+    }
+
     /**
      * @return the unique id of the MimeMessage to send
      */
@@ -66,6 +84,16 @@ public String getWikiId()
         return this.wikiId;
     }
 
+    /**
+     * @return the message to send when it was kept in memory instead of being persisted in the mail content store,
+     *         {@code null} if it has to be loaded from the store
+     * @since 10.1RC1
+     */
+    public ExtendedMimeMessage getMessage()
+    {
+        return this.message;
+    }
+
     @Override
     public String toString()
     {
@@ -19,7 +19,12 @@
  */
 package org.xwiki.mail.internal.thread;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -41,7 +46,8 @@
 import com.xpn.xwiki.XWikiContext;
 
 /**
- * Runnable that regularly check for mails on a Queue, and for each mail tries to send it.
+ * Runnable that regularly check for mails on a Queue, and for each mail tries to send it. The mails can be sent by
+ * several threads in parallel, each of them with its own connection to the SMTP server.
  *
  * @version $Id$
  * @since 6.4
@@ -64,25 +70,74 @@ public class SendMailRunnable extends AbstractMailRunnable
     @Inject
     private Provider<XWikiContext> contextProvider;
 
-    private Transport currentTransport;
+    @Inject
+    private SendMailStatistics statistics;
+
+    /**
+     * Limit the number of connections opened at the same time to each SMTP server, indexed by host and port. A permit
+     * is held by a sender thread for as long as its connection is open.
+     */
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    /**
+     * The connection used by a sender thread.
+     */
+    private static class SenderConnection
+    {
+        private Transport transport;
 
-    private Session currentSession;
+        private Session session;
 
-    private int count;
+        /**
+         * The permits of the SMTP server the transport is connected to, when a permit is held.
+         */
+        private Semaphore permits;
+
+        private int count;
+    }
 
     @Override
     public void run()
     {
+        // Start the additional sender threads, the current thread being the first one
+        List<Thread> threads = new ArrayList<>();
+        int threadCount = this.configuration.getSendThreadCount();
+        for (int i = 2; i <= threadCount; i++) {
+            Thread thread = new Thread(this::runSender);
+            thread.setName("Mail Sender Thread " + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+
+        try {
+            runSender();
+        } finally {
+            // The current thread has been stopped, stop the other ones too
+            for (Thread thread : threads) {
+                thread.interrupt();
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    this.logger.debug("Interrupted while waiting for [{}] to stop", thread.getName(), e);
+                }
+            }
+        }
+    }
+
+    private void runSender()
+    {
+        SenderConnection connection = new SenderConnection();
         try {
             // Make sure we initialize an execution context.
             prepareContext();
 
-            runInternal();
+            runInternal(connection);
         } catch (ExecutionContextException e) {
             // Not much to do but log.
             logger.error("Failed to initialize the send mail thread's execution context", e);
         } finally {
-            closeTransport();
+            closeTransport(connection);
         }
     }
 
@@ -101,25 +156,25 @@ private void prepareContextForQueueItem(SendMailQueueItem mailItem)
         xcontext.setWikiId(mailItem.getWikiId());
     }
 
-    private void runInternal()
+    private void runInternal(SenderConnection connection)
     {
         do {
             try {
-                // Handle next message in the queue
-                if (this.sendMailQueueManager.hasMessage()) {
-                    // Important: only remove the mail item from the queue after the mail has been sent as
-                    // otherwise, MailSender.waitTillSent() may return before the mail is actually sent!
-                    SendMailQueueItem mailItem = this.sendMailQueueManager.peekMessage();
-                    try {
-                        sendMail(mailItem);
-                    } finally {
-                        this.sendMailQueueManager.removeMessageFromQueue(mailItem);
-                    }
+                // Handle next message in the queue. Several sender threads can get the same message: only the one
+                // which manages to remove it from the queue sends it. Note that waiting for a mail to be sent relies
+                // on the listener which is only notified once the mail has been sent.
+                SendMailQueueItem mailItem = this.sendMailQueueManager.peekMessage();
+                if (mailItem != null && this.sendMailQueueManager.removeMessageFromQueue(mailItem)) {
+                    sendMail(mailItem, connection);
                     // Email throttling: Wait before processing the next mail queue item
                     // Note: it's important that we wait after the previous item has been removed from the queue in
                     // order to let users know as soon as possible that their mail has been sent (otherwise when sending
                     // a synchronous mail, the user would have to wait the send wait time!).
                     waitSendWaitTime();
+                } else if (mailItem == null && connection.permits != null) {
+                    // Don't keep a connection (and its permit) while there's nothing to send so that the other
+                    // sender threads can connect to the same SMTP server
+                    closeTransport(connection);
                 }
                 // Note: a short pause to catch thread interruptions and to be kind on CPU.
                 Thread.sleep(50L);
@@ -138,70 +193,131 @@ private void runInternal()
      * Send the mail.
      *
      * @param item the queue item containing all the data for sending the mail
+     * @param connection the connection of the current sender thread
      */
-    protected void sendMail(SendMailQueueItem item)
+    private void sendMail(SendMailQueueItem item, SenderConnection connection)
     {
         prepareContextForQueueItem(item);
 
         MailListener listener = item.getListener();
 
-        ExtendedMimeMessage message;
-        try {
-            // Step 1: Load the message from the filesystem store
-            message = this.mailContentStore.load(item.getSession(), item.getBatchId(), item.getUniqueMessageId());
-        } catch (Exception e) {
-            if (listener != null) {
-                listener.onSendMessageFatalError(item.getUniqueMessageId(), e, Collections.<String, Object>emptyMap());
+        // Step 1: Load the message from the filesystem store, unless it was kept in memory by the prepare thread
+        ExtendedMimeMessage message = item.getMessage();
+        if (message == null) {
+            try {
+                message = this.mailContentStore.load(item.getSession(), item.getBatchId(), item.getUniqueMessageId());
+            } catch (Exception e) {
+                if (listener != null) {
+                    listener.onSendMessageFatalError(item.getUniqueMessageId(), e,
+                        Collections.<String, Object>emptyMap());
+                }
+                return;
             }
-            return;
         }
 
+        this.statistics.onSendBegin();
+        long start = System.currentTimeMillis();
+        boolean success = false;
         try {
-            // Step 2: If the current Session in use is different from the one passed then close
-            // the current Transport, get a new one and reconnect.
-            // Also do that every 100 mails sent.
-            // TODO: explain why!
-            if (item.getSession() != this.currentSession || (this.count % 100) == 0) {
-                closeTransport();
-                this.currentSession = item.getSession();
-                this.currentTransport = this.currentSession.getTransport("smtp");
-                this.currentTransport.connect();
-            } else if (!this.currentTransport.isConnected()) {
-                this.currentTransport.connect();
+            sendMessage(message, item.getSession(), connection);
+            success = true;
+        } catch (Exception e) {
+            // An error occurred, notify the user if a listener has been provided.
+            this.statistics.onSendEnd(System.currentTimeMillis() - start, false);
+            if (listener != null) {
+                listener.onSendMessageError(message, e, Collections.<String, Object>emptyMap());
             }
+            if (e instanceof InterruptedException) {
+                // Let the main loop know that the thread has been stopped
+                Thread.currentThread().interrupt();
+            }
+        }
 
-            // Step 3: Send the mail
-            // Unlike the static send method, the sendMessage method does not call the saveChanges method on the
-            // message; this prevent the MessageID header to be changed.
-            this.currentTransport.sendMessage(message, message.getAllRecipients());
-            this.count++;
+        if (success) {
+            this.statistics.onSendEnd(System.currentTimeMillis() - start, true);
 
             // Step 4: Notify the user of the success if a listener has been provided
             if (listener != null) {
                 listener.onSendMessageSuccess(message, Collections.<String, Object>emptyMap());
             }
-        } catch (Exception e) {
-            // An error occurred, notify the user if a listener has been provided.
-            if (listener != null) {
-                listener.onSendMessageError(message, e, Collections.<String, Object>emptyMap());
-            }
         }
     }
 
+    private void sendMessage(ExtendedMimeMessage message, Session session, SenderConnection connection)
+        throws MessagingException, InterruptedException
+    {
+        // Step 2: If the current Session in use is different from the one passed then close
+        // the current Transport, get a new one and reconnect.
+        // Also do that every 100 mails sent.
+        // TODO: explain why!
+        if (session != connection.session || (connection.count % 100) == 0) {
+            closeTransport(connection);
+            openTransport(session, connection);
+        } else if (!connection.transport.isConnected()) {
+            connection.transport.connect();
+        }
+
+        // Step 3: Send the mail
+        // Unlike the static send method, the sendMessage method does not call the saveChanges method on the
+        // message; this prevent the MessageID header to be changed.
+        connection.transport.sendMessage(message, message.getAllRecipients());
+        connection.count++;
+    }
+
+    private void openTransport(Session session, SenderConnection connection)
+        throws MessagingException, InterruptedException
+    {
+        // Wait until the SMTP server accepts one more connection from this instance. The permit is released when the
+        // transport is closed.
+        Semaphore permits = getHostPermits(session);
+        if (permits != null) {
+            permits.acquire();
+            connection.permits = permits;
+        }
+
+        try {
+            connection.session = session;
+            connection.transport = session.getTransport("smtp");
+            connection.transport.connect();
+        } catch (MessagingException e) {
+            closeTransport(connection);
+            throw e;
+        }
+    }
+
+    private Semaphore getHostPermits(Session session)
+    {
+        int maxConnections = this.configuration.getMaxConnectionsPerHost();
+        if (maxConnections <= 0) {
+            return null;
+        }
+
+        String host = session.getProperty("mail.smtp.host") + ':' + session.getProperty("mail.smtp.port");
+
+        return this.hostPermits.computeIfAbsent(host, key -> new Semaphore(maxConnections, true));
+    }
+
     private void waitSendWaitTime() throws InterruptedException
     {
         long sendWaitTime = this.configuration.getSendWaitTime();
         Thread.sleep(sendWaitTime);
     }
 
-    private void closeTransport()
+    private void closeTransport(SenderConnection connection)
     {
-        if (this.currentTransport != null) {
-            try {
-                this.currentTransport.close();
-            } catch (MessagingException e) {
-                this.logger.warn("Failed to close JavaMail Transport connection. Reason [{}]",
-                    ExceptionUtils.getRootCauseMessage(e));
+        try {
+            if (connection.transport != null) {
+                connection.transport.close();
+            }
+        } catch (MessagingException e) {
+            this.logger.warn("Failed to close JavaMail Transport connection. Reason [{}]",
+                ExceptionUtils.getRootCauseMessage(e));
+        } finally {
+            connection.transport = null;
+            connection.session = null;
+            if (connection.permits != null) {
+                connection.permits.release();
+                connection.permits = null;
             }
         }
     }
@@ -0,0 +1,164 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.mail.internal.thread;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+
+/**
+ * Keep track of the throughput and latency of the mail sender threads, since the start of the instance.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Component(roles = SendMailStatistics.class)
+@Singleton
+public class SendMailStatistics
+{
+    /**
+     * The number of seconds over which the throughput is computed.
+     */
+    private static final int WINDOW = 60;
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    private final AtomicLong sentCount = new AtomicLong();
+
+    private final AtomicLong errorCount = new AtomicLong();
+
+    private final AtomicLong sendTime = new AtomicLong();
+
+    /**
+     * The number of mails sent during each second of the window, indexed by second modulo the window size.
+     */
+    private final long[] secondCounts = new long[WINDOW];
+
+    private final long[] seconds = new long[WINDOW];
+
+    /**
+     * Called when a sender thread starts sending a mail.
+     */
+    public void onSendBegin()
+    {
+        this.activeCount.incrementAndGet();
+    }
+
+    /**
+     * Called when a sender thread is done with a mail.
+     *
+     * @param time the time spent sending the mail (including the connection to the SMTP server), in milliseconds
+     * @param success {@code true} if the mail has been sent, {@code false} if it failed
+     */
+    public void onSendEnd(long time, boolean success)
+    {
+        this.activeCount.decrementAndGet();
+
+        if (success) {
+            this.sentCount.incrementAndGet();
+            this.sendTime.addAndGet(time);
+
+            long second = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+            int index = (int) (second % WINDOW);
+            synchronized (this.secondCounts) {
+                if (this.seconds[index] != second) {
+                    this.seconds[index] = second;
+                    this.secondCounts[index] = 0;
+                }
+                this.secondCounts[index]++;
+            }
+        } else {
+            this.errorCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of mails being sent at the moment
+     */
+    public int getActiveCount()
+    {
+        return this.activeCount.get();
+    }
+
+    /**
+     * @return the number of mails sent successfully
+     */
+    public long getSentCount()
+    {
+        return this.sentCount.get();
+    }
+
+    /**
+     * @return the number of mails which failed to be sent
+     */
+    public long getErrorCount()
+    {
+        return this.errorCount.get();
+    }
+
+    /**
+     * @return the average time spent sending a mail, in milliseconds
+     */
+    public long getAverageSendTime()
+    {
+        long count = this.sentCount.get();
+
+        return count > 0 ? this.sendTime.get() / count : 0;
+    }
+
+    /**
+     * @return the number of mails sent during the last minute
+     */
+    public long getThroughput()
+    {
+        long now = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        long count = 0;
+        synchronized (this.secondCounts) {
+            for (int i = 0; i < WINDOW; i++) {
+                if (now - this.seconds[i] < WINDOW) {
+                    count += this.secondCounts[i];
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return all the statistics, indexed by name
+     */
+    public Map<String, Object> toMap()
+    {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("activeCount", getActiveCount());
+        map.put("sentCount", getSentCount());
+        map.put("errorCount", getErrorCount());
+        map.put("averageSendTime", getAverageSendTime());
+        map.put("throughput", getThroughput());
+
+        return map;
+    }
+}
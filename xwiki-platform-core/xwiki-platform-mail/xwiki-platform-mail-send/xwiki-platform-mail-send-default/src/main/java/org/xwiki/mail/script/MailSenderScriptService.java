@@ -24,6 +24,7 @@
 import java.util.Iterator;
 import java.util.Map;
 
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import javax.mail.Message;
@@ -38,6 +39,8 @@
 import org.xwiki.mail.MailSenderConfiguration;
 import org.xwiki.mail.MimeMessageFactory;
 import org.xwiki.mail.internal.script.MimeMessageFactoryProvider;
+import org.xwiki.mail.internal.thread.SendMailStatistics;
+import org.xwiki.stability.Unstable;
 
 /**
  * Expose Mail Sending API to scripts.
@@ -64,6 +67,9 @@ public class MailSenderScriptService extends AbstractMailScriptService
      */
     static final String ERROR_KEY = "scriptservice.mailsender.error";
 
+    @Inject
+    private SendMailStatistics statistics;
+
     /**
      * Creates a pre-filled Mime Message by running the Component implementation of {@link
      * org.xwiki.mail.MimeMessageFactory} corresponding to the passed hint.
@@ -282,6 +288,19 @@ public MailSenderConfiguration getConfiguration()
         return this.senderConfiguration;
     }
 
+    /**
+     * @return the statistics of the mail sender threads since the start of the instance: the number of mails being
+     *         sent ({@code activeCount}), sent successfully ({@code sentCount}) or not ({@code errorCount}), the
+     *         average time spent sending a mail in milliseconds ({@code averageSendTime}) and the number of mails sent
+     *         during the last minute ({@code throughput})
+     * @since 10.1RC1
+     */
+    @Unstable
+    public Map<String, Object> getSendStatistics()
+    {
+        return this.statistics.toMap();
+    }
+
     @Override
     protected String getErrorKey()
     {
@@ -61,6 +61,7 @@
 import org.xwiki.mail.internal.thread.PrepareMailRunnable;
 import org.xwiki.mail.internal.thread.SendMailQueueManager;
 import org.xwiki.mail.internal.thread.SendMailRunnable;
+import org.xwiki.mail.internal.thread.SendMailStatistics;
 import org.xwiki.mail.internal.thread.context.Copier;
 import org.xwiki.model.ModelContext;
 import org.xwiki.model.reference.WikiReference;
@@ -96,6 +97,7 @@
     PrepareMailRunnable.class,
     PrepareMailQueueManager.class,
     SendMailQueueManager.class,
+    SendMailStatistics.class,
     FileSystemMailContentStore.class
 })
 // @formatter:on
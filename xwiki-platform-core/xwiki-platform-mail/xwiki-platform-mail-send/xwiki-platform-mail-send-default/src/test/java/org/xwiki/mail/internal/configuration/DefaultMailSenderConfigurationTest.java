@@ -222,4 +222,26 @@ public void getPortWhenMailConfigDoesntExist() throws Exception
 
         assertEquals(25, this.mocker.getComponentUnderTest().getPort());
     }
+
+    @Test
+    public void getSendThreadCount() throws Exception
+    {
+        ConfigurationSource xwikiPropertiesSource =
+            this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(xwikiPropertiesSource.getProperty("mail.sender.sendThreads", 1)).thenReturn(4, 0);
+
+        assertEquals(4, this.mocker.getComponentUnderTest().getSendThreadCount());
+        // There's always at least one sender thread
+        assertEquals(1, this.mocker.getComponentUnderTest().getSendThreadCount());
+    }
+
+    @Test
+    public void getMaxConnectionsPerHost() throws Exception
+    {
+        ConfigurationSource xwikiPropertiesSource =
+            this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(xwikiPropertiesSource.getProperty("mail.sender.maxConnectionsPerHost", 0)).thenReturn(2);
+
+        assertEquals(2, this.mocker.getComponentUnderTest().getMaxConnectionsPerHost());
+    }
 }
\ No newline at end of file
@@ -21,8 +21,10 @@
 
 import java.io.File;
 import java.util.Collections;
+import java.util.Date;
 import java.util.Map;
 
+import javax.activation.FileDataSource;
 import javax.mail.MessagingException;
 import javax.mail.internet.MimeBodyPart;
 
@@ -30,15 +32,20 @@
 import org.junit.Rule;
 import org.junit.Test;
 import org.xwiki.environment.Environment;
+import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import com.xpn.xwiki.api.Attachment;
+import com.xpn.xwiki.api.Document;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -109,6 +116,47 @@ public void createAttachmentBodyPartWithHeader() throws Exception
         assertEquals("Lorem Ipsum", IOUtils.toString(part.getDataHandler().getInputStream()));
     }
 
+    @Test
+    public void createAttachmentBodyPartsSharingTheSameFile() throws Exception
+    {
+        Environment environment = this.mocker.getInstance(Environment.class);
+        when(environment.getTemporaryDirectory()).thenReturn(new File(TEMPORARY_DIRECTORY));
+
+        Document document = mock(Document.class);
+        when(document.getDocumentReference()).thenReturn(new DocumentReference("wiki", "Space", "Page"));
+
+        Attachment attachment = mock(Attachment.class);
+        when(attachment.getDocument()).thenReturn(document);
+        when(attachment.getContent()).thenReturn("Lorem Ipsum".getBytes());
+        when(attachment.getFilename()).thenReturn("image.png");
+        when(attachment.getMimeType()).thenReturn("image/png");
+        when(attachment.getVersion()).thenReturn("1.1");
+        when(attachment.getLongSize()).thenReturn(11L);
+        when(attachment.getDate()).thenReturn(new Date(42));
+
+        MimeBodyPart part1 = this.mocker.getComponentUnderTest().create(attachment,
+            Collections.<String, Object>emptyMap());
+        MimeBodyPart part2 = this.mocker.getComponentUnderTest().create(attachment,
+            Collections.<String, Object>emptyMap());
+
+        assertEquals("Lorem Ipsum", IOUtils.toString(part1.getDataHandler().getInputStream()));
+        assertEquals("Lorem Ipsum", IOUtils.toString(part2.getDataHandler().getInputStream()));
+
+        // The content of the attachment has been written only once
+        verify(attachment, times(1)).getContent();
+        assertEquals(((FileDataSource) part1.getDataHandler().getDataSource()).getFile(),
+            ((FileDataSource) part2.getDataHandler().getDataSource()).getFile());
+
+        // A new version of the attachment gets its own file
+        when(attachment.getVersion()).thenReturn("1.2");
+        MimeBodyPart part3 = this.mocker.getComponentUnderTest().create(attachment,
+            Collections.<String, Object>emptyMap());
+
+        verify(attachment, times(2)).getContent();
+        assertNotEquals(((FileDataSource) part1.getDataHandler().getDataSource()).getFile(),
+            ((FileDataSource) part3.getDataHandler().getDataSource()).getFile());
+    }
+
     @Test
     public void createAttachmentBodyPartWhenWriteError() throws Exception
     {
@@ -21,8 +21,10 @@
 
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.inject.Provider;
 import javax.mail.Session;
@@ -54,10 +56,13 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -119,6 +124,12 @@ public void prepareMailWhenContentStoreFails() throws Exception
             this.mocker.getInstance(new DefaultParameterizedType(null, MailQueueManager.class,
                 PrepareMailQueueItem.class));
 
+        // Make sure the messages are persisted even though the memory listener doesn't require it
+        MailQueueManager<SendMailQueueItem> sendMailQueueManager =
+            this.mocker.getInstance(new DefaultParameterizedType(null, MailQueueManager.class,
+                SendMailQueueItem.class));
+        when(sendMailQueueManager.size()).thenReturn(Integer.MAX_VALUE);
+
         // Make the content store save fail
         MailContentStore contentStore = this.mocker.getInstance(MailContentStore.class, "filesystem");
         doThrow(new MailStoreException("error")).when(contentStore).save(any(String.class), any(ExtendedMimeMessage.class));
@@ -287,4 +298,72 @@ public Object answer(InvocationOnMock invocationOnMock) throws Throwable
 
         assertEquals("Failure during preparation phase of thread [" + batchId1 + "]", logRule.getMessage(0));
     }
+
+    @Test
+    public void prepareMailInMemoryWhenContentPersistenceIsNotRequired() throws Exception
+    {
+        Properties properties = new Properties();
+        Session session = Session.getDefaultInstance(properties);
+
+        ExtendedMimeMessage message = new ExtendedMimeMessage();
+        message.setText("Content");
+
+        String batchId = UUID.randomUUID().toString();
+
+        ExecutionContext context = new ExecutionContext();
+        XWikiContext xContext = new XWikiContext();
+        xContext.setWikiId("wiki");
+        context.setProperty(XWikiContext.EXECUTIONCONTEXT_KEY, xContext);
+
+        MemoryMailListener listener = this.mocker.getInstance(MailListener.class, "memory");
+        PrepareMailQueueItem item =
+            new PrepareMailQueueItem(Arrays.asList(message), session, listener, batchId, context);
+
+        MailQueueManager prepareMailQueueManager =
+            this.mocker.getInstance(new DefaultParameterizedType(null, MailQueueManager.class,
+                PrepareMailQueueItem.class));
+
+        MailQueueManager sendMailQueueManager =
+            this.mocker.getInstance(new DefaultParameterizedType(null, MailQueueManager.class,
+                SendMailQueueItem.class));
+
+        List<SendMailQueueItem> sendItems = new CopyOnWriteArrayList<>();
+        doAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocationOnMock) throws Throwable
+            {
+                SendMailQueueItem sendItem = (SendMailQueueItem) invocationOnMock.getArguments()[0];
+                sendItems.add(sendItem);
+                ((UpdateableMailStatusResult) sendItem.getListener().getMailStatusResult()).incrementCurrentSize();
+                return null;
+            }
+        }).when(sendMailQueueManager).addToQueue(any(SendMailQueueItem.class));
+
+        prepareMailQueueManager.addToQueue(item);
+
+        MailRunnable runnable = this.mocker.getComponentUnderTest();
+        Thread thread = new Thread(runnable);
+        thread.start();
+
+        // Wait for the mail to have been processed.
+        try {
+            listener.getMailStatusResult().waitTillProcessed(10000L);
+        } finally {
+            runnable.stopProcessing();
+            thread.interrupt();
+            thread.join();
+        }
+
+        assertTrue(listener.getMailStatusResult().isProcessed());
+        assertNotNull(listener.getMailStatusResult().getByState(MailState.PREPARE_SUCCESS).next());
+
+        // The message is handed over to the send queue in memory and never serialized in the content store.
+        assertEquals(1, sendItems.size());
+        ExtendedMimeMessage sentMessage = sendItems.get(0).getMessage();
+        assertSame(message, sentMessage);
+        assertEquals(sentMessage.getUniqueMessageId(), sendItems.get(0).getUniqueMessageId());
+        MailContentStore contentStore = this.mocker.getInstance(MailContentStore.class, "filesystem");
+        verify(contentStore, never()).save(any(String.class), any(ExtendedMimeMessage.class));
+    }
 }
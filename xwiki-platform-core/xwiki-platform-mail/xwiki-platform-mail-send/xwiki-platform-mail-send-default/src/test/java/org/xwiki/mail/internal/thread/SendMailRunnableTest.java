@@ -23,9 +23,15 @@
 import java.util.Iterator;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Provider;
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
 import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.URLName;
 import javax.mail.internet.MimeMessage;
 
 import org.junit.Before;
@@ -36,6 +42,7 @@
 import org.xwiki.mail.ExtendedMimeMessage;
 import org.xwiki.mail.MailContentStore;
 import org.xwiki.mail.MailListener;
+import org.xwiki.mail.MailSenderConfiguration;
 import org.xwiki.mail.MailState;
 import org.xwiki.mail.MailStatus;
 import org.xwiki.mail.MailStoreException;
@@ -47,7 +54,12 @@
 import com.xpn.xwiki.XWikiContext;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -66,6 +78,48 @@
     public MockitoComponentMockingRule<SendMailRunnable> mocker =
         new MockitoComponentMockingRule<>(SendMailRunnable.class);
 
+    /**
+     * A SMTP transport which keeps track of the number of connections opened at the same time.
+     */
+    public static class CountingTransport extends Transport
+    {
+        private static final AtomicInteger OPEN = new AtomicInteger();
+
+        private static final AtomicInteger MAX_OPEN = new AtomicInteger();
+
+        public CountingTransport(Session session, URLName urlname)
+        {
+            super(session, urlname);
+        }
+
+        @Override
+        protected boolean protocolConnect(String host, int port, String user, String password)
+        {
+            MAX_OPEN.accumulateAndGet(OPEN.incrementAndGet(), Math::max);
+            return true;
+        }
+
+        @Override
+        public void sendMessage(Message message, Address[] addresses) throws MessagingException
+        {
+            try {
+                Thread.sleep(20L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MessagingException("Interrupted", e);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws MessagingException
+        {
+            if (isConnected()) {
+                OPEN.decrementAndGet();
+            }
+            super.close();
+        }
+    }
+
     @Before
     public void setUp() throws Exception
     {
@@ -140,6 +194,63 @@ public void sendMailWhenSendingFails() throws Exception
         assertEquals(2, errorCount);
     }
 
+    @Test
+    public void sendMailWithSeveralThreads() throws Exception
+    {
+        MailSenderConfiguration configuration = this.mocker.getInstance(MailSenderConfiguration.class);
+        when(configuration.getSendThreadCount()).thenReturn(3);
+        when(configuration.getMaxConnectionsPerHost()).thenReturn(2);
+
+        // Create a Session with an invalid host so that it generates an error
+        Properties properties = new Properties();
+        properties.setProperty("mail.smtp.host", "xwiki-unknown");
+        Session session = Session.getDefaultInstance(properties);
+
+        MemoryMailListener listener = this.mocker.getInstance(MailListener.class, "memory");
+        String batchId = UUID.randomUUID().toString();
+        listener.onPrepareBegin(batchId, Collections.<String, Object>emptyMap());
+        ((UpdateableMailStatusResult) listener.getMailStatusResult()).setTotalSize(6);
+
+        MailQueueManager mailQueueManager = this.mocker.getInstance(
+            new DefaultParameterizedType(null, MailQueueManager.class, SendMailQueueItem.class));
+        MailContentStore contentStore = this.mocker.getInstance(MailContentStore.class, "filesystem");
+        for (int i = 0; i < 6; i++) {
+            MimeMessage msg = new MimeMessage(session);
+            msg.setText("Content" + i);
+            ExtendedMimeMessage message = new ExtendedMimeMessage(msg);
+            String id = message.getUniqueMessageId();
+            when(contentStore.load(session, batchId, id)).thenReturn(message);
+            mailQueueManager.addToQueue(new SendMailQueueItem(id, session, listener, batchId, "xwiki"));
+        }
+
+        MailRunnable runnable = this.mocker.getComponentUnderTest();
+        Thread thread = new Thread(runnable);
+        thread.start();
+
+        // Wait for the mails to have been processed.
+        try {
+            listener.getMailStatusResult().waitTillProcessed(10000L);
+        } finally {
+            runnable.stopProcessing();
+            thread.interrupt();
+            thread.join();
+        }
+
+        // Each mail has been sent exactly once, even though several threads are consuming the queue.
+        assertEquals(6, listener.getMailStatusResult().getProcessedMailCount());
+        Iterator<MailStatus> statuses = listener.getMailStatusResult().getByState(MailState.SEND_ERROR);
+        int errorCount = 0;
+        while (statuses.hasNext()) {
+            statuses.next();
+            errorCount++;
+        }
+        assertEquals(6, errorCount);
+        assertFalse(mailQueueManager.hasMessage());
+
+        SendMailStatistics statistics = this.mocker.getInstance(SendMailStatistics.class);
+        verify(statistics, times(6)).onSendEnd(anyLong(), eq(false));
+    }
+
     @Test
     public void sendMailWhenMailRetrievalFails() throws Exception
     {
@@ -206,4 +317,57 @@ public void sendMailWhenMailRetrievalFails() throws Exception
         }
         assertEquals(2, errorCount);
     }
+
+    @Test
+    public void sendMailWithMaxConnectionsPerHost() throws Exception
+    {
+        MailSenderConfiguration configuration = this.mocker.getInstance(MailSenderConfiguration.class);
+        when(configuration.getSendThreadCount()).thenReturn(3);
+        when(configuration.getMaxConnectionsPerHost()).thenReturn(1);
+
+        Properties properties = new Properties();
+        properties.setProperty("mail.smtp.host", "xwiki-counting");
+        Session session = Session.getInstance(properties);
+        session.setProvider(new javax.mail.Provider(javax.mail.Provider.Type.TRANSPORT, "smtp",
+            CountingTransport.class.getName(), "XWiki", "1.0"));
+
+        MemoryMailListener listener = this.mocker.getInstance(MailListener.class, "memory");
+        String batchId = UUID.randomUUID().toString();
+        listener.onPrepareBegin(batchId, Collections.<String, Object>emptyMap());
+        ((UpdateableMailStatusResult) listener.getMailStatusResult()).setTotalSize(6);
+
+        MailQueueManager mailQueueManager = this.mocker.getInstance(
+            new DefaultParameterizedType(null, MailQueueManager.class, SendMailQueueItem.class));
+        MailContentStore contentStore = this.mocker.getInstance(MailContentStore.class, "filesystem");
+        for (int i = 0; i < 6; i++) {
+            MimeMessage msg = new MimeMessage(session);
+            msg.setText("Content" + i);
+            ExtendedMimeMessage message = new ExtendedMimeMessage(msg);
+            String id = message.getUniqueMessageId();
+            when(contentStore.load(session, batchId, id)).thenReturn(message);
+            mailQueueManager.addToQueue(new SendMailQueueItem(id, session, listener, batchId, "xwiki"));
+        }
+
+        MailRunnable runnable = this.mocker.getComponentUnderTest();
+        Thread thread = new Thread(runnable);
+        thread.start();
+
+        // Wait for the mails to have been processed.
+        try {
+            listener.getMailStatusResult().waitTillProcessed(10000L);
+        } finally {
+            runnable.stopProcessing();
+            thread.interrupt();
+            thread.join();
+        }
+
+        // All the mails have been sent, the connection being given up by a thread when it has nothing left to send
+        assertTrue(listener.getMailStatusResult().isProcessed());
+        assertEquals(6, listener.getMailStatusResult().getProcessedMailCount());
+        assertFalse(listener.getMailStatusResult().getByState(MailState.SEND_ERROR).hasNext());
+
+        // A single connection has been opened at a time, and none is left open
+        assertEquals(1, CountingTransport.MAX_OPEN.get());
+        assertEquals(0, CountingTransport.OPEN.get());
+    }
 }
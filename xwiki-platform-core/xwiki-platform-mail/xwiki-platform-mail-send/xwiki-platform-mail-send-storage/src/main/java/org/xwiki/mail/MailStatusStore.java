@@ -19,10 +19,14 @@
  */
 package org.xwiki.mail;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
 import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
 
 /**
  * Save, load and search mail results.
@@ -68,6 +72,49 @@
     List<MailStatus> load(Map<String, Object> filterMap, int offset, int count, String sortField, boolean sortAscending)
         throws MailStoreException;
 
+    /**
+     * Loads the message statuses matching the passed filters which come after the passed status, ordered by date (and
+     * by message id for statuses having the same date). Contrary to {@link #load(Map, int, int, String, boolean)} the
+     * cost of loading a page doesn't grow with the number of statuses before it.
+     * <p>
+     * The default implementation loads all the matching statuses with {@link #load(Map, int, int, String, boolean)}
+     * and filters them in memory so stores should override it with a more efficient implementation.
+     *
+     * @param filterMap the map of Mail Status parameters to match (e.g. "state", "wiki", "batchId", etc)
+     * @param after the last status of the previous page or {@code null} to load the first page
+     * @param count the number of rows to return. If 0 then all rows are returned
+     * @param sortAscending when true, the oldest statuses are returned first, else the most recent ones
+     * @return the loaded {@link org.xwiki.mail.MailStatus} instances
+     * @throws MailStoreException when an error occurs while loading the data
+     * @since 10.1RC1
+     */
+    @Unstable
+    default List<MailStatus> load(Map<String, Object> filterMap, MailStatus after, int count, boolean sortAscending)
+        throws MailStoreException
+    {
+        Comparator<MailStatus> comparator =
+            Comparator.comparing(MailStatus::getDate, Comparator.nullsFirst(Comparator.<Date>naturalOrder()))
+                .thenComparing(MailStatus::getMessageId, Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+        if (!sortAscending) {
+            comparator = comparator.reversed();
+        }
+
+        List<MailStatus> statuses = new ArrayList<>(load(filterMap, 0, 0, null, sortAscending));
+        statuses.sort(comparator);
+
+        List<MailStatus> page = new ArrayList<>();
+        for (MailStatus status : statuses) {
+            if (count > 0 && page.size() >= count) {
+                break;
+            }
+            if (after == null || comparator.compare(status, after) > 0) {
+                page.add(status);
+            }
+        }
+
+        return page;
+    }
+
     /**
      * Count the number of message statuses matching the passed filters.
      *
@@ -20,6 +20,7 @@
 package org.xwiki.mail;
 
 import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
 
 /**
  * Configuration for the storage part of the Mail Sender.
@@ -35,4 +36,26 @@
      *         they should be kept (for tracability purpose for example)
      */
     boolean discardSuccessStatuses();
+
+    /**
+     * @return the number of mail statuses to keep in memory before writing them to the database in a single
+     *         transaction, 1 or less meaning that each status is written as soon as it changes
+     * @since 10.1RC1
+     */
+    @Unstable
+    default int getStatusFlushSize()
+    {
+        return 1;
+    }
+
+    /**
+     * @return the maximum time (in milliseconds) a mail status is kept in memory before being written to the
+     *         database, when statuses are written by batches (see {@link #getStatusFlushSize()})
+     * @since 10.1RC1
+     */
+    @Unstable
+    default long getStatusFlushInterval()
+    {
+        return 0;
+    }
 }
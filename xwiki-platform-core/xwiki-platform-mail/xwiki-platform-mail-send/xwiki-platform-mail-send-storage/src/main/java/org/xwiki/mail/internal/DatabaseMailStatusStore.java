@@ -19,23 +19,35 @@
  */
 package org.xwiki.mail.internal;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.hibernate.HibernateException;
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextManager;
 import org.xwiki.mail.MailStatus;
 import org.xwiki.mail.MailStatusStore;
+import org.xwiki.mail.MailStorageConfiguration;
 import org.xwiki.mail.MailStoreException;
 
 import com.xpn.xwiki.XWikiContext;
@@ -45,6 +57,11 @@
 
 /**
  * Stores mail results in the database using Hibernate.
+ * <p>
+ * Unless configured otherwise (see {@link MailStorageConfiguration#getStatusFlushSize()}), the saved and deleted
+ * statuses are kept in memory and written to the database by batches, in a single transaction, once enough of them are
+ * waiting or after some time. The statuses waiting to be written are taken into account by
+ * {@link #load(String)} and are written before any other query so that they are never missed.
  *
  * @version $Id$
  * @since 6.4M3
@@ -52,10 +69,20 @@
 @Component
 @Named("database")
 @Singleton
-public class DatabaseMailStatusStore implements MailStatusStore
+public class DatabaseMailStatusStore implements MailStatusStore, Disposable
 {
     private static final String ID_PARAMETER_NAME = "id";
 
+    private static final String KEYSET_DATE_PARAMETER_NAME = "keysetDate";
+
+    private static final String KEYSET_ID_PARAMETER_NAME = "keysetId";
+
+    /**
+     * The maximum number of message ids passed to a single delete query (some databases limit the size of the IN
+     * clause).
+     */
+    private static final int DELETE_CHUNK_SIZE = 500;
+
     @Inject
     private Logger logger;
 
@@ -66,8 +93,52 @@ public class DatabaseMailStatusStore implements MailStatusStore
     @Named("hibernate")
     private XWikiStoreInterface hibernateStore;
 
+    @Inject
+    private MailStorageConfiguration configuration;
+
+    @Inject
+    private Execution execution;
+
+    @Inject
+    private ExecutionContextManager executionContextManager;
+
+    /**
+     * The statuses waiting to be written to the database, indexed by message id and in the order they were modified. A
+     * {@code null} value means that the status of the message has to be deleted.
+     */
+    private final Map<String, MailStatus> pendingStatuses = new LinkedHashMap<>();
+
+    /**
+     * Makes sure the batches are written in the order they were taken from {@link #pendingStatuses}.
+     */
+    private final Object flushLock = new Object();
+
+    private ScheduledExecutorService flushExecutor;
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        synchronized (this) {
+            if (this.flushExecutor != null) {
+                this.flushExecutor.shutdownNow();
+            }
+        }
+
+        // Don't lose the statuses still waiting to be written
+        flushInNewContext();
+    }
+
     @Override
     public void save(final MailStatus status, final Map<String, Object> parameters) throws MailStoreException
+    {
+        if (isBatched()) {
+            addPendingStatus(status.getMessageId(), status);
+        } else {
+            saveNow(status);
+        }
+    }
+
+    private void saveNow(final MailStatus status) throws MailStoreException
     {
         XWikiHibernateBaseStore store = (XWikiHibernateBaseStore) this.hibernateStore;
 
@@ -78,7 +149,7 @@ public void save(final MailStatus status, final Map<String, Object> parameters)
 
         try {
             // Delete any previous state of the message
-            delete(status.getMessageId(), parameters);
+            deleteNow(status.getMessageId());
 
             store.executeWrite(xwikiContext, new XWikiHibernateBaseStore.HibernateCallback<Object>()
             {
@@ -102,6 +173,12 @@ public Object doInHibernate(Session session) throws HibernateException, XWikiExc
     @Override
     public MailStatus load(String uniqueMessageId) throws MailStoreException
     {
+        synchronized (this.pendingStatuses) {
+            if (this.pendingStatuses.containsKey(uniqueMessageId)) {
+                return this.pendingStatuses.get(uniqueMessageId);
+            }
+        }
+
         List<MailStatus> statuses = load(Collections.<String, Object>singletonMap(ID_PARAMETER_NAME, uniqueMessageId),
             0, 0, null, false);
         if (statuses.isEmpty()) {
@@ -115,6 +192,27 @@ public List<MailStatus> load(final Map<String, Object> filterMap, final int offs
         String sortField, boolean sortAscending)
         throws MailStoreException
     {
+        // Compute the Query string based on the passed filter map
+        String queryString = computeSelectQueryString(filterMap, sortField, sortAscending);
+
+        return load(queryString, filterMap, offset, count, null);
+    }
+
+    @Override
+    public List<MailStatus> load(Map<String, Object> filterMap, MailStatus after, int count, boolean sortAscending)
+        throws MailStoreException
+    {
+        String queryString = computeKeysetSelectQueryString(filterMap, after != null, sortAscending);
+
+        return load(queryString, filterMap, 0, count, after);
+    }
+
+    private List<MailStatus> load(final String queryString, final Map<String, Object> filterMap, final int offset,
+        final int count, final MailStatus after) throws MailStoreException
+    {
+        // Make sure the query sees the statuses waiting to be written
+        flush();
+
         XWikiHibernateBaseStore store = (XWikiHibernateBaseStore) this.hibernateStore;
 
         final XWikiContext xwikiContext = this.contextProvider.get();
@@ -122,9 +220,6 @@ public List<MailStatus> load(final Map<String, Object> filterMap, final int offs
         String currentWiki = xwikiContext.getWikiId();
         xwikiContext.setWikiId(xwikiContext.getMainXWiki());
 
-        // Compute the Query string based on the passed filter map
-        final String queryString = computeSelectQueryString(filterMap, sortField, sortAscending);
-
         // Log query and parameters
         logQuery(queryString, filterMap);
 
@@ -144,6 +239,10 @@ public List<MailStatus> doInHibernate(Session session)
                             query.setMaxResults(count);
                         }
                         query.setProperties(filterMap);
+                        if (after != null) {
+                            query.setParameter(KEYSET_DATE_PARAMETER_NAME, after.getDate());
+                            query.setParameter(KEYSET_ID_PARAMETER_NAME, after.getMessageId());
+                        }
                         List<MailStatus> queryResult = (List<MailStatus>) query.list();
                         return queryResult;
                     }
@@ -170,6 +269,9 @@ public List<MailStatus> doInHibernate(Session session)
     @Override
     public long count(final Map<String, Object> filterMap) throws MailStoreException
     {
+        // Make sure the query sees the statuses waiting to be written
+        flush();
+
         XWikiHibernateBaseStore store = (XWikiHibernateBaseStore) this.hibernateStore;
 
         final XWikiContext xwikiContext = this.contextProvider.get();
@@ -204,6 +306,15 @@ public Long doInHibernate(Session session)
 
     @Override
     public void delete(final String uniqueMessageId, Map<String, Object> parameters) throws MailStoreException
+    {
+        if (isBatched()) {
+            addPendingStatus(uniqueMessageId, null);
+        } else {
+            deleteNow(uniqueMessageId);
+        }
+    }
+
+    private void deleteNow(final String uniqueMessageId) throws MailStoreException
     {
         XWikiHibernateBaseStore store = (XWikiHibernateBaseStore) this.hibernateStore;
 
@@ -232,16 +343,164 @@ public Object doInHibernate(Session session) throws HibernateException, XWikiExc
         }
     }
 
+    private boolean isBatched()
+    {
+        return this.configuration.getStatusFlushSize() > 1;
+    }
+
+    private void addPendingStatus(String uniqueMessageId, MailStatus status) throws MailStoreException
+    {
+        int pendingCount;
+        synchronized (this.pendingStatuses) {
+            // Move the message at the end so that the statuses are written in the order they were modified
+            this.pendingStatuses.remove(uniqueMessageId);
+            this.pendingStatuses.put(uniqueMessageId, status);
+            pendingCount = this.pendingStatuses.size();
+        }
+
+        if (pendingCount >= this.configuration.getStatusFlushSize()) {
+            flush();
+        } else {
+            startFlushExecutor();
+        }
+    }
+
+    private synchronized void startFlushExecutor()
+    {
+        long interval = this.configuration.getStatusFlushInterval();
+        if (this.flushExecutor == null && interval > 0) {
+            this.flushExecutor = Executors.newSingleThreadScheduledExecutor(
+                new BasicThreadFactory.Builder().namingPattern("XWiki mail status flush").daemon(true).build());
+            this.flushExecutor.scheduleWithFixedDelay(this::flushInNewContext, interval, interval,
+                TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flushInNewContext()
+    {
+        synchronized (this.pendingStatuses) {
+            if (this.pendingStatuses.isEmpty()) {
+                return;
+            }
+        }
+
+        boolean newContext = this.execution.getContext() == null;
+        try {
+            // The Hibernate store needs an XWiki context
+            if (newContext) {
+                this.executionContextManager.initialize(new ExecutionContext());
+            }
+            try {
+                if (this.contextProvider.get() != null) {
+                    flush();
+                }
+            } finally {
+                if (newContext) {
+                    this.execution.removeContext();
+                }
+            }
+        } catch (Exception e) {
+            // The statuses that failed to be written are kept for the next attempt
+            this.logger.error("Failed to write the pending mail statuses to the database", e);
+        }
+    }
+
+    /**
+     * Write to the database the statuses saved or deleted since the last flush.
+     *
+     * @throws MailStoreException when an error occurs while writing the statuses
+     */
+    private void flush() throws MailStoreException
+    {
+        synchronized (this.flushLock) {
+            final Map<String, MailStatus> statuses;
+            synchronized (this.pendingStatuses) {
+                if (this.pendingStatuses.isEmpty()) {
+                    return;
+                }
+                statuses = new LinkedHashMap<>(this.pendingStatuses);
+                this.pendingStatuses.clear();
+            }
+
+            XWikiHibernateBaseStore store = (XWikiHibernateBaseStore) this.hibernateStore;
+
+            XWikiContext xwikiContext = this.contextProvider.get();
+            // Save in the main wiki
+            String currentWiki = xwikiContext.getWikiId();
+            xwikiContext.setWikiId(xwikiContext.getMainXWiki());
+
+            try {
+                store.executeWrite(xwikiContext, new XWikiHibernateBaseStore.HibernateCallback<Object>()
+                {
+                    @Override
+                    public Object doInHibernate(Session session) throws HibernateException, XWikiException
+                    {
+                        // Delete any previous state of the messages
+                        String queryString =
+                            String.format("delete from %s where mail_id in (:ids)", MailStatus.class.getName());
+                        List<String> ids = new ArrayList<>(statuses.keySet());
+                        for (int i = 0; i < ids.size(); i += DELETE_CHUNK_SIZE) {
+                            session.createQuery(queryString)
+                                .setParameterList("ids", ids.subList(i, Math.min(i + DELETE_CHUNK_SIZE, ids.size())))
+                                .executeUpdate();
+                        }
+
+                        for (MailStatus status : statuses.values()) {
+                            if (status != null) {
+                                session.save(status);
+                            }
+                        }
+                        return null;
+                    }
+                });
+
+                this.logger.debug("Wrote [{}] mail statuses", statuses.size());
+            } catch (Exception e) {
+                // Keep the statuses for the next flush
+                restorePendingStatuses(statuses);
+
+                throw new MailStoreException(
+                    String.format("Failed to write [%s] mail statuses to the database.", statuses.size()), e);
+            } finally {
+                xwikiContext.setWikiId(currentWiki);
+            }
+        }
+    }
+
+    /**
+     * Put back the statuses which failed to be written before the statuses saved or deleted since then, without
+     * overwriting them.
+     */
+    private void restorePendingStatuses(Map<String, MailStatus> statuses)
+    {
+        synchronized (this.pendingStatuses) {
+            Map<String, MailStatus> newerStatuses = new LinkedHashMap<>(this.pendingStatuses);
+            this.pendingStatuses.clear();
+            this.pendingStatuses.putAll(statuses);
+            for (Map.Entry<String, MailStatus> entry : newerStatuses.entrySet()) {
+                this.pendingStatuses.remove(entry.getKey());
+                this.pendingStatuses.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
     protected String computeQueryString(String prefix,
         Map<String, Object> filterMap, String sortField, boolean sortAscending)
     {
         StringBuilder queryBuilder = new StringBuilder(prefix);
         if (!filterMap.isEmpty()) {
             queryBuilder.append(" where");
-            Iterator<String> iterator = filterMap.keySet().iterator();
+            Iterator<Map.Entry<String, Object>> iterator = filterMap.entrySet().iterator();
             while (iterator.hasNext()) {
-                String filterKey = iterator.next();
-                queryBuilder.append(" mail_").append(filterKey).append(" like ").append(':').append(filterKey);
+                Map.Entry<String, Object> filter = iterator.next();
+                queryBuilder.append(" mail_").append(filter.getKey());
+                // Only use LIKE when needed since an exact match is more likely to use the index of the column
+                if (filter.getValue() instanceof String && ((String) filter.getValue()).indexOf('%') >= 0) {
+                    queryBuilder.append(" like ");
+                } else {
+                    queryBuilder.append(" = ");
+                }
+                queryBuilder.append(':').append(filter.getKey());
                 if (iterator.hasNext()) {
                     queryBuilder.append(" and");
                 }
@@ -269,6 +528,24 @@ protected String computeSelectQueryString(Map<String, Object> filterMap, String
             filterMap, sortField, sortAscending);
     }
 
+    protected String computeKeysetSelectQueryString(Map<String, Object> filterMap, boolean hasAfter,
+        boolean sortAscending)
+    {
+        StringBuilder queryBuilder =
+            new StringBuilder(computeQueryString(String.format("from %s", MailStatus.class.getName()),
+                filterMap, null, false));
+        if (hasAfter) {
+            String operator = sortAscending ? " > " : " < ";
+            queryBuilder.append(filterMap.isEmpty() ? " where" : " and");
+            queryBuilder.append(" (mail_date").append(operator).append(':').append(KEYSET_DATE_PARAMETER_NAME);
+            queryBuilder.append(" or (mail_date = :").append(KEYSET_DATE_PARAMETER_NAME);
+            queryBuilder.append(" and mail_id").append(operator).append(':').append(KEYSET_ID_PARAMETER_NAME);
+            queryBuilder.append("))");
+        }
+        queryBuilder.append(sortAscending ? " order by date, messageId" : " order by date desc, messageId desc");
+        return queryBuilder.toString();
+    }
+
     private void logQuery(String queryString, Map<String, Object> filterMap)
     {
         if (this.logger.isDebugEnabled()) {
@@ -44,6 +44,10 @@ public class DefaultMailStorageConfiguration implements MailStorageConfiguration
 
     private static final String DISCARD_SUCCESS_STATUSES = "discardSuccessStatuses";
 
+    private static final String STATUS_FLUSH_SIZE = "statusFlushSize";
+
+    private static final String STATUS_FLUSH_INTERVAL = "statusFlushInterval";
+
     @Inject
     @Named("mailsend")
     private ConfigurationSource mailConfigSource;
@@ -64,4 +68,16 @@ public boolean discardSuccessStatuses()
 
         return (discardSuccessStatuses == 1);
     }
+
+    @Override
+    public int getStatusFlushSize()
+    {
+        return this.xwikiPropertiesSource.getProperty(PREFIX + STATUS_FLUSH_SIZE, 100);
+    }
+
+    @Override
+    public long getStatusFlushInterval()
+    {
+        return this.xwikiPropertiesSource.getProperty(PREFIX + STATUS_FLUSH_INTERVAL, 1000L);
+    }
 }
@@ -208,6 +208,37 @@ public List<MailStatus> load(Map<String, Object> filterMap, int offset, int coun
         }
     }
 
+    /**
+     * Loads the message statuses matching the passed filters which come after the passed status, ordered by date. This
+     * is faster than {@link #load(Map, int, int, String, boolean)} to go through a large number of statuses since
+     * the rows before the requested page don't need to be skipped.
+     *
+     * @param filterMap the map of Mail Status parameters to match (e.g. "status", "wiki", "batchId", etc)
+     * @param after the last status of the previous page or {@code null} to load the first page
+     * @param count the number of rows to return. If 0 then all rows are returned
+     * @param sortAscending when true, the oldest statuses are returned first, else the most recent ones
+     * @return the loaded {@link org.xwiki.mail.MailStatus} instances or null if not allowed or an error happens
+     * @since 10.1RC1
+     */
+    @Unstable
+    public List<MailStatus> load(Map<String, Object> filterMap, MailStatus after, int count, boolean sortAscending)
+    {
+        // Only admins are allowed
+        if (this.authorizationManager.hasAccess(Right.ADMIN)) {
+            try {
+                return this.mailStatusStore.load(normalizeFilterMap(filterMap), after, count, sortAscending);
+            } catch (MailStoreException e) {
+                // Save the exception for reporting through the script services's getLastError() API
+                setError(e);
+                return null;
+            }
+        } else {
+            // Save the exception for reporting through the script services's getLastError() API
+            setError(new MailStoreException("You need Admin rights to load mail statuses"));
+            return null;
+        }
+    }
+
     /**
      * Count the number of message statuses matching the passed filters.
      *
@@ -0,0 +1,96 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.mail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit tests for the default methods of {@link MailStatusStore}.
+ *
+ * @version $Id$
+ */
+public class MailStatusStoreTest
+{
+    private MailStatusStore store = mock(MailStatusStore.class, Mockito.CALLS_REAL_METHODS);
+
+    private Map<String, Object> filterMap = Collections.singletonMap("batchId", "batch");
+
+    private MailStatus status1 = createStatus("id1", 1000);
+
+    private MailStatus status2 = createStatus("id2", 2000);
+
+    private MailStatus status3 = createStatus("id3", 2000);
+
+    private MailStatus status4 = createStatus("id4", 3000);
+
+    @Before
+    public void before() throws Exception
+    {
+        // The statuses are returned in no particular order
+        doReturn(Arrays.asList(this.status3, this.status1, this.status4, this.status2)).when(this.store)
+            .load(eq(this.filterMap), eq(0), eq(0), isNull(), anyBoolean());
+    }
+
+    private MailStatus createStatus(String messageId, long date)
+    {
+        MailStatus status = new MailStatus();
+        status.setMessageId(messageId);
+        status.setDate(new Date(date));
+
+        return status;
+    }
+
+    @Test
+    public void loadAfterAscending() throws Exception
+    {
+        List<MailStatus> page = this.store.load(this.filterMap, null, 2, true);
+        assertEquals(Arrays.asList(this.status1, this.status2), page);
+
+        // Statuses with the same date are ordered by message id
+        page = this.store.load(this.filterMap, page.get(1), 2, true);
+        assertEquals(Arrays.asList(this.status3, this.status4), page);
+
+        assertEquals(Collections.emptyList(), this.store.load(this.filterMap, this.status4, 2, true));
+    }
+
+    @Test
+    public void loadAfterDescending() throws Exception
+    {
+        assertEquals(Arrays.asList(this.status4, this.status3, this.status2, this.status1),
+            this.store.load(this.filterMap, null, 0, false));
+        assertEquals(Arrays.asList(this.status2, this.status1),
+            this.store.load(this.filterMap, this.status3, 0, false));
+    }
+}
@@ -20,28 +20,40 @@
 package org.xwiki.mail.internal;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
 import javax.inject.Provider;
 
 import org.junit.Rule;
+import org.hibernate.Query;
+import org.hibernate.Session;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.slf4j.Logger;
 import org.xwiki.component.util.ReflectionUtils;
 import org.xwiki.mail.MailState;
 import org.xwiki.mail.MailStatus;
+import org.xwiki.mail.MailStorageConfiguration;
+import org.xwiki.mail.MailStoreException;
 import org.xwiki.test.AllLogRule;
 import org.xwiki.test.LogLevel;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.store.XWikiHibernateBaseStore;
 import com.xpn.xwiki.store.XWikiHibernateStore;
 
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -64,9 +76,9 @@ public void computeSelectQueryString() throws Exception
     {
         Map<String, Object> filterMap = new LinkedHashMap<>();
         filterMap.put("status", "failed");
-        filterMap.put("wiki", "mywiki");
+        filterMap.put("wiki", "%mywiki%");
 
-        assertEquals("from org.xwiki.mail.MailStatus where mail_status like :status and mail_wiki like :wiki order by date desc",
+        assertEquals("from org.xwiki.mail.MailStatus where mail_status = :status and mail_wiki like :wiki order by date desc",
             this.mocker.getComponentUnderTest().computeSelectQueryString(filterMap, "date", false));
     }
 
@@ -77,8 +89,8 @@ public void computeCountQueryString() throws Exception
         filterMap.put("status", "failed");
         filterMap.put("wiki", "mywiki");
 
-        assertEquals("select count(*) from org.xwiki.mail.MailStatus where mail_status like :status and "
-            + "mail_wiki like :wiki", this.mocker.getComponentUnderTest().computeCountQueryString(filterMap));
+        assertEquals("select count(*) from org.xwiki.mail.MailStatus where mail_status = :status and "
+            + "mail_wiki = :wiki", this.mocker.getComponentUnderTest().computeCountQueryString(filterMap));
     }
 
     @Test
@@ -107,10 +119,116 @@ public void logsForloadMailStatus() throws Exception
 
         // The test is here, we verify that debug logs are correct
         assertEquals(2, this.logRule.size());
-        assertEquals("Find mail statuses for query [from org.xwiki.mail.MailStatus where mail_status like :status "
-            + "and mail_wiki like :wiki] and parameters [[status] = [failed], [wiki] = [mywiki]]",
+        assertEquals("Find mail statuses for query [from org.xwiki.mail.MailStatus where mail_status = :status "
+            + "and mail_wiki = :wiki] and parameters [[status] = [failed], [wiki] = [mywiki]]",
             this.logRule.getMessage(0));
         assertEquals("Loaded mail status [messageId = [messageid], batchId = [batchid], state = [prepare_success], "
             + "date = [<null>], recipients = [recipients]]", this.logRule.getMessage(1));
     }
+
+    @Test
+    public void computeKeysetSelectQueryString() throws Exception
+    {
+        Map<String, Object> filterMap = new LinkedHashMap<>();
+        filterMap.put("batchId", "batch");
+
+        assertEquals("from org.xwiki.mail.MailStatus where mail_batchId = :batchId order by date, messageId",
+            this.mocker.getComponentUnderTest().computeKeysetSelectQueryString(filterMap, false, true));
+        assertEquals("from org.xwiki.mail.MailStatus where mail_batchId = :batchId and (mail_date < :keysetDate "
+            + "or (mail_date = :keysetDate and mail_id < :keysetId)) order by date desc, messageId desc",
+            this.mocker.getComponentUnderTest().computeKeysetSelectQueryString(filterMap, true, false));
+        assertEquals("from org.xwiki.mail.MailStatus where (mail_date > :keysetDate "
+            + "or (mail_date = :keysetDate and mail_id > :keysetId)) order by date, messageId",
+            this.mocker.getComponentUnderTest().computeKeysetSelectQueryString(Collections.emptyMap(), true, true));
+    }
+
+    @Test
+    public void saveAndDeleteByBatches() throws Exception
+    {
+        Provider<XWikiContext> xcontextProvider = mocker.registerMockComponent(XWikiContext.TYPE_PROVIDER);
+        XWikiContext xcontext = mock(XWikiContext.class);
+        when(xcontextProvider.get()).thenReturn(xcontext);
+        when(xcontext.getWikiId()).thenReturn("wiki");
+        when(xcontext.getMainXWiki()).thenReturn("mainwiki");
+
+        MailStorageConfiguration configuration = this.mocker.getInstance(MailStorageConfiguration.class);
+        when(configuration.getStatusFlushSize()).thenReturn(3);
+
+        XWikiHibernateStore hibernateStore = mock(XWikiHibernateStore.class);
+        ReflectionUtils.setFieldValue(this.mocker.getComponentUnderTest(), "hibernateStore", hibernateStore);
+
+        MailStatus status1 = new MailStatus();
+        status1.setMessageId("id1");
+        MailStatus status2 = new MailStatus();
+        status2.setMessageId("id2");
+
+        this.mocker.getComponentUnderTest().save(status1, Collections.emptyMap());
+        this.mocker.getComponentUnderTest().save(status2, Collections.emptyMap());
+        this.mocker.getComponentUnderTest().delete("id2", Collections.emptyMap());
+
+        // Nothing is written yet but the pending statuses are taken into account
+        verify(hibernateStore, never()).executeWrite(any(), any());
+        assertSame(status1, this.mocker.getComponentUnderTest().load("id1"));
+        assertNull(this.mocker.getComponentUnderTest().load("id2"));
+
+        // The batch is full: all the pending statuses are written in a single transaction
+        this.mocker.getComponentUnderTest().delete("id3", Collections.emptyMap());
+
+        verify(hibernateStore).executeWrite(eq(xcontext), any());
+        verify(xcontext).setWikiId("mainwiki");
+        verify(xcontext).setWikiId("wiki");
+        assertEquals("Wrote [3] mail statuses", this.logRule.getMessage(0));
+    }
+
+    @Test
+    public void keepPendingStatusesWhenWriteFails() throws Exception
+    {
+        Provider<XWikiContext> xcontextProvider = mocker.registerMockComponent(XWikiContext.TYPE_PROVIDER);
+        XWikiContext xcontext = mock(XWikiContext.class);
+        when(xcontextProvider.get()).thenReturn(xcontext);
+
+        MailStorageConfiguration configuration = this.mocker.getInstance(MailStorageConfiguration.class);
+        when(configuration.getStatusFlushSize()).thenReturn(2);
+
+        XWikiHibernateStore hibernateStore = mock(XWikiHibernateStore.class);
+        ReflectionUtils.setFieldValue(this.mocker.getComponentUnderTest(), "hibernateStore", hibernateStore);
+        when(hibernateStore.executeWrite(eq(xcontext), any())).thenThrow(new XWikiException()).thenReturn(null);
+
+        MailStatus status1 = new MailStatus();
+        status1.setMessageId("id1");
+        MailStatus status2 = new MailStatus();
+        status2.setMessageId("id2");
+
+        this.mocker.getComponentUnderTest().save(status1, Collections.emptyMap());
+        try {
+            this.mocker.getComponentUnderTest().save(status2, Collections.emptyMap());
+            fail("Should have thrown an exception");
+        } catch (MailStoreException expected) {
+            assertEquals("Failed to write [2] mail statuses to the database.", expected.getMessage());
+        }
+
+        // The statuses which failed to be written are still there
+        assertSame(status1, this.mocker.getComponentUnderTest().load("id1"));
+        assertSame(status2, this.mocker.getComponentUnderTest().load("id2"));
+
+        // A newer status is not overwritten by the failed batch
+        MailStatus newStatus1 = new MailStatus();
+        newStatus1.setMessageId("id1");
+        this.mocker.getComponentUnderTest().save(newStatus1, Collections.emptyMap());
+
+        ArgumentCaptor<XWikiHibernateBaseStore.HibernateCallback<Object>> callbackCaptor =
+            ArgumentCaptor.forClass(XWikiHibernateBaseStore.HibernateCallback.class);
+        verify(hibernateStore, times(2)).executeWrite(eq(xcontext), callbackCaptor.capture());
+
+        Session session = mock(Session.class);
+        Query query = mock(Query.class);
+        when(session.createQuery(any(String.class))).thenReturn(query);
+        when(query.setParameterList(eq("ids"), any(Collection.class))).thenReturn(query);
+        callbackCaptor.getValue().doInHibernate(session);
+
+        verify(query).setParameterList("ids", Arrays.asList("id2", "id1"));
+        verify(session).save(status2);
+        verify(session).save(newStatus1);
+        verify(session, never()).save(status1);
+    }
 }
@@ -57,4 +57,16 @@ public void discardSuccessStatusesFalseWhenDefinedInMailConfig() throws Exceptio
 
         assertEquals(false, this.mocker.getComponentUnderTest().discardSuccessStatuses());
     }
+
+    @Test
+    public void getStatusFlushSizeAndInterval() throws Exception
+    {
+        ConfigurationSource xwikiPropertiesSource =
+            this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(xwikiPropertiesSource.getProperty("mail.sender.database.statusFlushSize", 100)).thenReturn(50);
+        when(xwikiPropertiesSource.getProperty("mail.sender.database.statusFlushInterval", 1000L)).thenReturn(500L);
+
+        assertEquals(50, this.mocker.getComponentUnderTest().getStatusFlushSize());
+        assertEquals(500L, this.mocker.getComponentUnderTest().getStatusFlushInterval());
+    }
 }
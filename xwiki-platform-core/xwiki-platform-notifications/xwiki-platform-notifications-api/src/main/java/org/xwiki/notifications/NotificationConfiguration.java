@@ -51,4 +51,20 @@
      * @since 9.6RC1
      */
     int liveNotificationsGraceTime();
+
+    /**
+     * @return the maximum number of users for whom the number of notifications is kept in memory, 0 to disable the
+     *         cache
+     * @since 10.1RC1
+     */
+    int getCountCacheSize();
+
+    /**
+     * Get the number of seconds after which a cached number of notifications is computed again, even if it has not
+     * been invalidated (some changes, like the modification of the rights, are not tracked).
+     *
+     * @return the number of seconds during which a number of notifications is kept in the cache
+     * @since 10.1RC1
+     */
+    int getCountCacheLifespan();
 }
@@ -60,4 +60,18 @@ public int liveNotificationsGraceTime()
 
         return (graceTime < 0) ? 0 : graceTime;
     }
+
+    @Override
+    public int getCountCacheSize()
+    {
+        int size = configurationSource.getProperty(CONFIGURATION_PREFIX + "countCache.size", 10000);
+
+        return (size < 0) ? 0 : size;
+    }
+
+    @Override
+    public int getCountCacheLifespan()
+    {
+        return configurationSource.getProperty(CONFIGURATION_PREFIX + "countCache.lifespan", 600);
+    }
 }
@@ -0,0 +1,84 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.rest.internal;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.notifications.NotificationException;
+import org.xwiki.notifications.sources.NotificationManager;
+import org.xwiki.rest.XWikiResource;
+import org.xwiki.rest.XWikiRestException;
+
+/**
+ * Return the number of notifications of the current user. The number is cached and maintained incrementally so this
+ * resource is cheap enough to be polled.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Component
+@Named("org.xwiki.notifications.rest.internal.NotificationCountRESTResource")
+@Path("/notifications/count")
+@Singleton
+public class NotificationCountRESTResource extends XWikiResource
+{
+    @Inject
+    private NotificationManager notificationManager;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    /**
+     * @param onlyUnread if only unread notifications should be counted
+     * @param max the maximum number of notifications to count
+     * @return the number of notifications of the current user, as JSON
+     * @throws XWikiRestException if the notifications failed to be counted
+     */
+    @GET
+    public Response getCount(@QueryParam("onlyUnread") @DefaultValue("true") boolean onlyUnread,
+        @QueryParam("max") @DefaultValue("21") int max) throws XWikiRestException
+    {
+        DocumentReference user = getXWikiContext().getUserReference();
+        if (user == null) {
+            throw new WebApplicationException(Status.UNAUTHORIZED);
+        }
+
+        try {
+            long count = this.notificationManager.getEventsCount(this.serializer.serialize(user), onlyUnread, max);
+
+            return Response.ok(String.format("{\"count\":%d}", count), MediaType.APPLICATION_JSON).build();
+        } catch (NotificationException e) {
+            throw new XWikiRestException(e);
+        }
+    }
+}
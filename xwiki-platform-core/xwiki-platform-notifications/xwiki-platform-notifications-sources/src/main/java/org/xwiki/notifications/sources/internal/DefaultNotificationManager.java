@@ -20,10 +20,8 @@
 package org.xwiki.notifications.sources.internal;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -58,6 +56,11 @@
 @Singleton
 public class DefaultNotificationManager implements NotificationManager
 {
+    /**
+     * The maximum number of events to get from the database at once.
+     */
+    private static final int MAX_BATCH_SIZE = 1000;
+
     @Inject
     private EventStream eventStream;
 
@@ -85,6 +88,9 @@ public class DefaultNotificationManager implements NotificationManager
     @Inject
     private EntityReferenceSerializer<String> entityReferenceSerializer;
 
+    @Inject
+    private NotificationCountCache countCache;
+
     /**
      * For internal use, avoid to give more than 7 parameters to methods.
      */
@@ -187,7 +193,8 @@ public long getEventsCount(String userId, boolean onlyUnread, int maxCount) thro
     {
         DocumentReference user = documentReferenceResolver.resolve(userId);
 
-        List<CompositeEvent> events = getEvents(new ArrayList<>(),
+        return countCache.get(entityReferenceSerializer.serialize(user), onlyUnread, maxCount,
+            () -> getEvents(new ArrayList<>(),
                 new Parameters(
                         user,
                         NotificationFormat.ALERT,
@@ -197,9 +204,8 @@ public long getEventsCount(String userId, boolean onlyUnread, int maxCount) thro
                         null,
                         new ArrayList<>()
                 )
+            ).size()
         );
-
-        return events.size();
     }
 
     private List<CompositeEvent> getEvents(List<CompositeEvent> results, Parameters parameters)
@@ -207,52 +213,77 @@ private List<CompositeEvent> getEvents(List<CompositeEvent> results, Parameters
     {
         // Because the user might not be able to see all notifications because of the rights, we take from the database
         // more events than expected and we will filter afterwards.
-        final int batchSize = parameters.expectedCount * 2;
+        int batchSize = parameters.expectedCount * 2;
         try {
-            // Create the query
-            Query query = queryGenerator.generateQuery(parameters.userReference, parameters.format,
-                    parameters.onlyUnread, parameters.endDate, parameters.fromDate, parameters.blackList);
-            if (query == null) {
-                return Collections.emptyList();
-            }
-            query.setLimit(batchSize);
-
-            // Get a batch of events
-            List<Event> batch = eventStream.searchEvents(query);
-
-            // Add to the results the events the user has the right to see
-            for (Event event : batch) {
-                DocumentReference document = event.getDocument();
-                // Don't record events concerning a doc the user cannot see
-                if (document != null && !authorizationManager.hasAccess(Right.VIEW, parameters.userReference,
-                        document)) {
-                    continue;
+            EventCursorNode cursor = null;
+            while (true) {
+                // Create the query, starting after the last event of the previous batch
+                Query query = queryGenerator.generateQuery(parameters.userReference, parameters.format,
+                        parameters.onlyUnread, parameters.endDate, parameters.fromDate, parameters.blackList, cursor);
+                if (query == null) {
+                    return results;
                 }
-
-                if (filterEvent(event, parameters)) {
-                    continue;
+                query.setLimit(batchSize);
+
+                // Get a batch of events
+                List<Event> batch = eventStream.searchEvents(query);
+
+                // Add to the results the events the user has the right to see
+                for (Event event : batch) {
+                    DocumentReference document = event.getDocument();
+                    // Don't record events concerning a doc the user cannot see
+                    if (document != null && !authorizationManager.hasAccess(Right.VIEW, parameters.userReference,
+                            document)) {
+                        continue;
+                    }
+
+                    if (filterEvent(event, parameters)) {
+                        continue;
+                    }
+
+                    // Record this event
+                    recordEvent(results, event);
+                    // If the expected count is reached, stop now
+                    if (results.size() >= parameters.expectedCount) {
+                        return results;
+                    }
                 }
 
-                // Record this event
-                recordEvent(results, event);
-                // If the expected count is reached, stop now
-                if (results.size() >= parameters.expectedCount) {
+                // If we haven't get the expected number of events, perform a new batch
+                if (batch.size() < batchSize) {
                     return results;
                 }
-            }
+                cursor = getNextCursor(cursor, batch);
 
-            // If we haven't get the expected number of events, perform a new batch
-            if (results.size() < parameters.expectedCount && batch.size() == batchSize) {
-                parameters.blackList.addAll(getEventsIds(batch));
-                getEvents(results, parameters);
+                // Most events of the previous batch have been filtered so get more events at once
+                if (batchSize < MAX_BATCH_SIZE) {
+                    batchSize = Math.min(batchSize * 2, MAX_BATCH_SIZE);
+                }
             }
-
-            return results;
         } catch (Exception e) {
             throw new NotificationException("Fail to get the list of notifications.", e);
         }
     }
 
+    private EventCursorNode getNextCursor(EventCursorNode cursor, List<Event> batch)
+    {
+        // The events are sorted by descending date so the next batch starts after the last event of this batch
+        long date = batch.get(batch.size() - 1).getDate().getTime();
+
+        // Several events can have the same date: remember the ones which have already been returned
+        List<String> ids = new ArrayList<>();
+        if (cursor != null && cursor.getDate().getTime() == date) {
+            ids.addAll(cursor.getIds());
+        }
+        for (Event event : batch) {
+            if (event.getId() != null && event.getDate().getTime() == date) {
+                ids.add(event.getId());
+            }
+        }
+
+        return new EventCursorNode(new Date(date), ids);
+    }
+
     private boolean filterEvent(Event event, Parameters parameters) throws NotificationException
     {
         // Don't record events that have a target that don't include the current user
@@ -269,11 +300,6 @@ private boolean filterEvent(Event event, Parameters parameters) throws Notificat
         return false;
     }
 
-    private List<String> getEventsIds(List<Event> events)
-    {
-        return events.stream().map(Event::getId).collect(Collectors.toList());
-    }
-
     private class BestSimilarity
     {
         public int value;
@@ -0,0 +1,74 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.Collection;
+import java.util.Date;
+
+import org.xwiki.notifications.filters.expression.generics.AbstractOperatorNode;
+
+/**
+ * Define a keyset pagination cursor in a filtering expression: only match the events coming after the last event of
+ * the previous page, when the events are sorted by descending date. These are the events older than the cursor date
+ * and the events having the same date that have not been returned yet.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+public class EventCursorNode extends AbstractOperatorNode
+{
+    private Date date;
+
+    private Collection<String> ids;
+
+    /**
+     * Construct an EventCursorNode.
+     *
+     * @param date the date of the last returned event
+     * @param ids the ids of the returned events having the same date than the last returned event
+     */
+    public EventCursorNode(Date date, Collection<String> ids)
+    {
+        this.date = date;
+        this.ids = ids;
+    }
+
+    /**
+     * @return the date of the last returned event
+     */
+    public Date getDate()
+    {
+        return date;
+    }
+
+    /**
+     * @return the ids of the returned events having the same date than the last returned event
+     */
+    public Collection<String> getIds()
+    {
+        return ids;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("AFTER_CURSOR(%s, %s)", date.getTime(), ids);
+    }
+}
@@ -295,6 +295,16 @@ private String parseOtherOperation(AbstractOperatorNode operator, HQLQuery resul
 
             result.getQueryParameters().put("userStatusRead", serializer.serialize(inList.getUser()));
 
+        } else if (operator instanceof EventCursorNode) {
+            EventCursorNode cursor = (EventCursorNode) operator;
+
+            result.getQueryParameters().put("cursorDate", cursor.getDate());
+            if (cursor.getIds().isEmpty()) {
+                returnValue = "event.date < :cursorDate";
+            } else {
+                returnValue = "event.date < :cursorDate OR (event.date = :cursorDate AND event.id NOT IN (:cursorIds))";
+                result.getQueryParameters().put("cursorIds", cursor.getIds());
+            }
         } else {
             returnValue = StringUtils.EMPTY;
         }
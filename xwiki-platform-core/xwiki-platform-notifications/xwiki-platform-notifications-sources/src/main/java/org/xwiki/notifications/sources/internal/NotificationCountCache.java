@@ -0,0 +1,233 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.notifications.NotificationConfiguration;
+import org.xwiki.notifications.NotificationException;
+
+/**
+ * Keep in memory the number of notifications of each user so that the whole notifications pipeline (query, rights,
+ * filters, grouping) is not executed each time the notifications menu is displayed.
+ * <p>
+ * The cached numbers are maintained incrementally: the numbers of a user are forgotten when one of its notifications
+ * is marked as read or when its preferences are modified, and a new event only invalidates the numbers which did not
+ * already reach the requested maximum (a new event can only add notifications).
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Component(roles = NotificationCountCache.class)
+@Singleton
+public class NotificationCountCache implements Initializable, Disposable
+{
+    /**
+     * Compute the number of notifications of a user.
+     */
+    @FunctionalInterface
+    public interface Counter
+    {
+        /**
+         * @return the number of notifications
+         * @throws NotificationException if an error happens
+         */
+        long count() throws NotificationException;
+    }
+
+    private static class Entry
+    {
+        private final long count;
+
+        private final long eventVersion;
+
+        Entry(long count, long eventVersion)
+        {
+            this.count = count;
+            this.eventVersion = eventVersion;
+        }
+    }
+
+    /**
+     * The cached numbers of a user, indexed by the parameters of the count.
+     */
+    private static class UserEntries
+    {
+        private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+        /**
+         * Incremented each time the numbers of the user are invalidated, to not cache a number computed during the
+         * invalidation.
+         */
+        private long invalidationVersion;
+    }
+
+    @Inject
+    private NotificationConfiguration configuration;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    /**
+     * The cached numbers of each user.
+     */
+    private Cache<UserEntries> cache;
+
+    /**
+     * Incremented each time a new event which might concern every user is recorded.
+     */
+    private final AtomicLong eventVersion = new AtomicLong();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        int size = this.configuration.getCountCacheSize();
+        if (size > 0) {
+            CacheConfiguration cacheConfiguration = new CacheConfiguration();
+            cacheConfiguration.setConfigurationId("notifications.count");
+            LRUEvictionConfiguration lru = new LRUEvictionConfiguration();
+            lru.setMaxEntries(size);
+            lru.setLifespan(this.configuration.getCountCacheLifespan());
+            cacheConfiguration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
+
+            try {
+                this.cache = this.cacheManager.createNewCache(cacheConfiguration);
+            } catch (CacheException e) {
+                throw new InitializationException("Failed to initialize the notifications count cache", e);
+            }
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (this.cache != null) {
+            this.cache.dispose();
+        }
+    }
+
+    /**
+     * @param userId the serialized reference of the user
+     * @param onlyUnread if only unread events are counted
+     * @param maxCount the maximum number of events to count
+     * @param counter used to compute the number of notifications when it's not in the cache
+     * @return the number of notifications of the user
+     * @throws NotificationException if the number of notifications failed to be computed
+     */
+    public long get(String userId, boolean onlyUnread, int maxCount, Counter counter) throws NotificationException
+    {
+        if (this.cache == null) {
+            return counter.count();
+        }
+
+        String key = getKey(onlyUnread, maxCount);
+
+        UserEntries userEntries = this.cache.get(userId);
+        if (userEntries != null) {
+            Entry entry = userEntries.entries.get(key);
+            // A number which reached the maximum cannot be changed by a new event
+            if (entry != null && (entry.eventVersion == this.eventVersion.get() || entry.count >= maxCount)) {
+                return entry.count;
+            }
+        }
+
+        long currentEventVersion = this.eventVersion.get();
+        long currentInvalidationVersion;
+        synchronized (this) {
+            userEntries = this.cache.get(userId);
+            if (userEntries == null) {
+                userEntries = new UserEntries();
+                this.cache.set(userId, userEntries);
+            }
+            currentInvalidationVersion = userEntries.invalidationVersion;
+        }
+
+        long count = counter.count();
+
+        synchronized (this) {
+            // Don't remember a number which might have been invalidated while it was computed (the entries of the
+            // user are replaced when they are evicted or when the whole cache is invalidated)
+            if (this.cache.get(userId) == userEntries
+                && userEntries.invalidationVersion == currentInvalidationVersion) {
+                userEntries.entries.put(key, new Entry(count, currentEventVersion));
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Forget the numbers of notifications of the passed user.
+     *
+     * @param userId the serialized reference of the user
+     */
+    public void invalidate(String userId)
+    {
+        if (this.cache != null) {
+            synchronized (this) {
+                UserEntries userEntries = this.cache.get(userId);
+                if (userEntries != null) {
+                    userEntries.invalidationVersion++;
+                    userEntries.entries.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget the numbers of notifications which might be changed by a new event concerning every user.
+     */
+    public void invalidateNewEvent()
+    {
+        // The numbers being computed remember the event version they started with so they are outdated too
+        this.eventVersion.incrementAndGet();
+    }
+
+    /**
+     * Forget all the numbers of notifications.
+     */
+    public void invalidateAll()
+    {
+        if (this.cache != null) {
+            synchronized (this) {
+                this.cache.removeAll();
+            }
+        }
+    }
+
+    private String getKey(boolean onlyUnread, int maxCount)
+    {
+        return String.valueOf(onlyUnread) + '/' + maxCount;
+    }
+}
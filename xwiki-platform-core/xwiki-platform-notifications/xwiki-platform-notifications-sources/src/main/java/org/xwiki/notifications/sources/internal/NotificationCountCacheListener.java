@@ -0,0 +1,133 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.Arrays;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.eventstream.EventStatus;
+import org.xwiki.eventstream.events.EventStatusAddOrUpdatedEvent;
+import org.xwiki.eventstream.events.EventStreamAddedEvent;
+import org.xwiki.eventstream.events.EventStreamDeletedEvent;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Keep the {@link NotificationCountCache} up to date.
+ * <p>
+ * The event stream events are only received by the member of the cluster where they happen so they are converted to
+ * {@link NotificationCountInvalidatedEvent} events which are shared with the other members. The documents events are
+ * already shared so they are handled directly.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Component
+@Named(NotificationCountCacheListener.NAME)
+@Singleton
+public class NotificationCountCacheListener extends AbstractEventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "org.xwiki.notifications.sources.internal.NotificationCountCacheListener";
+
+    private static final LocalDocumentReference USERCLASS_REFERENCE = new LocalDocumentReference("XWiki", "XWikiUsers");
+
+    @Inject
+    private NotificationCountCache cache;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    private Provider<ObservationManager> observationManagerProvider;
+
+    /**
+     * Default constructor.
+     */
+    public NotificationCountCacheListener()
+    {
+        super(NAME, Arrays.asList(new EventStreamAddedEvent(), new EventStreamDeletedEvent(),
+            new EventStatusAddOrUpdatedEvent(), new DocumentUpdatedEvent(), new DocumentDeletedEvent(),
+            new NotificationCountInvalidatedEvent()));
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (event instanceof NotificationCountInvalidatedEvent) {
+            invalidate((NotificationCountInvalidatedEvent) event);
+        } else if (event instanceof EventStreamAddedEvent) {
+            org.xwiki.eventstream.Event streamEvent = (org.xwiki.eventstream.Event) source;
+            if (streamEvent.getTarget() == null || streamEvent.getTarget().isEmpty()) {
+                notify(new NotificationCountInvalidatedEvent(null, true));
+            } else {
+                // Only the targets of the event can get a new notification
+                for (String target : streamEvent.getTarget()) {
+                    notify(new NotificationCountInvalidatedEvent(target, true));
+                }
+            }
+        } else if (event instanceof EventStreamDeletedEvent) {
+            notify(new NotificationCountInvalidatedEvent(null, false));
+        } else if (event instanceof EventStatusAddOrUpdatedEvent) {
+            notify(new NotificationCountInvalidatedEvent(((EventStatus) source).getEntityId(), false));
+        } else {
+            // The notification preferences and filters of a user are stored in its profile
+            XWikiDocument document = (XWikiDocument) source;
+            if (isUserProfile(document) || isUserProfile(document.getOriginalDocument())) {
+                this.cache.invalidate(this.serializer.serialize(document.getDocumentReference()));
+            }
+        }
+    }
+
+    private boolean isUserProfile(XWikiDocument document)
+    {
+        return document != null && document.getXObject(USERCLASS_REFERENCE) != null;
+    }
+
+    private void notify(NotificationCountInvalidatedEvent event)
+    {
+        this.observationManagerProvider.get().notify(event, null);
+    }
+
+    private void invalidate(NotificationCountInvalidatedEvent event)
+    {
+        if (event.getUserId() != null) {
+            this.cache.invalidate(event.getUserId());
+        } else if (event.isNewEvent()) {
+            this.cache.invalidateNewEvent();
+        } else {
+            this.cache.invalidateAll();
+        }
+    }
+}
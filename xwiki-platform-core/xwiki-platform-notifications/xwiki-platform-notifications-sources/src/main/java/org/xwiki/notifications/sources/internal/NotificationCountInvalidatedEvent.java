@@ -0,0 +1,83 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.io.Serializable;
+
+import org.xwiki.observation.event.Event;
+
+/**
+ * Event triggered when the cached numbers of notifications have to be invalidated. This event is serializable so that
+ * it's shared with the other members of the cluster, which don't receive the event stream events.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+public class NotificationCountInvalidatedEvent implements Event, Serializable
+{
+    /**
+     * The version identifier for this Serializable class. Increment only if the <i>serialized</i> form of the class
+     * changes.
+     */
+    private static final long serialVersionUID = 1L;
+
+    private String userId;
+
+    private boolean newEvent;
+
+    /**
+     * Matches all {@link NotificationCountInvalidatedEvent} events.
+     */
+    public NotificationCountInvalidatedEvent()
+    {
+    }
+
+    /**
+     * @param userId the serialized reference of the user whose numbers are invalidated, {@code null} for all users
+     * @param newEvent {@code true} if the invalidation is caused by a new event (which can only add notifications)
+     */
+    public NotificationCountInvalidatedEvent(String userId, boolean newEvent)
+    {
+        this.userId = userId;
+        this.newEvent = newEvent;
+    }
+
+    /**
+     * @return the serialized reference of the user whose numbers are invalidated, {@code null} for all users
+     */
+    public String getUserId()
+    {
+        return this.userId;
+    }
+
+    /**
+     * @return {@code true} if the invalidation is caused by a new event (which can only add notifications)
+     */
+    public boolean isNewEvent()
+    {
+        return this.newEvent;
+    }
+
+    @Override
+    public boolean matches(Object otherEvent)
+    {
+        return otherEvent instanceof NotificationCountInvalidatedEvent;
+    }
+}
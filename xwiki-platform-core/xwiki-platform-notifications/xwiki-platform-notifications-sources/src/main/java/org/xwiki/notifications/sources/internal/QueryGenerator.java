@@ -113,9 +113,31 @@ public Query generateQuery(DocumentReference user, NotificationFormat format, bo
             Date endDate,
             Date startDate, List<String> blackList) throws NotificationException, QueryException
     {
-        ExpressionNodeToHQLConverter.HQLQuery result = hqlConverter.parse(
-                generateQueryExpression(user, format, onlyUnread, endDate, startDate, blackList)
-        );
+        return generateQuery(user, format, onlyUnread, endDate, startDate, blackList, null);
+    }
+
+    /**
+     * Generate the query.
+     *
+     * @param user user interested in the notifications
+     * @param format only match notifications enabled for that format
+     * @param onlyUnread if only unread events should be returned
+     * @param endDate do not return events happened after this date
+     * @param startDate do not return events happened before this date
+     * @param blackList list of ids of blacklisted events to not return (to not get already known events again)
+     * @param cursor only return the events coming after this cursor, {@code null} to get the first events
+     * @return the query to execute
+     * @throws NotificationException if error happens
+     * @throws QueryException if error happens
+     * @since 10.1RC1
+     */
+    public Query generateQuery(DocumentReference user, NotificationFormat format, boolean onlyUnread,
+            Date endDate, Date startDate, List<String> blackList, EventCursorNode cursor)
+            throws NotificationException, QueryException
+    {
+        ExpressionNode expression = generateQueryExpression(user, format, onlyUnread, endDate, startDate, blackList,
+                cursor);
+        ExpressionNodeToHQLConverter.HQLQuery result = hqlConverter.parse(expression);
         if (result.getQuery().isEmpty()) {
             return null;
         }
@@ -148,6 +170,13 @@ public Query generateQuery(DocumentReference user, NotificationFormat format, bo
      */
     public ExpressionNode generateQueryExpression(DocumentReference user, NotificationFormat format, boolean onlyUnread,
             Date endDate, Date startDate, List<String> blackList) throws NotificationException, QueryException
+    {
+        return generateQueryExpression(user, format, onlyUnread, endDate, startDate, blackList, null);
+    }
+
+    private ExpressionNode generateQueryExpression(DocumentReference user, NotificationFormat format,
+            boolean onlyUnread, Date endDate, Date startDate, List<String> blackList, EventCursorNode cursor)
+            throws NotificationException, QueryException
     {
         // First: get the active preferences of the given user
         List<NotificationPreference> preferences = notificationPreferenceManager.getPreferences(
@@ -205,6 +234,7 @@ public ExpressionNode generateQueryExpression(DocumentReference user, Notificati
         // Other basic filters
         topNode = handleBlackList(blackList, topNode);
         topNode = handleEndDate(endDate, topNode);
+        topNode = handleCursor(cursor, topNode);
         topNode = handleHiddenEvents(topNode);
         topNode = handleEventStatus(onlyUnread, user, topNode);
         topNode = handleWiki(user, topNode);
@@ -335,6 +365,14 @@ private AbstractOperatorNode handleEndDate(Date endDate, AbstractOperatorNode to
         return topNode;
     }
 
+    private AbstractOperatorNode handleCursor(EventCursorNode cursor, AbstractOperatorNode topNode)
+    {
+        if (cursor != null) {
+            return topNode.and(cursor);
+        }
+        return topNode;
+    }
+
     private AbstractOperatorNode handleBlackList(List<String> blackList, AbstractOperatorNode topNode)
     {
         if (blackList != null && !blackList.isEmpty()) {
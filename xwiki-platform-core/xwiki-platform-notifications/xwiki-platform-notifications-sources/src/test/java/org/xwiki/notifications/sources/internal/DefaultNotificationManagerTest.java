@@ -50,10 +50,12 @@
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
@@ -87,13 +89,16 @@ public void setUp() throws Exception
         documentReferenceResolver = mocker.getInstance(DocumentReferenceResolver.TYPE_STRING);
         notificationPreferenceManager = mocker.getInstance(NotificationPreferenceManager.class);
         authorizationManager = mocker.getInstance(AuthorizationManager.class);
+        NotificationCountCache countCache = mocker.getInstance(NotificationCountCache.class);
         startDate = new Date(10);
 
         when(documentReferenceResolver.resolve("xwiki:XWiki.UserA")).thenReturn(userReference);
+        when(countCache.get(any(), anyBoolean(), anyInt(), any(NotificationCountCache.Counter.class))).then(
+            invocation -> invocation.<NotificationCountCache.Counter>getArgument(3).count());
         query = mock(Query.class);
         when(queryGenerator.generateQuery(any(DocumentReference.class), any(NotificationFormat.class),
                 anyBoolean(), nullable(Date.class),
-                nullable(Date.class), nullable(List.class))).thenReturn(query);
+                nullable(Date.class), nullable(List.class), nullable(EventCursorNode.class))).thenReturn(query);
 
         NotificationPreference pref1 = mock(NotificationPreference.class);
         when(pref1.getProperties()).thenReturn(Collections.singletonMap(NotificationPreferenceProperty.EVENT_TYPE, "create"));
@@ -143,6 +148,53 @@ public void getEventsWith2Queries() throws Exception
         assertEquals(event5, results.get(1).getEvents().get(0));
     }
 
+    @Test
+    public void getEventsWithCursor() throws Exception
+    {
+        // Mocks
+        Event event1 = createMockedEvent();
+        when(event1.getDate()).thenReturn(new Date(3L));
+        Event event2 = createMockedEvent();
+        when(event2.getDate()).thenReturn(new Date(2L));
+        when(event2.getId()).thenReturn("id2");
+        Event event3 = createMockedEvent();
+        when(event3.getDate()).thenReturn(new Date(2L));
+
+        DocumentReference doc1 = new DocumentReference("xwiki", "Main", "WebHome");
+        when(event3.getDocument()).thenReturn(doc1);
+        DocumentReference doc2 = new DocumentReference("xwiki", "PrivateSpace", "WebHome");
+        when(event1.getDocument()).thenReturn(doc2);
+        when(event2.getDocument()).thenReturn(doc2);
+
+        when(authorizationManager.hasAccess(Right.VIEW, userReference, doc1)).thenReturn(true);
+        when(authorizationManager.hasAccess(Right.VIEW, userReference, doc2)).thenReturn(false);
+
+        Query query2 = mock(Query.class);
+        when(queryGenerator.generateQuery(eq(userReference), any(NotificationFormat.class), anyBoolean(),
+                nullable(Date.class), nullable(Date.class), nullable(List.class), any(EventCursorNode.class)))
+                .then(invocation -> {
+                    // The second batch starts after the last event of the first batch
+                    EventCursorNode cursor = invocation.getArgument(6);
+                    assertEquals(2L, cursor.getDate().getTime());
+                    assertEquals(Arrays.asList("id2"), cursor.getIds());
+                    return query2;
+                });
+
+        when(eventStream.searchEvents(query)).thenReturn(Arrays.asList(event1, event2));
+        when(eventStream.searchEvents(query2)).thenReturn(Arrays.asList(event3));
+
+        // Test
+        List<CompositeEvent> results
+                = mocker.getComponentUnderTest().getEvents("xwiki:XWiki.UserA", true, 1);
+
+        // Verify
+        assertEquals(1, results.size());
+        assertEquals(event3, results.get(0).getEvents().get(0));
+        // The second batch is bigger since all the events of the first one have been filtered
+        verify(query).setLimit(2);
+        verify(query2).setLimit(4);
+    }
+
     private Event createMockedEvent()
     {
         Event event = mock(Event.class);
@@ -174,7 +226,7 @@ public void getEventsWhenException() throws Exception
         NotificationException exception = new NotificationException("Error");
         when(queryGenerator.generateQuery(eq(userReference), any(NotificationFormat.class),
                 eq(true), isNull(),
-                isNull(), any(List.class))).thenThrow(exception);
+                isNull(), any(List.class), isNull())).thenThrow(exception);
 
         // Test
         NotificationException caughtException = null;
@@ -20,6 +20,7 @@
 package org.xwiki.notifications.sources.internal;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 
 import org.junit.Before;
@@ -278,4 +279,23 @@ public void parseWithInListOfReadEventsNode()
                 result.getQuery());
         assertEquals("xwiki:XWiki.UserA", result.getQueryParameters().get("userStatusRead"));
     }
+
+    @Test
+    public void parseWithEventCursorNode()
+    {
+        Date date = new Date(42L);
+
+        ExpressionNodeToHQLConverter.HQLQuery result =
+                parser.parse(new EventCursorNode(date, Arrays.asList("id1", "id2")));
+
+        assertEquals("event.date < :cursorDate OR (event.date = :cursorDate AND event.id NOT IN (:cursorIds))",
+                result.getQuery());
+        assertEquals(date, result.getQueryParameters().get("cursorDate"));
+        assertEquals(Arrays.asList("id1", "id2"), result.getQueryParameters().get("cursorIds"));
+
+        result = parser.parse(new EventCursorNode(date, Collections.emptyList()));
+
+        assertEquals("event.date < :cursorDate", result.getQuery());
+        assertEquals(date, result.getQueryParameters().get("cursorDate"));
+    }
 }
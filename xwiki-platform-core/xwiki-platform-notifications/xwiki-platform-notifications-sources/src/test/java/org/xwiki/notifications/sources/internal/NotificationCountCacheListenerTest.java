@@ -0,0 +1,107 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link NotificationCountCacheListener}.
+ *
+ * @version $Id$
+ */
+public class NotificationCountCacheListenerTest
+{
+    private static final LocalDocumentReference USERCLASS_REFERENCE = new LocalDocumentReference("XWiki", "XWikiUsers");
+
+    @Rule
+    public final MockitoComponentMockingRule<NotificationCountCacheListener> mocker =
+        new MockitoComponentMockingRule<>(NotificationCountCacheListener.class);
+
+    private DocumentReference documentReference = new DocumentReference("wiki", "XWiki", "UserA");
+
+    private NotificationCountCache cache;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.cache = this.mocker.getInstance(NotificationCountCache.class);
+
+        EntityReferenceSerializer<String> serializer = this.mocker.getInstance(EntityReferenceSerializer.TYPE_STRING);
+        when(serializer.serialize(this.documentReference)).thenReturn("wiki:XWiki.UserA");
+    }
+
+    private XWikiDocument mockDocument(boolean profile, boolean originalProfile)
+    {
+        XWikiDocument document = mock(XWikiDocument.class);
+        when(document.getDocumentReference()).thenReturn(this.documentReference);
+        if (profile) {
+            when(document.getXObject(USERCLASS_REFERENCE)).thenReturn(mock(BaseObject.class));
+        }
+
+        XWikiDocument originalDocument = mock(XWikiDocument.class);
+        when(document.getOriginalDocument()).thenReturn(originalDocument);
+        if (originalProfile) {
+            when(originalDocument.getXObject(USERCLASS_REFERENCE)).thenReturn(mock(BaseObject.class));
+        }
+
+        return document;
+    }
+
+    @Test
+    public void onUserProfileUpdated() throws Exception
+    {
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatedEvent(), mockDocument(true, true), null);
+
+        verify(this.cache).invalidate("wiki:XWiki.UserA");
+    }
+
+    @Test
+    public void onUserProfileDeleted() throws Exception
+    {
+        this.mocker.getComponentUnderTest().onEvent(new DocumentDeletedEvent(), mockDocument(false, true), null);
+
+        verify(this.cache).invalidate("wiki:XWiki.UserA");
+    }
+
+    @Test
+    public void onOtherDocumentUpdated() throws Exception
+    {
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatedEvent(), mockDocument(false, false), null);
+
+        verify(this.cache, never()).invalidate(any());
+    }
+}
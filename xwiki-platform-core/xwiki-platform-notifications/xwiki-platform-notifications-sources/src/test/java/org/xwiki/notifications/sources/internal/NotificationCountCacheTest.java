@@ -0,0 +1,166 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.notifications.sources.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.notifications.NotificationConfiguration;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link NotificationCountCache}.
+ *
+ * @version $Id$
+ */
+public class NotificationCountCacheTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<NotificationCountCache> mocker =
+            new MockitoComponentMockingRule<>(NotificationCountCache.class);
+
+    private Map<String, Object> cacheContent = new HashMap<>();
+
+    private NotificationCountCache countCache;
+
+    private AtomicInteger counter = new AtomicInteger();
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception
+    {
+        NotificationConfiguration configuration = mocker.getInstance(NotificationConfiguration.class);
+        when(configuration.getCountCacheSize()).thenReturn(100);
+
+        // Use a map as cache
+        Cache<Object> cache = mock(Cache.class);
+        when(cache.get(anyString())).then(invocation -> cacheContent.get(invocation.getArgument(0)));
+        doAnswer(invocation -> cacheContent.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(cache).set(anyString(), any());
+        doAnswer(invocation -> cacheContent.remove(invocation.getArgument(0))).when(cache).remove(anyString());
+        doAnswer(invocation -> {
+            cacheContent.clear();
+            return null;
+        }).when(cache).removeAll();
+        CacheManager cacheManager = mocker.getInstance(CacheManager.class);
+        when(cacheManager.createNewCache(any(CacheConfiguration.class))).thenReturn(cache);
+
+        countCache = mocker.getComponentUnderTest();
+    }
+
+    private long get(String userId, int maxCount) throws Exception
+    {
+        return countCache.get(userId, true, maxCount, () -> counter.incrementAndGet());
+    }
+
+    @Test
+    public void get() throws Exception
+    {
+        assertEquals(1, get("userA", 10));
+        assertEquals(1, get("userA", 10));
+        // Another maximum is another count
+        assertEquals(2, get("userA", 20));
+        assertEquals(3, get("userB", 10));
+        assertEquals(3, get("userB", 10));
+    }
+
+    @Test
+    public void invalidate() throws Exception
+    {
+        assertEquals(1, get("userA", 10));
+        assertEquals(2, get("userB", 10));
+
+        countCache.invalidate("userA");
+
+        assertEquals(3, get("userA", 10));
+        assertEquals(2, get("userB", 10));
+
+        countCache.invalidateAll();
+
+        assertEquals(4, get("userA", 10));
+        assertEquals(5, get("userB", 10));
+    }
+
+    @Test
+    public void invalidateNewEvent() throws Exception
+    {
+        assertEquals(1, get("userA", 10));
+        // The second count reaches the maximum
+        assertEquals(2, get("userB", 2));
+
+        countCache.invalidateNewEvent();
+
+        // Only the count which did not reach the maximum is computed again
+        assertEquals(3, get("userA", 10));
+        assertEquals(2, get("userB", 2));
+    }
+
+    @Test
+    public void getWhenInvalidatedDuringCount() throws Exception
+    {
+        assertEquals(1, countCache.get("userA", true, 10, () -> {
+            countCache.invalidate("userA");
+            return counter.incrementAndGet();
+        }));
+
+        // The count has not been cached since it might be outdated
+        assertEquals(2, get("userA", 10));
+        assertEquals(2, get("userA", 10));
+    }
+
+    @Test
+    public void getWhenOtherUserInvalidatedDuringCount() throws Exception
+    {
+        assertEquals(1, countCache.get("userA", true, 10, () -> {
+            countCache.invalidate("userB");
+            return counter.incrementAndGet();
+        }));
+
+        // The invalidation of another user does not prevent caching the count
+        assertEquals(1, get("userA", 10));
+    }
+
+    @Test
+    public void getWhenNewEventDuringCount() throws Exception
+    {
+        assertEquals(1, countCache.get("userA", true, 10, () -> {
+            countCache.invalidateNewEvent();
+            return counter.incrementAndGet();
+        }));
+
+        // The count might miss the new event
+        assertEquals(2, get("userA", 10));
+        assertEquals(2, get("userA", 10));
+    }
+}
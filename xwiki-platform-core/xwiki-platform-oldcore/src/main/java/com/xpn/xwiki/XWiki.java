@@ -182,6 +182,7 @@
 import com.xpn.xwiki.internal.XWikiCfgConfigurationSource;
 import com.xpn.xwiki.internal.XWikiConfigDelegate;
 import com.xpn.xwiki.internal.XWikiInitializerJob;
+import com.xpn.xwiki.internal.cache.rendering.FragmentDependencyRecorder;
 import com.xpn.xwiki.internal.event.XObjectPropertyAddedEvent;
 import com.xpn.xwiki.internal.event.XObjectPropertyDeletedEvent;
 import com.xpn.xwiki.internal.event.XObjectPropertyEvent;
@@ -1828,6 +1829,9 @@ public XWikiDocument getDocument(EntityReference reference, XWikiContext context
      */
     public XWikiDocument getDocument(XWikiDocument doc, XWikiContext context) throws XWikiException
     {
+        // The fragments being rendered depend on the loaded document
+        FragmentDependencyRecorder.record(doc.getDocumentReference(), context);
+
         String currentWiki = context.getWikiId();
         try {
             context.setWikiId(doc.getDocumentReference().getWikiReference().getName());
@@ -159,6 +159,7 @@
 import com.xpn.xwiki.doc.merge.MergeResult;
 import com.xpn.xwiki.doc.rcs.XWikiRCSNodeInfo;
 import com.xpn.xwiki.internal.AbstractNotifyOnUpdateList;
+import com.xpn.xwiki.internal.cache.rendering.ParsedContentCache;
 import com.xpn.xwiki.internal.cache.rendering.RenderingCache;
 import com.xpn.xwiki.internal.filter.XWikiDocumentFilterUtils;
 import com.xpn.xwiki.internal.merge.MergeUtils;
@@ -8442,10 +8443,14 @@ private XDOM parseContent(String content) throws XWikiException
      */
     private static XDOM parseContent(Syntax syntax, String content, DocumentReference source) throws XWikiException
     {
-        ContentParser parser = Utils.getComponent(ContentParser.class);
-
         try {
-            return parser.parse(content, syntax, source);
+            // Reuse the result of the parsing of the same content when possible (the parsed content cache is not
+            // available in minimal environments)
+            if (Utils.getContextComponentManager().hasComponent(ParsedContentCache.class)) {
+                return Utils.getComponent(ParsedContentCache.class).parse(content, syntax, source);
+            }
+
+            return Utils.getComponent(ContentParser.class).parse(content, syntax, source);
         } catch (MissingParserException e) {
             throw new XWikiException(XWikiException.MODULE_XWIKI_RENDERING, XWikiException.ERROR_XWIKI_UNKNOWN,
                 "Failed to find a parser for syntax [" + syntax.toIdString() + "]", e);
@@ -0,0 +1,305 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.cache.rendering;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.bridge.event.WikiDeletedEvent;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.DisposableCacheValue;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Default implementation of {@link FragmentCache}.
+ * <p>
+ * Object and class modifications are always saved with their document so listening to the document events is enough
+ * to invalidate the fragments which used them. The rights checked while rendering a fragment are not recorded so all
+ * the fragments are removed when a document holding rights or group members is modified. Rights and groups coming
+ * from elsewhere (e.g. an LDAP server) are not taken into account before the lifespan of the fragment.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Component
+@Singleton
+public class DefaultFragmentCache implements FragmentCache, Initializable
+{
+    private static final String SIZE_PROPERTY = "core.fragmentcache.size";
+
+    private static final char KEY_SEPARATOR = '/';
+
+    /**
+     * The classes of the objects which can change the rights of the users.
+     */
+    private static final List<LocalDocumentReference> RIGHTS_CLASSES =
+        Arrays.asList(new LocalDocumentReference(XWiki.SYSTEM_SPACE, "XWikiRights"),
+            new LocalDocumentReference(XWiki.SYSTEM_SPACE, "XWikiGlobalRights"),
+            new LocalDocumentReference(XWiki.SYSTEM_SPACE, "XWikiGroups"));
+
+    /**
+     * A cached fragment.
+     */
+    private class CachedFragment implements DisposableCacheValue
+    {
+        private final String key;
+
+        private final Object result;
+
+        private final Set<DocumentReference> dependencies;
+
+        private final long expirationDate;
+
+        CachedFragment(String key, Object result, Set<DocumentReference> dependencies, int lifespan)
+        {
+            this.key = key;
+            this.result = result;
+            this.dependencies = dependencies;
+            this.expirationDate =
+                lifespan > 0 ? System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(lifespan) : Long.MAX_VALUE;
+        }
+
+        boolean isExpired()
+        {
+            return System.currentTimeMillis() > this.expirationDate;
+        }
+
+        @Override
+        public void dispose()
+        {
+            for (DocumentReference dependency : this.dependencies) {
+                fragmentsByDependency.computeIfPresent(dependency, (documentReference, fragments) -> {
+                    fragments.remove(this);
+
+                    return fragments.isEmpty() ? null : fragments;
+                });
+            }
+        }
+    }
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private ObservationManager observation;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    private Cache<CachedFragment> cache;
+
+    /**
+     * The cached fragments indexed by the documents they depend on. The sets are only modified atomically with the
+     * map entry holding them.
+     */
+    private final ConcurrentMap<DocumentReference, Set<CachedFragment>> fragmentsByDependency =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on each invalidation so that a fragment rendered while one of its dependencies was modified is not
+     * cached.
+     */
+    private final AtomicLong invalidationVersion = new AtomicLong();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        int size = this.configuration.getProperty(SIZE_PROPERTY, 1000);
+        if (size <= 0) {
+            return;
+        }
+
+        try {
+            this.cache = this.cacheManager.createNewCache(new LRUCacheConfiguration("core.fragmentcache", size));
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to initialize the fragment cache", e);
+        }
+
+        this.observation.addListener(new AbstractEventListener("core.fragmentcache.documents",
+            new DocumentCreatedEvent(), new DocumentUpdatedEvent(), new DocumentDeletedEvent())
+        {
+            @Override
+            public void onEvent(Event event, Object source, Object data)
+            {
+                XWikiDocument document = (XWikiDocument) source;
+                if (hasRightsObjects(document) || hasRightsObjects(document.getOriginalDocument())) {
+                    flushAll();
+                } else {
+                    flush(document.getDocumentReference());
+                }
+            }
+        });
+        this.observation.addListener(new AbstractEventListener("core.fragmentcache.wikis", new WikiDeletedEvent())
+        {
+            @Override
+            public void onEvent(Event event, Object source, Object data)
+            {
+                flushAll();
+            }
+        });
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, E extends Exception> T get(String key, int lifespan, FragmentRenderer<T, E> renderer) throws E
+    {
+        if (this.cache == null) {
+            return renderer.render();
+        }
+
+        XWikiContext xcontext = this.xcontextProvider.get();
+        String cacheKey = getCacheKey(key, xcontext);
+
+        CachedFragment fragment = this.cache.get(cacheKey);
+        if (fragment != null && !fragment.isExpired()) {
+            // The enclosing fragments depend on the same documents
+            FragmentDependencyRecorder.record(fragment.dependencies, xcontext);
+
+            return (T) fragment.result;
+        }
+
+        long version = this.invalidationVersion.get();
+
+        T result;
+        Set<DocumentReference> dependencies;
+        FragmentDependencyRecorder.start(xcontext);
+        try {
+            result = renderer.render();
+        } finally {
+            dependencies = FragmentDependencyRecorder.stop(xcontext);
+        }
+
+        if (result != null && version == this.invalidationVersion.get()) {
+            set(new CachedFragment(cacheKey, result, new HashSet<>(dependencies), lifespan));
+
+            // The fragment might have been cached after being invalidated
+            if (version != this.invalidationVersion.get()) {
+                this.cache.remove(cacheKey);
+            }
+        }
+
+        return result;
+    }
+
+    private void set(CachedFragment fragment)
+    {
+        this.cache.set(fragment.key, fragment);
+
+        for (DocumentReference dependency : fragment.dependencies) {
+            this.fragmentsByDependency.compute(dependency, (documentReference, fragments) -> {
+                Set<CachedFragment> newFragments = fragments != null ? fragments : new HashSet<>();
+                newFragments.add(fragment);
+
+                return newFragments;
+            });
+        }
+    }
+
+    private boolean hasRightsObjects(XWikiDocument document)
+    {
+        if (document != null) {
+            WikiReference wikiReference = document.getDocumentReference().getWikiReference();
+            for (LocalDocumentReference rightsClass : RIGHTS_CLASSES) {
+                List<BaseObject> objects = document.getXObjects(new DocumentReference(rightsClass, wikiReference));
+                if (objects != null && !objects.isEmpty()) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private String getCacheKey(String key, XWikiContext xcontext)
+    {
+        StringBuilder cacheKey = new StringBuilder();
+
+        cacheKey.append(xcontext.getWikiId());
+        cacheKey.append(KEY_SEPARATOR);
+        cacheKey.append(xcontext.getUserReference());
+        cacheKey.append(KEY_SEPARATOR);
+        cacheKey.append(xcontext.getLocale());
+        cacheKey.append(KEY_SEPARATOR);
+        cacheKey.append(key);
+
+        return cacheKey.toString();
+    }
+
+    @Override
+    public void flush(DocumentReference documentReference)
+    {
+        if (this.cache != null) {
+            this.invalidationVersion.incrementAndGet();
+
+            Set<CachedFragment> fragments = this.fragmentsByDependency.remove(documentReference);
+            if (fragments != null) {
+                for (CachedFragment fragment : fragments) {
+                    this.cache.remove(fragment.key);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void flushAll()
+    {
+        if (this.cache != null) {
+            this.invalidationVersion.incrementAndGet();
+
+            this.cache.removeAll();
+            this.fragmentsByDependency.clear();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.cache.rendering;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.model.reference.DocumentReference;
+
+/**
+ * Cache the result of the rendering of a fragment (the content of a macro, a part of a template, etc.) until one of
+ * the documents read while rendering it is modified.
+ * <p>
+ * The documents loaded with {@link com.xpn.xwiki.XWiki#getDocument(com.xpn.xwiki.doc.XWikiDocument,
+ * com.xpn.xwiki.XWikiContext)} while rendering a fragment (including the documents holding the objects and the classes
+ * it used) are recorded as the dependencies of the fragment. The documents found with a query but not loaded are not
+ * dependencies, so a fragment listing documents should also have a lifespan.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Role
+public interface FragmentCache
+{
+    /**
+     * Renders a fragment.
+     *
+     * @param <T> the type of the result
+     * @param <E> the type of the exception thrown when the rendering fails
+     * @version $Id$
+     * @since 10.1RC1
+     */
+    @FunctionalInterface
+    interface FragmentRenderer<T, E extends Exception>
+    {
+        /**
+         * @return the result of the rendering
+         * @throws E when failing to render the fragment
+         */
+        T render() throws E;
+    }
+
+    /**
+     * Return the cached result of the fragment, or render it and cache the result with the documents read during the
+     * rendering. A result is cached only for the current wiki, user and locale.
+     * <p>
+     * The same result instance is returned to all the callers so it must not be modified: prefer immutable results
+     * (e.g. a {@code String}) or copy the result before modifying it. A result rendered while one of the documents it
+     * depends on is being modified is returned but not cached.
+     *
+     * @param <T> the type of the result
+     * @param <E> the type of the exception thrown when the rendering fails
+     * @param key the identifier of the fragment
+     * @param lifespan the maximum number of seconds to keep the result in the cache, 0 for no limit
+     * @param renderer called to render the fragment when it's not cached
+     * @return the result of the rendering of the fragment
+     * @throws E when failing to render the fragment
+     */
+    <T, E extends Exception> T get(String key, int lifespan, FragmentRenderer<T, E> renderer) throws E;
+
+    /**
+     * Remove the fragments which depend on the passed document.
+     *
+     * @param documentReference the reference of the document
+     */
+    void flush(DocumentReference documentReference);
+
+    /**
+     * Remove all the fragments.
+     */
+    void flushAll();
+}
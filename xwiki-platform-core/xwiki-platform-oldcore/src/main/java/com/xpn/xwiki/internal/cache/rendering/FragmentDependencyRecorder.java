@@ -0,0 +1,116 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.cache.rendering;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * Record the documents read while rendering fragments. The recordings are stored in the {@link XWikiContext} and can
+ * be nested: the dependencies of a fragment are also dependencies of the fragments containing it.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+public final class FragmentDependencyRecorder
+{
+    private static final String CONTEXT_KEY = "fragmentcache.recordings";
+
+    private FragmentDependencyRecorder()
+    {
+        // Utility class
+    }
+
+    /**
+     * Start recording the dependencies of a fragment.
+     *
+     * @param context the XWiki context
+     */
+    public static void start(XWikiContext context)
+    {
+        Deque<Set<DocumentReference>> recordings = getRecordings(context);
+        if (recordings == null) {
+            recordings = new ArrayDeque<>();
+            context.put(CONTEXT_KEY, recordings);
+        }
+
+        recordings.push(new HashSet<>());
+    }
+
+    /**
+     * Stop recording the dependencies of the current fragment and add them to the enclosing fragment.
+     *
+     * @param context the XWiki context
+     * @return the documents read since the matching call to {@link #start(XWikiContext)}
+     */
+    public static Set<DocumentReference> stop(XWikiContext context)
+    {
+        Deque<Set<DocumentReference>> recordings = getRecordings(context);
+        Set<DocumentReference> dependencies = recordings.pop();
+        if (recordings.isEmpty()) {
+            context.remove(CONTEXT_KEY);
+        } else {
+            recordings.peek().addAll(dependencies);
+        }
+
+        return dependencies;
+    }
+
+    /**
+     * Record that a document has been read.
+     *
+     * @param documentReference the reference of the document (without locale)
+     * @param context the XWiki context
+     */
+    public static void record(DocumentReference documentReference, XWikiContext context)
+    {
+        Deque<Set<DocumentReference>> recordings = getRecordings(context);
+        if (recordings != null) {
+            recordings.peek().add(documentReference);
+        }
+    }
+
+    /**
+     * Record that several documents have been read (e.g. the dependencies of a cached fragment).
+     *
+     * @param documentReferences the references of the documents (without locale)
+     * @param context the XWiki context
+     */
+    public static void record(Collection<DocumentReference> documentReferences, XWikiContext context)
+    {
+        Deque<Set<DocumentReference>> recordings = getRecordings(context);
+        if (recordings != null) {
+            recordings.peek().addAll(documentReferences);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Deque<Set<DocumentReference>> getRecordings(XWikiContext context)
+    {
+        return context != null ? (Deque<Set<DocumentReference>>) context.get(CONTEXT_KEY) : null;
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.cache.rendering;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.binary.Hex;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.MacroBlock;
+import org.xwiki.rendering.block.MacroMarkerBlock;
+import org.xwiki.rendering.block.RawBlock;
+import org.xwiki.rendering.block.VerbatimBlock;
+import org.xwiki.rendering.block.WordBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.listener.MetaData;
+import org.xwiki.rendering.parser.ContentParser;
+import org.xwiki.rendering.parser.MissingParserException;
+import org.xwiki.rendering.parser.ParseException;
+import org.xwiki.rendering.syntax.Syntax;
+
+/**
+ * Share the result of the parsing of a content between all the documents and templates having the same content and
+ * syntax, so that the same content is not parsed again each time it's rendered.
+ * <p>
+ * The cached {@link XDOM}s are never returned: a clone is returned instead so that it can be transformed. The size in
+ * memory of each cached {@link XDOM} is estimated from its blocks and the least recently used entries are removed as
+ * soon as the sum of these sizes exceeds the configured memory budget. The {@link org.xwiki.cache.Cache} API only
+ * bounds the number of entries so the entries are kept in a local LRU map instead.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Component(roles = ParsedContentCache.class)
+@Singleton
+public class ParsedContentCache implements Initializable
+{
+    private static final String PREFIX = "core.parsedcontentcache.";
+
+    /**
+     * Estimated size of a block without its strings: object header, parent, children list and parameters map.
+     */
+    private static final long BLOCK_SIZE = 120;
+
+    /**
+     * Estimated size of a string without its characters.
+     */
+    private static final long STRING_SIZE = 40;
+
+    /**
+     * Estimated size of an entry of a parameters map without its key and value.
+     */
+    private static final long PARAMETER_SIZE = 48;
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private ContentParser parser;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    private Map<String, CachedXDOM> cache;
+
+    private int maxEntries;
+
+    private long maxMemory;
+
+    private long memory;
+
+    private int maxContentLength;
+
+    private static final class CachedXDOM
+    {
+        private final XDOM xdom;
+
+        private final long size;
+
+        CachedXDOM(XDOM xdom, long size)
+        {
+            this.xdom = xdom;
+            this.size = size;
+        }
+    }
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.maxEntries = this.configuration.getProperty(PREFIX + "size", 500);
+        this.maxMemory = this.configuration.getProperty(PREFIX + "maxMemory", 32) * MEGABYTE;
+        if (this.maxEntries <= 0 || this.maxMemory <= 0) {
+            return;
+        }
+
+        this.maxContentLength = this.configuration.getProperty(PREFIX + "maxContentLength", 100000);
+
+        this.cache = new LinkedHashMap<>(16, 0.75F, true);
+    }
+
+    /**
+     * Same as {@link ContentParser#parse(String, Syntax, EntityReference)} but the result of the parsing is cached.
+     *
+     * @param content the content to parse
+     * @param syntax the syntax of the content
+     * @param source the reference of the entity containing the content, can be {@code null}
+     * @return the result of the parsing, which can be freely modified
+     * @throws ParseException when failing to parse the content
+     * @throws MissingParserException when no parser can be found for the syntax
+     */
+    public XDOM parse(String content, Syntax syntax, EntityReference source)
+        throws ParseException, MissingParserException
+    {
+        if (this.cache == null || content == null || content.length() > this.maxContentLength) {
+            return this.parser.parse(content, syntax, source);
+        }
+
+        String key = getKey(content, syntax);
+        XDOM cachedXDOM = get(key);
+        if (cachedXDOM == null) {
+            cachedXDOM = this.parser.parse(content, syntax);
+            set(key, cachedXDOM);
+        }
+
+        XDOM clone = cachedXDOM.clone();
+
+        // Don't share the metadata of the cached XDOM, it's specific to the source of the content
+        MetaData metaData = new MetaData(cachedXDOM.getMetaData().getMetaData());
+        if (source != null) {
+            metaData.addMetaData(MetaData.SOURCE, this.serializer.serialize(source));
+        }
+
+        return new XDOM(clone.getChildren(), clone.getIdGenerator(), metaData);
+    }
+
+    /**
+     * @return the estimated size in bytes of the cached {@link XDOM}s
+     */
+    public synchronized long getMemory()
+    {
+        return this.memory;
+    }
+
+    private synchronized XDOM get(String key)
+    {
+        CachedXDOM entry = this.cache.get(key);
+
+        return entry != null ? entry.xdom : null;
+    }
+
+    private synchronized void set(String key, XDOM xdom)
+    {
+        long size = getSize(xdom);
+        if (size > this.maxMemory) {
+            // Caching it would remove all the other entries
+            return;
+        }
+
+        CachedXDOM previous = this.cache.put(key, new CachedXDOM(xdom, size));
+        if (previous != null) {
+            this.memory -= previous.size;
+        }
+        this.memory += size;
+
+        // Remove the least recently used entries
+        Iterator<CachedXDOM> iterator = this.cache.values().iterator();
+        while (this.memory > this.maxMemory || this.cache.size() > this.maxEntries) {
+            this.memory -= iterator.next().size;
+            iterator.remove();
+        }
+    }
+
+    private long getSize(Block block)
+    {
+        long size = BLOCK_SIZE;
+
+        for (Map.Entry<String, String> parameter : block.getParameters().entrySet()) {
+            size += PARAMETER_SIZE + getSize(parameter.getKey()) + getSize(parameter.getValue());
+        }
+
+        if (block instanceof WordBlock) {
+            size += getSize(((WordBlock) block).getWord());
+        } else if (block instanceof RawBlock) {
+            size += getSize(((RawBlock) block).getRawContent());
+        } else if (block instanceof VerbatimBlock) {
+            size += getSize(((VerbatimBlock) block).getProtectedString());
+        } else if (block instanceof MacroBlock) {
+            size += getSize(((MacroBlock) block).getId()) + getSize(((MacroBlock) block).getContent());
+        } else if (block instanceof MacroMarkerBlock) {
+            size += getSize(((MacroMarkerBlock) block).getId()) + getSize(((MacroMarkerBlock) block).getContent());
+        }
+
+        for (Block child : block.getChildren()) {
+            size += getSize(child);
+        }
+
+        return size;
+    }
+
+    private long getSize(String value)
+    {
+        return value != null ? STRING_SIZE + 2L * value.length() : 0;
+    }
+
+    private String getKey(String content, Syntax syntax)
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Should never happen, SHA-256 is supported by all the JVMs
+            throw new RuntimeException("Failed to get a SHA-256 message digest", e);
+        }
+
+        StringBuilder key = new StringBuilder(syntax.toIdString());
+        key.append('/');
+        key.append(content.length());
+        key.append('/');
+        key.append(Hex.encodeHexString(digest.digest(content.getBytes(StandardCharsets.UTF_8))));
+
+        return key.toString();
+    }
+}
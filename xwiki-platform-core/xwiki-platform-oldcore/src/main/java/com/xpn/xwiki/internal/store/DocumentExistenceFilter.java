@@ -0,0 +1,354 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.store;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
+
+/**
+ * Keep, for each wiki, a compact probabilistic index (a Bloom filter) of the identifiers of the existing documents. It
+ * allows to know for sure that a document does not exist without asking the database.
+ * <p>
+ * The index of a wiki is built in background the first time it's needed, from the {@code xwikidoc} table. Until it's
+ * ready every document is considered as potentially existing. Since a Bloom filter cannot forget a value, the index is
+ * rebuilt when too many documents have been deleted or too many documents have been added since it was built.
+ * <p>
+ * The documents created by other cluster members are only added to the index when the corresponding remote event is
+ * received. So that the documents created while a filter is being built are not missed because their event was
+ * received late, the negative answers of a filter are not trusted (i.e. the database is asked) during a grace period
+ * after it has been built.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Component(roles = DocumentExistenceFilter.class)
+@Singleton
+public class DocumentExistenceFilter implements Initializable, Disposable
+{
+    private static final String PROPERTY_PREFIX = "xwiki.store.cache.pageexistfilter";
+
+    /**
+     * The minimum number of documents a filter is sized for.
+     */
+    private static final int MIN_CAPACITY = 10000;
+
+    /**
+     * The number of document identifiers to load in each query when building a filter.
+     */
+    private static final int BATCH_SIZE = 10000;
+
+    /**
+     * The default number of seconds during which a new filter does not answer that a document does not exist.
+     */
+    private static final long DEFAULT_GRACE_PERIOD = 60L;
+
+    @Inject
+    @Named("xwikicfg")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    private Logger logger;
+
+    private final ConcurrentMap<String, WikiFilter> filters = new ConcurrentHashMap<>();
+
+    private ExecutorService executor;
+
+    private boolean enabled;
+
+    private double falsePositiveProbability;
+
+    private long gracePeriod;
+
+    /**
+     * The filter of a wiki.
+     */
+    private static final class WikiFilter
+    {
+        /**
+         * The filter used to answer the requests, {@code null} until the first build is finished.
+         */
+        private volatile LongBloomFilter current;
+
+        /**
+         * The filter being built, {@code null} when no build is running.
+         */
+        private volatile LongBloomFilter next;
+
+        /**
+         * The date after which the negative answers of the current filter can be trusted.
+         */
+        private volatile long trustedSince;
+
+        /**
+         * The documents added while a build is running but before the filter being built is created.
+         */
+        private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+
+        private final AtomicBoolean building = new AtomicBoolean();
+
+        private final AtomicInteger deletions = new AtomicInteger();
+    }
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.enabled = "1".equals(this.configuration.getProperty(PROPERTY_PREFIX, "1"));
+        this.falsePositiveProbability = this.configuration.getProperty(PROPERTY_PREFIX + ".fpp", 0.01D);
+        this.gracePeriod = TimeUnit.SECONDS
+            .toMillis(this.configuration.getProperty(PROPERTY_PREFIX + ".graceperiod", DEFAULT_GRACE_PERIOD));
+
+        BasicThreadFactory factory = new BasicThreadFactory.Builder().namingPattern("XWiki document existence filter")
+            .daemon(true).priority(Thread.MIN_PRIORITY).build();
+        this.executor = Executors.newSingleThreadExecutor(factory);
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * @param wiki the wiki where the document is located
+     * @param documentId the identifier of the document (see {@link com.xpn.xwiki.doc.XWikiDocument#getId()})
+     * @return {@code false} if the document does not exist for sure, {@code true} if it might exist
+     */
+    public boolean mightExist(String wiki, long documentId)
+    {
+        if (!this.enabled) {
+            return true;
+        }
+
+        WikiFilter wikiFilter = getWikiFilter(wiki);
+        LongBloomFilter filter = wikiFilter.current;
+
+        return filter == null || System.currentTimeMillis() < wikiFilter.trustedSince
+            || filter.mightContain(documentId);
+    }
+
+    /**
+     * @param wiki the wiki
+     * @return {@code true} if the filter of the passed wiki has been built
+     */
+    public boolean isBuilt(String wiki)
+    {
+        WikiFilter wikiFilter = this.filters.get(wiki);
+
+        return wikiFilter != null && wikiFilter.current != null;
+    }
+
+    /**
+     * Indicate that a document exists. Must be called both before the document is saved and after it's saved to make
+     * sure that the index is never missing the document, even when it's being rebuilt.
+     *
+     * @param wiki the wiki where the document is located
+     * @param documentId the identifier of the document
+     */
+    public void add(String wiki, long documentId)
+    {
+        if (!this.enabled) {
+            return;
+        }
+
+        WikiFilter wikiFilter = getWikiFilter(wiki);
+
+        // Make sure to read the filter being built first since it becomes the current filter before being reset
+        LongBloomFilter next = wikiFilter.next;
+        if (next != null) {
+            next.put(documentId);
+        } else if (wikiFilter.building.get()) {
+            // The filter being built is not created yet
+            wikiFilter.pending.add(documentId);
+        }
+
+        LongBloomFilter current = wikiFilter.current;
+        if (current != null && current != next) {
+            current.put(documentId);
+
+            if (current.isSaturated()) {
+                rebuild(wiki);
+            }
+        }
+    }
+
+    /**
+     * Indicate that a document has been deleted.
+     *
+     * @param wiki the wiki where the document was located
+     */
+    public void onDeleted(String wiki)
+    {
+        if (!this.enabled) {
+            return;
+        }
+
+        WikiFilter wikiFilter = this.filters.get(wiki);
+        if (wikiFilter != null) {
+            LongBloomFilter current = wikiFilter.current;
+
+            // Deleted documents are still in the filter and make it less efficient
+            if (current != null && wikiFilter.deletions.incrementAndGet() > current.getExpectedInsertions() / 4) {
+                rebuild(wiki);
+            }
+        }
+    }
+
+    /**
+     * Forget the filter of a wiki (for example when the wiki is deleted).
+     *
+     * @param wiki the wiki
+     */
+    public void remove(String wiki)
+    {
+        this.filters.remove(wiki);
+    }
+
+    /**
+     * Rebuild the index of the passed wiki in background. The current index is used until the new one is ready.
+     *
+     * @param wiki the wiki
+     */
+    public void rebuild(String wiki)
+    {
+        if (this.enabled) {
+            rebuild(wiki, getWikiFilter(wiki));
+        }
+    }
+
+    private WikiFilter getWikiFilter(String wiki)
+    {
+        WikiFilter wikiFilter = this.filters.get(wiki);
+
+        if (wikiFilter == null) {
+            wikiFilter = new WikiFilter();
+            WikiFilter existingFilter = this.filters.putIfAbsent(wiki, wikiFilter);
+            if (existingFilter != null) {
+                wikiFilter = existingFilter;
+            } else {
+                rebuild(wiki, wikiFilter);
+            }
+        }
+
+        return wikiFilter;
+    }
+
+    private void rebuild(String wiki, WikiFilter wikiFilter)
+    {
+        if (wikiFilter.building.compareAndSet(false, true)) {
+            this.executor.execute(new AbstractXWikiRunnable()
+            {
+                @Override
+                protected void runInternal()
+                {
+                    try {
+                        build(wiki, wikiFilter);
+                    } catch (Exception e) {
+                        logger.warn("Failed to build the document existence filter of wiki [{}]: {}", wiki,
+                            e.getMessage());
+                    } finally {
+                        wikiFilter.next = null;
+                        wikiFilter.pending.clear();
+                        wikiFilter.building.set(false);
+                    }
+                }
+            });
+        }
+    }
+
+    private void build(String wiki, WikiFilter wikiFilter) throws QueryException
+    {
+        long startTime = System.currentTimeMillis();
+
+        Query countQuery = this.queryManager.createQuery("select count(doc.id) from XWikiDocument doc", Query.HQL);
+        countQuery.setWiki(wiki);
+        int count = ((Number) countQuery.<Object>execute().get(0)).intValue();
+
+        // Leave room for the documents which are going to be created
+        LongBloomFilter filter = new LongBloomFilter(Math.max(MIN_CAPACITY, count * 2), this.falsePositiveProbability);
+
+        // Documents saved from now on are added to the new filter too
+        wikiFilter.next = filter;
+        addPending(wikiFilter, filter);
+
+        Query query = this.queryManager
+            .createQuery("select doc.id from XWikiDocument doc where doc.id > :lastId order by doc.id", Query.HQL);
+        query.setWiki(wiki);
+        query.setLimit(BATCH_SIZE);
+
+        long lastId = Long.MIN_VALUE;
+        List<Long> ids;
+        do {
+            query.bindValue("lastId", lastId);
+            ids = query.execute();
+
+            for (Long id : ids) {
+                filter.put(id);
+            }
+
+            if (!ids.isEmpty()) {
+                lastId = ids.get(ids.size() - 1);
+            }
+        } while (ids.size() == BATCH_SIZE);
+
+        addPending(wikiFilter, filter);
+
+        wikiFilter.trustedSince = System.currentTimeMillis() + this.gracePeriod;
+        wikiFilter.current = filter;
+        wikiFilter.deletions.set(0);
+
+        this.logger.debug("Built the document existence filter of wiki [{}] with [{}] documents in [{}] ms", wiki,
+            count, System.currentTimeMillis() - startTime);
+    }
+
+    private void addPending(WikiFilter wikiFilter, LongBloomFilter filter)
+    {
+        for (Long documentId : wikiFilter.pending) {
+            filter.put(documentId);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.store;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.WikiDeletedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Keep the {@link DocumentExistenceFilter} up to date with local and remote document creations and deletions.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Component
+@Named(DocumentExistenceFilterListener.NAME)
+@Singleton
+public class DocumentExistenceFilterListener extends AbstractEventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "com.xpn.xwiki.internal.store.DocumentExistenceFilterListener";
+
+    @Inject
+    private DocumentExistenceFilter filter;
+
+    /**
+     * Default constructor.
+     */
+    public DocumentExistenceFilterListener()
+    {
+        super(NAME, new DocumentCreatedEvent(), new DocumentDeletedEvent(), new WikiDeletedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (event instanceof WikiDeletedEvent) {
+            this.filter.remove(((WikiDeletedEvent) event).getWikiId());
+        } else {
+            XWikiDocument document = (XWikiDocument) source;
+            String wiki = document.getDocumentReference().getWikiReference().getName();
+
+            if (event instanceof DocumentCreatedEvent) {
+                this.filter.add(wiki, document.getId());
+            } else {
+                this.filter.onDeleted(wiki);
+            }
+        }
+    }
+}
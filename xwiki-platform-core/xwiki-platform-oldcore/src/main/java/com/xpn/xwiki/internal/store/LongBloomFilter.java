@@ -0,0 +1,158 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.store;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A minimal thread safe Bloom filter of {@code long} values (typically document identifiers). It can tell for sure that
+ * a value was never added but can only tell that a value might have been added.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+class LongBloomFilter
+{
+    private static final int BITS_PER_WORD = 64;
+
+    /**
+     * Used to get a second hash independent from the first one.
+     */
+    private static final long SEED = 0x9e3779b97f4a7c15L;
+
+    private final AtomicLongArray words;
+
+    private final long bitCount;
+
+    private final int hashCount;
+
+    private final int expectedInsertions;
+
+    private final AtomicInteger insertions = new AtomicInteger();
+
+    /**
+     * @param expectedInsertions the number of values expected to be added to the filter
+     * @param falsePositiveProbability the expected probability for {@link #mightContain(long)} to return {@code true}
+     *            for a value which was never added (when no more than {@code expectedInsertions} values are added)
+     */
+    LongBloomFilter(int expectedInsertions, double falsePositiveProbability)
+    {
+        this.expectedInsertions = Math.max(1, expectedInsertions);
+
+        // Optimal number of bits: -n*ln(p)/(ln(2)^2)
+        long optimalBitCount = (long) Math.ceil(
+            -this.expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        int wordCount = (int) Math.min(Integer.MAX_VALUE, Math.max(1, (optimalBitCount + BITS_PER_WORD - 1)
+            / BITS_PER_WORD));
+
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount * BITS_PER_WORD;
+
+        // Optimal number of hash functions: m/n*ln(2)
+        this.hashCount =
+            Math.max(1, (int) Math.round((double) this.bitCount / this.expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * @param value the value to add
+     */
+    void put(long value)
+    {
+        long hash1 = mix(value);
+        long hash2 = mix(value ^ SEED) | 1;
+
+        for (int i = 0; i < this.hashCount; ++i) {
+            setBit(((hash1 + i * hash2) & Long.MAX_VALUE) % this.bitCount);
+        }
+
+        this.insertions.incrementAndGet();
+    }
+
+    /**
+     * @param value the value to check
+     * @return {@code false} if the value was never added to the filter, {@code true} if it might have been added
+     */
+    boolean mightContain(long value)
+    {
+        long hash1 = mix(value);
+        long hash2 = mix(value ^ SEED) | 1;
+
+        for (int i = 0; i < this.hashCount; ++i) {
+            if (!getBit(((hash1 + i * hash2) & Long.MAX_VALUE) % this.bitCount)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return {@code true} if more values than expected were added to the filter, which means the false positive
+     *         probability is higher than the requested one
+     */
+    boolean isSaturated()
+    {
+        return this.insertions.get() > this.expectedInsertions;
+    }
+
+    /**
+     * @return the number of values expected to be added to the filter
+     */
+    int getExpectedInsertions()
+    {
+        return this.expectedInsertions;
+    }
+
+    private void setBit(long index)
+    {
+        int wordIndex = (int) (index / BITS_PER_WORD);
+        long mask = 1L << (index % BITS_PER_WORD);
+
+        long word;
+        do {
+            word = this.words.get(wordIndex);
+            if ((word & mask) != 0) {
+                return;
+            }
+        } while (!this.words.compareAndSet(wordIndex, word, word | mask));
+    }
+
+    private boolean getBit(long index)
+    {
+        return (this.words.get((int) (index / BITS_PER_WORD)) & (1L << (index % BITS_PER_WORD))) != 0;
+    }
+
+    /**
+     * MurmurHash3 64 bits finalizer, spreads the bits of the passed value.
+     */
+    private static long mix(long value)
+    {
+        long hash = value;
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+}
@@ -68,7 +68,6 @@
 import org.xwiki.rendering.block.WordBlock;
 import org.xwiki.rendering.block.XDOM;
 import org.xwiki.rendering.internal.transformation.MutableRenderingContext;
-import org.xwiki.rendering.parser.ContentParser;
 import org.xwiki.rendering.renderer.BlockRenderer;
 import org.xwiki.rendering.renderer.printer.WikiPrinter;
 import org.xwiki.rendering.renderer.printer.WriterWikiPrinter;
@@ -85,6 +84,7 @@
 import org.xwiki.velocity.VelocityManager;
 
 import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.internal.cache.rendering.ParsedContentCache;
 import com.xpn.xwiki.internal.skin.AbstractEnvironmentResource;
 import com.xpn.xwiki.internal.skin.InternalSkinManager;
 import com.xpn.xwiki.internal.skin.WikiResource;
@@ -112,7 +112,7 @@
     private Environment environment;
 
     @Inject
-    private ContentParser parser;
+    private ParsedContentCache parser;
 
     @Inject
     private VelocityManager velocityManager;
@@ -579,7 +579,7 @@ private XDOM getXDOM(Template template, TemplateContent content) throws Exceptio
         XDOM xdom;
 
         if (content.getSourceSyntax() != null) {
-            xdom = this.parser.parse(content.getContent(), content.getSourceSyntax());
+            xdom = this.parser.parse(content.getContent(), content.getSourceSyntax(), null);
         } else {
             String result = evaluateContent(template, content);
             xdom = new XDOM(Arrays.asList(new RawBlock(result,
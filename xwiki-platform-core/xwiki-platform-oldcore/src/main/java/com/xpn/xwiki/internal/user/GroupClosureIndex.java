@@ -0,0 +1,502 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.user;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.user.api.XWikiRightService;
+import com.xpn.xwiki.user.impl.xwiki.XWikiGroupServiceImpl;
+
+/**
+ * Keep, for each wiki, an in-memory index of the group memberships declared by the {@code XWiki.XWikiGroups} objects
+ * of the wiki and of the transitive closure of these memberships.
+ * <p>
+ * The memberships of a wiki are loaded with a single query the first time the wiki is needed and are then kept up to
+ * date, group by group, with {@link #updateGroup(XWikiDocument)}. Users and groups are stored as {@code int}
+ * identifiers local to each wiki and the groups of a member as sorted {@code int} arrays, so that the index stays
+ * compact even for wikis with tens of thousands of users. The transitive groups of a member are computed when first
+ * requested and forgotten when a membership of the wiki is modified.
+ * <p>
+ * The members are matched like {@link XWikiGroupServiceImpl} does: a member of the wiki can be stored with its full
+ * name, with its name without the wiki or with only its page name, and the names are compared without taking the case
+ * into account.
+ * <p>
+ * Only the memberships declared in a given wiki are resolved: the groups a member has in another wiki (e.g. the
+ * global groups of a global user) have to be asked to the index of that other wiki.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Component(roles = GroupClosureIndex.class)
+@Singleton
+public class GroupClosureIndex implements Initializable
+{
+    private static final String PROPERTY_MEMBER = "member";
+
+    private static final String XWIKI_SPACE = "XWiki";
+
+    private static final String GROUP_MEMBERS_QUERY = "select distinct doc.fullName, prop.value "
+        + "from XWikiDocument as doc, BaseObject as obj, StringProperty as prop "
+        + "where obj.name = doc.fullName and obj.className = 'XWiki.XWikiGroups' "
+        + "and obj.id = prop.id.id and prop.id.name = 'member'";
+
+    private static final int[] EMPTY = new int[0];
+
+    private static final String[] EMPTY_MEMBERS = new String[0];
+
+    @Inject
+    @Named("xwikicfg")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    @Named("local")
+    private EntityReferenceSerializer<String> localSerializer;
+
+    @Inject
+    @Named("current")
+    private DocumentReferenceResolver<String> currentResolver;
+
+    private final ConcurrentMap<String, WikiIndex> indexes = new ConcurrentHashMap<>();
+
+    private boolean enabled;
+
+    private boolean allGroupImplicit;
+
+    /**
+     * The memberships of a wiki. All the accesses are synchronized on the instance.
+     */
+    private static final class WikiIndex
+    {
+        private final WikiReference wiki;
+
+        private final DocumentReference allGroup;
+
+        /**
+         * The identifiers of the groups of the wiki.
+         */
+        private final Map<DocumentReference, Integer> ids = new HashMap<>();
+
+        private final List<DocumentReference> references = new ArrayList<>();
+
+        /**
+         * The normalized names of the direct members of each group of the wiki, sorted.
+         */
+        private final Map<Integer, String[]> groupMembers = new HashMap<>();
+
+        /**
+         * The groups of the wiki each normalized member name is directly a member of.
+         */
+        private final Map<String, int[]> memberGroups = new HashMap<>();
+
+        /**
+         * The already computed transitive groups of the users and groups.
+         */
+        private final Map<DocumentReference, int[]> closures = new HashMap<>();
+
+        private boolean loaded;
+
+        WikiIndex(WikiReference wiki)
+        {
+            this.wiki = wiki;
+            this.allGroup = new DocumentReference(wiki.getName(), XWIKI_SPACE, XWikiRightService.ALLGROUP_GROUP);
+        }
+
+        int getId(DocumentReference reference)
+        {
+            Integer id = this.ids.get(reference);
+            if (id == null) {
+                id = this.references.size();
+                this.ids.put(reference, id);
+                this.references.add(reference);
+            }
+
+            return id;
+        }
+
+        void setMembers(int group, String[] members)
+        {
+            String[] previousMembers = this.groupMembers.get(group);
+            if (previousMembers == null) {
+                previousMembers = EMPTY_MEMBERS;
+            }
+
+            if (Arrays.equals(previousMembers, members)) {
+                return;
+            }
+
+            for (String member : previousMembers) {
+                int[] groups = remove(this.memberGroups.get(member), group);
+                if (groups.length == 0) {
+                    this.memberGroups.remove(member);
+                } else {
+                    this.memberGroups.put(member, groups);
+                }
+            }
+            for (String member : members) {
+                this.memberGroups.put(member, add(this.memberGroups.get(member), group));
+            }
+
+            if (members.length == 0) {
+                this.groupMembers.remove(group);
+            } else {
+                this.groupMembers.put(group, members);
+            }
+
+            // A member name can match several users or groups (e.g. a page name matches the pages with that name in
+            // all the spaces) so forget all the transitive groups instead of looking for the ones depending on it
+            this.closures.clear();
+        }
+    }
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        // Only the memberships stored in XWiki.XWikiGroups objects are indexed, so the index can't be used when a
+        // custom group service (e.g. LDAP) provides other memberships
+        String groupService = this.configuration.getProperty("xwiki.authentication.groupclass",
+            XWikiGroupServiceImpl.class.getName());
+        this.enabled = "1".equals(this.configuration.getProperty("xwiki.authentication.group.index", "1"))
+            && XWikiGroupServiceImpl.class.getName().equals(StringUtils.trim(groupService));
+        this.allGroupImplicit =
+            "1".equals(this.configuration.getProperty("xwiki.authentication.group.allgroupimplicit", "0"));
+    }
+
+    /**
+     * @return true if the index should be used to resolve group memberships, i.e. when it's not disabled and the
+     *         standard group service is used
+     */
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    /**
+     * @param member the user or group
+     * @param wiki the wiki where to look for groups
+     * @return the groups of the passed wiki the passed user or group is directly a member of
+     * @throws XWikiException when failing to load the memberships of the wiki
+     */
+    public Collection<DocumentReference> getGroups(DocumentReference member, WikiReference wiki) throws XWikiException
+    {
+        WikiIndex index = getIndex(wiki);
+
+        synchronized (index) {
+            return toReferences(index, getDirectGroups(index, member));
+        }
+    }
+
+    /**
+     * @param member the user or group
+     * @param wiki the wiki where to look for groups
+     * @return the groups of the passed wiki the passed user or group is a member of, directly or through other groups
+     *         of the same wiki
+     * @throws XWikiException when failing to load the memberships of the wiki
+     */
+    public Collection<DocumentReference> getAllGroups(DocumentReference member, WikiReference wiki)
+        throws XWikiException
+    {
+        WikiIndex index = getIndex(wiki);
+
+        synchronized (index) {
+            int[] closure = index.closures.get(member);
+            if (closure == null) {
+                closure = computeClosure(index, member);
+                // Don't remember the groups of all the users which are not explicitly members of a group
+                if (getExplicitGroups(index, member).length > 0) {
+                    index.closures.put(member, closure);
+                }
+            }
+
+            return toReferences(index, closure);
+        }
+    }
+
+    /**
+     * Update the index with the current members of the passed group document. It's safe to call this method several
+     * times for the same modification.
+     *
+     * @param document the group document, as it is after the modification (without any group object when deleted)
+     */
+    public void updateGroup(XWikiDocument document)
+    {
+        WikiIndex index = this.indexes.get(document.getDocumentReference().getWikiReference().getName());
+
+        // Nothing to update if the wiki was not loaded yet, it will be up to date when loaded
+        if (index == null) {
+            return;
+        }
+
+        synchronized (index) {
+            if (!index.loaded) {
+                return;
+            }
+
+            Set<String> members = new TreeSet<>();
+            List<BaseObject> groupObjects = document.getXObjects(XWikiGroupServiceImpl.GROUPCLASS_REFERENCE);
+            if (groupObjects != null) {
+                for (BaseObject groupObject : groupObjects) {
+                    if (groupObject != null) {
+                        String member = groupObject.getStringValue(PROPERTY_MEMBER);
+                        if (StringUtils.isNotBlank(member)) {
+                            members.add(normalize(member));
+                        }
+                    }
+                }
+            }
+
+            index.setMembers(index.getId(document.getDocumentReference()), members.toArray(EMPTY_MEMBERS));
+        }
+    }
+
+    /**
+     * Forget everything related to a wiki.
+     *
+     * @param wiki the identifier of the wiki
+     */
+    public void removeWiki(String wiki)
+    {
+        this.indexes.remove(wiki);
+    }
+
+    private WikiIndex getIndex(WikiReference wiki) throws XWikiException
+    {
+        WikiIndex index = this.indexes.computeIfAbsent(wiki.getName(), key -> new WikiIndex(wiki));
+
+        synchronized (index) {
+            if (!index.loaded) {
+                load(index);
+                index.loaded = true;
+            }
+        }
+
+        return index;
+    }
+
+    private void load(WikiIndex index) throws XWikiException
+    {
+        List<Object[]> results;
+        try {
+            Query query = this.queryManager.createQuery(GROUP_MEMBERS_QUERY, Query.HQL);
+            query.setWiki(index.wiki.getName());
+            results = query.execute();
+        } catch (QueryException e) {
+            throw new XWikiException(XWikiException.MODULE_XWIKI_USER, XWikiException.ERROR_XWIKI_UNKNOWN,
+                String.format("Failed to load the group memberships of wiki [%s]", index.wiki.getName()), e);
+        }
+
+        Map<Integer, Set<String>> members = new HashMap<>();
+        for (Object[] result : results) {
+            String member = (String) result[1];
+            if (StringUtils.isNotBlank(member)) {
+                DocumentReference groupReference = this.currentResolver.resolve((String) result[0], index.wiki);
+                members.computeIfAbsent(index.getId(groupReference), key -> new TreeSet<>()).add(normalize(member));
+            }
+        }
+
+        for (Map.Entry<Integer, Set<String>> entry : members.entrySet()) {
+            index.setMembers(entry.getKey(), entry.getValue().toArray(EMPTY_MEMBERS));
+        }
+    }
+
+    /**
+     * @return the member name as it's indexed
+     */
+    private static String normalize(String member)
+    {
+        return member.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the normalized names which can be used to declare the passed member in a group of the passed wiki, same
+     *         as the {@code listGroupsForUser} and {@code listGroupsForUserInOtherWiki} queries
+     */
+    private List<String> getMemberNames(DocumentReference member, WikiReference wiki)
+    {
+        List<String> names = new ArrayList<>(3);
+        names.add(normalize(this.serializer.serialize(member)));
+
+        if (member.getWikiReference().equals(wiki) || (member.getLastSpaceReference().getName().equals(XWIKI_SPACE)
+            && member.getName().equals(XWikiRightService.GUEST_USER))) {
+            names.add(normalize(this.localSerializer.serialize(member)));
+            names.add(normalize(member.getName()));
+        }
+
+        return names;
+    }
+
+    /**
+     * @return the groups the member is explicitly a member of
+     */
+    private int[] getExplicitGroups(WikiIndex index, DocumentReference member)
+    {
+        int[] groups = EMPTY;
+        for (String name : getMemberNames(member, index.wiki)) {
+            int[] nameGroups = index.memberGroups.get(name);
+            if (nameGroups != null) {
+                for (int group : nameGroups) {
+                    groups = add(groups, group);
+                }
+            }
+        }
+
+        return groups;
+    }
+
+    /**
+     * @return the direct groups of the member, including the implicit {@code XWiki.XWikiAllGroup} group
+     */
+    private int[] getDirectGroups(WikiIndex index, DocumentReference member)
+    {
+        int[] groups = getExplicitGroups(index, member);
+
+        if (this.allGroupImplicit && member.getWikiReference().equals(index.wiki)
+            && !member.getName().equals(XWikiRightService.GUEST_USER) && !member.equals(index.allGroup)) {
+            groups = add(groups, index.getId(index.allGroup));
+        }
+
+        return groups;
+    }
+
+    private int[] computeClosure(WikiIndex index, DocumentReference member)
+    {
+        Set<Integer> closure = new HashSet<>();
+        Deque<Integer> toVisit = new ArrayDeque<>();
+
+        for (int group : getDirectGroups(index, member)) {
+            if (closure.add(group)) {
+                toVisit.add(group);
+            }
+        }
+
+        while (!toVisit.isEmpty()) {
+            for (int group : getDirectGroups(index, index.references.get(toVisit.poll()))) {
+                if (closure.add(group)) {
+                    toVisit.add(group);
+                }
+            }
+        }
+
+        return toSortedArray(closure);
+    }
+
+    private static Collection<DocumentReference> toReferences(WikiIndex index, int[] ids)
+    {
+        if (ids.length == 0) {
+            return Collections.emptyList();
+        }
+
+        List<DocumentReference> references = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            references.add(index.references.get(id));
+        }
+
+        return references;
+    }
+
+    private static int[] toSortedArray(Collection<Integer> values)
+    {
+        int[] array = new int[values.size()];
+        int i = 0;
+        for (int value : values) {
+            array[i++] = value;
+        }
+        Arrays.sort(array);
+
+        return array;
+    }
+
+    private static int[] add(int[] array, int value)
+    {
+        if (array == null) {
+            return new int[] {value};
+        }
+
+        int index = Arrays.binarySearch(array, value);
+        if (index >= 0) {
+            return array;
+        }
+
+        int insertion = -index - 1;
+        int[] result = new int[array.length + 1];
+        System.arraycopy(array, 0, result, 0, insertion);
+        result[insertion] = value;
+        System.arraycopy(array, insertion, result, insertion + 1, array.length - insertion);
+
+        return result;
+    }
+
+    private static int[] remove(int[] array, int value)
+    {
+        if (array == null) {
+            return EMPTY;
+        }
+
+        int index = Arrays.binarySearch(array, value);
+        if (index < 0) {
+            return array;
+        }
+
+        int[] result = new int[array.length - 1];
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+
+        return result;
+    }
+}
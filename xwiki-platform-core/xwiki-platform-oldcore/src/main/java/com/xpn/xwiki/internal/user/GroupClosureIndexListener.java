@@ -0,0 +1,77 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.user;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.WikiDeletedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.RegexEntityReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.event.XObjectAddedEvent;
+import com.xpn.xwiki.internal.event.XObjectDeletedEvent;
+import com.xpn.xwiki.internal.event.XObjectUpdatedEvent;
+import com.xpn.xwiki.objects.BaseObjectReference;
+
+/**
+ * Keep the {@link GroupClosureIndex} up to date with local and remote modifications of the group memberships.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Component
+@Named(GroupClosureIndexListener.NAME)
+@Singleton
+public class GroupClosureIndexListener extends AbstractEventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "com.xpn.xwiki.internal.user.GroupClosureIndexListener";
+
+    private static final RegexEntityReference GROUP_OBJECT = BaseObjectReference.any("XWiki.XWikiGroups");
+
+    @Inject
+    private GroupClosureIndex index;
+
+    /**
+     * Default constructor.
+     */
+    public GroupClosureIndexListener()
+    {
+        super(NAME, new XObjectAddedEvent(GROUP_OBJECT), new XObjectDeletedEvent(GROUP_OBJECT),
+            new XObjectUpdatedEvent(GROUP_OBJECT), new WikiDeletedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (event instanceof WikiDeletedEvent) {
+            this.index.removeWiki(((WikiDeletedEvent) event).getWikiId());
+        } else {
+            this.index.updateGroup((XWikiDocument) source);
+        }
+    }
+}
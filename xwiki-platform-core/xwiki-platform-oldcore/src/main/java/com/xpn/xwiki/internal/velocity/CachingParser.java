@@ -0,0 +1,79 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.velocity;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.parser.ParseException;
+import org.apache.velocity.runtime.parser.Parser;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
+
+/**
+ * Velocity {@link Parser} reusing the trees kept in the {@link VelocityTemplateCache}.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+public class CachingParser extends Parser
+{
+    private final String engineId;
+
+    private final VelocityTemplateCache cache;
+
+    /**
+     * @param rsvc the Velocity runtime
+     * @param engineId the identifier of the Velocity engine
+     * @param cache the cache of parsed trees
+     */
+    public CachingParser(RuntimeServices rsvc, String engineId, VelocityTemplateCache cache)
+    {
+        super(rsvc);
+
+        this.engineId = engineId;
+        this.cache = cache;
+    }
+
+    @Override
+    public SimpleNode parse(Reader reader, String templateName) throws ParseException
+    {
+        String content;
+        try {
+            content = IOUtils.toString(reader);
+        } catch (IOException e) {
+            throw new ParseException("Failed to read template [" + templateName + "]: " + e.getMessage());
+        }
+
+        if (!this.cache.isCacheable(content)) {
+            return super.parse(new StringReader(content), templateName);
+        }
+
+        SimpleNode tree = this.cache.get(this.engineId, templateName, content);
+        if (tree == null) {
+            tree = super.parse(new StringReader(content), templateName);
+            this.cache.set(this.engineId, templateName, content, tree);
+        }
+
+        return tree;
+    }
+}
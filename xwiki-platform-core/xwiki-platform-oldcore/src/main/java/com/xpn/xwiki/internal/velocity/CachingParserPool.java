@@ -0,0 +1,78 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.velocity;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.velocity.runtime.ParserPool;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.parser.Parser;
+
+import com.xpn.xwiki.web.Utils;
+
+/**
+ * Velocity {@link ParserPool} providing {@link CachingParser}s so that the trees parsed by a Velocity engine are
+ * reused. Set as the {@link RuntimeConstants#PARSER_POOL_CLASS} of the Velocity engines created by XWiki.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+public class CachingParserPool implements ParserPool
+{
+    private static final AtomicLong COUNTER = new AtomicLong();
+
+    private RuntimeServices rsvc;
+
+    private String engineId;
+
+    private VelocityTemplateCache cache;
+
+    private Queue<Parser> pool;
+
+    @Override
+    public void initialize(RuntimeServices rsvc)
+    {
+        this.rsvc = rsvc;
+        // Trees parsed by an engine can't be used by another engine
+        this.engineId = String.valueOf(COUNTER.incrementAndGet());
+        this.cache = Utils.getComponent(VelocityTemplateCache.class);
+        this.pool = new ArrayBlockingQueue<>(
+            rsvc.getInt(RuntimeConstants.PARSER_POOL_SIZE, RuntimeConstants.NUMBER_OF_PARSERS));
+    }
+
+    @Override
+    public Parser get()
+    {
+        Parser parser = this.pool.poll();
+
+        // Never return null since Velocity would then use a parser which does not know about the cache
+        return parser != null ? parser : new CachingParser(this.rsvc, this.engineId, this.cache);
+    }
+
+    @Override
+    public void put(Parser parser)
+    {
+        // Drop the parser if the pool is full
+        this.pool.offer(parser);
+    }
+}
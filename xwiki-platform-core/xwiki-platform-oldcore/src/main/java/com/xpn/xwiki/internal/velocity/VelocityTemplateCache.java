@@ -0,0 +1,171 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.velocity;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.velocity.runtime.parser.node.ASTDirective;
+import org.apache.velocity.runtime.parser.node.Node;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+
+/**
+ * Keep the result of the parsing of Velocity contents (document contents, skin extensions, sheets, UI extensions,
+ * etc.) so that the same content is not parsed again each time it's evaluated.
+ * <p>
+ * An entry is identified by the Velocity engine, the template name, the content and the current thread. Since the key
+ * contains a hash of the content, modifying a document produces a new entry and the previous one is evicted from the
+ * cache when it's not used anymore. Velocity initializes the parsed tree again before each evaluation (which replaces
+ * the directives of the tree) so the tree is never shared between threads to avoid initializing it while it's rendered.
+ * <p>
+ * Trees containing {@code #macro} directives are never cached: Velocity registers the macros while parsing the content
+ * and the macro namespace of the template is dropped after each evaluation, so the macros would be missing the next
+ * time a cached tree is evaluated.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Component(roles = VelocityTemplateCache.class)
+@Singleton
+public class VelocityTemplateCache implements Initializable
+{
+    private static final String PREFIX = "core.velocitytemplatecache.";
+
+    private static final String MACRO_DIRECTIVE = "macro";
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    private Cache<SimpleNode> cache;
+
+    private int maxContentLength;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        int size = this.configuration.getProperty(PREFIX + "size", 1000);
+        if (size <= 0) {
+            return;
+        }
+
+        this.maxContentLength = this.configuration.getProperty(PREFIX + "maxContentLength", 100000);
+
+        try {
+            this.cache =
+                this.cacheManager.createNewCache(new LRUCacheConfiguration("core.velocitytemplatecache", size));
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to initialize the Velocity template cache", e);
+        }
+    }
+
+    /**
+     * @param content the Velocity content
+     * @return {@code true} if the result of the parsing of the passed content can be cached
+     */
+    public boolean isCacheable(String content)
+    {
+        return this.cache != null && content != null && content.length() <= this.maxContentLength;
+    }
+
+    /**
+     * @param engineId the identifier of the Velocity engine parsing the content
+     * @param templateName the name of the template (i.e. the macro namespace) under which the content is parsed
+     * @param content the Velocity content
+     * @return the tree previously parsed from the passed content, {@code null} if none can be found
+     */
+    public SimpleNode get(String engineId, String templateName, String content)
+    {
+        if (!isCacheable(content)) {
+            return null;
+        }
+
+        return this.cache.get(getKey(engineId, templateName, content));
+    }
+
+    /**
+     * @param engineId the identifier of the Velocity engine parsing the content
+     * @param templateName the name of the template (i.e. the macro namespace) under which the content is parsed
+     * @param content the Velocity content
+     * @param tree the tree parsed from the content
+     */
+    public void set(String engineId, String templateName, String content, SimpleNode tree)
+    {
+        if (isCacheable(content) && tree != null && !containsMacroDefinition(tree)) {
+            this.cache.set(getKey(engineId, templateName, content), tree);
+        }
+    }
+
+    private boolean containsMacroDefinition(Node node)
+    {
+        if (node instanceof ASTDirective && MACRO_DIRECTIVE.equals(((ASTDirective) node).getDirectiveName())) {
+            return true;
+        }
+
+        for (int i = 0; i < node.jjtGetNumChildren(); i++) {
+            if (containsMacroDefinition(node.jjtGetChild(i))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private String getKey(String engineId, String templateName, String content)
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Should never happen, SHA-256 is supported by all the JVMs
+            throw new RuntimeException("Failed to get a SHA-256 message digest", e);
+        }
+
+        StringBuilder key = new StringBuilder();
+        key.append(engineId);
+        key.append('/');
+        key.append(Thread.currentThread().getId());
+        key.append('/');
+        key.append(templateName);
+        key.append('/');
+        key.append(content.length());
+        key.append('/');
+        key.append(Hex.encodeHexString(digest.digest(content.getBytes(StandardCharsets.UTF_8))));
+
+        return key.toString();
+    }
+}
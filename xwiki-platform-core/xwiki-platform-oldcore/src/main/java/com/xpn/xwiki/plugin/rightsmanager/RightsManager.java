@@ -20,8 +20,10 @@
 
 package com.xpn.xwiki.plugin.rightsmanager;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
@@ -32,11 +34,13 @@
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.WikiReference;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.internal.plugin.rightsmanager.ReferenceUserIterator;
+import com.xpn.xwiki.internal.user.GroupClosureIndex;
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.objects.classes.BaseClass;
 import com.xpn.xwiki.objects.classes.ListClass;
@@ -136,6 +140,11 @@
     private DocumentReferenceResolver<String> currentDocumentReferenceResolver = Utils.getComponent(
         DocumentReferenceResolver.TYPE_STRING, "current");
 
+    /**
+     * Used to resolve the nested groups without querying the database for each group.
+     */
+    private GroupClosureIndex groupIndex = Utils.getComponent(GroupClosureIndex.class);
+
     /**
      * Hidden constructor of RightsManager only access via getInstance().
      */
@@ -459,6 +468,40 @@ public Collection<String> getAllGroupsNamesForMember(String member, int nb, int
         return context.getWiki().getGroupService(context).getAllGroupsNamesForMember(member, nb, start, context);
     }
 
+    /**
+     * Get all the groups of the current wiki containing provided member, directly or through other groups of the
+     * current wiki.
+     *
+     * @param member the reference of the member (user or group)
+     * @param context the XWiki context
+     * @return the references of the groups
+     * @throws XWikiException error when browsing groups
+     * @since 10.1RC1
+     */
+    public Collection<DocumentReference> getAllNestedGroupsForMember(DocumentReference member, XWikiContext context)
+        throws XWikiException
+    {
+        WikiReference wiki = new WikiReference(context.getWikiId());
+
+        if (this.groupIndex.isEnabled()) {
+            return this.groupIndex.getAllGroups(member, wiki);
+        }
+
+        Collection<DocumentReference> groups = new LinkedHashSet<>();
+        Deque<DocumentReference> toVisit = new ArrayDeque<>();
+        toVisit.add(member);
+        while (!toVisit.isEmpty()) {
+            for (DocumentReference group : context.getWiki().getGroupService(context)
+                .getAllGroupsReferencesForMember(toVisit.poll(), 0, 0, context)) {
+                if (groups.add(group)) {
+                    toVisit.add(group);
+                }
+            }
+        }
+
+        return groups;
+    }
+
     /**
      * Get all users provided group contains.
      *
@@ -1069,6 +1112,14 @@ public void removeDirectRights(String spaceOrPage, List<String> levelNames, Stri
     public boolean groupContainsMember(String groupName, String memberName,
         Map<String, Collection<String>> groupCacheIn, XWikiContext context) throws XWikiException
     {
+        if (this.groupIndex.isEnabled()) {
+            DocumentReference groupReference = this.currentDocumentReferenceResolver.resolve(groupName);
+            DocumentReference memberReference = this.currentDocumentReferenceResolver.resolve(memberName);
+
+            return this.groupIndex.getAllGroups(memberReference, groupReference.getWikiReference())
+                .contains(groupReference);
+        }
+
         boolean found = false;
 
         Map<String, Collection<String>> groupCache = groupCacheIn;
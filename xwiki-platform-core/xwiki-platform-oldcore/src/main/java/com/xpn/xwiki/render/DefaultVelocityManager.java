@@ -66,6 +66,7 @@
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.api.DeprecatedContext;
+import com.xpn.xwiki.internal.velocity.CachingParserPool;
 
 /**
  * Note: This class should be moved to the Velocity module. However this is not possible right now since we need to
@@ -316,6 +317,11 @@ public VelocityEngine getVelocityEngine() throws XWikiVelocityException
                         properties.setProperty(RESOURCE_LOADER_CLASS, XWikiWebappResourceLoader.class.getName());
                     }
 
+                    // Reuse the trees parsed from the same contents unless a custom parser pool is configured
+                    if (!this.velocityConfiguration.getProperties().containsKey(RuntimeConstants.PARSER_POOL_CLASS)) {
+                        properties.setProperty(RuntimeConstants.PARSER_POOL_CLASS, CachingParserPool.class.getName());
+                    }
+
                     if (xcontext != null && xcontext.getWiki() != null) {
                         // Note: if you don't want any template to be used set the property named
                         // xwiki.render.velocity.macrolist to an empty string value.
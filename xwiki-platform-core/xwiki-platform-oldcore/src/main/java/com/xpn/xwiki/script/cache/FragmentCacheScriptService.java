@@ -0,0 +1,93 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.script.cache;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.script.service.ScriptService;
+import org.xwiki.stability.Unstable;
+import org.xwiki.template.TemplateManager;
+
+import com.xpn.xwiki.internal.cache.rendering.FragmentCache;
+
+/**
+ * Cache the result of the rendering of templates until one of the documents read while rendering them is modified.
+ * <p>
+ * The result is cached for the current wiki, user and locale only. Anything else the template output depends on (the
+ * current document, the request parameters, etc.) must be part of the passed key. The side effects of the template
+ * (Velocity variables, skin extensions requested, etc.) are lost when the result comes from the cache so only the
+ * templates without side effects should be cached.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Component
+@Named("fragmentcache")
+@Singleton
+@Unstable
+public class FragmentCacheScriptService implements ScriptService
+{
+    private static final String TEMPLATE_KEY_PREFIX = "template:";
+
+    @Inject
+    private FragmentCache fragmentCache;
+
+    @Inject
+    private TemplateManager templates;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * Render the passed template or return the result of a previous rendering.
+     *
+     * @param template the name of the template to render
+     * @param lifespan the maximum number of seconds to keep the result in the cache, 0 for no limit
+     * @return the result of the rendering of the template, {@code null} if it failed
+     */
+    public String renderTemplate(String template, int lifespan)
+    {
+        return renderTemplate(template, "", lifespan);
+    }
+
+    /**
+     * Render the passed template or return the result of a previous rendering with the same key.
+     *
+     * @param template the name of the template to render
+     * @param key identifies the variant of the template output (e.g. the reference of the current document)
+     * @param lifespan the maximum number of seconds to keep the result in the cache, 0 for no limit
+     * @return the result of the rendering of the template, {@code null} if it failed
+     */
+    public String renderTemplate(String template, String key, int lifespan)
+    {
+        try {
+            return this.fragmentCache.get(TEMPLATE_KEY_PREFIX + template + ':' + key, lifespan,
+                () -> this.templates.render(template));
+        } catch (Exception e) {
+            this.logger.error("Failed to render template [{}]", template, e);
+
+            return null;
+        }
+    }
+}
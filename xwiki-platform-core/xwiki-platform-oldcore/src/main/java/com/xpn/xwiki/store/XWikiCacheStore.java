@@ -19,9 +19,20 @@
  */
 package com.xpn.xwiki.store;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.lang3.mutable.MutableInt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xwiki.bridge.event.DocumentCreatedEvent;
@@ -45,6 +56,7 @@
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.doc.XWikiLink;
 import com.xpn.xwiki.doc.XWikiLock;
+import com.xpn.xwiki.internal.store.DocumentExistenceFilter;
 import com.xpn.xwiki.objects.classes.BaseClass;
 import com.xpn.xwiki.web.Utils;
 
@@ -64,6 +76,18 @@ public class XWikiCacheStore implements XWikiCacheStoreInterface, EventListener
 
     private Cache<Boolean> pageExistCache;
 
+    /**
+     * The documents currently being loaded from the underlying store, used to make sure concurrent requests for the
+     * same document don't end up loading it several times.
+     */
+    private final ConcurrentMap<String, CompletableFuture<XWikiDocument>> loadingDocuments =
+        new ConcurrentHashMap<>();
+
+    /**
+     * Indicate how many documents the current thread is currently loading from the underlying store.
+     */
+    private final ThreadLocal<MutableInt> loadingDepth = ThreadLocal.withInitial(MutableInt::new);
+
     /**
      * Used to know if a received event is a local or remote one.
      */
@@ -71,6 +95,11 @@ public class XWikiCacheStore implements XWikiCacheStoreInterface, EventListener
 
     private EntityReferenceSerializer<String> uidStringEntityReferenceSerializer;
 
+    /**
+     * Used to know that a document does not exist without asking the underlying store.
+     */
+    private DocumentExistenceFilter existenceFilter;
+
     /**
      * Used to register XWikiCacheStore to receive documents events.
      */
@@ -86,6 +115,7 @@ public XWikiCacheStore(XWikiStoreInterface store, XWikiContext context) throws X
         this.observationManager = Utils.getComponent(ObservationManager.class);
         this.observationManager.addListener(this);
         this.uidStringEntityReferenceSerializer = Utils.getComponent(EntityReferenceSerializer.TYPE_STRING, "uid");
+        this.existenceFilter = Utils.getComponent(DocumentExistenceFilter.class);
     }
 
     @Override
@@ -148,8 +178,14 @@ public void saveXWikiDoc(XWikiDocument doc, XWikiContext context) throws XWikiEx
     @Override
     public void saveXWikiDoc(XWikiDocument doc, XWikiContext context, boolean bTransaction) throws XWikiException
     {
+        // Make sure the document is never seen as not existing, even while it's being saved (in the current wiki, like
+        // the cache key and the store)
+        this.existenceFilter.add(context.getWikiId(), doc.getId());
+
         this.store.saveXWikiDoc(doc, context, bTransaction);
 
+        this.existenceFilter.add(context.getWikiId(), doc.getId());
+
         doc.setStore(this.store);
 
         // We need to flush so that caches
@@ -157,6 +193,7 @@ public void saveXWikiDoc(XWikiDocument doc, XWikiContext context, boolean bTrans
         String key = getKey(doc, context);
         getCache().remove(key);
         getPageExistCache().remove(key);
+        this.loadingDocuments.remove(key);
 
         /*
          * We do not want to save the document in the cache at this time. If we did, this would introduce the
@@ -171,6 +208,7 @@ public void flushCache()
     {
         getCache().removeAll();
         getPageExistCache().removeAll();
+        this.loadingDocuments.clear();
     }
 
     @Override
@@ -185,6 +223,7 @@ public void onEvent(Event event, Object source, Object data)
 
                 String key = doc.getKey();
 
+                this.loadingDocuments.remove(key);
                 if (getCache() != null) {
                     getCache().remove(key);
                 }
@@ -249,14 +288,7 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext context) throw
 
         LOGGER.debug("Cache: Trying to get doc {} from cache", key);
 
-        XWikiDocument cachedoc;
-        try {
-            cachedoc = getCache().get(key);
-        } catch (Exception e) {
-            LOGGER.error("Failed to get document from the cache", e);
-
-            cachedoc = null;
-        }
+        XWikiDocument cachedoc = getCachedDocument(key);
 
         if (cachedoc != null) {
             cachedoc.setFromCache(true);
@@ -265,40 +297,289 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext context) throw
         } else {
             Boolean result = getPageExistCache().get(key);
 
-            if (result == Boolean.FALSE) {
+            if (result == Boolean.FALSE
+                || (result == null && !this.existenceFilter.mightExist(context.getWikiId(), doc.getId()))) {
                 LOGGER.debug("Cache: The document {} does not exist, return an empty one", key);
 
-                cachedoc = doc;
-                cachedoc.setNew(true);
-
-                // Make sure to always return a document with an original version, even for one that does not exist.
-                // Allow writing more generic code.
-                cachedoc.setOriginalDocument(new XWikiDocument(cachedoc.getDocumentReference(), cachedoc.getLocale()));
+                cachedoc = setNew(doc);
             } else {
                 LOGGER.debug("Cache: Trying to get doc {} from persistent storage", key);
 
-                cachedoc = this.store.loadXWikiDoc(doc, context);
+                cachedoc = loadFromStore(key, doc, context);
 
                 LOGGER.debug("Cache: Got doc {} from storage", key);
+            }
+
+            cachedoc.setStore(this.store);
+        }
+
+        LOGGER.debug("Cache: end for doc {} in cache", key);
+
+        return cachedoc;
+    }
+
+    /**
+     * Load the documents corresponding to the passed references. The documents found in the cache are returned
+     * directly and all the other ones are loaded from the underlying store with a single call per wiki.
+     *
+     * @param references the references of the documents to load
+     * @param context the XWiki context
+     * @return the documents, in the same order as the passed references
+     * @throws XWikiException when failing to load the documents
+     * @since 10.1RC1
+     */
+    public List<XWikiDocument> loadXWikiDocs(Collection<DocumentReference> references, XWikiContext context)
+        throws XWikiException
+    {
+        List<XWikiDocument> documents = new ArrayList<>(references.size());
+        for (DocumentReference reference : references) {
+            XWikiDocument doc = new XWikiDocument(
+                reference.getLocale() != null ? new DocumentReference(reference, null) : reference,
+                reference.getLocale());
+            doc.setContentDirty(true);
+
+            documents.add(doc);
+        }
 
-                if (cachedoc.isNew()) {
-                    getPageExistCache().set(key, Boolean.FALSE);
+        return loadXWikiDocs(documents, context);
+    }
+
+    @Override
+    public List<XWikiDocument> loadXWikiDocs(List<XWikiDocument> documents, XWikiContext context)
+        throws XWikiException
+    {
+        List<XWikiDocument> result = new ArrayList<>(documents);
+
+        // The documents to load from the store (and which are not being loaded by another thread), indexed by wiki
+        Map<String, List<Integer>> misses = new LinkedHashMap<>();
+        Map<Integer, CompletableFuture<XWikiDocument>> loadings = new HashMap<>();
+        // The documents currently being loaded by other threads
+        Map<Integer, CompletableFuture<XWikiDocument>> otherLoadings = new HashMap<>();
+        int missCount = 0;
+
+        for (int i = 0; i < documents.size(); ++i) {
+            XWikiDocument doc = documents.get(i);
+            String key = doc.getKey();
+            // The documents are loaded from the wiki of their reference
+            String wiki = doc.getDocumentReference().getWikiReference().getName();
+
+            XWikiDocument cachedoc = getCachedDocument(key);
+            if (cachedoc != null) {
+                cachedoc.setFromCache(true);
+                result.set(i, cachedoc);
+            } else if (!mightExist(key, wiki, doc)) {
+                setNew(doc).setStore(this.store);
+            } else {
+                CompletableFuture<XWikiDocument> loading = new CompletableFuture<>();
+                CompletableFuture<XWikiDocument> currentLoading = this.loadingDocuments.putIfAbsent(key, loading);
+                if (currentLoading != null && !isLoading()) {
+                    otherLoadings.put(i, currentLoading);
                 } else {
-                    getCache().set(key, cachedoc);
+                    if (currentLoading == null) {
+                        loadings.put(i, loading);
+                    }
+                    misses.computeIfAbsent(wiki, k -> new ArrayList<>()).add(i);
+                    ++missCount;
+                }
+            }
+        }
+
+        LOGGER.debug("Cache: [{}] documents to load from persistent storage and [{}] being loaded by other threads",
+            missCount, otherLoadings.size());
+
+        if (!misses.isEmpty()) {
+            loadFromStore(misses, loadings, documents, result, context);
+        }
+
+        for (Map.Entry<Integer, CompletableFuture<XWikiDocument>> entry : otherLoadings.entrySet()) {
+            XWikiDocument doc = documents.get(entry.getKey());
+            XWikiDocument loadedDocument = waitForLoading(entry.getValue(), doc, context);
+            loadedDocument.setStore(this.store);
+            result.set(entry.getKey(), loadedDocument);
+        }
+
+        return result;
+    }
 
-                    // Also update exist cache
-                    getPageExistCache().set(key, Boolean.TRUE);
+    private void loadFromStore(Map<String, List<Integer>> misses,
+        Map<Integer, CompletableFuture<XWikiDocument>> loadings, List<XWikiDocument> documents,
+        List<XWikiDocument> result, XWikiContext context) throws XWikiException
+    {
+        String currentWiki = context.getWikiId();
+
+        startLoading();
+        try {
+            for (Map.Entry<String, List<Integer>> entry : misses.entrySet()) {
+                context.setWikiId(entry.getKey());
+
+                List<XWikiDocument> wikiDocuments = new ArrayList<>(entry.getValue().size());
+                for (Integer index : entry.getValue()) {
+                    wikiDocuments.add(documents.get(index));
+                }
+
+                List<XWikiDocument> loadedDocuments = this.store.loadXWikiDocs(wikiDocuments, context);
+
+                for (int i = 0; i < loadedDocuments.size(); ++i) {
+                    Integer index = entry.getValue().get(i);
+                    XWikiDocument loadedDocument = loadedDocuments.get(i);
+
+                    cacheLoadedDocument(documents.get(index).getKey(), loadedDocument);
+                    loadedDocument.setStore(this.store);
+                    result.set(index, loadedDocument);
+
+                    CompletableFuture<XWikiDocument> loading = loadings.get(index);
+                    if (loading != null) {
+                        loading.complete(loadedDocument);
+                    }
                 }
+            }
+        } finally {
+            context.setWikiId(currentWiki);
 
-                LOGGER.debug("Cache: put doc {} in cache", key);
+            for (Map.Entry<Integer, CompletableFuture<XWikiDocument>> entry : loadings.entrySet()) {
+                endLoading(documents.get(entry.getKey()).getKey(), entry.getValue());
             }
 
-            cachedoc.setStore(this.store);
+            endLoading();
         }
+    }
 
-        LOGGER.debug("Cache: end for doc {} in cache", key);
+    /**
+     * Load the document from the underlying store, making sure that concurrent requests for the same document end up in
+     * a single load.
+     */
+    private XWikiDocument loadFromStore(String key, XWikiDocument doc, XWikiContext context) throws XWikiException
+    {
+        CompletableFuture<XWikiDocument> loading = new CompletableFuture<>();
+        CompletableFuture<XWikiDocument> currentLoading = this.loadingDocuments.putIfAbsent(key, loading);
 
-        return cachedoc;
+        if (currentLoading != null) {
+            if (isLoading()) {
+                // Waiting for another thread while this one is itself loading a document could end up in a dead lock
+                return this.store.loadXWikiDoc(doc, context);
+            }
+
+            LOGGER.debug("Cache: Waiting for doc {} to be loaded by another thread", key);
+
+            return waitForLoading(currentLoading, doc, context);
+        }
+
+        startLoading();
+        try {
+            XWikiDocument loadedDocument = this.store.loadXWikiDoc(doc, context);
+
+            cacheLoadedDocument(key, loadedDocument);
+
+            loading.complete(loadedDocument);
+
+            return loadedDocument;
+        } finally {
+            endLoading(key, loading);
+            endLoading();
+        }
+    }
+
+    private XWikiDocument waitForLoading(CompletableFuture<XWikiDocument> loading, XWikiDocument doc,
+        XWikiContext context) throws XWikiException
+    {
+        XWikiDocument loadedDocument;
+        try {
+            loadedDocument = loading.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC,
+                "Interrupted while waiting for document [" + doc.getDocumentReference() + "] to be loaded", e);
+        } catch (ExecutionException | CancellationException e) {
+            // The other thread failed to load the document, try by ourself
+            return this.store.loadXWikiDoc(doc, context);
+        }
+
+        if (loadedDocument.isNew()) {
+            return setNew(doc);
+        }
+
+        loadedDocument.setFromCache(true);
+
+        return loadedDocument;
+    }
+
+    /**
+     * @return {@code false} if the document does not exist for sure, {@code true} if it might exist
+     */
+    private boolean mightExist(String key, String wiki, XWikiDocument doc)
+    {
+        Boolean result = getPageExistCache().get(key);
+
+        if (result != null) {
+            return result.booleanValue();
+        }
+
+        return this.existenceFilter.mightExist(wiki, doc.getId());
+    }
+
+    private XWikiDocument getCachedDocument(String key)
+    {
+        try {
+            return getCache().get(key);
+        } catch (Exception e) {
+            LOGGER.error("Failed to get document from the cache", e);
+
+            return null;
+        }
+    }
+
+    private void cacheLoadedDocument(String key, XWikiDocument doc)
+    {
+        if (doc.isNew()) {
+            getPageExistCache().set(key, Boolean.FALSE);
+        } else {
+            getCache().set(key, doc);
+
+            // Also update exist cache
+            getPageExistCache().set(key, Boolean.TRUE);
+        }
+
+        LOGGER.debug("Cache: put doc {} in cache", key);
+    }
+
+    private XWikiDocument setNew(XWikiDocument doc)
+    {
+        doc.setNew(true);
+
+        // Make sure to always return a document with an original version, even for one that does not exist.
+        // Allow writing more generic code.
+        doc.setOriginalDocument(new XWikiDocument(doc.getDocumentReference(), doc.getLocale()));
+
+        return doc;
+    }
+
+    /**
+     * @return {@code true} if the current thread is currently loading a document from the underlying store
+     */
+    private boolean isLoading()
+    {
+        return this.loadingDepth.get().intValue() > 0;
+    }
+
+    private void startLoading()
+    {
+        this.loadingDepth.get().increment();
+    }
+
+    private void endLoading()
+    {
+        this.loadingDepth.get().decrement();
+    }
+
+    private void endLoading(String key, CompletableFuture<XWikiDocument> loading)
+    {
+        this.loadingDocuments.remove(key, loading);
+
+        // Make sure threads waiting for this document are released even if it failed to load (does nothing when the
+        // document was properly loaded)
+        loading.cancel(false);
     }
 
     @Override
@@ -309,6 +590,7 @@ public void deleteXWikiDoc(XWikiDocument doc, XWikiContext context) throws XWiki
 
         this.store.deleteXWikiDoc(doc, context);
 
+        this.loadingDocuments.remove(key);
         getCache().remove(key);
         getPageExistCache().remove(key);
         getPageExistCache().set(key, Boolean.FALSE);
@@ -627,6 +909,10 @@ public boolean exists(XWikiDocument doc, XWikiContext context) throws XWikiExcep
         } catch (Exception e) {
         }
 
+        if (!this.existenceFilter.mightExist(context.getWikiId(), doc.getId())) {
+            return false;
+        }
+
         boolean result = this.store.exists(doc, context);
         getPageExistCache().set(key, Boolean.valueOf(result));
 
@@ -31,6 +31,7 @@
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
@@ -43,6 +44,7 @@
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.EntityMode;
@@ -94,6 +96,7 @@
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.objects.BaseProperty;
 import com.xpn.xwiki.objects.BaseStringProperty;
+import com.xpn.xwiki.objects.DBStringListProperty;
 import com.xpn.xwiki.objects.LargeStringProperty;
 import com.xpn.xwiki.objects.ListProperty;
 import com.xpn.xwiki.objects.PropertyInterface;
@@ -116,6 +119,12 @@
 @Singleton
 public class XWikiHibernateStore extends XWikiHibernateBaseStore implements XWikiStoreInterface
 {
+    /**
+     * The maximum number of values passed to a single {@code in} clause when bulk loading documents (Oracle does not
+     * accept more than 1000).
+     */
+    private static final int BULK_LOADING_BATCH_SIZE = 500;
+
     @Inject
     private Logger logger;
 
@@ -881,132 +890,479 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext inputxcontext)
             Session session = getSession(context);
             session.setFlushMode(FlushMode.MANUAL);
 
+            if (!loadXWikiDocWithoutObjects(doc, session, context)) {
+                return doc;
+            }
+
+            if (doc.hasElement(XWikiDocument.HAS_OBJECTS)) {
+                if (isBulkLoadingEnabled(context)) {
+                    loadXWikiObjects(Collections.singletonList(doc), session, context);
+                } else {
+                    loadXWikiObjects(doc, session, context);
+                }
+            }
+
+            endLoadingXWikiDoc(doc);
+
+            if (bTransaction) {
+                endTransaction(context, false);
+            }
+        } catch (Exception e) {
+            Object[] args = { doc.getDocumentReference() };
+            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC, "Exception while reading document [{0}]", e,
+                args);
+        } finally {
             try {
-                session.load(doc, Long.valueOf(doc.getId()));
-                doc.setNew(false);
-                doc.setMostRecent(true);
-                // Fix for XWIKI-1651
-                doc.setDate(new Date(doc.getDate().getTime()));
-                doc.setCreationDate(new Date(doc.getCreationDate().getTime()));
-                doc.setContentUpdateDate(new Date(doc.getContentUpdateDate().getTime()));
-            } catch (ObjectNotFoundException e) { // No document
-                doc.setNew(true);
-
-                // Make sure to always return a document with an original version, even for one that does not exist.
-                // Allow writing more generic code.
-                doc.setOriginalDocument(new XWikiDocument(doc.getDocumentReference(), doc.getLocale()));
+                if (bTransaction) {
+                    endTransaction(context, false);
+                }
+            } catch (Exception e) {
+            }
 
-                return doc;
+            // End monitoring timer
+            if (monitor != null) {
+                monitor.endTimer(HINT);
             }
+        }
 
-            // Loading the attachment list
-            if (doc.hasElement(XWikiDocument.HAS_ATTACHMENTS)) {
-                loadAttachmentList(doc, context, false);
+        this.logger.debug("Loaded XWikiDocument: [{}]", doc.getDocumentReference());
+
+        return doc;
+    }
+
+    /**
+     * Load the document itself, its attachment list and its class, but not its objects.
+     *
+     * @return {@code false} if the document does not exist in the database
+     */
+    private boolean loadXWikiDocWithoutObjects(XWikiDocument doc, Session session, XWikiContext context)
+        throws XWikiException
+    {
+        try {
+            session.load(doc, Long.valueOf(doc.getId()));
+            doc.setNew(false);
+            doc.setMostRecent(true);
+            // Fix for XWIKI-1651
+            doc.setDate(new Date(doc.getDate().getTime()));
+            doc.setCreationDate(new Date(doc.getCreationDate().getTime()));
+            doc.setContentUpdateDate(new Date(doc.getContentUpdateDate().getTime()));
+        } catch (ObjectNotFoundException e) { // No document
+            doc.setNew(true);
+
+            // Make sure to always return a document with an original version, even for one that does not exist.
+            // Allow writing more generic code.
+            doc.setOriginalDocument(new XWikiDocument(doc.getDocumentReference(), doc.getLocale()));
+
+            return false;
+        }
+
+        // Loading the attachment list
+        if (doc.hasElement(XWikiDocument.HAS_ATTACHMENTS)) {
+            loadAttachmentList(doc, context, false);
+        }
+
+        // TODO: handle the case where there are no xWikiClass and xWikiObject in the Database
+        BaseClass bclass = new BaseClass();
+        String cxml = doc.getXClassXML();
+        if (cxml != null) {
+            bclass.fromXML(cxml);
+            doc.setXClass(bclass);
+            bclass.setDirty(false);
+        }
+
+        // Store this XWikiClass in the context so that we can use it in case of recursive usage
+        // of classes
+        context.addBaseClass(bclass);
+
+        return true;
+    }
+
+    private void endLoadingXWikiDoc(XWikiDocument doc)
+    {
+        doc.setContentDirty(false);
+        doc.setMetaDataDirty(false);
+
+        // We need to ensure that the loaded document becomes the original document
+        doc.setOriginalDocument(doc.clone());
+    }
+
+    /**
+     * Load the objects of the passed document, one object at a time.
+     */
+    private void loadXWikiObjects(XWikiDocument doc, Session session, XWikiContext context) throws XWikiException
+    {
+        BaseClass bclass = doc.getXClass();
+
+        Query query = session
+            .createQuery("from BaseObject as bobject where bobject.name = :name order by bobject.number");
+        query.setText("name", doc.getFullName());
+        @SuppressWarnings("unchecked")
+        Iterator<BaseObject> it = query.list().iterator();
+
+        EntityReference localGroupEntityReference = new EntityReference("XWikiGroups", EntityType.DOCUMENT,
+            new EntityReference("XWiki", EntityType.SPACE));
+        DocumentReference groupsDocumentReference = new DocumentReference(context.getWikiId(),
+            localGroupEntityReference.getParent().getName(), localGroupEntityReference.getName());
+
+        boolean hasGroups = false;
+        while (it.hasNext()) {
+            BaseObject object = it.next();
+            DocumentReference classReference = object.getXClassReference();
+
+            if (classReference == null) {
+                continue;
             }
 
-            // TODO: handle the case where there are no xWikiClass and xWikiObject in the Database
-            BaseClass bclass = new BaseClass();
-            String cxml = doc.getXClassXML();
-            if (cxml != null) {
-                bclass.fromXML(cxml);
-                doc.setXClass(bclass);
-                bclass.setDirty(false);
+            // It seems to search before is case insensitive. And this would break the loading if we get an
+            // object which doesn't really belong to this document
+            if (!object.getDocumentReference().equals(doc.getDocumentReference())) {
+                continue;
             }
 
-            // Store this XWikiClass in the context so that we can use it in case of recursive usage
-            // of classes
-            context.addBaseClass(bclass);
+            BaseObject newobject;
+            if (classReference.equals(doc.getDocumentReference())) {
+                newobject = bclass.newCustomClassInstance(context);
+            } else {
+                newobject = BaseClass.newCustomClassInstance(classReference, context);
+            }
+            if (newobject != null) {
+                newobject.setId(object.getId());
+                newobject.setXClassReference(object.getRelativeXClassReference());
+                newobject.setDocumentReference(object.getDocumentReference());
+                newobject.setNumber(object.getNumber());
+                newobject.setGuid(object.getGuid());
+                object = newobject;
+            }
 
-            if (doc.hasElement(XWikiDocument.HAS_OBJECTS)) {
-                Query query = session
-                    .createQuery("from BaseObject as bobject where bobject.name = :name order by bobject.number");
-                query.setText("name", doc.getFullName());
-                @SuppressWarnings("unchecked")
-                Iterator<BaseObject> it = query.list().iterator();
+            if (classReference.equals(groupsDocumentReference)) {
+                // Groups objects are handled differently.
+                hasGroups = true;
+            } else {
+                loadXWikiCollectionInternal(object, doc, context, false, true);
+            }
+            doc.setXObject(object.getNumber(), object);
+        }
 
-                EntityReference localGroupEntityReference = new EntityReference("XWikiGroups", EntityType.DOCUMENT,
-                    new EntityReference("XWiki", EntityType.SPACE));
-                DocumentReference groupsDocumentReference = new DocumentReference(context.getWikiId(),
-                    localGroupEntityReference.getParent().getName(), localGroupEntityReference.getName());
+        // AFAICT this was added as an emergency patch because loading of objects has proven
+        // too slow and the objects which cause the most overhead are the XWikiGroups objects
+        // as each group object (each group member) would otherwise cost 2 database queries.
+        // This will do every group member in a single query.
+        if (hasGroups) {
+            Query query2 = session.createQuery("select bobject.number, prop.value from StringProperty as prop,"
+                + "BaseObject as bobject where bobject.name = :name and bobject.className='XWiki.XWikiGroups' "
+                + "and bobject.id=prop.id.id and prop.id.name='member' order by bobject.number");
+            query2.setText("name", doc.getFullName());
+            @SuppressWarnings("unchecked")
+            Iterator<Object[]> it2 = query2.list().iterator();
+            while (it2.hasNext()) {
+                Object[] result = it2.next();
+                Integer number = (Integer) result[0];
+                String member = (String) result[1];
+                BaseObject obj = BaseClass.newCustomClassInstance(groupsDocumentReference, context);
+                obj.setDocumentReference(doc.getDocumentReference());
+                obj.setXClassReference(localGroupEntityReference);
+                obj.setNumber(number.intValue());
+                obj.setStringValue("member", member);
+                doc.setXObject(obj.getNumber(), obj);
+            }
+        }
+    }
 
-                boolean hasGroups = false;
-                while (it.hasNext()) {
-                    BaseObject object = it.next();
-                    DocumentReference classReference = object.getXClassReference();
+    /**
+     * @return {@code true} if the objects of the documents should be loaded with a constant number of queries, see
+     *         {@link #loadXWikiObjects(List, Session, XWikiContext)}
+     */
+    private boolean isBulkLoadingEnabled(XWikiContext context)
+    {
+        return "1".equals(context.getWiki().Param("xwiki.store.hibernate.bulkloading", "0"));
+    }
 
-                    if (classReference == null) {
-                        continue;
-                    }
+    /**
+     * Load the objects of the passed documents (which must all be located in the current wiki) using a constant number
+     * of queries: one for the objects, one for the names and types of their properties, one per type of property and
+     * one for the group members.
+     */
+    private void loadXWikiObjects(List<XWikiDocument> documents, Session session, XWikiContext context)
+        throws XWikiException
+    {
+        Map<String, XWikiDocument> documentsByName = new HashMap<>();
+        for (XWikiDocument doc : documents) {
+            if (documentsByName.containsKey(doc.getFullName())) {
+                // The objects are stored by document name so two translations of the same document can't share the same
+                // bulk request
+                loadXWikiObjects(doc, session, context);
+            } else {
+                documentsByName.put(doc.getFullName(), doc);
+            }
+        }
 
-                    // It seems to search before is case insensitive. And this would break the loading if we get an
-                    // object which doesn't really belong to this document
-                    if (!object.getDocumentReference().equals(doc.getDocumentReference())) {
-                        continue;
-                    }
+        EntityReference localGroupEntityReference = new EntityReference("XWikiGroups", EntityType.DOCUMENT,
+            new EntityReference("XWiki", EntityType.SPACE));
+        DocumentReference groupsDocumentReference = new DocumentReference(context.getWikiId(),
+            localGroupEntityReference.getParent().getName(), localGroupEntityReference.getName());
 
-                    BaseObject newobject;
-                    if (classReference.equals(doc.getDocumentReference())) {
-                        newobject = bclass.newCustomClassInstance(context);
-                    } else {
-                        newobject = BaseClass.newCustomClassInstance(classReference, context);
+        Map<Long, BaseObject> objects = new HashMap<>();
+        Map<Long, BaseClass> objectClasses = new HashMap<>();
+        List<String> documentsWithGroups = new ArrayList<>();
+
+        for (List<String> names : ListUtils.partition(new ArrayList<>(documentsByName.keySet()),
+            BULK_LOADING_BATCH_SIZE)) {
+            Query query = session
+                .createQuery("from BaseObject as bobject where bobject.name in (:names) order by bobject.number");
+            query.setParameterList("names", names);
+            @SuppressWarnings("unchecked")
+            List<BaseObject> storedObjects = query.list();
+
+            for (BaseObject storedObject : storedObjects) {
+                BaseObject object = storedObject;
+                DocumentReference classReference = object.getXClassReference();
+
+                if (classReference == null) {
+                    continue;
+                }
+
+                // It seems to search before is case insensitive. And this would break the loading if we get an
+                // object which doesn't really belong to this document
+                XWikiDocument doc = documentsByName.get(object.getName());
+                if (doc == null || !object.getDocumentReference().equals(doc.getDocumentReference())) {
+                    continue;
+                }
+
+                BaseObject newobject;
+                if (classReference.equals(doc.getDocumentReference())) {
+                    newobject = doc.getXClass().newCustomClassInstance(context);
+                } else {
+                    newobject = BaseClass.newCustomClassInstance(classReference, context);
+                }
+                if (newobject != null) {
+                    newobject.setId(object.getId());
+                    newobject.setXClassReference(object.getRelativeXClassReference());
+                    newobject.setDocumentReference(object.getDocumentReference());
+                    newobject.setNumber(object.getNumber());
+                    newobject.setGuid(object.getGuid());
+                    object = newobject;
+                }
+
+                if (classReference.equals(groupsDocumentReference)) {
+                    // Groups objects are handled differently.
+                    if (!documentsWithGroups.contains(doc.getFullName())) {
+                        documentsWithGroups.add(doc.getFullName());
                     }
-                    if (newobject != null) {
-                        newobject.setId(object.getId());
-                        newobject.setXClassReference(object.getRelativeXClassReference());
-                        newobject.setDocumentReference(object.getDocumentReference());
-                        newobject.setNumber(object.getNumber());
-                        newobject.setGuid(object.getGuid());
-                        object = newobject;
+                } else {
+                    BaseClass bclass = getXClass(object, doc, context);
+                    if (bclass != null && bclass.hasCustomMapping() && context.getWiki().hasCustomMappings()) {
+                        // Custom mapped properties are not stored in the standard properties tables
+                        loadXWikiCollectionInternal(object, doc, context, false, true);
+                    } else {
+                        objects.put(object.getId(), object);
+                        objectClasses.put(object.getId(), bclass);
                     }
+                }
+                doc.setXObject(object.getNumber(), object);
+            }
+        }
 
-                    if (classReference.equals(groupsDocumentReference)) {
-                        // Groups objects are handled differently.
-                        hasGroups = true;
+        loadXWikiProperties(objects, objectClasses, session, context);
+
+        if (!documentsWithGroups.isEmpty()) {
+            loadXWikiGroupsObjects(documentsWithGroups, documentsByName, localGroupEntityReference,
+                groupsDocumentReference, session, context);
+        }
+    }
+
+    /**
+     * Load the properties of the passed objects, grouped by property table.
+     */
+    private void loadXWikiProperties(Map<Long, BaseObject> objects, Map<Long, BaseClass> objectClasses,
+        Session session, XWikiContext context) throws XWikiException
+    {
+        // Find out the type of each property
+        Map<String, Map<Long, Set<String>>> propertiesByType = new HashMap<>();
+        for (List<Long> ids : ListUtils.partition(new ArrayList<>(objects.keySet()), BULK_LOADING_BATCH_SIZE)) {
+            Query query = session.createQuery(
+                "select prop.id.id, prop.name, prop.classType from BaseProperty as prop where prop.id.id in (:ids)");
+            query.setParameterList("ids", ids);
+            @SuppressWarnings("unchecked")
+            List<Object[]> results = query.list();
+            for (Object[] result : results) {
+                propertiesByType.computeIfAbsent((String) result[2], k -> new HashMap<>())
+                    .computeIfAbsent((Long) result[0], k -> new HashSet<>()).add((String) result[1]);
+            }
+        }
+
+        for (Map.Entry<String, Map<Long, Set<String>>> entry : propertiesByType.entrySet()) {
+            String classType = entry.getKey();
+            Map<Long, Set<String>> remainingProperties = entry.getValue();
+
+            if (isPropertyType(classType)) {
+                for (List<Long> ids : ListUtils.partition(new ArrayList<>(remainingProperties.keySet()),
+                    BULK_LOADING_BATCH_SIZE)) {
+                    Query query;
+                    if (DBStringListProperty.class.getName().equals(classType)) {
+                        // Avoid one more query per property to get the list items
+                        query = session.createQuery("select prop from " + classType
+                            + " as prop left join fetch prop.list where prop.id.id in (:ids)"
+                            + " and prop.classType = :classType");
                     } else {
-                        loadXWikiCollectionInternal(object, doc, context, false, true);
+                        query = session.createQuery("select prop from " + classType
+                            + " as prop where prop.id.id in (:ids) and prop.classType = :classType");
                     }
-                    doc.setXObject(object.getNumber(), object);
-                }
-
-                // AFAICT this was added as an emergency patch because loading of objects has proven
-                // too slow and the objects which cause the most overhead are the XWikiGroups objects
-                // as each group object (each group member) would otherwise cost 2 database queries.
-                // This will do every group member in a single query.
-                if (hasGroups) {
-                    Query query2 = session.createQuery("select bobject.number, prop.value from StringProperty as prop,"
-                        + "BaseObject as bobject where bobject.name = :name and bobject.className='XWiki.XWikiGroups' "
-                        + "and bobject.id=prop.id.id and prop.id.name='member' order by bobject.number");
-                    query2.setText("name", doc.getFullName());
+                    query.setParameterList("ids", ids);
+                    query.setString("classType", classType);
+
                     @SuppressWarnings("unchecked")
-                    Iterator<Object[]> it2 = query2.list().iterator();
-                    while (it2.hasNext()) {
-                        Object[] result = it2.next();
-                        Integer number = (Integer) result[0];
-                        String member = (String) result[1];
-                        BaseObject obj = BaseClass.newCustomClassInstance(groupsDocumentReference, context);
-                        obj.setDocumentReference(doc.getDocumentReference());
-                        obj.setXClassReference(localGroupEntityReference);
-                        obj.setNumber(number.intValue());
-                        obj.setStringValue("member", member);
-                        doc.setXObject(obj.getNumber(), obj);
+                    List<BaseProperty> properties = query.list();
+                    for (BaseProperty loadedProperty : properties) {
+                        BaseProperty property = loadedProperty;
+                        BaseObject object = objects.get(property.getId());
+                        Set<String> names = remainingProperties.get(property.getId());
+
+                        // The fetch join returns the same property once per list item
+                        if (object == null || names == null || !names.remove(property.getName())) {
+                            continue;
+                        }
+
+                        // Make sure to never share the same property instance between two objects
+                        if (property.getObject() != null && property.getObject() != object) {
+                            property = property.clone();
+                        }
+                        property.setObject(object);
+                        initLoadedXWikiProperty(property);
+
+                        object.addField(property.getName(), property);
                     }
                 }
             }
 
-            doc.setContentDirty(false);
-            doc.setMetaDataDirty(false);
+            // Properties which could not be found in the table matching their type are loaded one by one
+            for (Map.Entry<Long, Set<String>> objectEntry : remainingProperties.entrySet()) {
+                BaseObject object = objects.get(objectEntry.getKey());
+                for (String name : objectEntry.getValue()) {
+                    BaseProperty property =
+                        loadXWikiProperty(object, objectClasses.get(objectEntry.getKey()), name, classType, context);
 
-            // We need to ensure that the loaded document becomes the original document
-            doc.setOriginalDocument(doc.clone());
+                    object.addField(name, property);
+                }
+            }
+        }
+    }
+
+    private boolean isPropertyType(String classType)
+    {
+        try {
+            return BaseProperty.class.isAssignableFrom(Class.forName(classType));
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Load all the {@code XWiki.XWikiGroups} objects of the passed documents in a single query.
+     */
+    private void loadXWikiGroupsObjects(List<String> documentNames, Map<String, XWikiDocument> documentsByName,
+        EntityReference localGroupEntityReference, DocumentReference groupsDocumentReference, Session session,
+        XWikiContext context) throws XWikiException
+    {
+        for (List<String> names : ListUtils.partition(documentNames, BULK_LOADING_BATCH_SIZE)) {
+            Query query = session.createQuery("select bobject.name, bobject.number, prop.value from StringProperty"
+                + " as prop, BaseObject as bobject where bobject.name in (:names)"
+                + " and bobject.className='XWiki.XWikiGroups' and bobject.id=prop.id.id and prop.id.name='member'"
+                + " order by bobject.number");
+            query.setParameterList("names", names);
+            @SuppressWarnings("unchecked")
+            List<Object[]> results = query.list();
+            for (Object[] result : results) {
+                XWikiDocument doc = documentsByName.get(result[0]);
+                if (doc != null) {
+                    Integer number = (Integer) result[1];
+                    String member = (String) result[2];
+                    BaseObject obj = BaseClass.newCustomClassInstance(groupsDocumentReference, context);
+                    obj.setDocumentReference(doc.getDocumentReference());
+                    obj.setXClassReference(localGroupEntityReference);
+                    obj.setNumber(number.intValue());
+                    obj.setStringValue("member", member);
+                    doc.setXObject(obj.getNumber(), obj);
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<XWikiDocument> loadXWikiDocs(List<XWikiDocument> documents, XWikiContext inputxcontext)
+        throws XWikiException
+    {
+        XWikiContext context = getXWikiContext(inputxcontext);
+
+        if (!isBulkLoadingEnabled(context) || context.getWiki().hasDynamicCustomMappings()) {
+            return XWikiStoreInterface.super.loadXWikiDocs(documents, context);
+        }
+
+        // Each wiki has its own database
+        Map<String, List<XWikiDocument>> documentsByWiki = new LinkedHashMap<>();
+        for (XWikiDocument doc : documents) {
+            documentsByWiki.computeIfAbsent(doc.getDocumentReference().getWikiReference().getName(),
+                k -> new ArrayList<>()).add(doc);
+        }
+
+        String currentWiki = context.getWikiId();
+        try {
+            for (Map.Entry<String, List<XWikiDocument>> entry : documentsByWiki.entrySet()) {
+                context.setWikiId(entry.getKey());
+
+                loadXWikiDocsInternal(entry.getValue(), context);
+            }
+        } finally {
+            context.setWikiId(currentWiki);
+        }
+
+        return documents;
+    }
+
+    private void loadXWikiDocsInternal(List<XWikiDocument> documents, XWikiContext context) throws XWikiException
+    {
+        boolean bTransaction = true;
+        MonitorPlugin monitor = Util.getMonitorPlugin(context);
+        try {
+            // Start monitoring timer
+            if (monitor != null) {
+                monitor.startTimer(HINT);
+            }
+            checkHibernate(context);
+
+            bTransaction = bTransaction && beginTransaction(context);
+            Session session = getSession(context);
+            session.setFlushMode(FlushMode.MANUAL);
+
+            List<XWikiDocument> existingDocuments = new ArrayList<>(documents.size());
+            List<XWikiDocument> documentsWithObjects = new ArrayList<>(documents.size());
+            for (XWikiDocument doc : documents) {
+                doc.setStore(this);
+                if (loadXWikiDocWithoutObjects(doc, session, context)) {
+                    existingDocuments.add(doc);
+                    if (doc.hasElement(XWikiDocument.HAS_OBJECTS)) {
+                        documentsWithObjects.add(doc);
+                    }
+                }
+            }
+
+            if (!documentsWithObjects.isEmpty()) {
+                loadXWikiObjects(documentsWithObjects, session, context);
+            }
+
+            for (XWikiDocument doc : existingDocuments) {
+                endLoadingXWikiDoc(doc);
+
+                this.logger.debug("Loaded XWikiDocument: [{}]", doc.getDocumentReference());
+            }
 
             if (bTransaction) {
                 endTransaction(context, false);
             }
         } catch (Exception e) {
-            Object[] args = { doc.getDocumentReference() };
             throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
-                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC, "Exception while reading document [{0}]", e,
-                args);
+                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC,
+                String.format("Exception while reading [%d] documents", documents.size()), e);
         } finally {
             try {
                 if (bTransaction) {
@@ -1020,10 +1376,6 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext inputxcontext)
                 monitor.endTimer(HINT);
             }
         }
-
-        this.logger.debug("Loaded XWikiDocument: [{}]", doc.getDocumentReference());
-
-        return doc;
     }
 
     @Override
@@ -1329,17 +1681,7 @@ private void loadXWikiCollectionInternal(BaseCollection object1, XWikiDocument d
             // If the class reference is null in the loaded object then skip loading properties
             if (classReference != null) {
 
-                BaseClass bclass = null;
-                if (!classReference.equals(object.getDocumentReference())) {
-                    // Let's check if the class has a custom mapping
-                    bclass = object.getXClass(context);
-                } else {
-                    // We need to get it from the document otherwise
-                    // we will go in an endless loop
-                    if (doc != null) {
-                        bclass = doc.getXClass();
-                    }
-                }
+                BaseClass bclass = getXClass(object, doc, context);
 
                 List<String> handledProps = new ArrayList<String>();
                 try {
@@ -1371,53 +1713,8 @@ private void loadXWikiCollectionInternal(BaseCollection object1, XWikiDocument d
                         continue;
                     }
                     String classType = (String) result[1];
-                    BaseProperty property = null;
 
-                    try {
-                        property = (BaseProperty) Class.forName(classType).newInstance();
-                        property.setObject(object);
-                        property.setName(name);
-                        loadXWikiProperty(property, context, false);
-                    } catch (Exception e) {
-                        // WORKAROUND IN CASE OF MIXMATCH BETWEEN STRING AND LARGESTRING
-                        try {
-                            if (property instanceof StringProperty) {
-                                LargeStringProperty property2 = new LargeStringProperty();
-                                property2.setObject(object);
-                                property2.setName(name);
-                                loadXWikiProperty(property2, context, false);
-                                property.setValue(property2.getValue());
-
-                                if (bclass != null) {
-                                    if (bclass.get(name) instanceof TextAreaClass) {
-                                        property = property2;
-                                    }
-                                }
-
-                            } else if (property instanceof LargeStringProperty) {
-                                StringProperty property2 = new StringProperty();
-                                property2.setObject(object);
-                                property2.setName(name);
-                                loadXWikiProperty(property2, context, false);
-                                property.setValue(property2.getValue());
-
-                                if (bclass != null) {
-                                    if (bclass.get(name) instanceof StringClass) {
-                                        property = property2;
-                                    }
-                                }
-                            } else {
-                                throw e;
-                            }
-                        } catch (Throwable e2) {
-                            Object[] args =
-                                { object.getName(), object.getClass(), Integer.valueOf(object.getNumber() + ""), name };
-                            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
-                                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_LOADING_OBJECT,
-                                "Exception while loading object '{0}' of class '{1}', number '{2}' and property '{3}'",
-                                e, args);
-                        }
-                    }
+                    BaseProperty property = loadXWikiProperty(object, bclass, name, classType, context);
 
                     object.addField(name, property);
                 }
@@ -1529,6 +1826,107 @@ public void deleteXWikiCollection(BaseCollection object, XWikiContext inputxcont
         }
     }
 
+    /**
+     * Load the property with the passed name and type from the database, taking care of the type mismatch which can
+     * exist between {@link StringProperty} and {@link LargeStringProperty}.
+     */
+    private BaseProperty loadXWikiProperty(BaseCollection object, BaseClass bclass, String name, String classType,
+        XWikiContext context) throws XWikiException
+    {
+        BaseProperty property = null;
+
+        try {
+            property = (BaseProperty) Class.forName(classType).newInstance();
+            property.setObject(object);
+            property.setName(name);
+            loadXWikiProperty(property, context, false);
+        } catch (Exception e) {
+            // WORKAROUND IN CASE OF MIXMATCH BETWEEN STRING AND LARGESTRING
+            try {
+                if (property instanceof StringProperty) {
+                    LargeStringProperty property2 = new LargeStringProperty();
+                    property2.setObject(object);
+                    property2.setName(name);
+                    loadXWikiProperty(property2, context, false);
+                    property.setValue(property2.getValue());
+
+                    if (bclass != null) {
+                        if (bclass.get(name) instanceof TextAreaClass) {
+                            property = property2;
+                        }
+                    }
+
+                } else if (property instanceof LargeStringProperty) {
+                    StringProperty property2 = new StringProperty();
+                    property2.setObject(object);
+                    property2.setName(name);
+                    loadXWikiProperty(property2, context, false);
+                    property.setValue(property2.getValue());
+
+                    if (bclass != null) {
+                        if (bclass.get(name) instanceof StringClass) {
+                            property = property2;
+                        }
+                    }
+                } else {
+                    throw e;
+                }
+            } catch (Throwable e2) {
+                Object[] args =
+                    { object.getName(), object.getClass(), Integer.valueOf(object.getNumber() + ""), name };
+                throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                    XWikiException.ERROR_XWIKI_STORE_HIBERNATE_LOADING_OBJECT,
+                    "Exception while loading object '{0}' of class '{1}', number '{2}' and property '{3}'", e,
+                    args);
+            }
+        }
+
+        return property;
+    }
+
+    private BaseClass getXClass(BaseCollection object, XWikiDocument doc, XWikiContext context)
+    {
+        BaseClass bclass = null;
+        if (!object.getXClassReference().equals(object.getDocumentReference())) {
+            // Let's check if the class has a custom mapping
+            bclass = object.getXClass(context);
+        } else {
+            // We need to get it from the document otherwise
+            // we will go in an endless loop
+            if (doc != null) {
+                bclass = doc.getXClass();
+            }
+        }
+
+        return bclass;
+    }
+
+    private void initLoadedXWikiProperty(BaseProperty property)
+    {
+        // In Oracle, empty string are converted to NULL. Since an undefined property is not found at all, it is
+        // safe to assume that a retrieved NULL value should actually be an empty string.
+        if (property instanceof BaseStringProperty) {
+            BaseStringProperty stringProperty = (BaseStringProperty) property;
+            if (stringProperty.getValue() == null) {
+                stringProperty.setValue("");
+            }
+        }
+        property.setValueDirty(false);
+
+        forceListLoading(property);
+    }
+
+    private void forceListLoading(PropertyInterface property)
+    {
+        // TODO: understand why collections are lazy loaded
+        // Let's force reading lists if there is a list
+        // This seems to be an issue since Hibernate 3.0
+        // Without this test ViewEditTest.testUpdateAdvanceObjectProp fails
+        if (property instanceof ListProperty) {
+            ((ListProperty) property).getList();
+        }
+    }
+
     private void loadXWikiProperty(PropertyInterface property, XWikiContext context, boolean bTransaction)
         throws XWikiException
     {
@@ -1541,26 +1939,12 @@ private void loadXWikiProperty(PropertyInterface property, XWikiContext context,
 
             try {
                 session.load(property, (Serializable) property);
-                // In Oracle, empty string are converted to NULL. Since an undefined property is not found at all, it is
-                // safe to assume that a retrieved NULL value should actually be an empty string.
-                if (property instanceof BaseStringProperty) {
-                    BaseStringProperty stringProperty = (BaseStringProperty) property;
-                    if (stringProperty.getValue() == null) {
-                        stringProperty.setValue("");
-                    }
-                }
-                ((BaseProperty) property).setValueDirty(false);
+                initLoadedXWikiProperty((BaseProperty) property);
             } catch (ObjectNotFoundException e) {
                 // Let's accept that there is no data in property tables but log it
                 this.logger.error("No data for property [{}] of object id [{}]", property.getName(), property.getId());
-            }
 
-            // TODO: understand why collections are lazy loaded
-            // Let's force reading lists if there is a list
-            // This seems to be an issue since Hibernate 3.0
-            // Without this test ViewEditTest.testUpdateAdvanceObjectProp fails
-            if (property instanceof ListProperty) {
-                ((ListProperty) property).getList();
+                forceListLoading(property);
             }
 
             if (bTransaction) {
@@ -19,6 +19,7 @@
  */
 package com.xpn.xwiki.store;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.xwiki.component.annotation.Role;
@@ -41,6 +42,29 @@
 
     XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext context) throws XWikiException;
 
+    /**
+     * Load several documents at once. Stores able to do so should load all the passed documents (and their objects)
+     * with a limited number of requests instead of loading them one by one.
+     *
+     * @param documents the documents to load
+     * @param context the XWiki context
+     * @return the loaded documents, in the same order as the passed ones (documents which don't exist are returned
+     *         with {@link XWikiDocument#isNew()} set to {@code true})
+     * @throws XWikiException when failing to load the documents
+     * @since 10.1RC1
+     */
+    default List<XWikiDocument> loadXWikiDocs(List<XWikiDocument> documents, XWikiContext context)
+        throws XWikiException
+    {
+        List<XWikiDocument> result = new ArrayList<>(documents.size());
+
+        for (XWikiDocument document : documents) {
+            result.add(loadXWikiDoc(document, context));
+        }
+
+        return result;
+    }
+
     void deleteXWikiDoc(XWikiDocument doc, XWikiContext context) throws XWikiException;
 
     List<String> getClassList(XWikiContext context) throws XWikiException;
@@ -0,0 +1,217 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.cache.rendering;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Provider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.DisposableCacheValue;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link DefaultFragmentCache}.
+ *
+ * @version $Id$
+ */
+public class DefaultFragmentCacheTest
+{
+    @Rule
+    public MockitoComponentMockingRule<FragmentCache> mocker =
+        new MockitoComponentMockingRule<>(DefaultFragmentCache.class);
+
+    private XWikiContext xcontext;
+
+    private Map<String, Object> cacheContent = new HashMap<>();
+
+    private EventListener documentListener;
+
+    private DocumentReference panelReference = new DocumentReference("wiki", "Panels", "Navigation");
+
+    private DocumentReference otherReference = new DocumentReference("wiki", "Space", "Other");
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() throws Exception
+    {
+        ConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(configuration.getProperty("core.fragmentcache.size", 1000)).thenReturn(1000);
+
+        // Use a map as cache
+        Cache<Object> cache = mock(Cache.class);
+        when(cache.get(anyString())).then(invocation -> this.cacheContent.get(invocation.getArgument(0)));
+        doAnswer(invocation -> {
+            dispose(this.cacheContent.put(invocation.getArgument(0), invocation.getArgument(1)));
+            return null;
+        }).when(cache).set(anyString(), any());
+        doAnswer(invocation -> {
+            dispose(this.cacheContent.remove(invocation.getArgument(0)));
+            return null;
+        }).when(cache).remove(anyString());
+        CacheManager cacheManager = this.mocker.getInstance(CacheManager.class);
+        when(cacheManager.createNewCache(any(CacheConfiguration.class))).thenReturn(cache);
+
+        this.xcontext = new XWikiContext();
+        this.xcontext.setWikiId("wiki");
+        Provider<XWikiContext> xcontextProvider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
+        when(xcontextProvider.get()).thenReturn(this.xcontext);
+
+        // Initialize the component and get the listener invalidating the fragments
+        this.mocker.getComponentUnderTest();
+        ArgumentCaptor<EventListener> listenerCaptor = ArgumentCaptor.forClass(EventListener.class);
+        ObservationManager observation = this.mocker.getInstance(ObservationManager.class);
+        verify(observation, times(2)).addListener(listenerCaptor.capture());
+        this.documentListener = listenerCaptor.getAllValues().get(0);
+    }
+
+    private void dispose(Object value) throws Exception
+    {
+        if (value instanceof DisposableCacheValue) {
+            ((DisposableCacheValue) value).dispose();
+        }
+    }
+
+    private String render(String key, DocumentReference dependency, AtomicInteger counter) throws Exception
+    {
+        return this.mocker.getComponentUnderTest().get(key, 0, () -> {
+            // What XWiki#getDocument() does
+            FragmentDependencyRecorder.record(dependency, this.xcontext);
+
+            return "result" + counter.incrementAndGet();
+        });
+    }
+
+    private void update(DocumentReference documentReference)
+    {
+        this.documentListener.onEvent(new DocumentUpdatedEvent(documentReference),
+            new XWikiDocument(documentReference), this.xcontext);
+    }
+
+    @Test
+    public void getWhenDependencyIsUpdated() throws Exception
+    {
+        AtomicInteger counter = new AtomicInteger();
+
+        assertEquals("result1", render("panel", this.panelReference, counter));
+        assertEquals("result1", render("panel", this.panelReference, counter));
+
+        // Modifying another document does not invalidate the fragment
+        update(this.otherReference);
+        assertEquals("result1", render("panel", this.panelReference, counter));
+
+        update(this.panelReference);
+        assertEquals("result2", render("panel", this.panelReference, counter));
+    }
+
+    @Test
+    public void getNestedFragments() throws Exception
+    {
+        AtomicInteger counter = new AtomicInteger();
+
+        // The inner fragment is cached first
+        assertEquals("result1", render("inner", this.otherReference, counter));
+
+        FragmentCache cache = this.mocker.getComponentUnderTest();
+        String outerResult = cache.get("outer", 0, () -> render("inner", this.otherReference, counter) + "-outer");
+        assertEquals("result1-outer", outerResult);
+
+        // The outer fragment depends on the documents read by the inner fragment, even when it's cached
+        update(this.otherReference);
+        assertEquals("result2-outer",
+            cache.get("outer", 0, () -> render("inner", this.otherReference, counter) + "-outer"));
+    }
+
+    @Test
+    public void getForAnotherUser() throws Exception
+    {
+        AtomicInteger counter = new AtomicInteger();
+
+        assertEquals("result1", render("panel", this.panelReference, counter));
+
+        this.xcontext.setUserReference(new DocumentReference("wiki", "XWiki", "Admin"));
+        assertEquals("result2", render("panel", this.panelReference, counter));
+    }
+
+    @Test
+    public void getWhenDependencyIsUpdatedDuringRendering() throws Exception
+    {
+        AtomicInteger counter = new AtomicInteger();
+
+        FragmentCache cache = this.mocker.getComponentUnderTest();
+        assertEquals("result1", cache.get("panel", 0, () -> {
+            FragmentDependencyRecorder.record(this.panelReference, this.xcontext);
+
+            // The panel document is modified after being read
+            update(this.panelReference);
+
+            return "result" + counter.incrementAndGet();
+        }));
+
+        // The outdated result has not been cached
+        assertEquals("result2", render("panel", this.panelReference, counter));
+        assertEquals("result2", render("panel", this.panelReference, counter));
+    }
+
+    @Test
+    public void getWhenRightsAreUpdated() throws Exception
+    {
+        AtomicInteger counter = new AtomicInteger();
+
+        assertEquals("result1", render("panel", this.panelReference, counter));
+
+        // The rights are not recorded as dependencies so any rights change invalidates all the fragments
+        DocumentReference preferencesReference = new DocumentReference("wiki", "Space", "WebPreferences");
+        XWikiDocument preferences = mock(XWikiDocument.class);
+        when(preferences.getDocumentReference()).thenReturn(preferencesReference);
+        when(preferences.getXObjects(new DocumentReference("wiki", "XWiki", "XWikiRights")))
+            .thenReturn(Collections.singletonList(mock(BaseObject.class)));
+        this.documentListener.onEvent(new DocumentUpdatedEvent(preferencesReference), preferences, this.xcontext);
+
+        assertEquals("result2", render("panel", this.panelReference, counter));
+    }
+}
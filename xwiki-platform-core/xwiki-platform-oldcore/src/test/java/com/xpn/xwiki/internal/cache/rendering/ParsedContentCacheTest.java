@@ -0,0 +1,165 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.cache.rendering;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.rendering.block.RawBlock;
+import org.xwiki.rendering.block.WordBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.listener.MetaData;
+import org.xwiki.rendering.parser.ContentParser;
+import org.xwiki.rendering.syntax.Syntax;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link ParsedContentCache}.
+ *
+ * @version $Id$
+ */
+public class ParsedContentCacheTest
+{
+    @Rule
+    public MockitoComponentMockingRule<ParsedContentCache> mocker =
+        new MockitoComponentMockingRule<>(ParsedContentCache.class);
+
+    private ContentParser parser;
+
+    private DocumentReference documentReference = new DocumentReference("wiki", "Space", "Page");
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() throws Exception
+    {
+        ConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(configuration.getProperty("core.parsedcontentcache.size", 500)).thenReturn(500);
+        when(configuration.getProperty("core.parsedcontentcache.maxMemory", 32)).thenReturn(1);
+        when(configuration.getProperty("core.parsedcontentcache.maxContentLength", 100000)).thenReturn(10);
+
+        this.parser = this.mocker.getInstance(ContentParser.class);
+        when(this.parser.parse(anyString(), eq(Syntax.XWIKI_2_1))).then(invocation -> {
+            XDOM xdom = new XDOM(Arrays.asList(new WordBlock(invocation.getArgument(0))));
+            xdom.getMetaData().addMetaData(MetaData.SYNTAX, Syntax.XWIKI_2_1);
+
+            return xdom;
+        });
+
+        EntityReferenceSerializer<String> serializer = this.mocker.getInstance(EntityReferenceSerializer.TYPE_STRING);
+        when(serializer.serialize(this.documentReference)).thenReturn("wiki:Space.Page");
+    }
+
+    @Test
+    public void parseSameContentTwice() throws Exception
+    {
+        XDOM xdom1 = this.mocker.getComponentUnderTest().parse("content", Syntax.XWIKI_2_1, this.documentReference);
+        XDOM xdom2 = this.mocker.getComponentUnderTest().parse("content", Syntax.XWIKI_2_1, null);
+
+        // The content is parsed only once
+        verify(this.parser, times(1)).parse("content", Syntax.XWIKI_2_1);
+
+        // But the returned XDOMs can be modified independently
+        assertNotSame(xdom1, xdom2);
+        assertNotSame(xdom1.getChildren().get(0), xdom2.getChildren().get(0));
+        assertEquals("content", ((WordBlock) xdom2.getChildren().get(0)).getWord());
+        assertSame(xdom1, xdom1.getChildren().get(0).getParent());
+
+        assertEquals(Syntax.XWIKI_2_1, xdom1.getMetaData().getMetaData(MetaData.SYNTAX));
+        assertEquals(Syntax.XWIKI_2_1, xdom2.getMetaData().getMetaData(MetaData.SYNTAX));
+        assertEquals("wiki:Space.Page", xdom1.getMetaData().getMetaData(MetaData.SOURCE));
+        assertNull(xdom2.getMetaData().getMetaData(MetaData.SOURCE));
+    }
+
+    @Test
+    public void parseLongContent() throws Exception
+    {
+        XDOM xdom = new XDOM(Arrays.asList(new WordBlock("long content")));
+        when(this.parser.parse("long content", Syntax.XWIKI_2_1, null)).thenReturn(xdom);
+
+        // Contents longer than the limit are not cached
+        assertSame(xdom, this.mocker.getComponentUnderTest().parse("long content", Syntax.XWIKI_2_1, null));
+        assertSame(xdom, this.mocker.getComponentUnderTest().parse("long content", Syntax.XWIKI_2_1, null));
+
+        verify(this.parser, times(2)).parse("long content", Syntax.XWIKI_2_1, null);
+    }
+
+    @Test
+    public void parseWhenMemoryIsExceeded() throws Exception
+    {
+        // A block holding a 256KB string uses a bit more than 512KB
+        String largeWord = String.join("", Collections.nCopies(256 * 1024, "a"));
+        when(this.parser.parse("large1", Syntax.XWIKI_2_1))
+            .thenReturn(new XDOM(Arrays.asList(new RawBlock(largeWord, Syntax.HTML_4_01))));
+        when(this.parser.parse("large2", Syntax.XWIKI_2_1))
+            .thenReturn(new XDOM(Arrays.asList(new RawBlock(largeWord, Syntax.HTML_4_01))));
+
+        ParsedContentCache cache = this.mocker.getComponentUnderTest();
+        cache.parse("content", Syntax.XWIKI_2_1, null);
+        cache.parse("large1", Syntax.XWIKI_2_1, null);
+        cache.parse("content", Syntax.XWIKI_2_1, null);
+
+        // The budget of 1MB is exceeded so the least recently used entry (large1) is removed
+        cache.parse("large2", Syntax.XWIKI_2_1, null);
+        assertTrue(cache.getMemory() <= 1024 * 1024);
+
+        cache.parse("content", Syntax.XWIKI_2_1, null);
+        cache.parse("large2", Syntax.XWIKI_2_1, null);
+        cache.parse("large1", Syntax.XWIKI_2_1, null);
+
+        verify(this.parser, times(1)).parse("content", Syntax.XWIKI_2_1);
+        verify(this.parser, times(1)).parse("large2", Syntax.XWIKI_2_1);
+        verify(this.parser, times(2)).parse("large1", Syntax.XWIKI_2_1);
+    }
+
+    @Test
+    public void parseContentLargerThanMemory() throws Exception
+    {
+        String hugeWord = String.join("", Collections.nCopies(1024 * 1024, "a"));
+        when(this.parser.parse("huge", Syntax.XWIKI_2_1))
+            .thenReturn(new XDOM(Arrays.asList(new RawBlock(hugeWord, Syntax.HTML_4_01))));
+
+        ParsedContentCache cache = this.mocker.getComponentUnderTest();
+        cache.parse("content", Syntax.XWIKI_2_1, null);
+        cache.parse("huge", Syntax.XWIKI_2_1, null);
+        cache.parse("huge", Syntax.XWIKI_2_1, null);
+        cache.parse("content", Syntax.XWIKI_2_1, null);
+
+        // An entry larger than the budget is not cached and doesn't remove the other entries
+        verify(this.parser, times(2)).parse("huge", Syntax.XWIKI_2_1);
+        verify(this.parser, times(1)).parse("content", Syntax.XWIKI_2_1);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.store;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link DocumentExistenceFilter}.
+ *
+ * @version $Id$
+ */
+public class DocumentExistenceFilterTest
+{
+    @Rule
+    public MockitoComponentMockingRule<DocumentExistenceFilter> mocker =
+        new MockitoComponentMockingRule<>(DocumentExistenceFilter.class);
+
+    private ConfigurationSource configuration;
+
+    private QueryManager queryManager;
+
+    private Query countQuery;
+
+    private Query idsQuery;
+
+    @Before
+    public void before() throws Exception
+    {
+        this.configuration = this.mocker.getInstance(ConfigurationSource.class, "xwikicfg");
+        when(this.configuration.getProperty("xwiki.store.cache.pageexistfilter", "1")).thenReturn("1");
+        when(this.configuration.getProperty("xwiki.store.cache.pageexistfilter.fpp", 0.01D)).thenReturn(0.01D);
+        when(this.configuration.getProperty("xwiki.store.cache.pageexistfilter.graceperiod", 60L)).thenReturn(0L);
+
+        this.countQuery = mock(Query.class);
+        when(this.countQuery.execute()).thenReturn(Collections.singletonList(3L));
+        this.idsQuery = mock(Query.class);
+        when(this.idsQuery.execute()).thenReturn(Arrays.asList(1L, 2L, 3L));
+
+        this.queryManager = this.mocker.getInstance(QueryManager.class);
+        when(this.queryManager.createQuery(startsWith("select count"), eq(Query.HQL))).thenReturn(this.countQuery);
+        when(this.queryManager.createQuery(startsWith("select doc.id"), eq(Query.HQL))).thenReturn(this.idsQuery);
+    }
+
+    private void waitForBuild(DocumentExistenceFilter filter, String wiki) throws InterruptedException
+    {
+        for (int i = 0; i < 500 && !filter.isBuilt(wiki); ++i) {
+            Thread.sleep(10L);
+        }
+        assertTrue(filter.isBuilt(wiki));
+    }
+
+    @Test
+    public void mightExist() throws Exception
+    {
+        DocumentExistenceFilter filter = this.mocker.getComponentUnderTest();
+
+        filter.mightExist("wiki", 1L);
+        waitForBuild(filter, "wiki");
+
+        assertTrue(filter.mightExist("wiki", 1L));
+        assertTrue(filter.mightExist("wiki", 3L));
+        assertFalse(filter.mightExist("wiki", 42L));
+
+        verify(this.countQuery).setWiki("wiki");
+        verify(this.idsQuery).setWiki("wiki");
+    }
+
+    @Test
+    public void mightExistWhileBuilding() throws Exception
+    {
+        CountDownLatch latch = new CountDownLatch(1);
+        when(this.countQuery.execute()).then(invocation -> {
+            latch.await();
+            return Collections.singletonList(3L);
+        });
+
+        DocumentExistenceFilter filter = this.mocker.getComponentUnderTest();
+
+        // Every document might exist until the filter is built
+        assertTrue(filter.mightExist("wiki", 42L));
+
+        // Documents saved before the filter being built is created are not missed
+        filter.add("wiki", 43L);
+
+        latch.countDown();
+        waitForBuild(filter, "wiki");
+
+        assertFalse(filter.mightExist("wiki", 42L));
+        assertTrue(filter.mightExist("wiki", 43L));
+    }
+
+    @Test
+    public void mightExistDuringGracePeriod() throws Exception
+    {
+        when(this.configuration.getProperty("xwiki.store.cache.pageexistfilter.graceperiod", 60L)).thenReturn(60L);
+
+        DocumentExistenceFilter filter = this.mocker.getComponentUnderTest();
+
+        filter.mightExist("wiki", 1L);
+        waitForBuild(filter, "wiki");
+
+        // A document created by another cluster member might not be known yet
+        assertTrue(filter.mightExist("wiki", 42L));
+    }
+
+    @Test
+    public void add() throws Exception
+    {
+        DocumentExistenceFilter filter = this.mocker.getComponentUnderTest();
+
+        filter.mightExist("wiki", 1L);
+        waitForBuild(filter, "wiki");
+
+        filter.add("wiki", 42L);
+
+        assertTrue(filter.mightExist("wiki", 42L));
+    }
+
+    @Test
+    public void mightExistWhenBuildFails() throws Exception
+    {
+        when(this.countQuery.execute()).thenThrow(new QueryException("error", null, null));
+
+        DocumentExistenceFilter filter = this.mocker.getComponentUnderTest();
+
+        filter.mightExist("wiki", 1L);
+        Thread.sleep(100L);
+
+        assertFalse(filter.isBuilt("wiki"));
+        assertTrue(filter.mightExist("wiki", 42L));
+    }
+
+    @Test
+    public void disabled() throws Exception
+    {
+        when(this.configuration.getProperty("xwiki.store.cache.pageexistfilter", "1")).thenReturn("0");
+
+        DocumentExistenceFilter filter = this.mocker.getComponentUnderTest();
+
+        assertTrue(filter.mightExist("wiki", 42L));
+
+        verify(this.queryManager, never()).createQuery(any(), any());
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.store;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link LongBloomFilter}.
+ *
+ * @version $Id$
+ */
+public class LongBloomFilterTest
+{
+    @Test
+    public void mightContain()
+    {
+        LongBloomFilter filter = new LongBloomFilter(1000, 0.01D);
+
+        for (long value = 0; value < 1000; ++value) {
+            filter.put(value * 31);
+        }
+
+        // No false negative
+        for (long value = 0; value < 1000; ++value) {
+            assertTrue(filter.mightContain(value * 31));
+        }
+
+        // Few false positives
+        int falsePositives = 0;
+        for (long value = 0; value < 10000; ++value) {
+            if (filter.mightContain(value * 31 + 1)) {
+                ++falsePositives;
+            }
+        }
+        assertTrue("Too many false positives: " + falsePositives, falsePositives < 500);
+
+        assertFalse(filter.isSaturated());
+        filter.put(-1);
+        assertTrue(filter.isSaturated());
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.user;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.user.impl.xwiki.XWikiGroupServiceImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link GroupClosureIndex}.
+ *
+ * @version $Id$
+ */
+public class GroupClosureIndexTest
+{
+    @Rule
+    public MockitoComponentMockingRule<GroupClosureIndex> mocker =
+        new MockitoComponentMockingRule<>(GroupClosureIndex.class);
+
+    private WikiReference wiki = new WikiReference("wiki");
+
+    private DocumentReference alice = new DocumentReference("wiki", "XWiki", "Alice");
+
+    private DocumentReference bob = new DocumentReference("wiki", "XWiki", "Bob");
+
+    private DocumentReference groupA = new DocumentReference("wiki", "XWiki", "GroupA");
+
+    private DocumentReference groupB = new DocumentReference("wiki", "XWiki", "GroupB");
+
+    private DocumentReference groupC = new DocumentReference("wiki", "XWiki", "GroupC");
+
+    private DocumentReference otherAlice = new DocumentReference("wiki", "Other", "Alice");
+
+    private DocumentReference globalAlice = new DocumentReference("xwiki", "XWiki", "Alice");
+
+    private Query query;
+
+    @Before
+    public void before() throws Exception
+    {
+        ConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class, "xwikicfg");
+        when(configuration.getProperty("xwiki.authentication.group.index", "1")).thenReturn("1");
+        when(configuration.getProperty("xwiki.authentication.group.allgroupimplicit", "0")).thenReturn("0");
+        when(configuration.getProperty("xwiki.authentication.groupclass", XWikiGroupServiceImpl.class.getName()))
+            .thenReturn(XWikiGroupServiceImpl.class.getName());
+
+        DocumentReferenceResolver<String> currentResolver =
+            this.mocker.getInstance(DocumentReferenceResolver.TYPE_STRING, "current");
+        EntityReferenceSerializer<String> serializer = this.mocker.getInstance(EntityReferenceSerializer.TYPE_STRING);
+        EntityReferenceSerializer<String> localSerializer =
+            this.mocker.getInstance(EntityReferenceSerializer.TYPE_STRING, "local");
+        for (DocumentReference reference : Arrays.asList(this.alice, this.bob, this.groupA, this.groupB, this.groupC)) {
+            when(currentResolver.resolve("XWiki." + reference.getName(), this.wiki)).thenReturn(reference);
+        }
+        when(serializer.serialize(any())).then(invocation -> {
+            DocumentReference reference = invocation.getArgument(0);
+            return reference.getWikiReference().getName() + ':' + reference.getLastSpaceReference().getName() + '.'
+                + reference.getName();
+        });
+        when(localSerializer.serialize(any())).then(invocation -> {
+            DocumentReference reference = invocation.getArgument(0);
+            return reference.getLastSpaceReference().getName() + '.' + reference.getName();
+        });
+
+        // GroupA <- Alice
+        // GroupB <- GroupA
+        // GroupC <- GroupB, Bob
+        this.query = mock(Query.class);
+        when(this.query.execute()).thenReturn(Arrays.<Object>asList(new Object[] {"XWiki.GroupA", "XWiki.Alice"},
+            new Object[] {"XWiki.GroupB", "XWiki.GroupA"},
+            new Object[] {"XWiki.GroupC", "XWiki.GroupB"}, new Object[] {"XWiki.GroupC", "XWiki.Bob"}));
+        QueryManager queryManager = this.mocker.getInstance(QueryManager.class);
+        when(queryManager.createQuery(any(), any())).thenReturn(this.query);
+    }
+
+    private XWikiDocument mockGroupDocument(DocumentReference group, String... members)
+    {
+        XWikiDocument document = mock(XWikiDocument.class);
+        when(document.getDocumentReference()).thenReturn(group);
+
+        BaseObject[] objects = new BaseObject[members.length];
+        for (int i = 0; i < members.length; ++i) {
+            objects[i] = mock(BaseObject.class);
+            when(objects[i].getStringValue("member")).thenReturn(members[i]);
+        }
+        when(document.getXObjects(XWikiGroupServiceImpl.GROUPCLASS_REFERENCE)).thenReturn(Arrays.asList(objects));
+
+        return document;
+    }
+
+    @Test
+    public void isDisabledWithCustomGroupService() throws Exception
+    {
+        // The memberships provided by a custom group service (e.g. LDAP) are not indexed
+        ConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class, "xwikicfg");
+        when(configuration.getProperty("xwiki.authentication.groupclass", XWikiGroupServiceImpl.class.getName()))
+            .thenReturn("com.example.LDAPGroupService");
+
+        assertFalse(this.mocker.getComponentUnderTest().isEnabled());
+    }
+
+    @Test
+    public void getGroups() throws Exception
+    {
+        GroupClosureIndex index = this.mocker.getComponentUnderTest();
+
+        assertTrue(index.isEnabled());
+        assertEquals(Collections.singletonList(this.groupA), index.getGroups(this.alice, this.wiki));
+        assertEquals(Collections.singletonList(this.groupB), index.getGroups(this.groupA, this.wiki));
+        assertEquals(Collections.singletonList(this.groupC), index.getGroups(this.bob, this.wiki));
+        assertEquals(Collections.emptyList(), index.getGroups(new DocumentReference("wiki", "XWiki", "Carol"),
+            this.wiki));
+
+        // The memberships of the wiki are loaded only once
+        verify(this.query, times(1)).execute();
+    }
+
+    @Test
+    public void getAllGroups() throws Exception
+    {
+        GroupClosureIndex index = this.mocker.getComponentUnderTest();
+
+        assertEquals(new HashSet<>(Arrays.asList(this.groupA, this.groupB, this.groupC)),
+            new HashSet<>(index.getAllGroups(this.alice, this.wiki)));
+        assertEquals(Collections.singletonList(this.groupC), index.getAllGroups(this.bob, this.wiki));
+    }
+
+    @Test
+    public void updateGroup() throws Exception
+    {
+        GroupClosureIndex index = this.mocker.getComponentUnderTest();
+
+        assertEquals(3, index.getAllGroups(this.alice, this.wiki).size());
+
+        // GroupB does not contain GroupA anymore but contains Bob
+        index.updateGroup(mockGroupDocument(this.groupB, "XWiki.Bob"));
+
+        assertEquals(Collections.singletonList(this.groupA), index.getAllGroups(this.alice, this.wiki));
+        assertEquals(new HashSet<>(Arrays.asList(this.groupB, this.groupC)),
+            new HashSet<>(index.getAllGroups(this.bob, this.wiki)));
+
+        // GroupB is deleted
+        index.updateGroup(mockGroupDocument(this.groupB));
+
+        assertEquals(Collections.singletonList(this.groupC), index.getAllGroups(this.bob, this.wiki));
+    }
+
+    @Test
+    public void updateGroupWithCycle() throws Exception
+    {
+        GroupClosureIndex index = this.mocker.getComponentUnderTest();
+
+        assertEquals(Collections.singletonList(this.groupC), index.getAllGroups(this.bob, this.wiki));
+
+        // GroupA now contains GroupC which contains GroupB which contains GroupA
+        index.updateGroup(mockGroupDocument(this.groupA, "XWiki.Alice", "XWiki.GroupC"));
+
+        assertEquals(new HashSet<>(Arrays.asList(this.groupA, this.groupB, this.groupC)),
+            new HashSet<>(index.getAllGroups(this.bob, this.wiki)));
+        assertEquals(new HashSet<>(Arrays.asList(this.groupA, this.groupB, this.groupC)),
+            new HashSet<>(index.getAllGroups(this.groupA, this.wiki)));
+    }
+
+    @Test
+    public void allGroupImplicit() throws Exception
+    {
+        ConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class, "xwikicfg");
+        when(configuration.getProperty("xwiki.authentication.group.allgroupimplicit", "0")).thenReturn("1");
+
+        GroupClosureIndex index = this.mocker.getComponentUnderTest();
+
+        assertEquals(new HashSet<>(Arrays.asList(this.groupC, new DocumentReference("wiki", "XWiki", "XWikiAllGroup"))),
+            new HashSet<>(index.getAllGroups(this.bob, this.wiki)));
+        assertEquals(Collections.emptyList(),
+            index.getAllGroups(new DocumentReference("wiki", "XWiki", "XWikiGuest"), this.wiki));
+    }
+
+    @Test
+    public void updateGroupWithShortNames() throws Exception
+    {
+        GroupClosureIndex index = this.mocker.getComponentUnderTest();
+
+        // Same as the listGroupsForUser query: the members of the wiki can be stored without the wiki or the space
+        index.updateGroup(mockGroupDocument(this.groupA, "Alice"));
+        index.updateGroup(mockGroupDocument(this.groupB, "XWiki.GroupA", "wiki:XWiki.Bob"));
+
+        assertEquals(new HashSet<>(Arrays.asList(this.groupA, this.groupB, this.groupC)),
+            new HashSet<>(index.getAllGroups(this.alice, this.wiki)));
+        assertEquals(Collections.singletonList(this.groupA), index.getGroups(this.otherAlice, this.wiki));
+        assertEquals(new HashSet<>(Arrays.asList(this.groupB, this.groupC)),
+            new HashSet<>(index.getGroups(this.bob, this.wiki)));
+
+        // The members of other wikis have to be stored with their wiki
+        assertEquals(Collections.emptyList(), index.getGroups(this.globalAlice, this.wiki));
+        index.updateGroup(mockGroupDocument(this.groupA, "xwiki:XWiki.Alice"));
+        assertEquals(Collections.singletonList(this.groupA), index.getGroups(this.globalAlice, this.wiki));
+        assertEquals(Collections.emptyList(), index.getGroups(this.alice, this.wiki));
+    }
+
+    @Test
+    public void updateGroupWithDifferentCase() throws Exception
+    {
+        GroupClosureIndex index = this.mocker.getComponentUnderTest();
+
+        index.updateGroup(mockGroupDocument(this.groupA, "xwiki.ALICE"));
+        index.updateGroup(mockGroupDocument(this.groupB, "XWIKI.groupa", "BOB"));
+
+        assertEquals(new HashSet<>(Arrays.asList(this.groupA, this.groupB, this.groupC)),
+            new HashSet<>(index.getAllGroups(this.alice, this.wiki)));
+        assertEquals(new HashSet<>(Arrays.asList(this.groupB, this.groupC)),
+            new HashSet<>(index.getAllGroups(this.bob, this.wiki)));
+    }
+
+    @Test
+    public void loadShortNames() throws Exception
+    {
+        when(this.query.execute()).thenReturn(Arrays.<Object>asList(new Object[] {"XWiki.GroupA", "alice"},
+            new Object[] {"XWiki.GroupB", " XWiki.GroupA "}));
+
+        GroupClosureIndex index = this.mocker.getComponentUnderTest();
+
+        assertEquals(new HashSet<>(Arrays.asList(this.groupA, this.groupB)),
+            new HashSet<>(index.getAllGroups(this.alice, this.wiki)));
+    }
+}
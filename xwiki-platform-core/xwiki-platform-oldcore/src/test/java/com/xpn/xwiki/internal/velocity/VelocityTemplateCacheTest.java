@@ -0,0 +1,135 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.velocity;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.velocity.runtime.parser.node.ASTDirective;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link VelocityTemplateCache}.
+ *
+ * @version $Id$
+ */
+public class VelocityTemplateCacheTest
+{
+    @Rule
+    public MockitoComponentMockingRule<VelocityTemplateCache> mocker =
+        new MockitoComponentMockingRule<>(VelocityTemplateCache.class);
+
+    private SimpleNode tree = new SimpleNode(0);
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() throws Exception
+    {
+        ConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(configuration.getProperty("core.velocitytemplatecache.size", 1000)).thenReturn(1000);
+        when(configuration.getProperty("core.velocitytemplatecache.maxContentLength", 100000)).thenReturn(10);
+
+        // Use a map as cache
+        Map<String, Object> cacheContent = new HashMap<>();
+        Cache<Object> cache = mock(Cache.class);
+        when(cache.get(anyString())).then(invocation -> cacheContent.get(invocation.getArgument(0)));
+        doAnswer(invocation -> cacheContent.put(invocation.getArgument(0), invocation.getArgument(1))).when(cache)
+            .set(anyString(), any());
+        CacheManager cacheManager = this.mocker.getInstance(CacheManager.class);
+        when(cacheManager.createNewCache(any(CacheConfiguration.class))).thenReturn(cache);
+    }
+
+    @Test
+    public void getAfterSet() throws Exception
+    {
+        this.mocker.getComponentUnderTest().set("1", "xwiki:Space.Page", "#set($a=1)", this.tree);
+
+        assertSame(this.tree, this.mocker.getComponentUnderTest().get("1", "xwiki:Space.Page", "#set($a=1)"));
+
+        // Different content
+        assertNull(this.mocker.getComponentUnderTest().get("1", "xwiki:Space.Page", "#set($a=2)"));
+        // Different macro namespace
+        assertNull(this.mocker.getComponentUnderTest().get("1", "xwiki:Space.Other", "#set($a=1)"));
+        // Different engine
+        assertNull(this.mocker.getComponentUnderTest().get("2", "xwiki:Space.Page", "#set($a=1)"));
+    }
+
+    @Test
+    public void getFromAnotherThread() throws Exception
+    {
+        VelocityTemplateCache cache = this.mocker.getComponentUnderTest();
+        cache.set("1", "xwiki:Space.Page", "#set($a=1)", this.tree);
+
+        AtomicReference<SimpleNode> result = new AtomicReference<>(this.tree);
+        Thread thread = new Thread(() -> result.set(cache.get("1", "xwiki:Space.Page", "#set($a=1)")));
+        thread.start();
+        thread.join();
+
+        // Parsed trees are initialized again before each evaluation so they are not shared between threads
+        assertNull(result.get());
+    }
+
+    @Test
+    public void setTreeDefiningMacro() throws Exception
+    {
+        SimpleNode block = new SimpleNode(0);
+        ASTDirective macro = new ASTDirective(0);
+        macro.setDirectiveName("macro");
+        block.jjtAddChild(macro, 0);
+        this.tree.jjtAddChild(block, 0);
+
+        this.mocker.getComponentUnderTest().set("1", "xwiki:Space.Page", "#macro(m)#end", this.tree);
+
+        // The macros are registered while parsing so the tree has to be parsed again each time
+        assertNull(this.mocker.getComponentUnderTest().get("1", "xwiki:Space.Page", "#macro(m)#end"));
+    }
+
+    @Test
+    public void setLongContent() throws Exception
+    {
+        String content = "#set($a = 'long content')";
+
+        assertFalse(this.mocker.getComponentUnderTest().isCacheable(content));
+        assertTrue(this.mocker.getComponentUnderTest().isCacheable("$a"));
+
+        this.mocker.getComponentUnderTest().set("1", "xwiki:Space.Page", content, this.tree);
+
+        assertNull(this.mocker.getComponentUnderTest().get("1", "xwiki:Space.Page", content));
+    }
+}
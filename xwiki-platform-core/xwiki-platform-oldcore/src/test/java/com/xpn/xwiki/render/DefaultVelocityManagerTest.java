@@ -19,28 +19,51 @@
  */
 package com.xpn.xwiki.render;
 
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.apache.velocity.VelocityContext;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.localization.ContextualLocalizationManager;
 import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.properties.internal.DefaultConverterManager;
+import org.xwiki.properties.internal.converter.ConvertUtilsConverter;
+import org.xwiki.properties.internal.converter.EnumConverter;
 import org.xwiki.script.internal.DefaultScriptContextManager;
 import org.xwiki.test.annotation.ComponentList;
+import org.xwiki.test.internal.MockConfigurationSource;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 import org.xwiki.velocity.VelocityManager;
 import org.xwiki.velocity.internal.DefaultVelocityConfiguration;
+import org.xwiki.velocity.internal.DefaultVelocityContextFactory;
+import org.xwiki.velocity.internal.DefaultVelocityEngine;
+import org.xwiki.velocity.internal.DefaultVelocityFactory;
 import org.xwiki.velocity.internal.VelocityExecutionContextInitializer;
 
 import com.xpn.xwiki.api.Document;
 import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.velocity.VelocityTemplateCache;
 import com.xpn.xwiki.test.MockitoOldcoreRule;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 /**
  * Validate {@link DefaultVelocityManager}.
@@ -48,7 +71,9 @@
  * @version $Id$
  */
 @ComponentList(value = { DefaultScriptContextManager.class, XWikiScriptContextInitializer.class,
-DefaultVelocityConfiguration.class })
+DefaultVelocityConfiguration.class, DefaultVelocityFactory.class, DefaultVelocityEngine.class,
+DefaultVelocityContextFactory.class, VelocityTemplateCache.class, DefaultConverterManager.class, EnumConverter.class,
+ConvertUtilsConverter.class })
 public class DefaultVelocityManagerTest
 {
     public MockitoComponentMockingRule<VelocityManager> mocker =
@@ -64,6 +89,20 @@ public void before() throws Exception
 
         this.oldcore.getExecutionContext().setProperty(VelocityExecutionContextInitializer.VELOCITY_CONTEXT_ID,
             new VelocityContext());
+
+        // Don't load any macros template
+        doReturn("").when(this.oldcore.getSpyXWiki()).Param("xwiki.render.velocity.macrolist");
+
+        // Use a map as cache for the parsed Velocity contents
+        Map<String, Object> cacheContent = new HashMap<>();
+        Cache<Object> cache = mock(Cache.class);
+        when(cache.get(anyString())).then(invocation -> cacheContent.get(invocation.getArgument(0)));
+        doAnswer(invocation -> cacheContent.put(invocation.getArgument(0), invocation.getArgument(1))).when(cache)
+            .set(anyString(), any());
+        CacheManager cacheManager = this.mocker.registerMockComponent(CacheManager.class);
+        when(cacheManager.createNewCache(any(CacheConfiguration.class))).thenReturn(cache);
+        this.mocker.registerComponent(MockConfigurationSource.getDescriptor("xwikiproperties"),
+            new MockConfigurationSource());
     }
 
     // Tests
@@ -107,4 +146,18 @@ public void getVelocityContext() throws ComponentLookupException
         assertNotNull(context.get("sdoc"));
         assertNotSame(sdoc, context.get("sdoc"));
     }
+
+    @Test
+    public void evaluateContentDefiningMacroSeveralTimes() throws Exception
+    {
+        String content = "#macro(hello $name)Hello $name#end#hello('World')";
+
+        for (int i = 0; i < 2; i++) {
+            StringWriter out = new StringWriter();
+            this.mocker.getComponentUnderTest().evaluate(out, "xwiki:Space.Page", new StringReader(content));
+
+            // The macro must still be defined when the content is evaluated again
+            assertEquals("Hello World", out.toString());
+        }
+    }
 }
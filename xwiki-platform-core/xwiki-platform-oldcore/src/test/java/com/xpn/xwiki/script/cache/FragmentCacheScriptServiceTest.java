@@ -0,0 +1,90 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.script.cache;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.template.TemplateManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.internal.cache.rendering.FragmentCache;
+import com.xpn.xwiki.internal.cache.rendering.FragmentCache.FragmentRenderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link FragmentCacheScriptService}.
+ *
+ * @version $Id$
+ */
+public class FragmentCacheScriptServiceTest
+{
+    @Rule
+    public MockitoComponentMockingRule<FragmentCacheScriptService> mocker =
+        new MockitoComponentMockingRule<>(FragmentCacheScriptService.class);
+
+    private FragmentCache fragmentCache;
+
+    private TemplateManager templates;
+
+    @Before
+    public void before() throws Exception
+    {
+        // Render the fragments without caching them
+        this.fragmentCache = this.mocker.getInstance(FragmentCache.class);
+        when(this.fragmentCache.get(anyString(), anyInt(), any()))
+            .then(invocation -> invocation.<FragmentRenderer<?, ?>>getArgument(2).render());
+
+        this.templates = this.mocker.getInstance(TemplateManager.class);
+    }
+
+    @Test
+    public void renderTemplate() throws Exception
+    {
+        when(this.templates.render("menu.vm")).thenReturn("menu");
+
+        assertEquals("menu", this.mocker.getComponentUnderTest().renderTemplate("menu.vm", 60));
+        assertEquals("menu", this.mocker.getComponentUnderTest().renderTemplate("menu.vm", "Space.Page", 0));
+
+        verify(this.fragmentCache).get(eq("template:menu.vm:"), eq(60), any());
+        verify(this.fragmentCache).get(eq("template:menu.vm:Space.Page"), eq(0), any());
+        verify(this.templates, times(2)).render("menu.vm");
+    }
+
+    @Test
+    public void renderTemplateWhenFailing() throws Exception
+    {
+        Exception exception = new Exception("error");
+        when(this.templates.render("menu.vm")).thenThrow(exception);
+
+        assertNull(this.mocker.getComponentUnderTest().renderTemplate("menu.vm", 60));
+
+        verify(this.mocker.getMockedLogger()).error("Failed to render template [{}]", "menu.vm", exception);
+    }
+}
@@ -19,6 +19,14 @@
  */
 package com.xpn.xwiki.store;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -30,15 +38,22 @@
 import org.xwiki.observation.remote.RemoteObservationManagerContext;
 import org.xwiki.test.annotation.ComponentList;
 
+import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.store.DocumentExistenceFilter;
 import com.xpn.xwiki.test.MockitoOldcoreRule;
 
 import static com.xpn.xwiki.test.mockito.OldcoreMatchers.isCacheConfiguration;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -59,11 +74,15 @@
 
     private Cache<Boolean> existCache;
 
+    private DocumentExistenceFilter existenceFilter;
+
     @Before
     public void before() throws Exception
     {
         this.oldcore.getMocker().registerMockComponent(RemoteObservationManagerContext.class);
         this.oldcore.getMocker().registerMockComponent(ObservationManager.class);
+        this.existenceFilter = this.oldcore.getMocker().registerMockComponent(DocumentExistenceFilter.class);
+        when(this.existenceFilter.mightExist(any(), anyLong())).thenReturn(true);
 
         CacheManager cacheManager = this.oldcore.getMocker().registerMockComponent(CacheManager.class);
         cache = mock(Cache.class);
@@ -115,4 +134,139 @@ public void testLoadXWikiDoc() throws Exception
         verifyNoMoreInteractions(this.cache);
         verifyNoMoreInteractions(this.existCache);
     }
+
+    @Test
+    public void loadXWikiDocWhenFilteredOut() throws Exception
+    {
+        this.oldcore.getXWikiContext().setWikiId("wiki");
+
+        DocumentReference reference = new DocumentReference("wiki", "space", "page");
+        XWikiDocument document = new XWikiDocument(reference);
+        when(this.existenceFilter.mightExist("wiki", document.getId())).thenReturn(false);
+
+        XWikiCacheStore store = new XWikiCacheStore(this.oldcore.getMockStore(), this.oldcore.getXWikiContext());
+
+        assertTrue(store.loadXWikiDoc(document, this.oldcore.getXWikiContext()).isNew());
+        assertFalse(store.exists(new XWikiDocument(reference), this.oldcore.getXWikiContext()));
+
+        verify(this.oldcore.getMockStore(), never()).loadXWikiDoc(any(XWikiDocument.class), any(XWikiContext.class));
+        verify(this.oldcore.getMockStore(), never()).exists(any(XWikiDocument.class), any(XWikiContext.class));
+    }
+
+    @Test
+    public void loadXWikiDocFromOtherWikiReference() throws Exception
+    {
+        // The document is stored in the current wiki, like when it's loaded with a reference to another wiki
+        this.oldcore.getXWikiContext().setWikiId("wiki");
+        this.oldcore.getSpyXWiki().saveDocument(new XWikiDocument(new DocumentReference("wiki", "space", "page")),
+            this.oldcore.getXWikiContext());
+
+        DocumentReference reference = new DocumentReference("otherwiki", "space", "page");
+        XWikiDocument document = new XWikiDocument(reference);
+        when(this.existenceFilter.mightExist("otherwiki", document.getId())).thenReturn(false);
+
+        XWikiCacheStore store = new XWikiCacheStore(this.oldcore.getMockStore(), this.oldcore.getXWikiContext());
+
+        // The existence filter of the current wiki is used, like the cache and the store
+        assertFalse(store.loadXWikiDoc(document, this.oldcore.getXWikiContext()).isNew());
+        assertTrue(store.exists(new XWikiDocument(reference), this.oldcore.getXWikiContext()));
+
+        verify(this.existenceFilter, never()).mightExist("otherwiki", document.getId());
+    }
+
+    @Test
+    public void saveXWikiDocAddsToExistenceFilter() throws Exception
+    {
+        // The document is indexed in the current wiki, where the store saves it
+        this.oldcore.getXWikiContext().setWikiId("otherwiki");
+
+        XWikiDocument document = new XWikiDocument(new DocumentReference("wiki", "space", "page"));
+
+        XWikiCacheStore store = new XWikiCacheStore(this.oldcore.getMockStore(), this.oldcore.getXWikiContext());
+        store.saveXWikiDoc(document, this.oldcore.getXWikiContext());
+
+        verify(this.existenceFilter, times(2)).add("otherwiki", document.getId());
+    }
+
+    @Test
+    public void loadXWikiDocs() throws Exception
+    {
+        this.oldcore.getXWikiContext().setWikiId("wiki");
+        this.oldcore.getSpyXWiki().saveDocument(new XWikiDocument(new DocumentReference("wiki", "space", "page")),
+            this.oldcore.getXWikiContext());
+
+        XWikiDocument cachedDocument = new XWikiDocument(new DocumentReference("wiki", "space", "cached"));
+        when(this.cache.get("4:wiki5:space6:cached")).thenReturn(cachedDocument);
+
+        when(this.oldcore.getMockStore().loadXWikiDocs(any(), any())).thenCallRealMethod();
+
+        XWikiCacheStore store = new XWikiCacheStore(this.oldcore.getMockStore(), this.oldcore.getXWikiContext());
+
+        List<DocumentReference> references = Arrays.asList(new DocumentReference("wiki", "space", "cached"),
+            new DocumentReference("wiki", "space", "page"), new DocumentReference("wiki", "space", "nopage"));
+        List<XWikiDocument> documents = store.loadXWikiDocs(references, this.oldcore.getXWikiContext());
+
+        assertEquals(3, documents.size());
+        assertSame(cachedDocument, documents.get(0));
+        assertTrue(cachedDocument.isFromCache());
+        assertFalse(documents.get(1).isNew());
+        assertEquals(new DocumentReference("wiki", "space", "page"), documents.get(1).getDocumentReference());
+        assertTrue(documents.get(2).isNew());
+
+        // Only the missing documents are loaded from the store, all at once
+        verify(this.oldcore.getMockStore()).loadXWikiDocs(argThat(list -> list.size() == 2), any());
+        verify(this.cache).set(eq("4:wiki5:space4:page"), any(XWikiDocument.class));
+        verify(this.existCache).set("4:wiki5:space4:page", Boolean.TRUE);
+        verify(this.existCache).set("4:wiki5:space6:nopage", Boolean.FALSE);
+    }
+
+    @Test
+    public void loadXWikiDocConcurrently() throws Exception
+    {
+        this.oldcore.getXWikiContext().setWikiId("wiki");
+
+        DocumentReference reference = new DocumentReference("wiki", "space", "page");
+        XWikiDocument storedDocument = new XWikiDocument(reference);
+        storedDocument.setNew(false);
+
+        CountDownLatch loadingStarted = new CountDownLatch(1);
+        CountDownLatch loadingAllowed = new CountDownLatch(1);
+        XWikiStoreInterface blockingStore = mock(XWikiStoreInterface.class);
+        when(blockingStore.loadXWikiDoc(any(XWikiDocument.class), any(XWikiContext.class))).then(invocation -> {
+            loadingStarted.countDown();
+            loadingAllowed.await();
+
+            return storedDocument;
+        });
+
+        XWikiCacheStore store = new XWikiCacheStore(blockingStore, this.oldcore.getXWikiContext());
+
+        XWikiContext xcontext = this.oldcore.getXWikiContext();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<XWikiDocument> first =
+                executor.submit(() -> store.loadXWikiDoc(new XWikiDocument(reference), xcontext));
+            loadingStarted.await();
+
+            AtomicReference<Thread> secondThread = new AtomicReference<>();
+            Future<XWikiDocument> second = executor.submit(() -> {
+                secondThread.set(Thread.currentThread());
+                return store.loadXWikiDoc(new XWikiDocument(reference), xcontext);
+            });
+
+            // Wait for the second thread to wait for the first one
+            while (secondThread.get() == null || secondThread.get().getState() != Thread.State.WAITING) {
+                Thread.sleep(10);
+            }
+
+            loadingAllowed.countDown();
+
+            assertSame(storedDocument, first.get());
+            assertSame(storedDocument, second.get());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(blockingStore, times(1)).loadXWikiDoc(any(XWikiDocument.class), any(XWikiContext.class));
+    }
 }
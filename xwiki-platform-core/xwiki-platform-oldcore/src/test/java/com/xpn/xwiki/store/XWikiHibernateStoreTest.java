@@ -20,8 +20,10 @@
 package com.xpn.xwiki.store;
 
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 
@@ -44,16 +46,22 @@
 import org.xwiki.query.QueryManager;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
+import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.objects.BaseProperty;
+import com.xpn.xwiki.objects.DBStringListProperty;
 import com.xpn.xwiki.objects.LargeStringProperty;
+import com.xpn.xwiki.objects.StringListProperty;
 import com.xpn.xwiki.objects.StringProperty;
+import com.xpn.xwiki.objects.classes.BaseClass;
 import com.xpn.xwiki.store.migration.DataMigrationManager;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.mock;
@@ -81,6 +89,14 @@ public class XWikiHibernateStoreTest extends AbstractXWikiHibernateStoreTest<XWi
      */
     private XWikiHibernateStore store;
 
+    private DocumentReference documentReference = new DocumentReference("wiki", "Space", "Page");
+
+    private XWikiDocument document;
+
+    private Query objectsQuery;
+
+    private Query propertiesQuery;
+
     @Override
     protected MockitoComponentMockingRule<XWikiStoreInterface> getMocker()
     {
@@ -94,6 +110,81 @@ public void setUp() throws Exception
         super.setUp();
 
         store = (XWikiHibernateStore) mocker.getComponentUnderTest();
+
+        when(this.xcontext.getWikiId()).thenReturn("wiki");
+
+        this.document = mock(XWikiDocument.class);
+        when(this.document.getDocumentReference()).thenReturn(this.documentReference);
+        when(this.document.getFullName()).thenReturn("Space.Page");
+        when(this.document.getDate()).thenReturn(new Date());
+        when(this.document.getCreationDate()).thenReturn(new Date());
+        when(this.document.getContentUpdateDate()).thenReturn(new Date());
+
+        this.objectsQuery = mock(Query.class);
+        when(session.createQuery("from BaseObject as bobject where bobject.name in (:names) order by bobject.number"))
+            .thenReturn(this.objectsQuery);
+        this.propertiesQuery = mock(Query.class);
+        when(session.createQuery(
+            "select prop.id.id, prop.name, prop.classType from BaseProperty as prop where prop.id.id in (:ids)"))
+                .thenReturn(this.propertiesQuery);
+    }
+
+    private void setBulkLoading(boolean enabled)
+    {
+        XWiki wiki = this.xcontext.getWiki();
+        when(wiki.Param("xwiki.store.hibernate.bulkloading", "0")).thenReturn(enabled ? "1" : "0");
+    }
+
+    /**
+     * Mock an object as stored in the database and the object of the right class it is converted to when loaded.
+     *
+     * @return the loaded object
+     */
+    private BaseObject mockObject(DocumentReference classReference, int number, long id) throws Exception
+    {
+        BaseObject storedObject = mock(BaseObject.class, "stored" + id);
+        when(storedObject.getXClassReference()).thenReturn(classReference);
+        when(storedObject.getName()).thenReturn(this.document.getFullName());
+        when(storedObject.getDocumentReference()).thenReturn(this.documentReference);
+        when(storedObject.getNumber()).thenReturn(number);
+        when(storedObject.getId()).thenReturn(id);
+
+        BaseClass xclass = mock(BaseClass.class, classReference.getName());
+        when(this.xcontext.getWiki().getXClass(classReference, this.xcontext)).thenReturn(xclass);
+
+        BaseObject object = mock(BaseObject.class, "object" + id);
+        when(xclass.newCustomClassInstance(this.xcontext)).thenReturn(object);
+        when(object.getXClassReference()).thenReturn(classReference);
+        when(object.getDocumentReference()).thenReturn(this.documentReference);
+        when(object.getNumber()).thenReturn(number);
+        when(object.getId()).thenReturn(id);
+        when(object.getXClass(this.xcontext)).thenReturn(xclass);
+
+        // Stored objects are returned by the query which loads the objects
+        @SuppressWarnings("unchecked")
+        List<Object> storedObjects = new ArrayList<>(this.objectsQuery.list());
+        storedObjects.add(storedObject);
+        when(this.objectsQuery.list()).thenReturn(storedObjects);
+
+        return object;
+    }
+
+    private <T extends BaseProperty> T mockProperty(Class<T> type, String name, long id)
+    {
+        T property = mock(type, name);
+        when(property.getName()).thenReturn(name);
+        when(property.getId()).thenReturn(id);
+
+        return property;
+    }
+
+    private Query mockPropertiesQuery(Class<? extends BaseProperty> type, String join)
+    {
+        Query query = mock(Query.class);
+        when(session.createQuery("select prop from " + type.getName() + " as prop" + join
+            + " where prop.id.id in (:ids) and prop.classType = :classType")).thenReturn(query);
+
+        return query;
     }
 
     @Test
@@ -330,4 +421,141 @@ public void getTranslationList() throws Exception
         verify(query).bindValue("space", "Path.To");
         verify(query).bindValue("name", documentReference.getName());
     }
+
+    @Test
+    public void loadXWikiDocWithObjectsOfSeveralClasses() throws Exception
+    {
+        setBulkLoading(true);
+        when(this.document.hasElement(XWikiDocument.HAS_OBJECTS)).thenReturn(true);
+
+        DocumentReference classA = new DocumentReference("wiki", "Space", "ClassA");
+        DocumentReference classB = new DocumentReference("wiki", "Space", "ClassB");
+        BaseObject objectA0 = mockObject(classA, 0, 10L);
+        BaseObject objectB0 = mockObject(classB, 0, 20L);
+
+        when(this.propertiesQuery.list()).thenReturn(Arrays.asList(
+            new Object[] {10L, "title", StringProperty.class.getName()},
+            new Object[] {10L, "content", LargeStringProperty.class.getName()},
+            new Object[] {20L, "title", StringProperty.class.getName()}));
+
+        StringProperty titleA = mockProperty(StringProperty.class, "title", 10L);
+        StringProperty titleB = mockProperty(StringProperty.class, "title", 20L);
+        LargeStringProperty contentA = mockProperty(LargeStringProperty.class, "content", 10L);
+        Query stringQuery = mockPropertiesQuery(StringProperty.class, "");
+        when(stringQuery.list()).thenReturn(Arrays.asList(titleA, titleB));
+        Query largeStringQuery = mockPropertiesQuery(LargeStringProperty.class, "");
+        when(largeStringQuery.list()).thenReturn(Collections.singletonList(contentA));
+
+        this.store.loadXWikiDoc(this.document, this.xcontext);
+
+        verify(this.objectsQuery).setParameterList("names", Collections.singletonList("Space.Page"));
+        verify(this.document).setXObject(0, objectA0);
+        verify(this.document).setXObject(0, objectB0);
+
+        verify(objectA0).addField("title", titleA);
+        verify(objectA0).addField("content", contentA);
+        verify(objectB0).addField("title", titleB);
+        verify(titleA).setObject(objectA0);
+        verify(titleB).setObject(objectB0);
+        verify(titleA).setValueDirty(false);
+
+        // One query for the objects, one for the property types and one per property table
+        verify(session, times(4)).createQuery(anyString());
+        verify(stringQuery).setString("classType", StringProperty.class.getName());
+        verify(largeStringQuery).setString("classType", LargeStringProperty.class.getName());
+    }
+
+    @Test
+    public void loadXWikiDocWithListProperties() throws Exception
+    {
+        setBulkLoading(true);
+        when(this.document.hasElement(XWikiDocument.HAS_OBJECTS)).thenReturn(true);
+
+        BaseObject object = mockObject(new DocumentReference("wiki", "Space", "Class"), 0, 10L);
+
+        when(this.propertiesQuery.list()).thenReturn(Arrays.asList(
+            new Object[] {10L, "tags", StringListProperty.class.getName()},
+            new Object[] {10L, "users", DBStringListProperty.class.getName()}));
+
+        StringListProperty tags = mockProperty(StringListProperty.class, "tags", 10L);
+        Query stringListQuery = mockPropertiesQuery(StringListProperty.class, "");
+        when(stringListQuery.list()).thenReturn(Collections.singletonList(tags));
+
+        // The fetch join returns the same property once per list item
+        DBStringListProperty users = mockProperty(DBStringListProperty.class, "users", 10L);
+        Query dbStringListQuery = mockPropertiesQuery(DBStringListProperty.class, " left join fetch prop.list");
+        when(dbStringListQuery.list()).thenReturn(Arrays.asList(users, users, users));
+
+        this.store.loadXWikiDoc(this.document, this.xcontext);
+
+        verify(object).addField("tags", tags);
+        verify(object, times(1)).addField("users", users);
+        verify(tags).getList();
+        verify(users).getList();
+        verify(users, times(1)).setObject(object);
+
+        // The list items are not loaded with separate queries
+        verify(session, times(4)).createQuery(anyString());
+    }
+
+    @Test
+    public void loadXWikiDocWithoutObjects() throws Exception
+    {
+        setBulkLoading(true);
+        when(this.document.hasElement(XWikiDocument.HAS_OBJECTS)).thenReturn(false);
+
+        this.store.loadXWikiDoc(this.document, this.xcontext);
+
+        verify(session, never()).createQuery(anyString());
+        verify(this.document, never()).setXObject(anyInt(), any());
+        verify(this.document).setNew(false);
+    }
+
+    @Test
+    public void loadXWikiDocWithNoStoredObject() throws Exception
+    {
+        setBulkLoading(true);
+        when(this.document.hasElement(XWikiDocument.HAS_OBJECTS)).thenReturn(true);
+        when(this.objectsQuery.list()).thenReturn(Collections.emptyList());
+
+        this.store.loadXWikiDoc(this.document, this.xcontext);
+
+        // No property is loaded when there is no object
+        verify(session, times(1)).createQuery(anyString());
+        verify(this.document, never()).setXObject(anyInt(), any());
+    }
+
+    @Test
+    public void loadXWikiDocWithoutBulkLoading() throws Exception
+    {
+        setBulkLoading(false);
+        when(this.document.hasElement(XWikiDocument.HAS_OBJECTS)).thenReturn(true);
+
+        Query objectQuery = mock(Query.class);
+        when(session.createQuery("from BaseObject as bobject where bobject.name = :name order by bobject.number"))
+            .thenReturn(objectQuery);
+        BaseObject object = mockObject(new DocumentReference("wiki", "Space", "Class"), 0, 10L);
+        List<?> storedObjects = this.objectsQuery.list();
+        when(objectQuery.list()).thenReturn(storedObjects);
+
+        Query propertiesQuery = mock(Query.class);
+        when(session.createQuery("select prop.name, prop.classType from BaseProperty as prop where prop.id.id = :id"))
+            .thenReturn(propertiesQuery);
+        when(propertiesQuery.list())
+            .thenReturn(Collections.singletonList(new Object[] {"title", StringProperty.class.getName()}));
+
+        this.store.loadXWikiDoc(this.document, this.xcontext);
+
+        verify(objectQuery).setText("name", "Space.Page");
+        verify(propertiesQuery).setLong("id", 10L);
+        verify(this.document).setXObject(0, object);
+        verify(object).addField(eq("title"), any(StringProperty.class));
+        verify(session).load(any(StringProperty.class), any(StringProperty.class));
+
+        // The bulk loading queries are not used
+        verify(session, never()).createQuery(
+            "from BaseObject as bobject where bobject.name in (:names) order by bobject.number");
+        verify(session, never()).createQuery(
+            "select prop.id.id, prop.name, prop.classType from BaseProperty as prop where prop.id.id in (:ids)");
+    }
 }
@@ -60,6 +60,13 @@ public class PanelClassDocumentInitializer extends AbstractMandatoryClassInitial
      */
     public static final LocalDocumentReference CLASS_REFERENCE = new LocalDocumentReference(CLASS_SPACE, "PanelClass");
 
+    /**
+     * The name of the property indicating if the panel is loaded after the rest of the page.
+     *
+     * @since 10.1RC1
+     */
+    public static final String ASYNC_PROPERTY = "async";
+
     /**
      * Used to bind a class to a document sheet.
      */
@@ -84,6 +91,7 @@ protected void createClass(BaseClass xclass)
         xclass.addTextAreaField("description", "Description", 40, 5, EditorType.TEXT);
         xclass.addTextField("name", "Name", 40);
         xclass.addStaticListField("type", "Panel type", 1, false, "view|edit", ListClass.DISPLAYTYPE_SELECT);
+        xclass.addBooleanField(ASYNC_PROPERTY, "Asynchronous loading", "yesno", false);
     }
 
     @Override
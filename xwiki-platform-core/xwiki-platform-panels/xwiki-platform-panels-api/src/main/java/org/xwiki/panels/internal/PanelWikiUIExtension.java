@@ -42,7 +42,9 @@
 import org.xwiki.rendering.transformation.Transformation;
 import org.xwiki.rendering.transformation.TransformationContext;
 import org.xwiki.security.authorization.AuthorExecutor;
+import org.xwiki.uiextension.AsyncUIExtension;
 import org.xwiki.uiextension.UIExtension;
+import org.xwiki.uiextension.internal.AsyncUIExtensionPlaceholderFactory;
 
 import com.xpn.xwiki.objects.BaseObjectReference;
 
@@ -52,7 +54,7 @@
  * @version $Id$
  * @since 4.3M1
  */
-public class PanelWikiUIExtension implements UIExtension, WikiComponent
+public class PanelWikiUIExtension implements AsyncUIExtension, WikiComponent
 {
     /**
      * The logger to log.
@@ -106,6 +108,13 @@ public class PanelWikiUIExtension implements UIExtension, WikiComponent
 
     private final JobProgressManager progress;
 
+    private final AsyncUIExtensionPlaceholderFactory placeholderFactory;
+
+    /**
+     * @see #setAsync(boolean)
+     */
+    private boolean async;
+
     /**
      * Default constructor.
      *
@@ -128,6 +137,22 @@ public PanelWikiUIExtension(BaseObjectReference panelReference, DocumentReferenc
         this.renderingContext = componentManager.getInstance(RenderingContext.class);
         this.authorExecutor = componentManager.getInstance(AuthorExecutor.class);
         this.progress = componentManager.getInstance(JobProgressManager.class);
+        this.placeholderFactory = componentManager.getInstance(AsyncUIExtensionPlaceholderFactory.class);
+    }
+
+    /**
+     * @param async {@code true} if the panel should be loaded after the rest of the page
+     * @since 10.1RC1
+     */
+    public void setAsync(boolean async)
+    {
+        this.async = async;
+    }
+
+    @Override
+    public boolean isAsync()
+    {
+        return this.async;
     }
 
     @Override
@@ -162,6 +187,19 @@ public DocumentReference getAuthorReference()
 
     @Override
     public Block execute()
+    {
+        if (this.async) {
+            Block placeholder = this.placeholderFactory.create(getRoleHint());
+            if (placeholder != null) {
+                return placeholder;
+            }
+        }
+
+        return executeSynchronously();
+    }
+
+    @Override
+    public Block executeSynchronously()
     {
         // We need to clone the xdom to avoid transforming the original and make it useless after the first
         // transformation
@@ -85,8 +85,11 @@ public List<WikiComponent> buildComponents(BaseObject baseObject) throws WikiCom
         XDOM xdom = this.parser.parse(content, syntax, documentReference);
 
         try {
-            return Collections.<WikiComponent>singletonList(new PanelWikiUIExtension(baseObject.getReference(),
-                authorReference, xdom, syntax, this.componentManager));
+            PanelWikiUIExtension panel = new PanelWikiUIExtension(baseObject.getReference(), authorReference, xdom,
+                syntax, this.componentManager);
+            panel.setAsync(baseObject.getIntValue(PanelClassDocumentInitializer.ASYNC_PROPERTY) == 1);
+
+            return Collections.<WikiComponent>singletonList(panel);
         } catch (ComponentLookupException e) {
             throw new WikiComponentException(String.format("Failed to initialize Panel UI extension [%s]", baseObject),
                 e);
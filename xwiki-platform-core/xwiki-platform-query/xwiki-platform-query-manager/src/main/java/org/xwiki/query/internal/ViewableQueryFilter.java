@@ -19,7 +19,8 @@
  */
 package org.xwiki.query.internal;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -60,7 +61,9 @@ public String filterStatement(String statement, String language)
     @Override
     public List filterResults(List results)
     {
-        List<Object> filteredResults = new LinkedList<>();
+        // Collect the entity references first so that the access is checked in bulk.
+        List<Object> candidateResults = new ArrayList<>(results.size());
+        List<EntityReference> entityReferences = new ArrayList<>(results.size());
         for (Object result : results) {
             EntityReference entityReference = null;
             if (result instanceof EntityReference) {
@@ -68,8 +71,17 @@ public List filterResults(List results)
             } else if (result instanceof Object[] && ((Object[]) result)[0] instanceof EntityReference) {
                 entityReference = (EntityReference) ((Object[]) result)[0];
             }
-            if (entityReference != null && this.authorization.hasAccess(Right.VIEW, entityReference)) {
-                filteredResults.add(result);
+            if (entityReference != null) {
+                candidateResults.add(result);
+                entityReferences.add(entityReference);
+            }
+        }
+
+        List<Object> filteredResults = new ArrayList<>(candidateResults.size());
+        if (!entityReferences.isEmpty()) {
+            BitSet viewable = this.authorization.filterAccessible(Right.VIEW, entityReferences);
+            for (int i = viewable.nextSetBit(0); i >= 0; i = viewable.nextSetBit(i + 1)) {
+                filteredResults.add(candidateResults.get(i));
             }
         }
         return filteredResults;
@@ -104,6 +104,26 @@ public class DefaultSolrConfiguration implements SolrConfiguration
      */
     public static final int SOLR_INDEXER_QUEUE_CAPACITY_DEFAULT = 100000;
 
+    /**
+     * The name of the configuration property containing the number of extraction threads.
+     */
+    public static final String SOLR_INDEXER_THREADS_PROPERTY = "solr.indexer.threads";
+
+    /**
+     * The default number of extraction threads.
+     */
+    public static final int SOLR_INDEXER_THREADS_DEFAULT = 1;
+
+    /**
+     * The name of the configuration property indicating if the text extracted from attachments should be cached.
+     */
+    public static final String SOLR_INDEXER_ATTACHMENT_CACHE_PROPERTY = "solr.indexer.attachmentTextCache";
+
+    /**
+     * Indicate if the text extracted from attachments should be cached by default.
+     */
+    public static final boolean SOLR_INDEXER_ATTACHMENT_CACHE_DEFAULT = true;
+
     /**
      * The name of the configuration property indicating if a synchronization should be run at startup.
      */
@@ -114,6 +134,20 @@ public class DefaultSolrConfiguration implements SolrConfiguration
      */
     public static final boolean SOLR_SYNCHRONIZE_AT_STARTUP_DEFAULT = true;
 
+    /**
+     * The name of the configuration property indicating if the synchronization run at startup should be incremental.
+     * 
+     * @since 10.1RC1
+     */
+    public static final String SOLR_SYNCHRONIZE_AT_STARTUP_INCREMENTAL = "solr.synchronizeAtStartup.incremental";
+
+    /**
+     * Indicate if the synchronization run at startup should be incremental by default.
+     * 
+     * @since 10.1RC1
+     */
+    public static final boolean SOLR_SYNCHRONIZE_AT_STARTUP_INCREMENTAL_DEFAULT = false;
+
     /**
      * The Solr configuration source.
      */
@@ -160,9 +194,29 @@ public int getIndexerQueueCapacity()
             .getProperty(SOLR_INDEXER_QUEUE_CAPACITY_PROPERTY, SOLR_INDEXER_QUEUE_CAPACITY_DEFAULT);
     }
 
+    @Override
+    public int getIndexerThreads()
+    {
+        return this.configuration.getProperty(SOLR_INDEXER_THREADS_PROPERTY, SOLR_INDEXER_THREADS_DEFAULT);
+    }
+
+    @Override
+    public boolean isAttachmentTextCacheEnabled()
+    {
+        return this.configuration.getProperty(SOLR_INDEXER_ATTACHMENT_CACHE_PROPERTY,
+            SOLR_INDEXER_ATTACHMENT_CACHE_DEFAULT);
+    }
+
     @Override
     public boolean synchronizeAtStartup()
     {
         return this.configuration.getProperty(SOLR_SYNCHRONIZE_AT_STARTUP, SOLR_SYNCHRONIZE_AT_STARTUP_DEFAULT);
     }
+
+    @Override
+    public boolean isSynchronizeAtStartupIncremental()
+    {
+        return this.configuration.getProperty(SOLR_SYNCHRONIZE_AT_STARTUP_INCREMENTAL,
+            SOLR_SYNCHRONIZE_AT_STARTUP_INCREMENTAL_DEFAULT);
+    }
 }
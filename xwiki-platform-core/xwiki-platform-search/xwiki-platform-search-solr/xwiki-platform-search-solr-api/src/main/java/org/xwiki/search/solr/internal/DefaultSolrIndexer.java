@@ -21,12 +21,19 @@
 
 import java.util.Arrays;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.apache.solr.common.SolrInputDocument;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
@@ -48,6 +55,7 @@
 import org.xwiki.search.solr.internal.api.SolrConfiguration;
 import org.xwiki.search.solr.internal.api.SolrIndexer;
 import org.xwiki.search.solr.internal.api.SolrIndexerException;
+import org.xwiki.search.solr.internal.api.SolrIndexerStatistics;
 import org.xwiki.search.solr.internal.api.SolrInstance;
 import org.xwiki.search.solr.internal.job.IndexerJob;
 import org.xwiki.search.solr.internal.job.IndexerRequest;
@@ -61,8 +69,9 @@
  * Default implementation of {@link SolrIndexer}.
  * <p>
  * This implementation does not directly process the given leaf-references, but adds them to a processing queue, in the
- * order they were received. The {@link Runnable} part of this implementation is the one that sequentially reads and
- * processes the queue.
+ * order they were received. The {@link Runnable} part of this implementation is the one that sequentially reads the
+ * queue and hands the extraction of the data to index to a pool of threads. A single commit thread then sends the
+ * results to the Solr server in the order of the queue, so that two operations on the same entity are never reordered.
  * 
  * @version $Id$
  * @since 5.1M2
@@ -176,6 +185,87 @@ public ResolveQueueEntry(EntityReference reference, boolean recurse, IndexOperat
         }
     }
 
+    /**
+     * An index queue entry whose data is being extracted, waiting to be sent to the Solr server.
+     * 
+     * @version $Id$
+     */
+    private static class PendingEntry
+    {
+        /**
+         * The index queue entry.
+         */
+        public IndexQueueEntry entry;
+
+        /**
+         * The data extracted for an {@link IndexOperation#INDEX} operation, {@code null} for other operations.
+         */
+        public Future<LengthSolrInputDocument> document;
+
+        /**
+         * @param entry the index queue entry
+         * @param document the data being extracted for an {@link IndexOperation#INDEX} operation
+         */
+        public PendingEntry(IndexQueueEntry entry, Future<LengthSolrInputDocument> document)
+        {
+            this.entry = entry;
+            this.document = document;
+        }
+    }
+
+    /**
+     * Send the extracted data to the Solr server, in the order of the index queue, and commit them.
+     * 
+     * @version $Id$
+     */
+    private class Committer implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            logger.debug("Start SOLR commit thread");
+
+            int length = 0;
+            while (!Thread.interrupted()) {
+                PendingEntry pendingEntry = pendingQueue.poll();
+
+                if (pendingEntry == null) {
+                    // Commit the index changes so that they become available to queries, unless more entries are
+                    // already on their way
+                    if (batchSize > 0 && indexQueue.isEmpty()) {
+                        commit();
+                        length = 0;
+                    }
+
+                    try {
+                        pendingEntry = pendingQueue.take();
+                    } catch (InterruptedException e) {
+                        logger.warn("The SOLR commit thread has been interrupted", e);
+
+                        pendingEntry = PENDING_ENTRY_STOP;
+                    }
+                }
+
+                if (pendingEntry == PENDING_ENTRY_STOP) {
+                    // Discard the current batch and stop the extraction threads.
+                    extractors.shutdownNow();
+                    break;
+                }
+
+                length += process(pendingEntry);
+
+                // Commit the index changes so that they become available to queries. This is a costly operation and
+                // that is the reason why we perform it at the end of the batch.
+                if (shouldCommit(length, batchSize)) {
+                    commit();
+                    length = 0;
+                }
+            }
+
+            logger.debug("Stop SOLR commit thread");
+        }
+    }
+
     /**
      * Extract children references from passed references and dispatch them to the index queue.
      * 
@@ -246,6 +336,11 @@ public void runInternal()
     private static final IndexQueueEntry INDEX_QUEUE_ENTRY_STOP =
         new IndexQueueEntry((String) null, IndexOperation.STOP);
 
+    /**
+     * Stop commit thread.
+     */
+    private static final PendingEntry PENDING_ENTRY_STOP = new PendingEntry(INDEX_QUEUE_ENTRY_STOP, null);
+
     /**
      * Logging framework.
      */
@@ -295,11 +390,31 @@ public void runInternal()
      */
     private BlockingQueue<ResolveQueueEntry> resolveQueue;
 
+    /**
+     * The queue of index operations being extracted, in the order of the index queue.
+     */
+    private BlockingQueue<PendingEntry> pendingQueue;
+
+    /**
+     * The threads extracting the data to index.
+     */
+    private ExecutorService extractors;
+
+    /**
+     * The number of threads extracting the data to index.
+     */
+    private int threads;
+
     /**
      * Thread in which the indexUpdater will be executed.
      */
     private Thread indexThread;
 
+    /**
+     * Thread in which the extracted data are sent to the Solr server.
+     */
+    private Thread commitThread;
+
     /**
      * Thread in which the provided references children will be resolved.
      */
@@ -315,6 +430,18 @@ public void runInternal()
      */
     private volatile int batchSize;
 
+    private long startTime;
+
+    private final AtomicLong indexedCount = new AtomicLong();
+
+    private final AtomicLong deletedCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final AtomicLong commitCount = new AtomicLong();
+
+    private final AtomicLong extractionTime = new AtomicLong();
+
     @Override
     public void initialize() throws InitializationException
     {
@@ -322,6 +449,14 @@ public void initialize() throws InitializationException
         this.resolveQueue = new LinkedBlockingQueue<>();
         this.indexQueue = new LinkedBlockingQueue<>(this.configuration.getIndexerQueueCapacity());
 
+        // Limit the number of extracted documents kept in memory while waiting to be sent to the Solr server
+        this.threads = Math.max(1, this.configuration.getIndexerThreads());
+        this.pendingQueue = new LinkedBlockingQueue<>(this.threads * 2);
+        this.extractors = Executors.newFixedThreadPool(this.threads, new BasicThreadFactory.Builder()
+            .namingPattern("XWiki Solr extraction thread %d").daemon(true).priority(Thread.NORM_PRIORITY - 1).build());
+
+        this.startTime = System.currentTimeMillis();
+
         // Launch the resolve thread
         this.resolveThread = new Thread(new Resolver());
         this.resolveThread.setName("XWiki Solr resolve thread");
@@ -335,6 +470,13 @@ public void initialize() throws InitializationException
         this.indexThread.setDaemon(true);
         this.indexThread.start();
         this.indexThread.setPriority(Thread.NORM_PRIORITY - 1);
+
+        // Launch the commit thread
+        this.commitThread = new Thread(new Committer());
+        this.commitThread.setName("XWiki Solr commit thread");
+        this.commitThread.setDaemon(true);
+        this.commitThread.start();
+        this.commitThread.setPriority(Thread.NORM_PRIORITY - 1);
     }
 
     @Override
@@ -372,9 +514,28 @@ public void run()
                 queueEntry = INDEX_QUEUE_ENTRY_STOP;
             }
 
-            // Add to the batch until either the batch size is achieved, the queue gets emptied or the
-            // INDEX_QUEUE_ENTRY_STOP is retrieved from the queue.
-            if (!processBatch(queueEntry)) {
+            if (queueEntry == INDEX_QUEUE_ENTRY_STOP) {
+                // Stop the commit thread: clear the queue and send the stop signal without blocking.
+                this.pendingQueue.clear();
+                this.pendingQueue.offer(PENDING_ENTRY_STOP);
+                break;
+            }
+
+            // Start extracting the data to index while the previous entries are still being extracted or sent
+            Future<LengthSolrInputDocument> document = null;
+            if (IndexOperation.INDEX.equals(queueEntry.operation)) {
+                EntityReference reference = queueEntry.reference;
+                document = this.extractors.submit(() -> extract(reference));
+            }
+
+            try {
+                // Block when too many entries are waiting to be sent to the Solr server
+                this.pendingQueue.put(new PendingEntry(queueEntry, document));
+            } catch (InterruptedException e) {
+                this.logger.warn("The SOLR index thread has been interrupted", e);
+
+                this.pendingQueue.clear();
+                this.pendingQueue.offer(PENDING_ENTRY_STOP);
                 break;
             }
         }
@@ -383,66 +544,78 @@ public void run()
     }
 
     /**
-     * Process a batch of operations that were just read from the index operations queue. This method also commits the
-     * batch when it finishes to process it.
+     * Extract the data to index. Called from the extraction threads.
+     * 
+     * @param reference the reference of the entity to index
+     * @return the extracted data or {@code null} if the reference type is not supported
+     * @throws Exception when failing to extract the data
+     */
+    private LengthSolrInputDocument extract(EntityReference reference) throws Exception
+    {
+        long start = System.nanoTime();
+
+        try {
+            this.ecim.initialize(new ExecutionContext());
+
+            return getSolrDocument(reference);
+        } finally {
+            this.execution.removeContext();
+
+            this.extractionTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Send an operation to the Solr server. Called from the commit thread.
      * 
-     * @param queueEntry the batch to process
-     * @return {@code true} to wait for another batch, {@code false} to stop the indexing thread
+     * @param pendingEntry the operation to send
+     * @return the length of the data sent to the Solr server
      */
-    private boolean processBatch(IndexQueueEntry queueEntry)
+    private int process(PendingEntry pendingEntry)
     {
+        IndexQueueEntry queueEntry = pendingEntry.entry;
         SolrInstance solrInstance = this.solrInstanceProvider.get();
 
         int length = 0;
 
-        for (IndexQueueEntry batchEntry = queueEntry; batchEntry != null; batchEntry = this.indexQueue.poll()) {
-            if (batchEntry == INDEX_QUEUE_ENTRY_STOP) {
-                // Discard the current batch and stop the indexing thread.
-                return false;
-            }
-
-            IndexOperation operation = batchEntry.operation;
+        try {
+            if (IndexOperation.INDEX.equals(queueEntry.operation)) {
+                LengthSolrInputDocument solrDocument;
+                try {
+                    solrDocument = pendingEntry.document.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause();
+                }
 
-            // For the current contiguous operations queue, group the changes
-            try {
+                if (solrDocument != null) {
+                    solrInstance.add(solrDocument);
+                    length = solrDocument.getLength();
+                    ++this.batchSize;
+                    this.indexedCount.incrementAndGet();
+                }
+            } else if (IndexOperation.DELETE.equals(queueEntry.operation)) {
                 this.ecim.initialize(new ExecutionContext());
 
-                if (IndexOperation.INDEX.equals(operation)) {
-                    LengthSolrInputDocument solrDocument = getSolrDocument(batchEntry.reference);
-                    if (solrDocument != null) {
-                        solrInstance.add(solrDocument);
-                        length += solrDocument.getLength();
-                        ++this.batchSize;
-                    }
-                } else if (IndexOperation.DELETE.equals(operation)) {
-                    if (batchEntry.reference == null) {
-                        solrInstance.deleteByQuery(batchEntry.deleteQuery);
+                try {
+                    if (queueEntry.reference == null) {
+                        solrInstance.deleteByQuery(queueEntry.deleteQuery);
                     } else {
-                        solrInstance.delete(this.solrRefereceResolver.getId(batchEntry.reference));
+                        solrInstance.delete(this.solrRefereceResolver.getId(queueEntry.reference));
                     }
-
-                    ++this.batchSize;
+                } finally {
+                    this.execution.removeContext();
                 }
-            } catch (Throwable e) {
-                this.logger.error("Failed to process entry [{}]", batchEntry, e);
-            } finally {
-                this.execution.removeContext();
-            }
 
-            // Commit the index changes so that they become available to queries. This is a costly operation and that is
-            // the reason why we perform it at the end of the batch.
-            if (shouldCommit(length, this.batchSize)) {
-                commit();
-                length = 0;
+                ++this.batchSize;
+                this.deletedCount.incrementAndGet();
             }
-        }
+        } catch (Throwable e) {
+            this.logger.error("Failed to process entry [{}]", queueEntry, e);
 
-        // Commit what's left
-        if (this.batchSize > 0) {
-            commit();
+            this.failedCount.incrementAndGet();
         }
 
-        return true;
+        return length;
     }
 
     /**
@@ -466,6 +639,7 @@ private void commit()
         }
 
         this.batchSize = 0;
+        this.commitCount.incrementAndGet();
     }
 
     /**
@@ -557,7 +731,15 @@ private void addToQueue(EntityReference reference, boolean recurse, IndexOperati
     @Override
     public int getQueueSize()
     {
-        return this.indexQueue.size() + this.resolveQueue.size() + this.batchSize;
+        return this.indexQueue.size() + this.resolveQueue.size() + this.pendingQueue.size() + this.batchSize;
+    }
+
+    @Override
+    public SolrIndexerStatistics getStatistics()
+    {
+        return new SolrIndexerStatistics(this.threads, getQueueSize(), this.indexedCount.get(),
+            this.deletedCount.get(), this.failedCount.get(), this.commitCount.get(),
+            TimeUnit.NANOSECONDS.toMillis(this.extractionTime.get()), System.currentTimeMillis() - this.startTime);
     }
 
     @Override
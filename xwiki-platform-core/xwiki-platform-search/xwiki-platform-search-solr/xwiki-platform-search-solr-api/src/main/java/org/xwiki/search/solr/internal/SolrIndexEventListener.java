@@ -39,6 +39,7 @@
 import org.xwiki.observation.EventListener;
 import org.xwiki.observation.event.Event;
 import org.xwiki.search.solr.internal.api.SolrIndexer;
+import org.xwiki.search.solr.internal.metadata.AttachmentTextCache;
 
 import com.xpn.xwiki.doc.XWikiAttachment;
 import com.xpn.xwiki.doc.XWikiDocument;
@@ -88,6 +89,12 @@ public class SolrIndexEventListener implements EventListener
     @Inject
     private Provider<SolrIndexer> solrIndexer;
 
+    /**
+     * The text extracted from the attachments, to forget when they are deleted.
+     */
+    @Inject
+    private Provider<AttachmentTextCache> attachmentTextCache;
+
     @Override
     public List<Event> getEvents()
     {
@@ -133,6 +140,10 @@ public void onEvent(Event event, Object source, Object data)
                 // See XWIKI-10003: Cache problem with Solr facet filter results count
                 this.solrIndexer.get().delete(
                     new DocumentReference(document.getDocumentReference(), document.getRealLocale()), false);
+
+                for (XWikiAttachment attachment : document.getAttachmentList()) {
+                    this.attachmentTextCache.get().remove(attachment.getReference());
+                }
             } else if (event instanceof AttachmentUpdatedEvent || event instanceof AttachmentAddedEvent) {
                 XWikiDocument document = (XWikiDocument) source;
                 String fileName = ((AbstractAttachmentEvent) event).getName();
@@ -145,6 +156,7 @@ public void onEvent(Event event, Object source, Object data)
                 XWikiAttachment attachment = document.getAttachment(fileName);
 
                 this.solrIndexer.get().delete(attachment.getReference(), false);
+                this.attachmentTextCache.get().remove(attachment.getReference());
             } else if (event instanceof XObjectUpdatedEvent || event instanceof XObjectAddedEvent) {
                 EntityEvent entityEvent = (EntityEvent) event;
 
@@ -89,6 +89,7 @@ public void onEvent(Event event, Object source, Object data)
             // Start synchronization
             IndexerRequest request = new IndexerRequest();
             request.setId(Arrays.asList("solr", "indexer"));
+            request.setIncremental(this.configuration.isSynchronizeAtStartupIncremental());
 
             try {
                 this.solrIndexer.get().startIndex(request);
@@ -73,9 +73,29 @@
      */
     int getIndexerQueueCapacity();
 
+    /**
+     * @return the number of threads extracting in parallel the data to index
+     * @since 10.1RC1
+     */
+    int getIndexerThreads();
+
+    /**
+     * @return true if the text extracted from the attachments should be kept on disk to be reused as long as the
+     *         attachment is not modified
+     * @since 10.1RC1
+     */
+    boolean isAttachmentTextCacheEnabled();
+
     /**
      * @return true if a full synchronization job between the database and SOLR index should be run when XWiki starts
      * @since 6.1M2
      */
     boolean synchronizeAtStartup();
+
+    /**
+     * @return true if the synchronization run at startup should only look at the documents modified since the last
+     *         complete synchronization
+     * @since 10.1RC1
+     */
+    boolean isSynchronizeAtStartupIncremental();
 }
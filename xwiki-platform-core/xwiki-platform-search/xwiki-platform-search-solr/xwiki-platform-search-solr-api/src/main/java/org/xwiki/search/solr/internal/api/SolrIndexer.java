@@ -60,6 +60,12 @@
      */
     int getQueueSize();
 
+    /**
+     * @return statistics about the activity of the indexer
+     * @since 10.1RC1
+     */
+    SolrIndexerStatistics getStatistics();
+
     /**
      * Start an indexing with specific criteria.
      * 
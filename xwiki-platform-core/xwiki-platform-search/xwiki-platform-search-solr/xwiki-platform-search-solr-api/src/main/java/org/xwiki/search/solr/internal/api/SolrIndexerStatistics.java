@@ -0,0 +1,149 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal.api;
+
+/**
+ * A snapshot of the activity of the {@link SolrIndexer} since it was started.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+public class SolrIndexerStatistics
+{
+    private final int threads;
+
+    private final int queueSize;
+
+    private final long indexed;
+
+    private final long deleted;
+
+    private final long failed;
+
+    private final long commits;
+
+    private final long extractionTime;
+
+    private final long elapsedTime;
+
+    /**
+     * @param threads the number of threads extracting the data to index
+     * @param queueSize the number of entries waiting to be indexed or deleted
+     * @param indexed the number of entities added to the index
+     * @param deleted the number of delete operations sent to the index
+     * @param failed the number of operations which failed
+     * @param commits the number of commits sent to the index
+     * @param extractionTime the total time spent extracting the data to index, in milliseconds
+     * @param elapsedTime the time elapsed since the indexer was started, in milliseconds
+     */
+    public SolrIndexerStatistics(int threads, int queueSize, long indexed, long deleted, long failed, long commits,
+        long extractionTime, long elapsedTime)
+    {
+        this.threads = threads;
+        this.queueSize = queueSize;
+        this.indexed = indexed;
+        this.deleted = deleted;
+        this.failed = failed;
+        this.commits = commits;
+        this.extractionTime = extractionTime;
+        this.elapsedTime = elapsedTime;
+    }
+
+    /**
+     * @return the number of threads extracting the data to index
+     */
+    public int getThreads()
+    {
+        return this.threads;
+    }
+
+    /**
+     * @return the number of entries waiting to be indexed or deleted
+     */
+    public int getQueueSize()
+    {
+        return this.queueSize;
+    }
+
+    /**
+     * @return the number of entities added to the index
+     */
+    public long getIndexed()
+    {
+        return this.indexed;
+    }
+
+    /**
+     * @return the number of delete operations sent to the index
+     */
+    public long getDeleted()
+    {
+        return this.deleted;
+    }
+
+    /**
+     * @return the number of operations which failed
+     */
+    public long getFailed()
+    {
+        return this.failed;
+    }
+
+    /**
+     * @return the number of commits sent to the index
+     */
+    public long getCommits()
+    {
+        return this.commits;
+    }
+
+    /**
+     * @return the total time spent extracting the data to index, in milliseconds (the sum of the time spent by each
+     *         extraction thread)
+     */
+    public long getExtractionTime()
+    {
+        return this.extractionTime;
+    }
+
+    /**
+     * @return the average time spent extracting the data of an entity, in milliseconds
+     */
+    public double getAverageExtractionTime()
+    {
+        return this.indexed > 0 ? (double) this.extractionTime / this.indexed : 0;
+    }
+
+    /**
+     * @return the time elapsed since the indexer was started, in milliseconds
+     */
+    public long getElapsedTime()
+    {
+        return this.elapsedTime;
+    }
+
+    /**
+     * @return the average number of index and delete operations processed per second since the indexer was started
+     */
+    public double getThroughput()
+    {
+        return this.elapsedTime > 0 ? (this.indexed + this.deleted) * 1000D / this.elapsedTime : 0;
+    }
+}
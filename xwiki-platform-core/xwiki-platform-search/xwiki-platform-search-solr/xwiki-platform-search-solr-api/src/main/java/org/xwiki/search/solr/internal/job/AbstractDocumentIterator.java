@@ -49,6 +49,11 @@
      */
     protected EntityReference rootReference;
 
+    /**
+     * The local reference of the first space to iterate. If {@code null} then all the spaces are iterated.
+     */
+    protected String startSpace;
+
     @Override
     public void remove()
     {
@@ -60,4 +65,10 @@ public void setRootReference(EntityReference rootReference)
     {
         this.rootReference = rootReference;
     }
+
+    @Override
+    public void setStartSpace(String localSpaceReference)
+    {
+        this.startSpace = localSpaceReference;
+    }
 }
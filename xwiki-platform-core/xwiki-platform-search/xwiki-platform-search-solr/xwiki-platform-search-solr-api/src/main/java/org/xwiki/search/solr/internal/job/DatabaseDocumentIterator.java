@@ -232,6 +232,10 @@ private Query getQuery() throws QueryException
                     whereClause += " and doc.name = :name";
                 }
             }
+            if (startSpace != null) {
+                whereClause += whereClause.isEmpty() ? " where" : " and";
+                whereClause += " doc.space >= :startSpace";
+            }
 
             query = queryManager.createQuery(select + whereClause + orderBy, Query.HQL).setLimit(LIMIT);
             countQuery = queryManager.createQuery(whereClause, Query.HQL).addFilter(countFilter);
@@ -242,6 +246,9 @@ private Query getQuery() throws QueryException
                     query.bindValue("name", documentReference.getName());
                 }
             }
+            if (startSpace != null) {
+                query.bindValue("startSpace", startSpace);
+            }
 
             for (Map.Entry<String, Object> parameter : query.getNamedParameters().entrySet()) {
                 countQuery.bindValue(parameter.getKey(), parameter.getValue());
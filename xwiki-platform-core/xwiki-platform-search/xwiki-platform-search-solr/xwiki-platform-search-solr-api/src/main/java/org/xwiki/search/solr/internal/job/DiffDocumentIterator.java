@@ -101,6 +101,13 @@ public void setRootReference(EntityReference rootReference)
         next.setRootReference(rootReference);
     }
 
+    @Override
+    public void setStartSpace(String localSpaceReference)
+    {
+        previous.setStartSpace(localSpaceReference);
+        next.setStartSpace(localSpaceReference);
+    }
+
     @Override
     public boolean hasNext()
     {
@@ -45,6 +45,16 @@
      */
     void setRootReference(EntityReference rootReference);
 
+    /**
+     * Skip the documents located in the spaces which come before the specified space in the iteration order. Used to
+     * resume an interrupted iteration.
+     * 
+     * @param localSpaceReference the local reference of the first space to iterate, {@code null} to iterate all the
+     *            spaces
+     * @since 10.1RC1
+     */
+    void setStartSpace(String localSpaceReference);
+
     /**
      * @return estimate the size of the iterated store for showing progress information
      */
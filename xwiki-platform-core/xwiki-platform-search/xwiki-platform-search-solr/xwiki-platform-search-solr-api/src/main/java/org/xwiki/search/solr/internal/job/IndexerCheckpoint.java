@@ -0,0 +1,104 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal.job;
+
+/**
+ * The state of the synchronizations between the database and the Solr index for a given root entity, persisted to be
+ * able to resume an interrupted synchronization and to only look at the documents modified since the last complete
+ * one.
+ * 
+ * @version $Id$
+ * @since 10.1RC1
+ */
+public class IndexerCheckpoint
+{
+    private long lastSuccess;
+
+    private long start;
+
+    private String wiki;
+
+    private String space;
+
+    /**
+     * @return the date (in milliseconds) when the last complete synchronization started, 0 if there was none
+     */
+    public long getLastSuccess()
+    {
+        return this.lastSuccess;
+    }
+
+    /**
+     * @param lastSuccess the date (in milliseconds) when the last complete synchronization started
+     */
+    public void setLastSuccess(long lastSuccess)
+    {
+        this.lastSuccess = lastSuccess;
+    }
+
+    /**
+     * @return the date (in milliseconds) when the current synchronization started
+     */
+    public long getStart()
+    {
+        return this.start;
+    }
+
+    /**
+     * @param start the date (in milliseconds) when the current synchronization started
+     */
+    public void setStart(long start)
+    {
+        this.start = start;
+    }
+
+    /**
+     * @return the wiki being synchronized, {@code null} if no synchronization is in progress
+     */
+    public String getWiki()
+    {
+        return this.wiki;
+    }
+
+    /**
+     * @param wiki the wiki being synchronized
+     */
+    public void setWiki(String wiki)
+    {
+        this.wiki = wiki;
+    }
+
+    /**
+     * @return the local reference of the space being synchronized in the current wiki (all the spaces before it are
+     *         synchronized), {@code null} if the synchronization of the current wiki has not started
+     */
+    public String getSpace()
+    {
+        return this.space;
+    }
+
+    /**
+     * @param space the local reference of the space being synchronized in the current wiki
+     */
+    public void setSpace(String space)
+    {
+        this.space = space;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal.job;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.UUID;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.environment.Environment;
+import org.xwiki.model.reference.EntityReference;
+
+/**
+ * Persist the {@link IndexerCheckpoint}s in the permanent directory.
+ * 
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Component(roles = IndexerCheckpointStore.class)
+@Singleton
+public class IndexerCheckpointStore
+{
+    private static final String LAST_SUCCESS = "lastSuccess";
+
+    private static final String START = "start";
+
+    private static final String WIKI = "wiki";
+
+    private static final String SPACE = "space";
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * @param rootReference the root entity of the synchronization, {@code null} for the whole farm
+     * @return the checkpoint of the synchronizations of the passed root entity (never {@code null})
+     */
+    public IndexerCheckpoint get(EntityReference rootReference)
+    {
+        IndexerCheckpoint checkpoint = new IndexerCheckpoint();
+
+        File file = getFile(rootReference);
+        if (file.exists()) {
+            Properties properties = new Properties();
+            try (InputStream stream = new FileInputStream(file)) {
+                properties.load(stream);
+
+                checkpoint.setLastSuccess(Long.parseLong(properties.getProperty(LAST_SUCCESS, "0")));
+                checkpoint.setStart(Long.parseLong(properties.getProperty(START, "0")));
+                checkpoint.setWiki(properties.getProperty(WIKI));
+                checkpoint.setSpace(properties.getProperty(SPACE));
+            } catch (IOException | NumberFormatException e) {
+                this.logger.warn("Failed to read the Solr synchronization checkpoint [{}]: {}", file, e.getMessage());
+
+                return new IndexerCheckpoint();
+            }
+        }
+
+        return checkpoint;
+    }
+
+    /**
+     * @param rootReference the root entity of the synchronization, {@code null} for the whole farm
+     * @param checkpoint the checkpoint to save
+     */
+    public void save(EntityReference rootReference, IndexerCheckpoint checkpoint)
+    {
+        Properties properties = new Properties();
+        properties.setProperty(LAST_SUCCESS, String.valueOf(checkpoint.getLastSuccess()));
+        properties.setProperty(START, String.valueOf(checkpoint.getStart()));
+        if (checkpoint.getWiki() != null) {
+            properties.setProperty(WIKI, checkpoint.getWiki());
+        }
+        if (checkpoint.getSpace() != null) {
+            properties.setProperty(SPACE, checkpoint.getSpace());
+        }
+
+        File file = getFile(rootReference);
+        file.getParentFile().mkdirs();
+        try (OutputStream stream = new FileOutputStream(file)) {
+            properties.store(stream, String.valueOf(rootReference));
+        } catch (IOException e) {
+            this.logger.warn("Failed to save the Solr synchronization checkpoint [{}]: {}", file, e.getMessage());
+        }
+    }
+
+    private File getFile(EntityReference rootReference)
+    {
+        String name = UUID.nameUUIDFromBytes(String.valueOf(rootReference).getBytes(StandardCharsets.UTF_8))
+            .toString();
+
+        return new File(this.environment.getPermanentDirectory(), "cache/solr/indexer/" + name + ".properties");
+    }
+}
@@ -19,11 +19,19 @@
  */
 package org.xwiki.search.solr.internal.job;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Provider;
 
+import org.apache.commons.lang3.LocaleUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
@@ -33,13 +41,27 @@
 import org.xwiki.job.GroupedJob;
 import org.xwiki.job.JobGroupPath;
 import org.xwiki.job.Request;
+import org.xwiki.model.EntityType;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
 import org.xwiki.search.solr.internal.api.SolrIndexer;
 import org.xwiki.search.solr.internal.job.DiffDocumentIterator.Action;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
+import org.xwiki.wiki.manager.WikiManagerException;
 
 /**
  * Provide progress information and store logging of an advanced indexing.
+ * <p>
+ * The synchronization is done wiki by wiki and regularly records (see {@link IndexerCheckpointStore}) the space it
+ * reached so that an interrupted synchronization can be resumed instead of restarted from scratch. Once a
+ * synchronization is complete, an incremental request only looks at the documents modified or deleted since then.
  * 
  * @version $Id$
  * @since 5.1RC1
@@ -60,19 +82,62 @@ public class IndexerJob extends AbstractJob<IndexerRequest, DefaultJobStatus<Ind
     // TODO: group indexers based on the IndexerRequest root entity
     private static final JobGroupPath GROUP = new JobGroupPath(Arrays.asList("solr", "indexer"));
 
+    /**
+     * The minimum number of entries between two checkpoints.
+     */
+    private static final int CHECKPOINT_INTERVAL = 10000;
+
+    /**
+     * The maximum time to wait for the indexer to process the queued documents before moving the checkpoint.
+     */
+    private static final long CHECKPOINT_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Take into account the documents saved a bit before the last synchronization started (clock differences between
+     * cluster members, transactions committed late, etc.).
+     */
+    private static final long INCREMENTAL_MARGIN = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * The number of documents to fetch at once in incremental mode.
+     */
+    private static final int LIMIT = 100;
+
+    private static final String SINCE = "since";
+
     /**
      * Used to send documents to index or delete to/from Solr index.
      */
     @Inject
     private transient SolrIndexer indexer;
 
+    /**
+     * A new iterator is needed for each synchronized wiki.
+     */
     @Inject
     @Named("database")
-    private transient DocumentIterator<String> databaseIterator;
+    private transient Provider<DocumentIterator<String>> databaseIteratorProvider;
 
     @Inject
     @Named("solr")
-    private transient DocumentIterator<String> solrIterator;
+    private transient Provider<DocumentIterator<String>> solrIteratorProvider;
+
+    @Inject
+    private transient IndexerCheckpointStore checkpointStore;
+
+    @Inject
+    private transient WikiDescriptorManager wikiDescriptorManager;
+
+    @Inject
+    private transient QueryManager queryManager;
+
+    @Inject
+    @Named("explicit")
+    private transient EntityReferenceResolver<String> explicitEntityReferenceResolver;
+
+    @Inject
+    @Named("local")
+    private transient EntityReferenceSerializer<String> localEntityReferenceSerializer;
 
     @Override
     public String getType()
@@ -107,18 +172,100 @@ protected void runInternal() throws Exception
             this.logger.info("Index documents in [{}].", rootReference);
             this.indexer.index(rootReference, true);
         } else {
-            updateSolrIndex();
+            IndexerCheckpoint checkpoint = this.checkpointStore.get(getRequest().getRootReference());
+            if (getRequest().isIncremental() && checkpoint.getLastSuccess() > 0 && checkpoint.getWiki() == null) {
+                updateSolrIndexIncrementally(checkpoint);
+            } else {
+                updateSolrIndex(checkpoint);
+            }
+        }
+    }
+
+    /**
+     * @return the wikis to synchronize, in alphabetical order (i.e. the order used by the document iterators)
+     */
+    private List<String> getWikis()
+    {
+        EntityReference rootReference = getRequest().getRootReference();
+        if (rootReference == null) {
+            List<String> wikis;
+            try {
+                wikis = new ArrayList<>(this.wikiDescriptorManager.getAllIds());
+                Collections.sort(wikis);
+            } catch (WikiManagerException e) {
+                this.logger.error("Failed to get the list of available wikis.", e);
+
+                wikis = Collections.emptyList();
+            }
+
+            return wikis;
+        } else {
+            return Arrays.asList(rootReference.extractReference(EntityType.WIKI).getName());
         }
     }
 
     /**
-     * Update the Solr index to match the current state of the database.
+     * Update the Solr index to match the current state of the database, resuming the previous synchronization if it
+     * did not complete.
+     * 
+     * @param checkpoint the checkpoint of the previous synchronization
      */
-    private void updateSolrIndex()
+    private void updateSolrIndex(IndexerCheckpoint checkpoint)
     {
-        DiffDocumentIterator<String> iterator = new DiffDocumentIterator<>(this.solrIterator, this.databaseIterator);
-        iterator.setRootReference(getRequest().getRootReference());
+        EntityReference rootReference = getRequest().getRootReference();
+
+        List<String> wikis = getWikis();
+        int resumeIndex = checkpoint.getWiki() != null ? wikis.indexOf(checkpoint.getWiki()) : -1;
+        if (resumeIndex >= 0) {
+            this.logger.info("Resume the synchronization of the Solr index from space [{}] of wiki [{}].",
+                checkpoint.getSpace(), checkpoint.getWiki());
 
+            wikis = wikis.subList(resumeIndex, wikis.size());
+        } else {
+            checkpoint.setStart(System.currentTimeMillis());
+            checkpoint.setWiki(null);
+            checkpoint.setSpace(null);
+        }
+
+        long[] counter = new long[Action.values().length];
+
+        this.progressManager.pushLevelProgress(wikis.size(), this);
+
+        try {
+            for (String wiki : wikis) {
+                this.progressManager.startStep(this);
+
+                String startSpace = wiki.equals(checkpoint.getWiki()) ? checkpoint.getSpace() : null;
+                checkpoint.setWiki(wiki);
+                checkpoint.setSpace(startSpace);
+                this.checkpointStore.save(rootReference, checkpoint);
+
+                DiffDocumentIterator<String> iterator =
+                    new DiffDocumentIterator<>(this.solrIteratorProvider.get(), this.databaseIteratorProvider.get());
+                iterator.setRootReference(rootReference != null ? rootReference : new WikiReference(wiki));
+                iterator.setStartSpace(startSpace);
+
+                updateSolrIndex(iterator, checkpoint, counter);
+
+                this.progressManager.endStep(this);
+            }
+        } finally {
+            this.progressManager.popLevelProgress(this);
+        }
+
+        // The synchronization is complete.
+        checkpoint.setLastSuccess(checkpoint.getStart());
+        checkpoint.setWiki(null);
+        checkpoint.setSpace(null);
+        this.checkpointStore.save(rootReference, checkpoint);
+
+        this.logger.info(
+            "{} documents added, {} deleted and {} updated during the synchronization of the Solr index.",
+            counter[Action.ADD.ordinal()], counter[Action.DELETE.ordinal()], counter[Action.UPDATE.ordinal()]);
+    }
+
+    private void updateSolrIndex(DiffDocumentIterator<String> iterator, IndexerCheckpoint checkpoint, long[] counter)
+    {
         this.progressManager.pushLevelProgress(2, this);
 
         try {
@@ -131,19 +278,21 @@ private void updateSolrIndex()
             // Index
 
             this.progressManager.startStep(this);
-            updateSolrIndex(progressSize, iterator);
+            updateSolrIndex(progressSize, iterator, checkpoint, counter);
             this.progressManager.endStep(this);
         } finally {
             this.progressManager.popLevelProgress(this);
         }
     }
 
-    private void updateSolrIndex(int progressSize, DiffDocumentIterator<String> iterator)
+    private void updateSolrIndex(int progressSize, DiffDocumentIterator<String> iterator,
+        IndexerCheckpoint checkpoint, long[] counter)
     {
         this.progressManager.pushLevelProgress(progressSize, this);
 
         try {
-            long[] counter = new long[Action.values().length];
+            int processed = 0;
+            boolean queued = false;
 
             while (iterator.hasNext()) {
                 this.progressManager.startStep(this);
@@ -154,21 +303,175 @@ private void updateSolrIndex(int progressSize, DiffDocumentIterator<String> iter
                     // version
                     // from the database.
                     this.indexer.index(entry.getKey(), true);
+                    queued = true;
                 } else if (entry.getValue() == Action.DELETE && getRequest().isRemoveMissing()) {
                     // The index entry doesn't exist anymore in the database.
                     this.indexer.delete(entry.getKey(), true);
+                    queued = true;
                 }
 
                 counter[entry.getValue().ordinal()]++;
 
+                if (++processed >= CHECKPOINT_INTERVAL) {
+                    // Don't wait for the indexer again before the next interval, even if the checkpoint didn't move.
+                    processed = 0;
+                    if (checkpoint(entry.getKey(), checkpoint, queued)) {
+                        queued = false;
+                    }
+                }
+
                 this.progressManager.endStep(this);
             }
+        } finally {
+            this.progressManager.popLevelProgress(this);
+        }
+    }
+
+    /**
+     * Remember that all the spaces located before the space of the passed document have been synchronized.
+     * 
+     * @param documentReference the current document
+     * @param checkpoint the checkpoint to update
+     * @param queued {@code true} if some documents have been queued since the previous checkpoint
+     * @return {@code true} if the checkpoint has been moved
+     */
+    private boolean checkpoint(DocumentReference documentReference, IndexerCheckpoint checkpoint, boolean queued)
+    {
+        // The indexer queue is lost on restart so we can't move the checkpoint after documents that are still queued.
+        if (queued) {
+            long timeout = System.currentTimeMillis() + CHECKPOINT_TIMEOUT;
+            while (this.indexer.getQueueSize() > 0) {
+                if (System.currentTimeMillis() > timeout) {
+                    return false;
+                }
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+
+                    return false;
+                }
+            }
+        }
+
+        String space = this.localEntityReferenceSerializer.serialize(documentReference.getLastSpaceReference());
+        if (!space.equals(checkpoint.getSpace())) {
+            checkpoint.setSpace(space);
+            this.checkpointStore.save(getRequest().getRootReference(), checkpoint);
+        }
+
+        return true;
+    }
+
+    /**
+     * Index the documents modified and remove the documents deleted since the last complete synchronization.
+     * 
+     * @param checkpoint the checkpoint of the last complete synchronization
+     * @throws QueryException when failing to query the database
+     */
+    private void updateSolrIndexIncrementally(IndexerCheckpoint checkpoint) throws QueryException
+    {
+        long start = System.currentTimeMillis();
+        Date since = new Date(checkpoint.getLastSuccess() - INCREMENTAL_MARGIN);
+
+        this.logger.info("Synchronize the Solr index with the documents modified since [{}].", since);
+
+        List<String> wikis = getWikis();
+        long indexed = 0;
+        long deleted = 0;
+
+        this.progressManager.pushLevelProgress(wikis.size(), this);
+
+        try {
+            for (String wiki : wikis) {
+                this.progressManager.startStep(this);
 
-            this.logger.info(
-                "{} documents added, {} deleted and {} updated during the synchronization of the Solr index.",
-                counter[Action.ADD.ordinal()], counter[Action.DELETE.ordinal()], counter[Action.UPDATE.ordinal()]);
+                indexed += indexModifiedDocuments(wiki, since);
+                if (getRequest().isRemoveMissing()) {
+                    deleted += deleteRemovedDocuments(wiki, since);
+                }
+
+                this.progressManager.endStep(this);
+            }
         } finally {
             this.progressManager.popLevelProgress(this);
         }
+
+        checkpoint.setLastSuccess(start);
+        this.checkpointStore.save(getRequest().getRootReference(), checkpoint);
+
+        this.logger.info(
+            "{} documents updated and {} deleted during the incremental synchronization of the Solr index.", indexed,
+            deleted);
+    }
+
+    private long indexModifiedDocuments(String wiki, Date since) throws QueryException
+    {
+        Query query = this.queryManager.createQuery(
+            "select doc.space, doc.name, doc.language from XWikiDocument doc where doc.date >= :since order by doc.id",
+            Query.HQL);
+        query.setWiki(wiki).bindValue(SINCE, since).setLimit(LIMIT);
+
+        long count = 0;
+        int offset = 0;
+        List<Object[]> results;
+        do {
+            results = query.setOffset(offset).execute();
+            for (Object[] result : results) {
+                SpaceReference spaceReference = new SpaceReference(this.explicitEntityReferenceResolver
+                    .resolve((String) result[0], EntityType.SPACE, new WikiReference(wiki)));
+                DocumentReference documentReference =
+                    toDocumentReference(new DocumentReference((String) result[1], spaceReference), (String) result[2]);
+                if (isInRoot(documentReference)) {
+                    this.indexer.index(documentReference, true);
+                    count++;
+                }
+            }
+            offset += LIMIT;
+        } while (results.size() == LIMIT);
+
+        return count;
+    }
+
+    private long deleteRemovedDocuments(String wiki, Date since) throws QueryException
+    {
+        // Only the documents moved to the recycle bin can be found this way.
+        Query query = this.queryManager.createQuery("select distinct ddoc.fullName, ddoc.language"
+            + " from XWikiDeletedDocument ddoc where ddoc.date >= :since and not exists (select doc.id"
+            + " from XWikiDocument doc where doc.fullName = ddoc.fullName and doc.language = ddoc.language)",
+            Query.HQL);
+        List<Object[]> results = query.setWiki(wiki).bindValue(SINCE, since).execute();
+
+        long count = 0;
+        for (Object[] result : results) {
+            DocumentReference documentReference = new DocumentReference(this.explicitEntityReferenceResolver
+                .resolve((String) result[0], EntityType.DOCUMENT, new WikiReference(wiki)));
+            documentReference = toDocumentReference(documentReference, (String) result[1]);
+            if (isInRoot(documentReference)) {
+                this.indexer.delete(documentReference, true);
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private DocumentReference toDocumentReference(DocumentReference documentReference, String locale)
+    {
+        if (!StringUtils.isEmpty(locale)) {
+            return new DocumentReference(documentReference, LocaleUtils.toLocale(locale));
+        }
+
+        return documentReference;
+    }
+
+    private boolean isInRoot(DocumentReference documentReference)
+    {
+        EntityReference rootReference = getRequest().getRootReference();
+
+        return rootReference == null || rootReference.getType() == EntityType.WIKI
+            || documentReference.hasParent(rootReference)
+            || (documentReference.getName().equals(rootReference.getName())
+                && documentReference.getParent().equals(rootReference.getParent()));
     }
 }
@@ -51,6 +51,11 @@ public class IndexerRequest extends AbstractRequest
      */
     private boolean removeMissing = true;
 
+    /**
+     * @see #isIncremental()
+     */
+    private boolean incremental;
+
     /**
      * The default constructor.
      */
@@ -115,4 +120,24 @@ public void setRemoveMissing(boolean removeMissing)
     {
         this.removeMissing = removeMissing;
     }
+
+    /**
+     * @return if true only the documents modified or deleted since the last complete synchronization are checked (a
+     *         complete synchronization is performed if there was none)
+     * @since 10.1RC1
+     */
+    public boolean isIncremental()
+    {
+        return this.incremental;
+    }
+
+    /**
+     * @param incremental if true only the documents modified or deleted since the last complete synchronization are
+     *            checked (a complete synchronization is performed if there was none)
+     * @since 10.1RC1
+     */
+    public void setIncremental(boolean incremental)
+    {
+        this.incremental = incremental;
+    }
 }
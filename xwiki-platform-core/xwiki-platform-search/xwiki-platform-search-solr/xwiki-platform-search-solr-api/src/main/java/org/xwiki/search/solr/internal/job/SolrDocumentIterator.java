@@ -31,6 +31,7 @@
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrQuery.ORDER;
 import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.client.solrj.util.ClientUtils;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.params.CursorMarkParams;
@@ -146,6 +147,10 @@ private SolrQuery getQuery() throws SolrIndexerException
             query.setFields(FieldUtils.WIKI, FieldUtils.SPACES, FieldUtils.NAME, FieldUtils.DOCUMENT_LOCALE,
                 FieldUtils.VERSION);
             query.addFilterQuery(FieldUtils.TYPE + ':' + EntityType.DOCUMENT.name());
+            if (startSpace != null) {
+                query.addFilterQuery(
+                    FieldUtils.SPACE_EXACT + ":[" + ClientUtils.escapeQueryChars(startSpace) + " TO *]");
+            }
             // This iterator must have the same order as the database iterator, otherwise the synchronization fails.
             // Note that we had two options:
             // (A) Sort the Solr index only by id and enable docValues on the id field to improve the speed. But then we
@@ -114,6 +114,12 @@ public abstract class AbstractSolrMetadataExtractor implements SolrMetadataExtra
     @Inject
     protected ComponentManager componentManager;
 
+    /**
+     * Used to avoid parsing the same attachment content again.
+     */
+    @Inject
+    private AttachmentTextCache attachmentTextCache;
+
     @Override
     public LengthSolrInputDocument getSolrDocument(EntityReference entityReference)
         throws SolrIndexerException, IllegalArgumentException
@@ -496,6 +502,17 @@ protected void addFieldValueOnce(SolrInputDocument solrDocument, String fieldNam
      * @throws SolrIndexerException if problems occur
      */
     protected String getContentAsText(XWikiAttachment attachment)
+    {
+        String text = this.attachmentTextCache.get(attachment);
+        if (text == null) {
+            text = parseContentAsText(attachment);
+            this.attachmentTextCache.set(attachment, text);
+        }
+
+        return text;
+    }
+
+    private String parseContentAsText(XWikiAttachment attachment)
     {
         try {
             Tika tika = new Tika();
@@ -0,0 +1,216 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal.metadata;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.environment.Environment;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.search.solr.internal.api.SolrConfiguration;
+
+import com.xpn.xwiki.doc.XWikiAttachment;
+
+/**
+ * Keep on disk the text extracted from the attachments so that an attachment is not parsed again when its document is
+ * indexed again without the attachment being modified.
+ * <p>
+ * A cache entry is identified by the reference, the version, the size and the date of the attachment, which all change
+ * when a new content is uploaded. Only the text of the last indexed version of each attachment is kept, and the text
+ * of an attachment is forgotten when the attachment is deleted.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Component(roles = AttachmentTextCache.class)
+@Singleton
+public class AttachmentTextCache implements Initializable
+{
+    private static final String EXTENSION = ".txt.gz";
+
+    @Inject
+    private SolrConfiguration configuration;
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private Logger logger;
+
+    private File directory;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        if (this.configuration.isAttachmentTextCacheEnabled()) {
+            this.directory = new File(this.environment.getPermanentDirectory(), "cache/solr/attachments");
+        }
+    }
+
+    /**
+     * @param attachment the attachment
+     * @return the text previously extracted from the current version of the attachment, {@code null} if unknown
+     */
+    public String get(XWikiAttachment attachment)
+    {
+        if (this.directory == null) {
+            return null;
+        }
+
+        String key = getKey(attachment);
+        File file = getFile(attachment, key);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new FileInputStream(file)))) {
+            // Make sure it's not a hash collision
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            if (in.readInt() == keyBytes.length) {
+                byte[] entryKeyBytes = new byte[keyBytes.length];
+                in.readFully(entryKeyBytes);
+                if (Arrays.equals(keyBytes, entryKeyBytes)) {
+                    return IOUtils.toString(in, StandardCharsets.UTF_8);
+                }
+            }
+        } catch (IOException e) {
+            this.logger.warn("Failed to read the cached text of attachment [{}]: {}", attachment.getReference(),
+                e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Remember the text extracted from the current version of the attachment, and forget the text of its other
+     * versions.
+     *
+     * @param attachment the attachment
+     * @param text the text extracted from the attachment
+     */
+    public void set(XWikiAttachment attachment, String text)
+    {
+        if (this.directory == null || text == null) {
+            return;
+        }
+
+        String key = getKey(attachment);
+        File file = getFile(attachment, key);
+        File attachmentDirectory = file.getParentFile();
+
+        try {
+            attachmentDirectory.mkdirs();
+
+            // Write in a temporary file first so that an entry being written is never read (several threads might
+            // extract the same attachment at the same time)
+            File temporaryFile = File.createTempFile(file.getName(), null, attachmentDirectory);
+            try (DataOutputStream out =
+                new DataOutputStream(new GZIPOutputStream(new FileOutputStream(temporaryFile)))) {
+                // Not DataOutputStream#writeUTF() which is limited to 64KB
+                byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(keyBytes.length);
+                out.write(keyBytes);
+                out.write(text.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                FileUtils.deleteQuietly(temporaryFile);
+
+                throw e;
+            }
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+            // Forget the previous versions, but not the temporary files of the other threads
+            File[] entries = attachmentDirectory.listFiles((parent, name) -> name.endsWith(EXTENSION));
+            if (entries != null) {
+                for (File entry : entries) {
+                    if (!entry.equals(file)) {
+                        FileUtils.deleteQuietly(entry);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            this.logger.warn("Failed to cache the text of attachment [{}]: {}", attachment.getReference(),
+                e.getMessage());
+        }
+    }
+
+    /**
+     * Forget the text extracted from all the versions of the attachment.
+     *
+     * @param reference the reference of the deleted attachment
+     */
+    public void remove(AttachmentReference reference)
+    {
+        if (this.directory != null) {
+            FileUtils.deleteQuietly(getAttachmentDirectory(reference));
+        }
+    }
+
+    private String getKey(XWikiAttachment attachment)
+    {
+        StringBuilder key = new StringBuilder(attachment.getReference().toString());
+        key.append('/');
+        key.append(attachment.getVersion());
+        key.append('/');
+        key.append(attachment.getLongSize());
+        key.append('/');
+        key.append(attachment.getDate() != null ? attachment.getDate().getTime() : 0);
+
+        return key.toString();
+    }
+
+    private File getFile(XWikiAttachment attachment, String key)
+    {
+        return new File(getAttachmentDirectory(attachment.getReference()), hash(key) + EXTENSION);
+    }
+
+    private File getAttachmentDirectory(AttachmentReference reference)
+    {
+        String attachmentHash = hash(reference.toString());
+
+        // Spread the attachments over several directories to avoid huge directories
+        return new File(new File(this.directory, attachmentHash.substring(0, 2)), attachmentHash);
+    }
+
+    private static String hash(String value)
+    {
+        return UUID.nameUUIDFromBytes(value.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+}
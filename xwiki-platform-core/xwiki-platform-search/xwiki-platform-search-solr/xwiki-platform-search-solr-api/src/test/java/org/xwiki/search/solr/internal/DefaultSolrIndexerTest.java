@@ -20,13 +20,26 @@
 package org.xwiki.search.solr.internal;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.InOrder;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
 import org.xwiki.model.reference.WikiReference;
 import org.xwiki.search.solr.internal.api.SolrConfiguration;
 import org.xwiki.search.solr.internal.api.SolrIndexer;
+import org.xwiki.search.solr.internal.api.SolrIndexerStatistics;
+import org.xwiki.search.solr.internal.api.SolrInstance;
+import org.xwiki.search.solr.internal.metadata.LengthSolrInputDocument;
+import org.xwiki.search.solr.internal.metadata.SolrMetadataExtractor;
+import org.xwiki.search.solr.internal.reference.SolrReferenceResolver;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import com.xpn.xwiki.XWiki;
@@ -34,9 +47,13 @@
 import com.xpn.xwiki.test.reference.ReferenceComponentList;
 import com.xpn.xwiki.web.Utils;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -91,4 +108,60 @@ public void testIndexEmptyWiki() throws Exception
 
         // index.index(wikiReference);
     }
+
+    @Test
+    public void indexInParallel() throws Exception
+    {
+        when(this.mockConfig.getIndexerQueueCapacity()).thenReturn(100);
+        when(this.mockConfig.getIndexerThreads()).thenReturn(4);
+        when(this.mockConfig.getIndexerBatchSize()).thenReturn(1000);
+        when(this.mockConfig.getIndexerBatchMaxLengh()).thenReturn(100000);
+
+        List<DocumentReference> references = new ArrayList<>();
+        Map<EntityReference, LengthSolrInputDocument> documents = new HashMap<>();
+        for (int i = 0; i < 20; ++i) {
+            DocumentReference reference = new DocumentReference("wiki", "Space", "Page" + i);
+            references.add(reference);
+            documents.put(reference, new LengthSolrInputDocument());
+        }
+
+        // Make sure the extractions don't finish in the order they were started
+        Random random = new Random();
+        SolrMetadataExtractor extractor = this.mocker.registerMockComponent(SolrMetadataExtractor.class, "document");
+        when(extractor.getSolrDocument(any())).then(invocation -> {
+            Thread.sleep(random.nextInt(20));
+            return documents.get(invocation.getArgument(0));
+        });
+
+        DocumentReference deletedReference = references.get(references.size() - 1);
+        SolrReferenceResolver resolver = this.mocker.getInstance(SolrReferenceResolver.class);
+        when(resolver.getId(deletedReference)).thenReturn("deleted");
+
+        SolrIndexer indexer = this.mocker.getComponentUnderTest();
+        for (DocumentReference reference : references) {
+            indexer.index(reference, false);
+        }
+        indexer.delete(deletedReference, false);
+
+        long timeout = System.currentTimeMillis() + 10000;
+        while (indexer.getStatistics().getIndexed() + indexer.getStatistics().getDeleted() < 21
+            && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+
+        SolrIndexerStatistics statistics = indexer.getStatistics();
+        assertEquals(4, statistics.getThreads());
+        assertEquals(20, statistics.getIndexed());
+        assertEquals(1, statistics.getDeleted());
+        assertEquals(0, statistics.getFailed());
+
+        // The documents are sent to Solr in the order they were queued, whatever the order of the extractions
+        SolrInstance solrInstance = this.mocker.getInstance(SolrInstance.class);
+        InOrder inOrder = inOrder(solrInstance);
+        for (DocumentReference reference : references) {
+            inOrder.verify(solrInstance).add(documents.get(reference));
+        }
+        inOrder.verify(solrInstance).delete("deleted");
+        verify(solrInstance, timeout(10000).atLeastOnce()).commit();
+    }
 }
@@ -23,18 +23,23 @@
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Collections;
 import java.util.Locale;
 
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.model.reference.AttachmentReference;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.observation.EventListener;
 import org.xwiki.search.solr.internal.api.SolrIndexer;
+import org.xwiki.search.solr.internal.metadata.AttachmentTextCache;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
+import com.xpn.xwiki.doc.XWikiAttachment;
 import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.event.AttachmentDeletedEvent;
 
 /**
  * Unit tests for {@link SolrIndexEventListener}.
@@ -49,10 +54,13 @@
 
     private SolrIndexer indexer;
 
+    private AttachmentTextCache attachmentTextCache;
+
     @Before
     public void setUp() throws Exception
     {
         indexer = mocker.registerMockComponent(SolrIndexer.class);
+        attachmentTextCache = mocker.registerMockComponent(AttachmentTextCache.class);
     }
 
     @Test
@@ -68,4 +76,39 @@ public void onDocumentDeleted() throws Exception
 
         verify(indexer).delete(new DocumentReference(documentReference, Locale.FRENCH), false);
     }
+
+    @Test
+    public void onDocumentWithAttachmentDeleted() throws Exception
+    {
+        DocumentReference documentReference = new DocumentReference("aWiki", "aSpace", "aPage");
+        AttachmentReference attachmentReference = new AttachmentReference("file.pdf", documentReference);
+        XWikiAttachment attachment = mock(XWikiAttachment.class);
+        when(attachment.getReference()).thenReturn(attachmentReference);
+        XWikiDocument document = mock(XWikiDocument.class);
+        when(document.getOriginalDocument()).thenReturn(document);
+        when(document.getDocumentReference()).thenReturn(documentReference);
+        when(document.getAttachmentList()).thenReturn(Collections.singletonList(attachment));
+
+        mocker.getComponentUnderTest().onEvent(new DocumentDeletedEvent(), document, null);
+
+        verify(attachmentTextCache).remove(attachmentReference);
+    }
+
+    @Test
+    public void onAttachmentDeleted() throws Exception
+    {
+        AttachmentReference attachmentReference =
+            new AttachmentReference("file.pdf", new DocumentReference("aWiki", "aSpace", "aPage"));
+        XWikiAttachment attachment = mock(XWikiAttachment.class);
+        when(attachment.getReference()).thenReturn(attachmentReference);
+        XWikiDocument document = mock(XWikiDocument.class);
+        when(document.getOriginalDocument()).thenReturn(document);
+        when(document.getAttachment("file.pdf")).thenReturn(attachment);
+
+        mocker.getComponentUnderTest().onEvent(new AttachmentDeletedEvent("aWiki:aSpace.aPage", "file.pdf"), document,
+            null);
+
+        verify(indexer).delete(attachmentReference, false);
+        verify(attachmentTextCache).remove(attachmentReference);
+    }
 }
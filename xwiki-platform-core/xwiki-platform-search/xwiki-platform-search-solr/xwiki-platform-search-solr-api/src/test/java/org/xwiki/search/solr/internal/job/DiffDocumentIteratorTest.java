@@ -78,6 +78,11 @@ public void setRootReference(EntityReference rootReference)
         {
         }
 
+        @Override
+        public void setStartSpace(String localSpaceReference)
+        {
+        }
+
         @Override
         public long size()
         {
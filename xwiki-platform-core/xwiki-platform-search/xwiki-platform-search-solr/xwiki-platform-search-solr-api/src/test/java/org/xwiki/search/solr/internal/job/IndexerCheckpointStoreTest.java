@@ -0,0 +1,98 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal.job;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xwiki.environment.Environment;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link IndexerCheckpointStore}.
+ *
+ * @version $Id$
+ */
+public class IndexerCheckpointStoreTest
+{
+    @Rule
+    public MockitoComponentMockingRule<IndexerCheckpointStore> mocker =
+        new MockitoComponentMockingRule<>(IndexerCheckpointStore.class);
+
+    @Rule
+    public TemporaryFolder permanentDirectory = new TemporaryFolder();
+
+    @Before
+    public void before() throws Exception
+    {
+        Environment environment = this.mocker.getInstance(Environment.class);
+        when(environment.getPermanentDirectory()).thenReturn(this.permanentDirectory.getRoot());
+    }
+
+    @Test
+    public void getWhenMissing() throws Exception
+    {
+        IndexerCheckpoint checkpoint = this.mocker.getComponentUnderTest().get(null);
+
+        assertEquals(0, checkpoint.getLastSuccess());
+        assertNull(checkpoint.getWiki());
+        assertNull(checkpoint.getSpace());
+    }
+
+    @Test
+    public void saveAndGet() throws Exception
+    {
+        IndexerCheckpoint checkpoint = new IndexerCheckpoint();
+        checkpoint.setLastSuccess(1000);
+        checkpoint.setStart(2000);
+        checkpoint.setWiki("wiki");
+        checkpoint.setSpace("A.B");
+
+        IndexerCheckpointStore store = this.mocker.getComponentUnderTest();
+        store.save(null, checkpoint);
+
+        checkpoint = store.get(null);
+        assertEquals(1000, checkpoint.getLastSuccess());
+        assertEquals(2000, checkpoint.getStart());
+        assertEquals("wiki", checkpoint.getWiki());
+        assertEquals("A.B", checkpoint.getSpace());
+
+        // Each root entity has its own checkpoint.
+        assertEquals(0, store.get(new WikiReference("wiki")).getLastSuccess());
+
+        SpaceReference space = new SpaceReference("Space", new WikiReference("wiki"));
+        checkpoint.setWiki(null);
+        checkpoint.setSpace(null);
+        store.save(space, checkpoint);
+
+        checkpoint = store.get(space);
+        assertEquals(1000, checkpoint.getLastSuccess());
+        assertNull(checkpoint.getWiki());
+        assertNull(checkpoint.getSpace());
+        assertEquals("wiki", store.get(null).getWiki());
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal.job;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Provider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.job.Job;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceResolver;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+import org.xwiki.search.solr.internal.api.SolrIndexer;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.wiki.descriptor.WikiDescriptorManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link IndexerJob}.
+ *
+ * @version $Id$
+ */
+public class IndexerJobTest
+{
+    @Rule
+    public MockitoComponentMockingRule<Job> mocker = new MockitoComponentMockingRule<Job>(IndexerJob.class);
+
+    private DocumentIterator<String> databaseIterator;
+
+    private DocumentIterator<String> solrIterator;
+
+    private IndexerCheckpoint checkpoint = new IndexerCheckpoint();
+
+    private IndexerCheckpointStore checkpointStore;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void configure() throws Exception
+    {
+        Execution execution = this.mocker.getInstance(Execution.class);
+        when(execution.getContext()).thenReturn(mock(ExecutionContext.class));
+
+        DefaultParameterizedType iteratorType =
+            new DefaultParameterizedType(null, DocumentIterator.class, String.class);
+        this.databaseIterator = mock(DocumentIterator.class, "database");
+        Provider<DocumentIterator<String>> databaseIteratorProvider = this.mocker
+            .registerMockComponent(new DefaultParameterizedType(null, Provider.class, iteratorType), "database");
+        when(databaseIteratorProvider.get()).thenReturn(this.databaseIterator);
+        this.solrIterator = mock(DocumentIterator.class, "solr");
+        Provider<DocumentIterator<String>> solrIteratorProvider = this.mocker
+            .registerMockComponent(new DefaultParameterizedType(null, Provider.class, iteratorType), "solr");
+        when(solrIteratorProvider.get()).thenReturn(this.solrIterator);
+
+        this.checkpointStore = this.mocker.getInstance(IndexerCheckpointStore.class);
+        when(this.checkpointStore.get(null)).thenReturn(this.checkpoint);
+
+        WikiDescriptorManager wikiDescriptorManager = this.mocker.getInstance(WikiDescriptorManager.class);
+        when(wikiDescriptorManager.getAllIds()).thenReturn(Arrays.asList("wiki3", "wiki1", "wiki2"));
+    }
+
+    private Query mockQuery(String name)
+    {
+        Query query = mock(Query.class, name);
+        when(query.setWiki(anyString())).thenReturn(query);
+        when(query.bindValue(anyString(), any())).thenReturn(query);
+        when(query.setLimit(anyInt())).thenReturn(query);
+        when(query.setOffset(anyInt())).thenReturn(query);
+
+        return query;
+    }
+
+    private Job run(IndexerRequest request) throws Exception
+    {
+        Job job = this.mocker.getComponentUnderTest();
+        job.initialize(request);
+        job.run();
+        return job;
+    }
+
+    @Test
+    public void resumeFromCheckpoint() throws Exception
+    {
+        this.checkpoint.setLastSuccess(1000);
+        this.checkpoint.setStart(2000);
+        this.checkpoint.setWiki("wiki2");
+        this.checkpoint.setSpace("Space");
+
+        // An interrupted synchronization is resumed even when an incremental synchronization is requested
+        IndexerRequest request = new IndexerRequest();
+        request.setIncremental(true);
+        run(request);
+
+        // The wikis located before the checkpoint are not synchronized again
+        verify(this.databaseIterator, never()).setRootReference(new WikiReference("wiki1"));
+        verify(this.databaseIterator).setRootReference(new WikiReference("wiki2"));
+        verify(this.databaseIterator).setRootReference(new WikiReference("wiki3"));
+
+        // The space of the checkpoint is used only for the wiki of the checkpoint
+        verify(this.databaseIterator).setStartSpace("Space");
+        verify(this.solrIterator).setStartSpace("Space");
+        verify(this.databaseIterator).setStartSpace(null);
+
+        // The synchronization is complete and remembers when the interrupted synchronization started
+        assertEquals(2000, this.checkpoint.getLastSuccess());
+        assertNull(this.checkpoint.getWiki());
+        assertNull(this.checkpoint.getSpace());
+    }
+
+    @Test
+    public void synchronizeFromScratch() throws Exception
+    {
+        // A checkpoint located in a wiki which doesn't exist anymore is ignored
+        this.checkpoint.setWiki("deleted");
+        this.checkpoint.setSpace("Space");
+
+        long before = System.currentTimeMillis();
+        run(new IndexerRequest());
+
+        verify(this.databaseIterator).setRootReference(new WikiReference("wiki1"));
+        verify(this.databaseIterator).setRootReference(new WikiReference("wiki2"));
+        verify(this.databaseIterator).setRootReference(new WikiReference("wiki3"));
+        verify(this.databaseIterator, never()).setStartSpace("Space");
+
+        assertTrue(this.checkpoint.getLastSuccess() >= before);
+        assertNull(this.checkpoint.getWiki());
+    }
+
+    @Test
+    public void synchronizeIncrementally() throws Exception
+    {
+        long lastSuccess = System.currentTimeMillis() - 60000;
+        this.checkpoint.setLastSuccess(lastSuccess);
+
+        // The first wiki has one modified document and one deleted document
+        Query modifiedQuery = mockQuery("modified");
+        when(modifiedQuery.execute()).thenReturn(
+            Collections.<Object>singletonList(new Object[] {"Space", "Page", "fr"}), Collections.emptyList());
+        Query deletedQuery = mockQuery("deleted");
+        when(deletedQuery.execute()).thenReturn(
+            Collections.<Object>singletonList(new Object[] {"Space.Deleted", ""}), Collections.emptyList());
+
+        QueryManager queryManager = this.mocker.getInstance(QueryManager.class);
+        when(queryManager.createQuery(startsWith("select doc.space"), eq(Query.HQL))).thenReturn(modifiedQuery);
+        when(queryManager.createQuery(startsWith("select distinct ddoc.fullName"), eq(Query.HQL)))
+            .thenReturn(deletedQuery);
+
+        WikiReference wikiReference = new WikiReference("wiki1");
+        EntityReferenceResolver<String> resolver =
+            this.mocker.getInstance(EntityReferenceResolver.TYPE_STRING, "explicit");
+        when(resolver.resolve("Space", EntityType.SPACE, wikiReference))
+            .thenReturn(new SpaceReference("Space", wikiReference));
+        when(resolver.resolve("Space.Deleted", EntityType.DOCUMENT, wikiReference))
+            .thenReturn(new DocumentReference("wiki1", "Space", "Deleted"));
+
+        IndexerRequest request = new IndexerRequest();
+        request.setIncremental(true);
+        request.setRemoveMissing(true);
+        run(request);
+
+        SolrIndexer indexer = this.mocker.getInstance(SolrIndexer.class);
+        DocumentReference page = new DocumentReference("wiki1", "Space", "Page");
+        verify(indexer).index(new DocumentReference(page, Locale.FRENCH), true);
+        verify(indexer).delete(new DocumentReference("wiki1", "Space", "Deleted"), true);
+
+        // Only the documents modified since the last complete synchronization (with a margin) are looked at
+        Date since = new Date(lastSuccess - TimeUnit.MINUTES.toMillis(5));
+        verify(modifiedQuery, times(3)).bindValue("since", since);
+        verify(deletedQuery, times(3)).bindValue("since", since);
+
+        // The database and the index are not compared
+        verify(this.databaseIterator, never()).setRootReference(any());
+
+        assertTrue(this.checkpoint.getLastSuccess() > lastSuccess);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.search.solr.internal.metadata;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Date;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xwiki.environment.Environment;
+import org.xwiki.model.reference.AttachmentReference;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.search.solr.internal.api.SolrConfiguration;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.doc.XWikiAttachment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link AttachmentTextCache}.
+ *
+ * @version $Id$
+ */
+public class AttachmentTextCacheTest
+{
+    @Rule
+    public MockitoComponentMockingRule<AttachmentTextCache> mocker =
+        new MockitoComponentMockingRule<>(AttachmentTextCache.class);
+
+    @Rule
+    public TemporaryFolder permanentDirectory = new TemporaryFolder();
+
+    private XWikiAttachment attachment;
+
+    @Before
+    public void before() throws Exception
+    {
+        SolrConfiguration configuration = this.mocker.getInstance(SolrConfiguration.class);
+        when(configuration.isAttachmentTextCacheEnabled()).thenReturn(true);
+
+        Environment environment = this.mocker.getInstance(Environment.class);
+        when(environment.getPermanentDirectory()).thenReturn(this.permanentDirectory.getRoot());
+
+        this.attachment = mock(XWikiAttachment.class);
+        when(this.attachment.getReference()).thenReturn(
+            new AttachmentReference("file.pdf", new DocumentReference("wiki", "Space", "Page")));
+        when(this.attachment.getVersion()).thenReturn("1.1");
+        when(this.attachment.getLongSize()).thenReturn(42L);
+        when(this.attachment.getDate()).thenReturn(new Date(1000));
+    }
+
+    @Test
+    public void setAndGet() throws Exception
+    {
+        AttachmentTextCache cache = this.mocker.getComponentUnderTest();
+
+        assertNull(cache.get(this.attachment));
+
+        cache.set(this.attachment, "text \u00e9");
+
+        assertEquals("text \u00e9", cache.get(this.attachment));
+    }
+
+    @Test
+    public void getModifiedAttachment() throws Exception
+    {
+        AttachmentTextCache cache = this.mocker.getComponentUnderTest();
+
+        cache.set(this.attachment, "text");
+
+        when(this.attachment.getVersion()).thenReturn("2.1");
+        when(this.attachment.getLongSize()).thenReturn(43L);
+
+        assertNull(cache.get(this.attachment));
+
+        cache.set(this.attachment, "new text");
+
+        assertEquals("new text", cache.get(this.attachment));
+
+        // Only the last version is kept
+        assertEquals(1, FileUtils.listFiles(this.permanentDirectory.getRoot(), null, true).size());
+    }
+
+    @Test
+    public void setKeepsTheTemporaryFilesOfOtherThreads() throws Exception
+    {
+        AttachmentTextCache cache = this.mocker.getComponentUnderTest();
+
+        cache.set(this.attachment, "text");
+
+        // Another thread is writing an entry for the same attachment
+        Collection<File> entries = FileUtils.listFiles(this.permanentDirectory.getRoot(), null, true);
+        File temporaryFile = File.createTempFile("entry", null, entries.iterator().next().getParentFile());
+
+        when(this.attachment.getVersion()).thenReturn("2.1");
+        cache.set(this.attachment, "new text");
+
+        assertTrue(temporaryFile.exists());
+        assertEquals(2, FileUtils.listFiles(this.permanentDirectory.getRoot(), null, true).size());
+        assertEquals("new text", cache.get(this.attachment));
+    }
+
+    @Test
+    public void setAndGetWithLongReference() throws Exception
+    {
+        // Longer than what DataOutputStream#writeUTF() supports
+        when(this.attachment.getReference()).thenReturn(new AttachmentReference(StringUtils.repeat('a', 70000),
+            new DocumentReference("wiki", "Space", "Page")));
+
+        AttachmentTextCache cache = this.mocker.getComponentUnderTest();
+        cache.set(this.attachment, "text");
+
+        assertEquals("text", cache.get(this.attachment));
+    }
+
+    @Test
+    public void remove() throws Exception
+    {
+        AttachmentTextCache cache = this.mocker.getComponentUnderTest();
+
+        cache.set(this.attachment, "text");
+        cache.remove(this.attachment.getReference());
+
+        assertNull(cache.get(this.attachment));
+        assertTrue(FileUtils.listFiles(this.permanentDirectory.getRoot(), null, true).isEmpty());
+    }
+
+    @Test
+    public void disabled() throws Exception
+    {
+        SolrConfiguration configuration = this.mocker.getInstance(SolrConfiguration.class);
+        when(configuration.isAttachmentTextCacheEnabled()).thenReturn(false);
+
+        AttachmentTextCache cache = this.mocker.getComponentUnderTest();
+        cache.set(this.attachment, "text");
+
+        assertNull(cache.get(this.attachment));
+    }
+}
@@ -19,6 +19,9 @@
  */
 package org.xwiki.security.authorization;
 
+import java.util.BitSet;
+import java.util.Collection;
+
 import org.xwiki.component.annotation.Role;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
@@ -73,6 +76,36 @@ void checkAccess(Right right, DocumentReference userReference, EntityReference e
      */
     boolean hasAccess(Right right, DocumentReference userReference, EntityReference entityReference);
 
+    /**
+     * Verifies, for each of the entities identified by {@code entityReferences}, if the user identified by
+     * {@code userReference} has the access identified by {@code right} on it. This is equivalent to calling
+     * {@link #hasAccess(Right, DocumentReference, EntityReference)} for each entity, but implementations may share the
+     * evaluation of common ancestors, which makes it the preferred way to filter large lists of entities (search
+     * results, live tables, etc.).
+     * This function should be used for interface matters, use {@link #checkAccess} at security checkpoints.
+     *
+     * @param right the right to check
+     * @param userReference the user to check the right for
+     * @param entityReferences the entities on which to check the right
+     * @return a bit set where the bit at a given index is set if the user has the specified right on the entity found
+     *         at that position when iterating over {@code entityReferences}
+     * @since 10.1RC1
+     */
+    default BitSet filterAccessible(Right right, DocumentReference userReference,
+        Collection<? extends EntityReference> entityReferences)
+    {
+        BitSet accessible = new BitSet(entityReferences.size());
+        int index = 0;
+        for (EntityReference entityReference : entityReferences) {
+            if (hasAccess(right, userReference, entityReference)) {
+                accessible.set(index);
+            }
+            index++;
+        }
+
+        return accessible;
+    }
+
     /**
      * Register a new custom {@link Right}.
      *
@@ -19,6 +19,9 @@
  */
 package org.xwiki.security.authorization;
 
+import java.util.BitSet;
+import java.util.Collection;
+
 import org.xwiki.component.annotation.Role;
 import org.xwiki.model.reference.EntityReference;
 
@@ -80,4 +83,30 @@
      * @return {@code true} if the user has the specified right on the entity, {@code false} otherwise
      */
     boolean hasAccess(Right right, EntityReference entityReference);
+
+    /**
+     * Verifies, for each of the given entities, if access identified by {@code right} would be allowed in the current
+     * context. This is equivalent to calling {@link #hasAccess(Right, EntityReference)} for each entity, but
+     * implementations may share the evaluation of common ancestors.
+     * This function should be used for interface matters, use {@link #checkAccess} at security checkpoints.
+     *
+     * @param right the right to check
+     * @param entityReferences the entities on which to check the right
+     * @return a bit set where the bit at a given index is set if the access is allowed on the entity found at that
+     *         position when iterating over {@code entityReferences}
+     * @since 10.1RC1
+     */
+    default BitSet filterAccessible(Right right, Collection<? extends EntityReference> entityReferences)
+    {
+        BitSet accessible = new BitSet(entityReferences.size());
+        int index = 0;
+        for (EntityReference entityReference : entityReferences) {
+            if (hasAccess(right, entityReference)) {
+                accessible.set(index);
+            }
+            index++;
+        }
+
+        return accessible;
+    }
 }
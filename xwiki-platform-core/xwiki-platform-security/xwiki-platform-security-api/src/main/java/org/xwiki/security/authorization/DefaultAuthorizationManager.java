@@ -19,6 +19,13 @@
  */
 package org.xwiki.security.authorization;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -115,6 +122,48 @@ public boolean hasAccess(Right right, DocumentReference userReference, EntityRef
         }
     }
 
+    @Override
+    public BitSet filterAccessible(Right right, DocumentReference userReference,
+        Collection<? extends EntityReference> entityReferences)
+    {
+        BitSet accessible = new BitSet(entityReferences.size());
+
+        if (isSuperAdmin(userReference)) {
+            accessible.set(0, entityReferences.size());
+            return accessible;
+        }
+
+        if (right == null || right == Right.ILLEGAL || (!right.isReadOnly() && xwikiBridge.isWikiReadOnly())
+            || (userReference == null && xwikiBridge.needsAuthentication(right))) {
+            return accessible;
+        }
+
+        UserSecurityReference user = securityReferenceFactory.newUserReference(userReference);
+        // The access settled for each entity visited so far, shared by the entities having the same closest level
+        // holding rules (usually a space or the wiki)
+        Map<SecurityReference, SecurityAccess> settledAccesses = new HashMap<>();
+
+        int index = 0;
+        for (EntityReference entityReference : entityReferences) {
+            try {
+                SecurityAccess access =
+                    getAccess(user, securityReferenceFactory.newEntityReference(entityReference), settledAccesses);
+                RuleState state = access.get(right);
+                logAccess(state, userReference, entityReference, right, "bulk access inquiry", true);
+                if (state == RuleState.ALLOW) {
+                    accessible.set(index);
+                }
+            } catch (Exception e) {
+                this.logger.error(String.format("Failed to load rights for user [%s] on [%s].",
+                    (userReference == null) ? AuthorizationException.NULL_USER : userReference,
+                    (entityReference == null) ? AuthorizationException.NULL_ENTITY : entityReference), e);
+            }
+            index++;
+        }
+
+        return accessible;
+    }
+
     /**
      * Verifies if the user identified by {@code userReference} has the access identified by {@code right} on the
      * entity identified by {@code entityReference}. Note that some rights may be checked higher in hierarchy of the
@@ -237,6 +286,60 @@ private SecurityAccess getAccess(UserSecurityReference user, SecurityReference e
         return access;
     }
 
+    /**
+     * Obtain the access for the user on the given entity, reusing the access already settled for one of its ancestors
+     * during the same bulk evaluation, and load it into the cache if unavailable.
+     *
+     * @param user The user identity.
+     * @param entity The entity.  May be of type DOCUMENT, WIKI, or SPACE.
+     * @param settledAccesses The accesses already settled during the current bulk evaluation, updated with the
+     *            entities visited by this call.
+     * @return the access of the user on the entity.
+     * @exception org.xwiki.security.authorization.AuthorizationException if an error occurs
+     */
+    private SecurityAccess getAccess(UserSecurityReference user, SecurityReference entity,
+        Map<SecurityReference, SecurityAccess> settledAccesses) throws AuthorizationException
+    {
+        List<SecurityReference> visitedReferences = new ArrayList<>();
+        SecurityAccess access = null;
+        for (SecurityReference ref = entity; ref != null; ref = ref.getParentSecurityReference()) {
+            access = settledAccesses.get(ref);
+            if (access != null) {
+                break;
+            }
+            visitedReferences.add(ref);
+            if (Right.getEnabledRights(ref.getSecurityType()).isEmpty()) {
+                // Skip search on entity types that will obviously have empty/useless list of rules.
+                continue;
+            }
+            SecurityRuleEntry entry = securityCache.get(ref);
+            if (entry == null) {
+                // The rules of this level are unknown, they have to be loaded
+                break;
+            }
+            if (!entry.isEmpty()) {
+                SecurityAccessEntry accessEntry = securityCache.get(user, ref);
+                if (accessEntry != null) {
+                    access = accessEntry.getAccess();
+                }
+                break;
+            }
+        }
+
+        if (access == null) {
+            access = securityCacheLoader.load(user, entity).getAccess();
+
+            this.logger.debug("Loaded a new entry for user {} on {} into cache: [{}]", user, entity, access);
+        }
+
+        // All the visited levels are below (or at) the closest level holding rules, so they share the same access
+        for (SecurityReference ref : visitedReferences) {
+            settledAccesses.put(ref, access);
+        }
+
+        return access;
+    }
+
     /**
      * Log access conclusion.
      * @param access The ALLOW or DENY state
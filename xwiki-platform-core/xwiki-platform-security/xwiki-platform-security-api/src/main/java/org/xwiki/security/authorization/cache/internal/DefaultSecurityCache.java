@@ -26,8 +26,7 @@
 import java.util.Deque;
 import java.util.HashSet;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -54,6 +53,11 @@
 
 /**
  * Default implementation of the security cache.
+ * <p>
+ * Reads are lock-free: they rely on the thread safety of the underlying cache and on the immutability of the
+ * published parent relations. Modifications (insertions, removals and their cascaded invalidations) are serialized
+ * by a single non-fair lock, and a removed subtree is marked invalidated before being evicted so that concurrent
+ * readers never observe an entry whose ancestor is being removed.
  *
  * @version $Id$
  * @since 4.0M2 
@@ -72,14 +76,8 @@ public class DefaultSecurityCache implements SecurityCache, Initializable
     @Inject
     private Logger logger;
 
-    /** Fair read-write lock used for fair scheduling of cache access. */
-    private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
-
-    /** Fair read lock. */
-    private final Lock readLock = readWriteLock.readLock();
-
-    /** Fair write lock. */
-    private final Lock writeLock = readWriteLock.writeLock();
+    /** Lock serializing the modifications of the cache and of the relations between its entries. */
+    private final Lock writeLock = new ReentrantLock();
 
     /** The keys in the cache are generated from instances of {@link org.xwiki.model.reference.EntityReference}. */
     @Inject
@@ -129,15 +127,15 @@ private class SecurityCacheEntry implements DisposableCacheValue
         /**
          * The cached security entry.
          */
-        private SecurityEntry entry;
+        private volatile SecurityEntry entry;
 
         /**
-         * Parents of this cached entry.
+         * Parents of this cached entry. Never modified once published, only replaced.
          */
-        private Collection<SecurityCacheEntry> parents;
+        private volatile Collection<SecurityCacheEntry> parents;
 
         /**
-         * Children of this cached entry.
+         * Children of this cached entry. Only accessed while holding the write lock.
          */
         private Collection<SecurityCacheEntry> children;
 
@@ -146,6 +144,11 @@ private class SecurityCacheEntry implements DisposableCacheValue
          */
         private boolean disposed;
 
+        /**
+         * True if this entry, or one of its ancestors, is being removed. Such an entry is ignored by readers.
+         */
+        private volatile boolean invalidated;
+
         /**
          * Create a new cache entry for a security rule, linking it to its parent.
          * @param entry the security rule entry to cache.
@@ -262,16 +265,17 @@ private SecurityCacheEntry(SecurityEntry entry, Collection<GroupSecurityReferenc
             this.entry = entry;
             int parentSize = groups.size() + ((parentReference == null) ? 0 : 1);
             if (parentSize > 0) {
-                this.parents = new ArrayList<SecurityCacheEntry>(parentSize);
+                Collection<SecurityCacheEntry> newParents = new ArrayList<SecurityCacheEntry>(parentSize);
                 if (parentReference != null) {
                     SecurityCacheEntry parent = DefaultSecurityCache.this.getEntry(parentReference);
                     if (parent == null) {
                         throw new ParentEntryEvictedException();
                     }
-                    this.parents.add(parent);
+                    newParents.add(parent);
                     parent.addChild(this);
                 }
-                addParentGroups(groups, parentReference);
+                addParentGroups(newParents, groups, parentReference);
+                this.parents = newParents;
                 logNewEntry();
             } else {
                 this.parents = null;
@@ -282,12 +286,14 @@ private SecurityCacheEntry(SecurityEntry entry, Collection<GroupSecurityReferenc
         /**
          * Add provided groups as parent of this entry, excluding the main parent reference.
          *
+         * @param newParents the parents being collected for this entry, before their publication.
          * @param groups the list of groups to add.
          * @param parentReference the main parent reference to exclude.
          * @throws ParentEntryEvictedException if the parents required are no more available in the cache.
          */
-        private void addParentGroups(Collection<GroupSecurityReference> groups,
-            SecurityReference parentReference) throws ParentEntryEvictedException
+        private void addParentGroups(Collection<SecurityCacheEntry> newParents,
+            Collection<GroupSecurityReference> groups, SecurityReference parentReference)
+            throws ParentEntryEvictedException
         {
             for (GroupSecurityReference group : groups) {
                 if (group.equals(parentReference)) {
@@ -300,7 +306,7 @@ private void addParentGroups(Collection<GroupSecurityReference> groups,
                 if (parent == null) {
                     throw new ParentEntryEvictedException();
                 }
-                this.parents.add(parent);
+                newParents.add(parent);
                 parent.addChild(this);
             }
         }
@@ -319,15 +325,18 @@ boolean updateParentGroups(Collection<GroupSecurityReference> groups)
             }
 
             if (groups != null && !groups.isEmpty()) {
+                // Build the new parents aside, so that lock-free readers never see a partially filled collection
+                Collection<SecurityCacheEntry> newParents;
                 if (this.parents == null) {
-                    this.parents = new ArrayList<SecurityCacheEntry>(groups.size());
-                    addParentGroups(groups, null);
+                    newParents = new ArrayList<SecurityCacheEntry>(groups.size());
+                    addParentGroups(newParents, groups, null);
                 } else {
                     SecurityCacheEntry parent = this.parents.iterator().next();
-                    this.parents = new ArrayList<SecurityCacheEntry>(groups.size() + 1);
-                    this.parents.add(parent);
-                    addParentGroups(groups, parent.entry.getReference());
+                    newParents = new ArrayList<SecurityCacheEntry>(groups.size() + 1);
+                    newParents.add(parent);
+                    addParentGroups(newParents, groups, parent.entry.getReference());
                 }
+                this.parents = newParents;
             }
 
             return true;
@@ -384,12 +393,32 @@ String getKey()
         public void dispose()
         {
             if (!disposed) {
+                invalidate();
                 disposed = true;
                 disconnectFromParents();
                 disposeChildren();
             }
         }
 
+        /**
+         * Mark this entry and all its descendants as invalidated, so that concurrent readers stop seeing them before
+         * the cascaded removal of the descendants from the cache is done.
+         */
+        private void invalidate()
+        {
+            Deque<SecurityCacheEntry> entriesToInvalidate = new ArrayDeque<>();
+            entriesToInvalidate.push(this);
+            while (!entriesToInvalidate.isEmpty()) {
+                SecurityCacheEntry current = entriesToInvalidate.pop();
+                if (!current.invalidated) {
+                    current.invalidated = true;
+                    if (current.children != null) {
+                        entriesToInvalidate.addAll(current.children);
+                    }
+                }
+            }
+        }
+
         protected void disconnectFromParents()
         {
             if (parents != null) {
@@ -533,18 +562,24 @@ private String getEntryKey(SecurityAccessEntry entry)
         return getEntryKey(entry.getUserReference(), entry.getReference());
     }
 
+    /**
+     * @param key the key of the entry requested.
+     * @return the security cache entry stored with the given key, null if none is available in the cache or if it is
+     *         being removed.
+     */
+    private SecurityCacheEntry getValidEntry(String key)
+    {
+        SecurityCacheEntry entry = cache.get(key);
+        return (entry != null && !entry.invalidated) ? entry : null;
+    }
+
     /**
      * @param reference the reference requested.
      * @return a security cache entry corresponding to given reference, null if none is available in the cache.
      */
     private SecurityCacheEntry getEntry(SecurityReference reference)
     {
-        readLock.lock();
-        try {
-            return cache.get(getEntryKey(reference));
-        } finally {
-            readLock.unlock();
-        }
+        return getValidEntry(getEntryKey(reference));
     }
 
     /**
@@ -555,12 +590,7 @@ private SecurityCacheEntry getEntry(SecurityReference reference)
      */
     private SecurityCacheEntry getEntry(UserSecurityReference userReference, SecurityReference reference)
     {
-        readLock.lock();
-        try {
-            return cache.get(getEntryKey(userReference, reference));
-        } finally {
-            readLock.unlock();
-        }
+        return getValidEntry(getEntryKey(userReference, reference));
     }
 
     /**
@@ -571,12 +601,7 @@ private SecurityCacheEntry getEntry(UserSecurityReference userReference, Securit
      */
     private SecurityCacheEntry getShadowEntry(SecurityReference userReference, SecurityReference wiki)
     {
-        readLock.lock();
-        try {
-            return cache.get(getShadowEntryKey(userReference, wiki));
-        } finally {
-            readLock.unlock();
-        }
+        return getValidEntry(getShadowEntryKey(userReference, wiki));
     }
 
     /**
@@ -848,7 +873,12 @@ public Collection<GroupSecurityReference> getImmediateGroupsFor(UserSecurityRefe
             return null;
         }
 
-        for (SecurityCacheEntry parent : userEntry.parents) {
+        Collection<SecurityCacheEntry> parents = userEntry.parents;
+        if (parents == null) {
+            return groups;
+        }
+
+        for (SecurityCacheEntry parent : parents) {
             // Add the parent group (if we have not already seen it)
             SecurityReference parentRef = parent.getEntry().getReference();
             if (parentRef instanceof GroupSecurityReference) {
@@ -878,7 +908,10 @@ public Collection<GroupSecurityReference> getGroupsFor(UserSecurityReference use
         // Special case if the user is a shadow.
         if (entityWiki != null) {
             // We start with the parents of the original entry, and the parent of this shadow (excluding the original)
-            addParentsWhenEntryIsShadow(userEntry, user, groups, entriesToExplore);
+            if (!addParentsWhenEntryIsShadow(userEntry, user, groups, entriesToExplore)) {
+                // The original entry is being removed concurrently
+                return null;
+            }
         } else {
             // We start with the current user
             entriesToExplore.add(userEntry);
@@ -887,6 +920,11 @@ public Collection<GroupSecurityReference> getGroupsFor(UserSecurityReference use
         // Let's go
         while (!entriesToExplore.isEmpty()) {
             SecurityCacheEntry entry = entriesToExplore.pop();
+
+            // A group is being removed concurrently, so the ancestors are not reliably loaded anymore
+            if (entry.invalidated) {
+                return null;
+            }
             
             // We add the parents of the current entry
             addParentsToTheListOfEntriesToExplore(entry.parents, groups, entriesToExplore);
@@ -906,16 +944,21 @@ public Collection<GroupSecurityReference> getGroupsFor(UserSecurityReference use
         return groups;
     }
     
-    private void addParentsWhenEntryIsShadow(SecurityCacheEntry shadow, UserSecurityReference user,
+    private boolean addParentsWhenEntryIsShadow(SecurityCacheEntry shadow, UserSecurityReference user,
             Collection<GroupSecurityReference> groups,
             Deque<SecurityCacheEntry> entriesToExplore)
     {
         SecurityCacheEntry originalEntry = getEntry(user);
+        if (originalEntry == null) {
+            return false;
+        }
 
         // We add the parents of the original (but not the original, otherwise we could have the same group twice)
         addParentsToTheListOfEntriesToExplore(originalEntry.parents, groups, entriesToExplore);
         // And we add the parent groups of the shadow
         addParentsToTheListOfEntriesToExplore(shadow.parents, groups, entriesToExplore, originalEntry);
+
+        return true;
     }
 
     /**
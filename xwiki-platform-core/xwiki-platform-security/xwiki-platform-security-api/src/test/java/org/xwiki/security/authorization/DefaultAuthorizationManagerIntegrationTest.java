@@ -21,8 +21,11 @@
 package org.xwiki.security.authorization;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -471,6 +474,37 @@ public void testInheritancePolicyForGlobalFullWikiAccess() throws Exception
         assertAccess(ALL_RIGHTS_EXCEPT_PROGRAMING_AND_CREATE_WIKI, getXUser("userA"), getDoc("docDenyA",     "any space",  "wikiAllowA"));
     }
 
+    @Test
+    public void testFilterAccessible() throws Exception
+    {
+        initialiseWikiMock("inheritancePolicyForGlobalFullWikiAccess");
+
+        List<EntityReference> entities = Arrays.<EntityReference>asList(
+            getXDoc("any document", "any space"),
+            getXDoc("any document", "spaceAllowA"),
+            getXDoc("docDenyA", "spaceAllowA"),
+            getXDoc("another document", "spaceAllowA"),
+            getXDoc("docAllowA", "any space"),
+            getDoc("any document", "any space", "wikiNoRules"),
+            getDoc("docAllowA", "any space", "wikiNoRules"),
+            getDoc("any document", "spaceDenyA", "wikiAllowA"),
+            getDoc("docDenyA", "any space", "wikiAllowA"),
+            getXDoc("any document", "spaceAllowA"));
+
+        for (Right right : values()) {
+            BitSet accessible = authorizationManager.filterAccessible(right, getXUser("userA"), entities);
+            for (int i = 0; i < entities.size(); i++) {
+                Assert.assertEquals(String.format("Unexpected [%s] right for [%s] on [%s].", right,
+                    getUserReadableName(getXUser("userA")), getEntityReadableName(entities.get(i))),
+                    authorizationManager.hasAccess(right, getXUser("userA"), entities.get(i)), accessible.get(i));
+            }
+        }
+
+        // SuperAdmin is allowed everything
+        BitSet accessible = authorizationManager.filterAccessible(PROGRAM, getXUser("superadmin"), entities);
+        Assert.assertEquals(entities.size(), accessible.cardinality());
+    }
+
     @Test
     public void testInheritancePolicyForLocalWikiAccess() throws Exception
     {
@@ -26,7 +26,15 @@
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.commons.lang3.reflect.FieldUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -56,10 +64,12 @@
 import org.xwiki.test.annotation.ComponentList;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
+import static org.hamcrest.CoreMatchers.anyOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.mock;
@@ -809,4 +819,91 @@ public boolean keepAccess(SecurityAccessEntry entry) {
             }
         });
     }
+
+    @Test
+    public void testReadsAreNotBlockedByModifications() throws Exception
+    {
+        // Fill the cache
+        InsertUsers();
+        InsertEntities();
+        final SecurityAccessEntry accessEntry = mockSecurityAccessEntry(docRef, userRef);
+        AddAccessEntry(accessEntry);
+
+        // Simulate a long running modification by holding the lock used to serialize them
+        Lock writeLock = (Lock) FieldUtils.readField(securityCache, "writeLock", true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        writeLock.lock();
+        try {
+            Future<SecurityAccessEntry> read = executor.submit(new Callable<SecurityAccessEntry>()
+            {
+                @Override
+                public SecurityAccessEntry call()
+                {
+                    securityCache.get(docRef);
+                    securityCache.getGroupsFor(userRef, null);
+                    return securityCache.get(userRef, docRef);
+                }
+            });
+
+            assertThat(read.get(10, TimeUnit.SECONDS), sameInstance(accessEntry));
+        } finally {
+            writeLock.unlock();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentReadsDuringRemoval() throws Exception
+    {
+        // Fill the cache
+        InsertUsers();
+        InsertEntities();
+        final Map<String, SecurityEntry> accessEntries = InsertAccess();
+
+        int readerCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+        final CountDownLatch readersStarted = new CountDownLatch(readerCount);
+        final CountDownLatch removalDone = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(readerCount);
+        List<Future<Boolean>> readers = new ArrayList<>();
+        try {
+            for (int i = 0; i < readerCount; i++) {
+                readers.add(executor.submit(new Callable<Boolean>()
+                {
+                    @Override
+                    public Boolean call() throws Exception
+                    {
+                        readersStarted.countDown();
+                        do {
+                            for (SecurityEntry entry : accessEntries.values()) {
+                                SecurityAccessEntry accessEntry = (SecurityAccessEntry) entry;
+                                // An entry is either still there and unchanged, or already removed
+                                assertThat(securityCache.get(accessEntry.getUserReference(),
+                                    accessEntry.getReference()), anyOf(sameInstance(accessEntry), nullValue()));
+                            }
+                        } while (!removalDone.await(0, TimeUnit.MILLISECONDS));
+                        return true;
+                    }
+                }));
+            }
+
+            assertTrue(readersStarted.await(10, TimeUnit.SECONDS));
+            securityCache.remove(groupRef);
+            securityCache.remove(wikiRef);
+            removalDone.countDown();
+
+            for (Future<Boolean> reader : readers) {
+                assertTrue(reader.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (SecurityEntry entry : accessEntries.values()) {
+            if (entry.getReference().getOriginalReference().extractReference(EntityType.WIKI)
+                == wikiRef.getOriginalWikiReference()) {
+                assertThat(securityCache.get(((SecurityAccessEntry) entry).getUserReference(),
+                    entry.getReference()), nullValue());
+            }
+        }
+    }
 }
@@ -20,8 +20,8 @@
 
 package org.xwiki.security.authorization.cache.internal;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.xwiki.cache.Cache;
 import org.xwiki.cache.CacheEntry;
@@ -43,7 +43,7 @@
  */
 public class TestCache<T> implements Cache<T>
 {
-    private Map<String, T> cache = new HashMap<String, T>();
+    private Map<String, T> cache = new ConcurrentHashMap<String, T>();
     private CacheEntryListener<T> listener;
     private String lastInsertedKey;
 
@@ -56,5 +56,18 @@ public RuleState getState()
     {
         return RuleState.ALLOW;
     }
+
+    @Override
+    public boolean equals(Object object)
+    {
+        // All instances are equivalent (e.g. when restored from the security rule snapshot)
+        return object == this || (object != null && object.getClass() == getClass());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return getClass().hashCode();
+    }
 }
 
@@ -19,8 +19,12 @@
  */
 package org.xwiki.security.authorization.internal;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import javax.inject.Inject;
@@ -136,6 +140,23 @@ private boolean hasAccess(Right right, DocumentReference user, EntityReference e
         return checkPreAccess(right) && this.authorizationManager.hasAccess(right, user, getFullReference(entity));
     }
 
+    @Override
+    public BitSet filterAccessible(Right right, Collection<? extends EntityReference> entities)
+    {
+        if (CONTENT_AUTHOR_RIGHTS.contains(right)) {
+            // The user to check depends on each entity
+            return ContextualAuthorizationManager.super.filterAccessible(right, entities);
+        }
+
+        List<EntityReference> fullReferences = new ArrayList<>(entities.size());
+        for (EntityReference entity : entities) {
+            fullReferences.add(getFullReference(entity));
+        }
+
+        return this.authorizationManager.filterAccessible(right, this.xcontextProvider.get().getUserReference(),
+            fullReferences);
+    }
+
     private EntityReference getFullReference(EntityReference reference)
     {
         return reference != null ? this.resolver.resolve(reference, reference.getType()) : null;
@@ -49,6 +49,7 @@
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.user.GroupClosureIndex;
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.user.api.XWikiGroupService;
 
@@ -81,6 +82,14 @@ public class DefaultSecurityCacheRulesInvalidatorListener implements EventListen
     @Inject
     private SecurityCache securityCache;
 
+    /** The rules and group memberships kept across restarts. */
+    @Inject
+    private SecurityRuleSnapshot snapshot;
+
+    /** The index of the group memberships. */
+    @Inject
+    private GroupClosureIndex groupIndex;
+
     /** The security reference factory. */
     @Inject
     private SecurityReferenceFactory securityReferenceFactory;
@@ -139,6 +148,16 @@ private boolean isGroupDocument(Object source)
         return objects != null && objects.size() > 0;
     }
 
+    /**
+     * @param source an xwiki document, that has just been updated.
+     * @return true if the xwiki document corresponds to a group, or did before being modified.
+     */
+    private boolean isOrWasGroupDocument(Object source)
+    {
+        XWikiDocument originalDocument = ((XWikiDocument) source).getOriginalDocument();
+        return isGroupDocument(source) || (originalDocument != null && isGroupDocument(originalDocument));
+    }
+
     /**
      * Drop from the cache all members of a given group.
      * 
@@ -186,6 +205,12 @@ public void onEvent(Event event, Object source, Object data)
         readWriteLock.writeLock().lock();
         try {
             deliverUpdateEvent(ref);
+            if (isOrWasGroupDocument(source)) {
+                // Make sure the index is up to date before the security cache is reloaded, whatever the order in which
+                // the listeners are called
+                this.groupIndex.updateGroup((XWikiDocument) source);
+                this.snapshot.removeGroups();
+            }
             if (isGroupDocument(source)) {
                 // When a group receive a new member, the update event is triggered and the above invalidate the group
                 // and also all its existing members already in cache, but NOT the new member that could be currently
@@ -207,12 +232,17 @@ public void onEvent(Event event, Object source, Object data)
      */
     private void deliverUpdateEvent(DocumentReference ref)
     {
+        // The rules of the document itself are read from it
+        snapshot.removeRules(ref);
+
         if (XWikiConstants.WIKI_DOC_REFERENCE.equals(ref, EntityType.SPACE)) {
             // For XWiki.XWikiPreferences, remove the whole wiki.
             securityCache.remove(securityReferenceFactory.newEntityReference(ref.getWikiReference()));
+            snapshot.removeRules(ref.getWikiReference());
         } else if (ref.getName().equals(XWikiConstants.SPACE_DOC)) {
             // For WebPreferences, remove the whole space.
             securityCache.remove(securityReferenceFactory.newEntityReference(ref.getParent()));
+            snapshot.removeRules(ref.getParent());
         } else {
             // For any other documents, remove that document cache.
             securityCache.remove(securityReferenceFactory.newEntityReference(ref));
@@ -222,8 +252,11 @@ private void deliverUpdateEvent(DocumentReference ref)
                 && XWikiConstants.XWIKI_SPACE_REFERENCE.equals(ref.getLastSpaceReference(), EntityType.SPACE)
                 && ref.getWikiReference().getName().equals(this.xcontextProvider.get().getMainXWiki())) {
                 // For xwiki:XWiki.XWikiServer... documents, also remove the whole corresponding wiki.
-                securityCache.remove(securityReferenceFactory.newEntityReference(new WikiReference(ref.getName()
-                    .substring(XWikiConstants.WIKI_DESCRIPTOR_PREFIX.length()).toLowerCase())));
+                WikiReference wikiReference = new WikiReference(ref.getName()
+                    .substring(XWikiConstants.WIKI_DESCRIPTOR_PREFIX.length()).toLowerCase());
+                securityCache.remove(securityReferenceFactory.newEntityReference(wikiReference));
+                // The wiki owner may have changed, or the wiki may have been deleted
+                snapshot.removeWiki(wikiReference);
             }
         }
     }
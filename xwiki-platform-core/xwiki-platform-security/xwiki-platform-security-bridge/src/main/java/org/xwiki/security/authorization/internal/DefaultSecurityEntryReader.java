@@ -83,6 +83,10 @@ public class DefaultSecurityEntryReader implements SecurityEntryReader
     @Inject
     private Execution execution;
 
+    /** The rules kept across restarts. */
+    @Inject
+    private SecurityRuleSnapshot snapshot;
+
     /**
      * @return the current {@code XWikiContext}
      */
@@ -178,8 +182,13 @@ public SecurityRuleEntry read(SecurityReference entity) throws AuthorizationExce
                 throw new EntityTypeNotSupportedException(entity.getType(), this);
         }
 
-        return new InternalSecurityRuleEntry(entity,
-            getSecurityRules(documentReference, classReference, wikiReference));
+        Collection<SecurityRule> rules = this.snapshot.getRules(entity);
+        if (rules == null) {
+            rules = getSecurityRules(documentReference, classReference, wikiReference);
+            this.snapshot.putRules(entity, rules);
+        }
+
+        return new InternalSecurityRuleEntry(entity, rules);
     }
 
     /**
@@ -0,0 +1,647 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.security.authorization.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.environment.Environment;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.security.SecurityReference;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.security.authorization.RightSet;
+import org.xwiki.security.authorization.RuleState;
+import org.xwiki.security.authorization.SecurityRule;
+
+/**
+ * Keep the security rules read from the wiki and the groups of the users, and save them on disk when the instance
+ * stops so that the security cache can be filled again without reading all the rights objects and group documents
+ * after a restart.
+ * <p>
+ * The snapshot is disabled by default. It is written under the permanent directory with a format version and a
+ * checksum, and is deleted as soon as it has been loaded so that an instance which does not stop cleanly never reuses
+ * an outdated snapshot. Before the loaded entries are used for the first time, each wiki they refer to is checked
+ * against the database: the entries of a wiki in which a document has been saved or deleted (to the recycle bin)
+ * since the snapshot was written, e.g. by another cluster member while this instance was stopped, are dropped, and
+ * the whole snapshot is dropped if the database cannot be queried. Documents deleted without going through the recycle
+ * bin cannot be detected.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Component(roles = SecurityRuleSnapshot.class)
+@Singleton
+public class SecurityRuleSnapshot implements Initializable, Disposable
+{
+    private static final String CONFIGURATION_PREFIX = "security.authorization.snapshot.";
+
+    /** The marker at the beginning of the snapshot file ("XSRS"). */
+    private static final int MAGIC = 0x58535253;
+
+    /** The version of the snapshot file format, to be increased on any incompatible change. */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String SNAPSHOT_FILE = "cache/security/rules.snapshot";
+
+    private static final byte XWIKI_RULE = 0;
+
+    private static final byte ALLOW_EDIT_TO_NO_ONE_RULE = 1;
+
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static final long DEFAULT_MAX_AGE = TimeUnit.DAYS.toSeconds(1);
+
+    /** The tolerance on the snapshot date, to cover clock differences between the cluster members and the database. */
+    private static final long DATE_MARGIN = TimeUnit.MINUTES.toMillis(1);
+
+    private static final String DATE_PARAMETER = "date";
+
+    private static final String MODIFIED_DOCUMENTS_QUERY =
+        "select count(doc.id) from XWikiDocument doc where doc.date > :date";
+
+    private static final String DELETED_DOCUMENTS_QUERY =
+        "select count(ddoc.id) from XWikiDeletedDocument ddoc where ddoc.date > :date";
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    private QueryManager queryManager;
+
+    @Inject
+    private Logger logger;
+
+    private boolean enabled;
+
+    /** The date of the loaded snapshot, or {@code null} when there is nothing left to check against the database. */
+    private volatile Date snapshotDate;
+
+    /** True while the loaded snapshot is checked against the database. */
+    private boolean validating;
+
+    /** The rules of the entities, indexed by entity reference. */
+    private Map<EntityReference, Collection<SecurityRule>> rules;
+
+    /** The groups of the users and groups, indexed by member and wiki of the groups. */
+    private Map<Pair<EntityReference, EntityReference>, Collection<DocumentReference>> groups;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.enabled = this.configuration.getProperty(CONFIGURATION_PREFIX + "enabled", false);
+
+        if (this.enabled) {
+            int maxEntries = this.configuration.getProperty(CONFIGURATION_PREFIX + "maxEntries", DEFAULT_MAX_ENTRIES);
+            this.rules = newLRUMap(maxEntries);
+            this.groups = newLRUMap(maxEntries);
+
+            load();
+        }
+    }
+
+    @Override
+    public void dispose()
+    {
+        if (this.enabled) {
+            save();
+        }
+    }
+
+    private static <K, V> Map<K, V> newLRUMap(final int maxEntries)
+    {
+        return Collections.synchronizedMap(new LinkedHashMap<K, V>(16, 0.75F, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+            {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * @return true if the snapshot is enabled
+     */
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    /**
+     * @param entity the entity for which the rules are requested
+     * @return the rules of the entity, or {@code null} if they are not part of the snapshot
+     */
+    public Collection<SecurityRule> getRules(SecurityReference entity)
+    {
+        if (!this.enabled || entity.getOriginalReference() == null || !validate()) {
+            return null;
+        }
+
+        return this.rules.get(toKey(entity.getOriginalReference()));
+    }
+
+    /**
+     * Remember the rules read for an entity. Only the rules read from the wiki can be remembered.
+     *
+     * @param entity the entity
+     * @param entityRules the rules of the entity
+     */
+    public void putRules(SecurityReference entity, Collection<SecurityRule> entityRules)
+    {
+        if (!this.enabled || entity.getOriginalReference() == null) {
+            return;
+        }
+
+        for (SecurityRule rule : entityRules) {
+            if (!(rule instanceof XWikiSecurityRule) && !(rule instanceof AllowEditToNoOneRule)) {
+                return;
+            }
+        }
+
+        this.rules.put(toKey(entity.getOriginalReference()), new ArrayList<>(entityRules));
+    }
+
+    /**
+     * @param member the reference of the user or group
+     * @param wiki the wiki where the groups are evaluated
+     * @return the groups of the given wiki the member belongs to, or {@code null} if they are not part of the snapshot
+     */
+    public Collection<DocumentReference> getGroups(DocumentReference member, WikiReference wiki)
+    {
+        if (!this.enabled || !validate()) {
+            return null;
+        }
+
+        return this.groups.get(toKey(member, wiki));
+    }
+
+    /**
+     * Remember the groups of a given wiki a user or a group belongs to.
+     *
+     * @param member the reference of the user or group
+     * @param wiki the wiki where the groups are evaluated
+     * @param memberGroups the groups of the given wiki the member belongs to
+     */
+    public void putGroups(DocumentReference member, WikiReference wiki, Collection<DocumentReference> memberGroups)
+    {
+        if (this.enabled) {
+            this.groups.put(toKey(member, wiki), Collections.unmodifiableList(new ArrayList<>(memberGroups)));
+        }
+    }
+
+    /**
+     * Forget the rules of an entity.
+     *
+     * @param entity the entity which rules have been modified
+     */
+    public void removeRules(EntityReference entity)
+    {
+        if (this.enabled) {
+            this.rules.remove(toKey(entity));
+        }
+    }
+
+    /**
+     * Forget all the group memberships, since a modified group may impact the groups of all its members, recursively.
+     */
+    public void removeGroups()
+    {
+        if (this.enabled) {
+            this.groups.clear();
+        }
+    }
+
+    /**
+     * Forget everything related to a wiki.
+     *
+     * @param wiki the wiki
+     */
+    public void removeWiki(WikiReference wiki)
+    {
+        if (!this.enabled) {
+            return;
+        }
+
+        EntityReference wikiKey = toKey(wiki);
+        synchronized (this.rules) {
+            this.rules.keySet().removeIf(key -> wikiKey.equals(key.extractReference(EntityType.WIKI)));
+        }
+        synchronized (this.groups) {
+            this.groups.keySet().removeIf(key -> wikiKey.equals(key.getRight())
+                || wikiKey.equals(key.getLeft().extractReference(EntityType.WIKI)));
+        }
+    }
+
+    /**
+     * Forget everything.
+     */
+    public void clear()
+    {
+        if (this.enabled) {
+            this.rules.clear();
+            this.groups.clear();
+        }
+    }
+
+    /**
+     * Make sure the loaded snapshot has been checked against the database before it is used.
+     *
+     * @return false if the snapshot cannot be used yet, because it is being checked by the current thread (e.g. the
+     *         queries themselves require to check some rights)
+     */
+    private boolean validate()
+    {
+        if (this.snapshotDate != null) {
+            synchronized (this) {
+                if (this.validating) {
+                    return false;
+                }
+                if (this.snapshotDate != null) {
+                    this.validating = true;
+                    try {
+                        validate(this.snapshotDate);
+                    } finally {
+                        this.validating = false;
+                        this.snapshotDate = null;
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private void validate(Date date)
+    {
+        Set<EntityReference> wikis = new HashSet<>();
+        synchronized (this.rules) {
+            for (EntityReference key : this.rules.keySet()) {
+                wikis.add(key.extractReference(EntityType.WIKI));
+            }
+        }
+        synchronized (this.groups) {
+            for (Pair<EntityReference, EntityReference> key : this.groups.keySet()) {
+                wikis.add(key.getLeft().extractReference(EntityType.WIKI));
+                wikis.add(key.getRight());
+            }
+        }
+
+        Date since = new Date(date.getTime() - DATE_MARGIN);
+        for (EntityReference wiki : wikis) {
+            try {
+                if (isModifiedSince(wiki.getName(), since)) {
+                    this.logger.info("Ignoring the security rule snapshot entries of wiki [{}] since it has been"
+                        + " modified after the snapshot was saved.", wiki.getName());
+                    removeWiki(new WikiReference(wiki));
+                }
+            } catch (QueryException e) {
+                this.logger.warn("Ignoring the security rule snapshot since it could not be checked against the"
+                    + " content of wiki [{}]: {}", wiki.getName(), ExceptionUtils.getRootCauseMessage(e));
+                clear();
+                return;
+            }
+        }
+    }
+
+    private boolean isModifiedSince(String wiki, Date date) throws QueryException
+    {
+        for (String statement : Arrays.asList(MODIFIED_DOCUMENTS_QUERY, DELETED_DOCUMENTS_QUERY)) {
+            Query query = this.queryManager.createQuery(statement, Query.HQL);
+            query.setWiki(wiki);
+            query.bindValue(DATE_PARAMETER, date);
+            List<Long> result = query.execute();
+            if (!result.isEmpty() && result.get(0) != null && result.get(0) > 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private Pair<EntityReference, EntityReference> toKey(DocumentReference member, WikiReference wiki)
+    {
+        return new ImmutablePair<>(toKey(member), toKey(wiki));
+    }
+
+    /**
+     * @param reference an entity reference
+     * @return the same reference, without any parameter (e.g. locale) and as a plain {@link EntityReference}
+     */
+    private EntityReference toKey(EntityReference reference)
+    {
+        EntityReference key = null;
+        for (EntityReference element : reference.getReversedReferenceChain()) {
+            key = new EntityReference(element.getName(), element.getType(), key);
+        }
+
+        return key;
+    }
+
+    private File getSnapshotFile()
+    {
+        return new File(this.environment.getPermanentDirectory(), SNAPSHOT_FILE);
+    }
+
+    private void load()
+    {
+        File file = getSnapshotFile();
+        if (!file.exists()) {
+            return;
+        }
+
+        try {
+            byte[] content = Files.readAllBytes(file.toPath());
+
+            // Never load the same snapshot twice: it would be outdated if this instance does not stop cleanly
+            Files.delete(file.toPath());
+
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(content));
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                this.logger.info("Ignoring the security rule snapshot [{}] since its format is not supported.", file);
+                return;
+            }
+
+            long savedTime = input.readLong();
+            long age = System.currentTimeMillis() - savedTime;
+            long maxAge = this.configuration.getProperty(CONFIGURATION_PREFIX + "maxAge", DEFAULT_MAX_AGE);
+            if (age > TimeUnit.SECONDS.toMillis(maxAge)) {
+                this.logger.info("Ignoring the security rule snapshot [{}] since it is too old.", file);
+                return;
+            }
+
+            int length = input.readInt();
+            if (length < 0 || length > input.available()) {
+                this.logger.warn("Ignoring the security rule snapshot [{}] since it is corrupted.", file);
+                return;
+            }
+            byte[] payload = new byte[length];
+            input.readFully(payload);
+            CRC32 checksum = new CRC32();
+            checksum.update(payload);
+            if (checksum.getValue() != input.readLong()) {
+                this.logger.warn("Ignoring the security rule snapshot [{}] since it is corrupted.", file);
+                return;
+            }
+
+            readPayload(new DataInputStream(new ByteArrayInputStream(payload)));
+            this.snapshotDate = new Date(savedTime);
+
+            this.logger.info("Loaded [{}] security rule entries and [{}] group memberships from [{}].",
+                this.rules.size(), this.groups.size(), file);
+        } catch (IOException | IllegalArgumentException e) {
+            this.logger.warn("Failed to load the security rule snapshot [{}]: {}", file,
+                ExceptionUtils.getRootCauseMessage(e));
+            this.rules.clear();
+            this.groups.clear();
+        }
+    }
+
+    private void save()
+    {
+        File file = getSnapshotFile();
+
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            writePayload(new DataOutputStream(payload));
+            byte[] bytes = payload.toByteArray();
+            CRC32 checksum = new CRC32();
+            checksum.update(bytes);
+
+            ByteArrayOutputStream content = new ByteArrayOutputStream(bytes.length + 32);
+            DataOutputStream output = new DataOutputStream(content);
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeLong(System.currentTimeMillis());
+            output.writeInt(bytes.length);
+            output.write(bytes);
+            output.writeLong(checksum.getValue());
+
+            // Write a temporary file first so that a partially written snapshot is never loaded
+            file.getParentFile().mkdirs();
+            File temporaryFile = new File(file.getParentFile(), file.getName() + ".tmp");
+            Files.write(temporaryFile.toPath(), content.toByteArray());
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            this.logger.warn("Failed to save the security rule snapshot [{}]: {}", file,
+                ExceptionUtils.getRootCauseMessage(e));
+        }
+    }
+
+    private void writePayload(DataOutput output) throws IOException
+    {
+        List<Map.Entry<EntityReference, Collection<SecurityRule>>> ruleEntries;
+        synchronized (this.rules) {
+            ruleEntries = new ArrayList<>(this.rules.entrySet());
+        }
+        output.writeInt(ruleEntries.size());
+        for (Map.Entry<EntityReference, Collection<SecurityRule>> entry : ruleEntries) {
+            writeReference(output, entry.getKey());
+            output.writeInt(entry.getValue().size());
+            for (SecurityRule rule : entry.getValue()) {
+                writeRule(output, rule);
+            }
+        }
+
+        List<Map.Entry<Pair<EntityReference, EntityReference>, Collection<DocumentReference>>> groupEntries;
+        synchronized (this.groups) {
+            groupEntries = new ArrayList<>(this.groups.entrySet());
+        }
+        output.writeInt(groupEntries.size());
+        for (Map.Entry<Pair<EntityReference, EntityReference>, Collection<DocumentReference>> entry : groupEntries) {
+            writeReference(output, entry.getKey().getLeft());
+            writeReference(output, entry.getKey().getRight());
+            writeReferences(output, entry.getValue());
+        }
+    }
+
+    private void readPayload(DataInput input) throws IOException
+    {
+        for (int i = input.readInt(); i > 0; i--) {
+            EntityReference entity = readReference(input);
+            int size = input.readInt();
+            List<SecurityRule> entityRules = new ArrayList<>(size);
+            for (int j = 0; j < size; j++) {
+                entityRules.add(readRule(input));
+            }
+            // Skip the rules relying on rights which are not registered (anymore)
+            if (!entityRules.contains(null)) {
+                this.rules.put(entity, entityRules);
+            }
+        }
+
+        for (int i = input.readInt(); i > 0; i--) {
+            EntityReference member = readReference(input);
+            EntityReference wiki = readReference(input);
+            List<DocumentReference> memberGroups = new ArrayList<>();
+            for (EntityReference group : readReferences(input)) {
+                memberGroups.add(new DocumentReference(group));
+            }
+            this.groups.put(new ImmutablePair<>(member, wiki), Collections.unmodifiableList(memberGroups));
+        }
+    }
+
+    private void writeRule(DataOutput output, SecurityRule rule) throws IOException
+    {
+        if (rule instanceof AllowEditToNoOneRule) {
+            output.writeByte(ALLOW_EDIT_TO_NO_ONE_RULE);
+        } else {
+            XWikiSecurityRule xwikiRule = (XWikiSecurityRule) rule;
+            output.writeByte(XWIKI_RULE);
+            output.writeUTF(xwikiRule.getState().name());
+            output.writeInt(xwikiRule.getRights().size());
+            for (Right right : xwikiRule.getRights()) {
+                output.writeUTF(right.getName());
+            }
+            writeReferences(output, xwikiRule.getUsers());
+            writeReferences(output, xwikiRule.getGroups());
+        }
+    }
+
+    /**
+     * @return the rule read, or {@code null} if it relies on a right which is not registered
+     */
+    private SecurityRule readRule(DataInput input) throws IOException
+    {
+        byte type = input.readByte();
+        if (type == ALLOW_EDIT_TO_NO_ONE_RULE) {
+            return new AllowEditToNoOneRule();
+        } else if (type != XWIKI_RULE) {
+            throw new IOException(String.format("Unknown security rule type [%d]", type));
+        }
+
+        RuleState state = RuleState.valueOf(input.readUTF());
+        Set<Right> rights = new RightSet();
+        boolean unknownRight = false;
+        for (int i = input.readInt(); i > 0; i--) {
+            Right right = Right.toRight(input.readUTF());
+            unknownRight |= right == Right.ILLEGAL;
+            rights.add(right);
+        }
+        Collection<DocumentReference> users = toDocumentReferences(readReferences(input));
+        Collection<DocumentReference> ruleGroups = toDocumentReferences(readReferences(input));
+
+        return unknownRight ? null : new XWikiSecurityRule(rights, state, users, ruleGroups);
+    }
+
+    private Collection<DocumentReference> toDocumentReferences(Collection<EntityReference> references)
+    {
+        Collection<DocumentReference> documentReferences = new HashSet<>(references.size());
+        for (EntityReference reference : references) {
+            documentReferences.add(reference != null ? new DocumentReference(reference) : null);
+        }
+
+        return documentReferences;
+    }
+
+    private void writeReferences(DataOutput output, Collection<? extends EntityReference> references)
+        throws IOException
+    {
+        output.writeInt(references.size());
+        for (EntityReference reference : references) {
+            writeReference(output, reference);
+        }
+    }
+
+    private Collection<EntityReference> readReferences(DataInput input) throws IOException
+    {
+        int size = input.readInt();
+        List<EntityReference> references = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            references.add(readReference(input));
+        }
+
+        return references;
+    }
+
+    /**
+     * Write a reference (possibly {@code null}, which stands for public users in the rules) as the list of its
+     * elements, from the root.
+     */
+    private void writeReference(DataOutput output, EntityReference reference) throws IOException
+    {
+        if (reference == null) {
+            output.writeInt(0);
+            return;
+        }
+
+        List<EntityReference> chain = reference.getReversedReferenceChain();
+        output.writeInt(chain.size());
+        for (EntityReference element : chain) {
+            output.writeUTF(element.getType().name());
+            output.writeUTF(element.getName());
+        }
+    }
+
+    private EntityReference readReference(DataInput input) throws IOException
+    {
+        EntityReference reference = null;
+        for (int i = input.readInt(); i > 0; i--) {
+            EntityType type = EntityType.valueOf(input.readUTF());
+            reference = new EntityReference(input.readUTF(), type, reference);
+        }
+
+        return reference;
+    }
+}
@@ -149,6 +149,33 @@ static SecurityRule createNewRule(BaseObject obj, DocumentReferenceResolver<Stri
         return rule;
     }
 
+    /**
+     * @return the rights concerned by this rule
+     * @since 10.1RC1
+     */
+    Set<Right> getRights()
+    {
+        return this.rights;
+    }
+
+    /**
+     * @return the users concerned by this rule, {@code null} standing for public users
+     * @since 10.1RC1
+     */
+    Set<DocumentReference> getUsers()
+    {
+        return this.users;
+    }
+
+    /**
+     * @return the groups concerned by this rule
+     * @since 10.1RC1
+     */
+    Set<DocumentReference> getGroups()
+    {
+        return this.groups;
+    }
+
     @Override
     public boolean match(Right right)
     {
@@ -35,8 +35,10 @@
 import org.xwiki.security.SecurityReferenceFactory;
 import org.xwiki.security.UserSecurityReference;
 import org.xwiki.security.authorization.AuthorizationException;
+import org.xwiki.security.authorization.internal.SecurityRuleSnapshot;
 
 import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.internal.user.GroupClosureIndex;
 import com.xpn.xwiki.user.api.XWikiGroupService;
 
 /**
@@ -57,6 +59,14 @@ public class DefaultUserBridge implements UserBridge
     @Inject
     private Execution execution;
 
+    /** The group memberships kept across restarts. */
+    @Inject
+    private SecurityRuleSnapshot snapshot;
+
+    /** The in-memory index of the group memberships. */
+    @Inject
+    private GroupClosureIndex groupIndex;
+
     /**
      * @return the current {@code XWikiContext}
      */
@@ -75,7 +85,11 @@ public Collection<GroupSecurityReference> getAllGroupsFor(UserSecurityReference
             return Collections.emptyList();
         }
 
-        Collection<DocumentReference> groupRefs = getGroupsReferencesFor(wikiReference, userRef);
+        Collection<DocumentReference> groupRefs = this.snapshot.getGroups(userRef, wikiReference);
+        if (groupRefs == null) {
+            groupRefs = getGroupsReferencesFor(wikiReference, userRef);
+            this.snapshot.putGroups(userRef, wikiReference, groupRefs);
+        }
 
         Collection<GroupSecurityReference> groups = new ArrayList<GroupSecurityReference>(groupRefs.size());
         for (DocumentReference groupRef : groupRefs) {
@@ -96,6 +110,18 @@ public Collection<GroupSecurityReference> getAllGroupsFor(UserSecurityReference
     private Collection<DocumentReference> getGroupsReferencesFor(WikiReference wiki,
         DocumentReference userOrGroupDocumentReference) throws AuthorizationException
     {
+        if (this.groupIndex.isEnabled()) {
+            // The index is only enabled with the default group service. It is kept up to date by the security cache
+            // invalidator before the cache can be reloaded, so it does not suffer from the race condition described
+            // below
+            try {
+                return this.groupIndex.getGroups(userOrGroupDocumentReference, wiki);
+            } catch (Exception e) {
+                throw new AuthorizationException(String.format(
+                    "Failed to get groups for user or group [%s] in wiki [%s]", userOrGroupDocumentReference, wiki), e);
+            }
+        }
+
         XWikiContext xwikiContext = getXWikiContext();
         XWikiGroupService groupService;
         try {
@@ -26,9 +26,11 @@
 import org.xwiki.observation.EventListener;
 import org.xwiki.security.authorization.testwikibuilding.LegacyTestWiki;
 import org.xwiki.test.annotation.AllComponents;
+import org.xwiki.test.internal.MockConfigurationSource;
 import org.xwiki.test.jmock.AbstractComponentTestCase;
 
 import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.user.api.XWikiGroupService;
 import com.xpn.xwiki.web.Utils;
 
 /**
@@ -66,6 +68,11 @@ protected void registerComponents() throws Exception
         getComponentManager().unregisterComponent(EventListener.class, "XObjectEventGeneratorListener");
         getComponentManager().unregisterComponent(EventListener.class, "AttachmentEventGeneratorListener");
         getComponentManager().unregisterComponent(EventListener.class, "XClassPropertyEventGeneratorListener");
+
+        // The group memberships are provided by the mocked group service, not by the database
+        MockConfigurationSource xwikicfg = new MockConfigurationSource();
+        xwikicfg.setProperty("xwiki.authentication.groupclass", XWikiGroupService.class.getName());
+        getComponentManager().registerComponent(MockConfigurationSource.getDescriptor("xwikicfg"), xwikicfg);
     }
 
     protected void setContext(XWikiContext ctx)
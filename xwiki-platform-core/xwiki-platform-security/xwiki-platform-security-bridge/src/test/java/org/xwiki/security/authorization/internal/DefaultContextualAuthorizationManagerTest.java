@@ -19,6 +19,9 @@
  */
 package org.xwiki.security.authorization.internal;
 
+import java.util.Arrays;
+import java.util.BitSet;
+
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -33,10 +36,12 @@
 import com.xpn.xwiki.test.MockitoOldcoreRule;
 import com.xpn.xwiki.test.reference.ReferenceComponentList;
 
+import static org.junit.Assert.assertSame;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * Validate {@link DefaultContextualAuthorizationManager}.
@@ -88,4 +93,19 @@ public void hasAccess() throws Exception
         verify(this.authorizationManager).hasAccess(same(Right.VIEW), isNull(DocumentReference.class),
             eq(new DocumentReference(localReference, this.currentWikiReference)));
     }
+
+    @Test
+    public void filterAccessible() throws Exception
+    {
+        LocalDocumentReference localReference = new LocalDocumentReference("space", "page");
+        DocumentReference otherReference = new DocumentReference("otherwiki", "space", "page");
+        BitSet accessible = new BitSet();
+        accessible.set(1);
+        when(this.authorizationManager.filterAccessible(Right.VIEW, null,
+            Arrays.asList(new DocumentReference(localReference, this.currentWikiReference), otherReference)))
+                .thenReturn(accessible);
+
+        assertSame(accessible, this.mocker.getComponentUnderTest().filterAccessible(Right.VIEW,
+            Arrays.asList(localReference, otherReference)));
+    }
 }
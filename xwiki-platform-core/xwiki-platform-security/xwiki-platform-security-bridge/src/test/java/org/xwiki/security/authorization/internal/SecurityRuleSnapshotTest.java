@@ -0,0 +1,254 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.security.authorization.internal;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.environment.Environment;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.security.SecurityReference;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.security.authorization.RightSet;
+import org.xwiki.security.authorization.RuleState;
+import org.xwiki.security.authorization.SecurityRule;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link SecurityRuleSnapshot}.
+ *
+ * @version $Id$
+ */
+public class SecurityRuleSnapshotTest
+{
+    @Rule
+    public MockitoComponentMockingRule<SecurityRuleSnapshot> mocker =
+        new MockitoComponentMockingRule<>(SecurityRuleSnapshot.class);
+
+    @Rule
+    public TemporaryFolder permanentDirectory = new TemporaryFolder();
+
+    private ConfigurationSource configuration;
+
+    private WikiReference wikiReference = new WikiReference("wiki");
+
+    private DocumentReference documentReference = new DocumentReference("wiki", "Space", "Page");
+
+    private DocumentReference userReference = new DocumentReference("wiki", "XWiki", "Alice");
+
+    private DocumentReference groupReference = new DocumentReference("wiki", "XWiki", "AdminGroup");
+
+    private SecurityReference entity;
+
+    private Collection<SecurityRule> rules;
+
+    private Query modifiedDocumentsQuery;
+
+    private Query deletedDocumentsQuery;
+
+    @Before
+    public void before() throws Exception
+    {
+        this.configuration = this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(this.configuration.getProperty("security.authorization.snapshot.enabled", false)).thenReturn(true);
+        when(this.configuration.getProperty("security.authorization.snapshot.maxEntries", 10000)).thenReturn(100);
+        when(this.configuration.getProperty("security.authorization.snapshot.maxAge", 86400L)).thenReturn(3600L);
+
+        Environment environment = this.mocker.getInstance(Environment.class);
+        when(environment.getPermanentDirectory()).thenReturn(this.permanentDirectory.getRoot());
+
+        this.entity = mock(SecurityReference.class);
+        when(this.entity.getOriginalReference()).thenReturn(this.documentReference);
+
+        this.modifiedDocumentsQuery = mock(Query.class);
+        when(this.modifiedDocumentsQuery.execute()).thenReturn(Collections.singletonList(0L));
+        this.deletedDocumentsQuery = mock(Query.class);
+        when(this.deletedDocumentsQuery.execute()).thenReturn(Collections.singletonList(0L));
+        QueryManager queryManager = this.mocker.getInstance(QueryManager.class);
+        when(queryManager.createQuery(any(), eq(Query.HQL))).then(invocation -> {
+            String statement = invocation.getArgument(0);
+            return statement.contains("XWikiDeletedDocument") ? this.deletedDocumentsQuery
+                : this.modifiedDocumentsQuery;
+        });
+
+        this.rules = Arrays.asList(
+            new XWikiSecurityRule(new RightSet(Right.VIEW, Right.EDIT), RuleState.ALLOW,
+                Arrays.asList(this.userReference, null), Collections.singleton(this.groupReference)),
+            new AllowEditToNoOneRule());
+    }
+
+    private void restart() throws Exception
+    {
+        ((Disposable) this.mocker.getComponentUnderTest()).dispose();
+        ((Initializable) this.mocker.getComponentUnderTest()).initialize();
+    }
+
+    private File getSnapshotFile()
+    {
+        return new File(this.permanentDirectory.getRoot(), "cache/security/rules.snapshot");
+    }
+
+    @Test
+    public void disabled() throws Exception
+    {
+        when(this.configuration.getProperty("security.authorization.snapshot.enabled", false)).thenReturn(false);
+
+        SecurityRuleSnapshot snapshot = this.mocker.getComponentUnderTest();
+        snapshot.putRules(this.entity, this.rules);
+
+        assertFalse(snapshot.isEnabled());
+        assertNull(snapshot.getRules(this.entity));
+
+        ((Disposable) snapshot).dispose();
+        assertFalse(getSnapshotFile().exists());
+    }
+
+    @Test
+    public void saveAndLoad() throws Exception
+    {
+        SecurityRuleSnapshot snapshot = this.mocker.getComponentUnderTest();
+        snapshot.putRules(this.entity, this.rules);
+        snapshot.putGroups(this.userReference, this.wikiReference, Collections.singleton(this.groupReference));
+
+        restart();
+
+        assertEquals(this.rules, snapshot.getRules(this.entity));
+        assertEquals(Collections.singletonList(this.groupReference),
+            snapshot.getGroups(this.userReference, this.wikiReference));
+
+        // The snapshot is not reused after it has been loaded
+        assertFalse(getSnapshotFile().exists());
+    }
+
+    @Test
+    public void loadCorruptedSnapshot() throws Exception
+    {
+        SecurityRuleSnapshot snapshot = this.mocker.getComponentUnderTest();
+        snapshot.putRules(this.entity, this.rules);
+
+        ((Disposable) snapshot).dispose();
+        assertTrue(getSnapshotFile().exists());
+        try (RandomAccessFile file = new RandomAccessFile(getSnapshotFile(), "rw")) {
+            file.seek(file.length() - 20);
+            int value = file.read();
+            file.seek(file.length() - 20);
+            file.write(value ^ 0xFF);
+        }
+        ((Initializable) snapshot).initialize();
+
+        assertNull(snapshot.getRules(this.entity));
+    }
+
+    @Test
+    public void loadTooOldSnapshot() throws Exception
+    {
+        SecurityRuleSnapshot snapshot = this.mocker.getComponentUnderTest();
+        snapshot.putRules(this.entity, this.rules);
+
+        when(this.configuration.getProperty("security.authorization.snapshot.maxAge", 86400L)).thenReturn(-1L);
+        restart();
+
+        assertNull(snapshot.getRules(this.entity));
+    }
+
+    @Test
+    public void remove() throws Exception
+    {
+        SecurityRuleSnapshot snapshot = this.mocker.getComponentUnderTest();
+        snapshot.putRules(this.entity, this.rules);
+        snapshot.putGroups(this.userReference, this.wikiReference, Collections.singleton(this.groupReference));
+
+        snapshot.removeRules(this.documentReference);
+        assertNull(snapshot.getRules(this.entity));
+
+        snapshot.removeGroups();
+        assertNull(snapshot.getGroups(this.userReference, this.wikiReference));
+
+        snapshot.putRules(this.entity, this.rules);
+        snapshot.putGroups(this.userReference, this.wikiReference, Collections.singleton(this.groupReference));
+        snapshot.removeWiki(this.wikiReference);
+        assertNull(snapshot.getRules(this.entity));
+        assertNull(snapshot.getGroups(this.userReference, this.wikiReference));
+    }
+
+    @Test
+    public void loadSnapshotOfModifiedWiki() throws Exception
+    {
+        DocumentReference otherDocument = new DocumentReference("otherwiki", "Space", "Page");
+        SecurityReference otherEntity = mock(SecurityReference.class);
+        when(otherEntity.getOriginalReference()).thenReturn(otherDocument);
+
+        SecurityRuleSnapshot snapshot = this.mocker.getComponentUnderTest();
+        snapshot.putRules(this.entity, this.rules);
+        snapshot.putRules(otherEntity, this.rules);
+        snapshot.putGroups(this.userReference, new WikiReference("otherwiki"),
+            Collections.singleton(new DocumentReference("otherwiki", "XWiki", "Group")));
+
+        // Some documents of the other wiki have been deleted while the instance was stopped
+        String[] queriedWiki = new String[1];
+        when(this.deletedDocumentsQuery.setWiki(any())).then(invocation -> {
+            queriedWiki[0] = invocation.getArgument(0);
+            return this.deletedDocumentsQuery;
+        });
+        when(this.deletedDocumentsQuery.execute())
+            .then(invocation -> Collections.singletonList("otherwiki".equals(queriedWiki[0]) ? 2L : 0L));
+
+        restart();
+
+        assertEquals(this.rules, snapshot.getRules(this.entity));
+        assertNull(snapshot.getRules(otherEntity));
+        assertNull(snapshot.getGroups(this.userReference, new WikiReference("otherwiki")));
+    }
+
+    @Test
+    public void loadSnapshotWhenDatabaseCannotBeQueried() throws Exception
+    {
+        SecurityRuleSnapshot snapshot = this.mocker.getComponentUnderTest();
+        snapshot.putRules(this.entity, this.rules);
+
+        when(this.modifiedDocumentsQuery.execute()).thenThrow(new QueryException("error", null, null));
+        restart();
+
+        assertNull(snapshot.getRules(this.entity));
+    }
+}
@@ -20,6 +20,7 @@
 package com.xpn.xwiki.plugin.skinx;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -45,6 +46,7 @@
 import org.xwiki.security.authorization.AuthorizationManager;
 import org.xwiki.security.authorization.ContextualAuthorizationManager;
 import org.xwiki.security.authorization.Right;
+import org.xwiki.skinx.internal.SkinExtensionBundler;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
@@ -464,6 +466,112 @@ protected String getDocumentSkinExtensionURL(DocumentReference documentReference
 
         return context.getWiki().getURL(documentReference, pluginName, queryString, "", context);
     }
-    
-    
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * When bundling is enabled (see {@link SkinExtensionBundler#isEnabled()}), the consecutive extensions which can be
+     * bundled are imported with a single link.
+     * </p>
+     * 
+     * @see AbstractSkinExtensionPlugin#getImportString(Collection, XWikiContext)
+     */
+    @Override
+    protected String getImportString(Collection<String> extensions, XWikiContext context)
+    {
+        SkinExtensionBundler bundler = Utils.getComponent(SkinExtensionBundler.class);
+        if (!bundler.isEnabled()) {
+            return super.getImportString(extensions, context);
+        }
+
+        StringBuilder result = new StringBuilder();
+        List<XWikiDocument> bundle = new ArrayList<>();
+        for (String documentName : extensions) {
+            DocumentReference documentReference = getCurrentDocumentReferenceResolver().resolve(documentName);
+            if (!isAccessible(documentReference, context)) {
+                continue;
+            }
+
+            XWikiDocument document = getBundleableDocument(documentName, documentReference, bundler, context);
+            if (document != null) {
+                bundle.add(document);
+            } else {
+                // Keep the extensions order
+                result.append(getBundleLinks(bundle, bundler, context));
+                bundle.clear();
+                result.append(getLink(documentName, context));
+            }
+        }
+        result.append(getBundleLinks(bundle, bundler, context));
+
+        return result.toString();
+    }
+
+    /**
+     * @param url the URL of a bundle of extensions
+     * @param context the XWiki Context
+     * @return the XHTML fragment importing the bundle, {@code null} if this type of extension does not support
+     *         bundling
+     * @since 10.1RC1
+     */
+    protected String getBundleLink(String url, XWikiContext context)
+    {
+        return null;
+    }
+
+    private XWikiDocument getBundleableDocument(String documentName, DocumentReference documentReference,
+        SkinExtensionBundler bundler, XWikiContext context)
+    {
+        // The parameters are passed to the extension in the query string
+        if (getParametersForResource(documentName, context).isEmpty()) {
+            try {
+                XWikiDocument document = context.getWiki().getDocument(documentReference, context);
+                if (bundler.isBundleable(document, getExtensionClassName())) {
+                    return document;
+                }
+            } catch (XWikiException e) {
+                LOGGER.error("Failed to load document [{}].", documentReference, e);
+            }
+        }
+
+        return null;
+    }
+
+    private String getBundleLinks(List<XWikiDocument> documents, SkinExtensionBundler bundler, XWikiContext context)
+    {
+        if (documents.isEmpty()) {
+            return "";
+        }
+
+        String bundleLink = null;
+        if (documents.size() > 1) {
+            StringBuilder queryString = new StringBuilder();
+            queryString.append("bundle=").append(bundler.getBundleId(getExtensionClassName(), documents));
+            queryString.append("&amp;").append(getLanguageQueryString(context));
+            EntityReferenceSerializer<String> serializer = getDefaultEntityReferenceSerializer();
+            for (XWikiDocument document : documents) {
+                queryString.append("&amp;extension=")
+                    .append(sanitize(serializer.serialize(document.getDocumentReference())));
+            }
+            if ("false".equals(context.getRequest().getParameter("minify"))) {
+                queryString.append("&amp;minify=false");
+            }
+
+            String url = context.getWiki().getURL(documents.get(0).getDocumentReference(), getName(),
+                queryString.toString(), "", context);
+            bundleLink = getBundleLink(url, context);
+        }
+
+        if (bundleLink == null) {
+            // Nothing to bundle
+            StringBuilder result = new StringBuilder();
+            EntityReferenceSerializer<String> serializer = getDefaultEntityReferenceSerializer();
+            for (XWikiDocument document : documents) {
+                result.append(getLink(serializer.serialize(document.getDocumentReference()), context));
+            }
+            bundleLink = result.toString();
+        }
+
+        return bundleLink;
+    }
 }
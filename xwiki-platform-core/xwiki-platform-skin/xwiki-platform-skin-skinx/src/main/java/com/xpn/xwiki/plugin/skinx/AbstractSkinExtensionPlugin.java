@@ -21,6 +21,7 @@
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
@@ -227,8 +228,47 @@ protected void initializeRequestListIfNeeded(XWikiContext context)
      *         more general elements in the always used ones.
      */
     public String getImportString(XWikiContext context)
+    {
+        return getImportString(getUsedExtensions(context), context);
+    }
+
+    /**
+     * Composes and returns the links to the resources explicitly pulled in the current request, without the "used
+     * always" extensions and the extensions of the current page. Useful for an HTML fragment loaded in a page which
+     * already imports these extensions.
+     *
+     * @param context The current request context.
+     * @return a XHMTL fragment with the imports statements of the "on demand" extensions pulled in this request
+     * @since 10.1RC1
+     */
+    public String getPulledImportString(XWikiContext context)
+    {
+        return getImportString(getPulledResources(context), context);
+    }
+
+    /**
+     * @param extensions the extensions to import, in order
+     * @param context The current request context.
+     * @return a XHMTL fragment with the imports statements of the given extensions
+     * @since 10.1RC1
+     */
+    protected String getImportString(Collection<String> extensions, XWikiContext context)
     {
         StringBuilder result = new StringBuilder();
+        for (String documentName : extensions) {
+            result.append(getLink(documentName, context));
+        }
+        return result.toString();
+    }
+
+    /**
+     * @param context The current request context.
+     * @return the extensions used in the current request, in the order they should be imported (see
+     *         {@link #getImportString(XWikiContext)})
+     * @since 10.1RC1
+     */
+    protected Set<String> getUsedExtensions(XWikiContext context)
+    {
         // Using LinkedHashSet to preserve the extensions order.
         Set<String> extensions = new LinkedHashSet<String>();
         // First, we add to the import string the extensions that should always be used.
@@ -249,10 +289,7 @@ public String getImportString(XWikiContext context)
             extensions.add(serializedCurrentDocumentName);
         }
 
-        for (String documentName : extensions) {
-            result.append(getLink(documentName, context));
-        }
-        return result.toString();
+        return extensions;
     }
 
     /**
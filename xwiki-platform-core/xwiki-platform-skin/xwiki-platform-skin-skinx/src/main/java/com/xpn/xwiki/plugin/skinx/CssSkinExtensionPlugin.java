@@ -87,6 +87,12 @@ public String getLink(String documentName, XWikiContext context)
                 getDocumentSkinExtensionURL(documentReference, documentName, PLUGIN_NAME, context));
     }
 
+    @Override
+    protected String getBundleLink(String url, XWikiContext context)
+    {
+        return String.format("<link rel=\"stylesheet\" type=\"text/css\" href=\"%s\" />", url);
+    }
+
     @Override
     protected String getExtensionClassName()
     {
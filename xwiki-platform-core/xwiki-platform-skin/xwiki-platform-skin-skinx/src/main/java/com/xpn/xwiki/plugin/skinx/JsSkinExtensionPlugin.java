@@ -94,15 +94,33 @@ public String getLink(String documentName, XWikiContext context)
         StringBuilder result = new StringBuilder("<script type='text/javascript' src='");
         result.append(getDocumentSkinExtensionURL(documentReference, documentName, PLUGIN_NAME, context));
         // check if js should be deferred, defaults to the preference configured in the cfg file, which defaults to true
-        String defaultDeferString = context.getWiki().Param(DEFER_DEFAULT_PARAM);
-        Boolean defaultDefer = (!StringUtils.isEmpty(defaultDeferString)) ? Boolean.valueOf(defaultDeferString) : true;
-        if (BooleanUtils.toBooleanDefaultIfNull((Boolean) getParameter("defer", documentName, context), defaultDefer)) {
+        if (BooleanUtils.toBooleanDefaultIfNull((Boolean) getParameter("defer", documentName, context),
+            isDeferredByDefault(context))) {
+            result.append("' defer='defer");
+        }
+        result.append("'></script>\n");
+        return result.toString();
+    }
+
+    @Override
+    protected String getBundleLink(String url, XWikiContext context)
+    {
+        // Bundled extensions don't have parameters
+        StringBuilder result = new StringBuilder("<script type='text/javascript' src='");
+        result.append(url);
+        if (isDeferredByDefault(context)) {
             result.append("' defer='defer");
         }
         result.append("'></script>\n");
         return result.toString();
     }
 
+    private boolean isDeferredByDefault(XWikiContext context)
+    {
+        String defaultDeferString = context.getWiki().Param(DEFER_DEFAULT_PARAM);
+        return (!StringUtils.isEmpty(defaultDeferString)) ? Boolean.valueOf(defaultDeferString) : true;
+    }
+
     @Override
     protected String getExtensionClassName()
     {
@@ -88,4 +88,17 @@ public String getImportString()
     {
         return this.getProtectedPlugin().getImportString(getXWikiContext());
     }
+
+    /**
+     * Composes and returns the links to the resources explicitly pulled in the current request, without the extensions
+     * which are always used and the extensions of the current page. This is useful for an HTML fragment (e.g. the
+     * response of an AJAX request) inserted in a page which already imports them.
+     *
+     * @return a XHMTL fragment with the imports statements of the "on demand" extensions pulled in this request
+     * @since 10.1RC1
+     */
+    public String getPulledImportString()
+    {
+        return this.getProtectedPlugin().getPulledImportString(getXWikiContext());
+    }
 }
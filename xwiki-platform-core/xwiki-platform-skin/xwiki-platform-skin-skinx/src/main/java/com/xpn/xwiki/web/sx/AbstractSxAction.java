@@ -20,6 +20,7 @@
 package com.xpn.xwiki.web.sx;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.util.Date;
 
 import javax.servlet.http.HttpServletResponse;
@@ -27,11 +28,14 @@
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
+import org.xwiki.skinx.internal.SkinExtensionOutput;
+import org.xwiki.skinx.internal.SkinExtensionOutputCache;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.web.XWikiAction;
 import com.xpn.xwiki.web.XWikiRequest;
+import com.xpn.xwiki.web.Utils;
 import com.xpn.xwiki.web.XWikiResponse;
 import com.xpn.xwiki.web.sx.SxSource.CachePolicy;
 
@@ -50,6 +54,9 @@ public abstract class AbstractSxAction extends XWikiAction
     /** How many milliseconds a file should be cached for if it sets CachePolicy to SHORT, hardcoded to 1 day. */
     private static final long SHORT_CACHE_DURATION = 1 * 24 * 3600 * 1000L;
 
+    /** How many milliseconds an up to date bundle should be cached for, hardcoded to 1 year. */
+    private static final long IMMUTABLE_CACHE_DURATION = 365 * 24 * 3600 * 1000L;
+
     /** What http header parameter is used to specify when a file was last modified. */
     private static final String LAST_MODIFIED_HEADER = "Last-Modified";
 
@@ -59,12 +66,39 @@ public abstract class AbstractSxAction extends XWikiAction
     /** What http header parameter is used to specify when the cache should expire. */
     private static final String CACHE_EXPIRES_HEADER = "Expires";
 
+    /** The http header parameter used to send the entity tag of the response. */
+    private static final String ETAG_HEADER = "ETag";
+
+    /** The http header parameter containing the entity tags known by the client. */
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
+    /** The http header parameter containing the content encodings supported by the client. */
+    private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+
+    /** The http header parameter used to specify the content encoding of the response. */
+    private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+
+    /** The http header parameter listing the request headers which have an impact on the response. */
+    private static final String VARY_HEADER = "Vary";
+
+    /** The gzip content encoding. */
+    private static final String GZIP_ENCODING = "gzip";
+
+    /** The preference containing the color theme used by the LESS skin extensions. */
+    private static final String COLOR_THEME_PREFERENCE = "colorTheme";
+
     /** The response will be sent to the browser as a byte array in this character set. */
     private static final String RESPONSE_CHARACTER_SET = "UTF-8";
 
     /** If the user passes this parameter in the URL, we will look for the script in the jar files. */
     private static final String JAR_RESOURCE_REQUEST_PARAMETER = "resource";
 
+    /** If the user passes this parameter in the URL, we will send a bundle of several extensions. */
+    private static final String BUNDLE_REQUEST_PARAMETER = "bundle";
+
+    /** The documents containing the extensions of a bundle. */
+    private static final String BUNDLE_EXTENSION_REQUEST_PARAMETER = "extension";
+
     /** If the user specifies this url parameter equals false, we will send uncompressed script content. */
     private static final String COMPRESS_SCRIPT_REQUEST_PARAMETER = "minify";
 
@@ -86,8 +120,6 @@ public void renderExtension(SxSource sxSource, Extension sxType, XWikiContext co
         XWikiRequest request = context.getRequest();
         XWikiResponse response = context.getResponse();
 
-        String extensionContent = sxSource.getContent();
-
         response.setContentType(sxType.getContentType());
 
         if (sxSource.getLastModifiedDate() > 0) {
@@ -108,19 +140,158 @@ public void renderExtension(SxSource sxSource, Extension sxType, XWikiContext co
         } else if (cachePolicy == CachePolicy.FORBID) {
             response.setHeader(CACHE_CONTROL_HEADER, "no-cache, no-store, must-revalidate");
         }
+        if (cachePolicy == CachePolicy.LONG && sxSource instanceof SxBundleSource) {
+            // The URL of a bundle changes as soon as its content changes
+            response.setHeader(CACHE_CONTROL_HEADER, "public, max-age=31536000, immutable");
+            response.setDateHeader(CACHE_EXPIRES_HEADER, (new Date()).getTime() + IMMUTABLE_CACHE_DURATION);
+        }
+
+        boolean compress =
+            BooleanUtils.toBoolean(StringUtils.defaultIfEmpty(request.get(COMPRESS_SCRIPT_REQUEST_PARAMETER), "true"));
+
+        SkinExtensionOutputCache cache = Utils.getComponent(SkinExtensionOutputCache.class);
+        String cacheGroup = cachePolicy != CachePolicy.FORBID ? getCacheGroup(sxSource, cache, context) : null;
+        String cacheVariant = null;
+
+        SkinExtensionOutput output = null;
+        if (cacheGroup != null) {
+            cacheVariant = getCacheVariant(sxSource, sxType, compress, context);
+            output = cache.get(cacheGroup, cacheVariant);
+        }
+
+        if (output == null) {
+            String extensionContent = sxSource.getContent();
+
+            if (compress) {
+                extensionContent = sxType.getCompressor().compress(extensionContent);
+            }
+
+            try {
+                output = new SkinExtensionOutput(extensionContent.getBytes(RESPONSE_CHARACTER_SET));
+            } catch (UnsupportedEncodingException e) {
+                // Should never happen
+                throw new XWikiException(XWikiException.MODULE_XWIKI_APP, XWikiException.ERROR_XWIKI_UNKNOWN,
+                    "Failed to encode the skin extension content", e);
+            }
+
+            // Don't keep the errors, they are probably caused by a temporary problem
+            if (cacheGroup != null && !hasFailed(sxSource)) {
+                cache.set(cacheGroup, cacheVariant, output);
+            }
+        }
+
+        sendOutput(output, cachePolicy != CachePolicy.FORBID, request, response);
+    }
 
-        if (BooleanUtils.toBoolean(StringUtils.defaultIfEmpty(
-            request.get(COMPRESS_SCRIPT_REQUEST_PARAMETER), "true"))) {
-            extensionContent = sxType.getCompressor().compress(extensionContent);
+    private void sendOutput(SkinExtensionOutput output, boolean cacheable, XWikiRequest request,
+        XWikiResponse response)
+    {
+        boolean gzip = StringUtils.contains(request.getHeader(ACCEPT_ENCODING_HEADER), GZIP_ENCODING);
+
+        // Shared caches must not send the gzipped content to a client which does not support it (and the other way
+        // around)
+        response.addHeader(VARY_HEADER, ACCEPT_ENCODING_HEADER);
+
+        if (cacheable) {
+            String etag = output.getETag(gzip);
+            response.setHeader(ETAG_HEADER, etag);
+
+            if (matchesETag(request.getHeader(IF_NONE_MATCH_HEADER), etag)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+
+                return;
+            }
+        }
+
+        byte[] content;
+        if (gzip) {
+            content = output.getGzippedContent();
+            response.setHeader(CONTENT_ENCODING_HEADER, GZIP_ENCODING);
+        } else {
+            content = output.getContent();
         }
 
         try {
-            response.setContentLength(extensionContent.getBytes(RESPONSE_CHARACTER_SET).length);
-            response.getOutputStream().write(extensionContent.getBytes(RESPONSE_CHARACTER_SET));
+            response.setContentLength(content.length);
+            response.getOutputStream().write(content);
         } catch (IOException ex) {
             getLogger().warn("Failed to send SX content: [{}]", ex.getMessage());
         }
+    }
 
+    private boolean matchesETag(String ifNoneMatch, String etag)
+    {
+        if (ifNoneMatch != null) {
+            for (String value : StringUtils.split(ifNoneMatch, ',')) {
+                if (etag.equals(value.trim())) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private boolean hasFailed(SxSource sxSource)
+    {
+        if (sxSource instanceof SxDocumentSource) {
+            return ((SxDocumentSource) sxSource).hasFailed();
+        } else if (sxSource instanceof SxBundleSource) {
+            return ((SxBundleSource) sxSource).hasFailed();
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the identifier of the source in the output cache, {@code null} if the output of this source cannot be
+     *         cached
+     */
+    private String getCacheGroup(SxSource sxSource, SkinExtensionOutputCache cache, XWikiContext context)
+    {
+        if (cache.isEnabled()) {
+            if (sxSource instanceof SxDocumentSource) {
+                SxDocumentSource documentSource = (SxDocumentSource) sxSource;
+                // The result of the Velocity code can depend on anything (current user, document, request, other
+                // documents, etc.) so there is no way to know when it changes
+                return documentSource.isParsed() ? null
+                    : cache.getGroup(documentSource.getDocument().getDocumentReference());
+            } else if (sxSource instanceof SxResourceSource) {
+                return cache.getGroup(context.getWikiId(), ((SxResourceSource) sxSource).getResourceName());
+            } else if (sxSource instanceof SxBundleSource) {
+                return cache.getBundleGroup(((SxBundleSource) sxSource).getBundleId());
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return everything, besides the source, which can have an impact on the output
+     */
+    private String getCacheVariant(SxSource sxSource, Extension sxType, boolean compress, XWikiContext context)
+    {
+        StringBuilder variant = new StringBuilder();
+
+        variant.append(sxType.getClassName()).append('|').append(compress);
+        variant.append('|').append(context.getRequest().getQueryString());
+
+        if (sxSource instanceof SxDocumentSource) {
+            variant.append('|').append(((SxDocumentSource) sxSource).getDocument().getVersion());
+            appendContextVariant(variant, context);
+        } else if (sxSource instanceof SxBundleSource) {
+            // The versions of the bundled documents are part of the bundle identifier
+            appendContextVariant(variant, context);
+        }
+
+        return variant.toString();
+    }
+
+    private void appendContextVariant(StringBuilder variant, XWikiContext context)
+    {
+        variant.append('|').append(context.getLocale());
+        variant.append('|').append(context.getWiki().getSkin(context));
+        variant.append('|').append(context.getWiki().getUserPreference(COLOR_THEME_PREFERENCE, context));
     }
 
     @Override
@@ -135,7 +306,14 @@ public String render(XWikiContext context) throws XWikiException
                 context.getResponse().setStatus(HttpServletResponse.SC_NOT_FOUND);
                 return "docdoesnotexist";
             }
-            sxSource = new SxDocumentSource(context, getExtensionType());
+            String bundleId = context.getRequest().getParameter(BUNDLE_REQUEST_PARAMETER);
+            if (bundleId != null) {
+                sxSource = new SxBundleSource(bundleId,
+                    context.getRequest().getParameterValues(BUNDLE_EXTENSION_REQUEST_PARAMETER), context,
+                    getExtensionType());
+            } else {
+                sxSource = new SxDocumentSource(context, getExtensionType());
+            }
         }
 
         try {
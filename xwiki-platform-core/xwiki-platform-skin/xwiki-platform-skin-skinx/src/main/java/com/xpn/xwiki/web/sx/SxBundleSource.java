@@ -0,0 +1,167 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.web.sx;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.security.authorization.ContextualAuthorizationManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.skinx.internal.SkinExtensionBundler;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.web.Utils;
+
+/**
+ * Bundle of several wiki document skin extensions, served as a single response.
+ * 
+ * @version $Id$
+ * @since 10.1RC1
+ */
+public class SxBundleSource implements SxSource
+{
+    /** Logging helper. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(SxBundleSource.class);
+
+    /** The identifier of the bundle. */
+    private final String bundleId;
+
+    /** The sources of the bundled extensions. */
+    private final List<SxDocumentSource> sources = new ArrayList<>();
+
+    /** Indicate if the bundle identifier matches the current version of the bundled extensions. */
+    private final boolean upToDate;
+
+    /**
+     * Constructor of this source.
+     * 
+     * @param bundleId the identifier of the bundle
+     * @param extensions the names of the documents containing the bundled extensions
+     * @param context the XWikiContext
+     * @param extension the Extension type
+     */
+    public SxBundleSource(String bundleId, String[] extensions, XWikiContext context, Extension extension)
+    {
+        this.bundleId = bundleId;
+
+        SkinExtensionBundler bundler = Utils.getComponent(SkinExtensionBundler.class);
+        DocumentReferenceResolver<String> resolver =
+            Utils.getComponent(DocumentReferenceResolver.TYPE_STRING, "current");
+        ContextualAuthorizationManager authorization = Utils.getComponent(ContextualAuthorizationManager.class);
+
+        List<XWikiDocument> documents = new ArrayList<>();
+        if (extensions != null) {
+            for (String extensionName : extensions) {
+                DocumentReference reference = resolver.resolve(extensionName);
+                if (authorization.hasAccess(Right.VIEW, reference)) {
+                    try {
+                        XWikiDocument document = context.getWiki().getDocument(reference, context);
+                        if (!document.isNew() && bundler.isBundleable(document, extension.getClassName())) {
+                            documents.add(document);
+                            this.sources.add(new SxDocumentSource(document, context, extension));
+                        }
+                    } catch (XWikiException e) {
+                        LOGGER.warn("Failed to load skin extension [{}]: {}", reference, e.getMessage());
+                    }
+                }
+            }
+        }
+
+        this.upToDate = bundleId.equals(bundler.getBundleId(extension.getClassName(), documents));
+    }
+
+    /**
+     * @return the identifier of the bundle
+     */
+    public String getBundleId()
+    {
+        return this.bundleId;
+    }
+
+    /**
+     * @return true if the bundle identifier matches the current version of the bundled extensions, in which case the
+     *         response will never change
+     */
+    public boolean isUpToDate()
+    {
+        return this.upToDate;
+    }
+
+    @Override
+    public CachePolicy getCachePolicy()
+    {
+        // The content produced for an outdated identifier must not be associated with it
+        CachePolicy finalCache = this.upToDate ? CachePolicy.LONG : CachePolicy.FORBID;
+
+        for (SxDocumentSource source : this.sources) {
+            CachePolicy cache = source.getCachePolicy();
+            if (cache.compareTo(finalCache) > 0) {
+                finalCache = cache;
+            }
+        }
+
+        return finalCache;
+    }
+
+    @Override
+    public String getContent()
+    {
+        StringBuilder resultBuilder = new StringBuilder();
+
+        for (SxDocumentSource source : this.sources) {
+            resultBuilder.append(source.getContent());
+        }
+
+        return resultBuilder.toString();
+    }
+
+    @Override
+    public long getLastModifiedDate()
+    {
+        long lastModifiedDate = 0;
+
+        for (SxDocumentSource source : this.sources) {
+            lastModifiedDate = Math.max(lastModifiedDate, source.getLastModifiedDate());
+        }
+
+        return lastModifiedDate;
+    }
+
+    /**
+     * @return true if the evaluation of at least one of the bundled extensions failed during the last call to
+     *         {@link #getContent()}
+     */
+    boolean hasFailed()
+    {
+        for (SxDocumentSource source : this.sources) {
+            if (source.hasFailed()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -76,6 +76,9 @@ public class SxDocumentSource implements SxSource
     /** The type of Extension for getting the right kind of object from the document. */
     private Extension extension;
 
+    /** Indicate if the evaluation of at least one extension object failed. */
+    private boolean failed;
+
     /**
      * Constructor for this extension source.
      * 
@@ -83,9 +86,22 @@ public class SxDocumentSource implements SxSource
      * @param extension The Extension type
      */
     public SxDocumentSource(XWikiContext context, Extension extension)
+    {
+        this(context.getDoc(), context, extension);
+    }
+
+    /**
+     * Constructor for this extension source.
+     * 
+     * @param document the document containing the extension
+     * @param context The XWikiContext
+     * @param extension The Extension type
+     * @since 10.1RC1
+     */
+    public SxDocumentSource(XWikiDocument document, XWikiContext context, Extension extension)
     {
         this.context = context;
-        this.document = context.getDoc();
+        this.document = document;
         this.extension = extension;
     }
 
@@ -119,6 +135,8 @@ public CachePolicy getCachePolicy()
     @Override
     public String getContent()
     {
+        this.failed = false;
+
         StringBuilder resultBuilder = new StringBuilder();
 
         List<BaseObject> objects = this.document.getObjects(this.extension.getClassName());
@@ -140,6 +158,7 @@ public String getContent()
                     try {
                         sxContent = lessCompiler.compile(lessResourceReference, true, (parse == 1), false);
                     } catch (LESSCompilerException e) {
+                        this.failed = true;
                         // Set the error message in a CSS comment to help the developer understand why its SSX is not
                         // working (it will work only if the CSS minifier is not used).
                         sxContent = String.format("/* LESS errors while parsing skin extension [%s]. */\n/* %s */",
@@ -154,6 +173,7 @@ public String getContent()
                             this.document.getPrefixedFullName(), sxContent);
                         sxContent = writer.toString();
                     } catch (XWikiVelocityException ex) {
+                        this.failed = true;
                         LOGGER.warn("Velocity errors while parsing skin extension [{}] with content [{}]: ",
                             this.document.getPrefixedFullName(), sxContent, ExceptionUtils.getRootCauseMessage(ex));
                     }
@@ -172,4 +192,41 @@ public long getLastModifiedDate()
         return this.document.getDate().getTime();
     }
 
+    /**
+     * @return the document containing the extension
+     * @since 10.1RC1
+     */
+    XWikiDocument getDocument()
+    {
+        return this.document;
+    }
+
+    /**
+     * @return true if the content of at least one extension object is evaluated with Velocity (including the LESS
+     *         content), in which case it can depend on the current user, document or request
+     * @since 10.1RC1
+     */
+    boolean isParsed()
+    {
+        List<BaseObject> objects = this.document.getObjects(this.extension.getClassName());
+        if (objects != null) {
+            for (BaseObject sxObj : objects) {
+                if (sxObj != null && sxObj.getIntValue(PARSE_CONTENT_PROPERTY_NAME) == 1) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return true if the evaluation of at least one extension object failed during the last call to
+     *         {@link #getContent()}, in which case the content contains the errors instead of the expected code
+     * @since 10.1RC1
+     */
+    boolean hasFailed()
+    {
+        return this.failed;
+    }
 }
@@ -75,4 +75,12 @@ public long getLastModifiedDate()
         return 0;
     }
 
+    /**
+     * @return the full path of the resource to use as extension
+     * @since 10.1RC1
+     */
+    String getResourceName()
+    {
+        return this.resourceName;
+    }
 }
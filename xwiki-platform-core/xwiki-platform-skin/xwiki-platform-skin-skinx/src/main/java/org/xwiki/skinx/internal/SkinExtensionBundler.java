@@ -0,0 +1,172 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.skinx.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Helper used to merge the skin extensions pulled by a page into a single response.
+ * <p>
+ * A bundle is identified by a hash of the ordered list of extension documents, their versions and the skin and color
+ * theme used to produce them, so that the URL of a bundle changes as soon as its content changes.
+ * 
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Component(roles = SkinExtensionBundler.class)
+@Singleton
+public class SkinExtensionBundler
+{
+    /**
+     * The name of the property indicating if the skin extensions should be bundled.
+     */
+    public static final String ENABLED_PROPERTY = "skinx.bundle.enabled";
+
+    private static final String PARSE_PROPERTY = "parse";
+
+    private static final String COLOR_THEME_PREFERENCE = "colorTheme";
+
+    private static final char SEPARATOR = '|';
+
+    @Inject
+    private ConfigurationSource configuration;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    @Inject
+    @Named("current")
+    private DocumentReferenceResolver<String> currentResolver;
+
+    @Inject
+    private Logger logger;
+
+    /**
+     * @return true if the skin extensions should be bundled
+     */
+    public boolean isEnabled()
+    {
+        return this.configuration.getProperty(ENABLED_PROPERTY, false);
+    }
+
+    /**
+     * Only extensions which are not evaluated with Velocity can be bundled since the Velocity code can depend on the
+     * current document or on the request parameters.
+     * 
+     * @param document the document containing the extension
+     * @param className the name of the class of the extension objects
+     * @return true if the extension can be part of a bundle
+     */
+    public boolean isBundleable(XWikiDocument document, String className)
+    {
+        List<BaseObject> objects = document.getObjects(className);
+        if (objects == null || objects.isEmpty()) {
+            return false;
+        }
+
+        for (BaseObject object : objects) {
+            if (object != null && object.getIntValue(PARSE_PROPERTY) == 1) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param className the name of the class of the extension objects
+     * @param documents the documents containing the extensions, in the order they should be bundled
+     * @return the identifier of the bundle
+     */
+    public String getBundleId(String className, List<XWikiDocument> documents)
+    {
+        XWikiContext xcontext = this.xcontextProvider.get();
+        XWiki xwiki = xcontext.getWiki();
+
+        MessageDigest digest = DigestUtils.getMd5Digest();
+        update(digest, className);
+        update(digest, String.valueOf(xcontext.getLocale()));
+
+        // The LESS extensions depend on the skin and on the color theme.
+        String skin = xwiki.getSkin(xcontext);
+        update(digest, skin);
+        update(digest, getVersion(skin, xcontext));
+        String colorTheme = xwiki.getUserPreference(COLOR_THEME_PREFERENCE, xcontext);
+        update(digest, colorTheme);
+        update(digest, getVersion(colorTheme, xcontext));
+
+        for (XWikiDocument document : documents) {
+            update(digest, this.serializer.serialize(document.getDocumentReference()));
+            update(digest, document.getVersion());
+        }
+
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private void update(MessageDigest digest, String value)
+    {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) SEPARATOR);
+    }
+
+    private String getVersion(String documentName, XWikiContext xcontext)
+    {
+        if (StringUtils.isNotEmpty(documentName)) {
+            DocumentReference reference = this.currentResolver.resolve(documentName);
+            try {
+                if (xcontext.getWiki().exists(reference, xcontext)) {
+                    return xcontext.getWiki().getDocument(reference, xcontext).getVersion();
+                }
+            } catch (XWikiException e) {
+                this.logger.warn("Failed to load document [{}]: {}", reference, e.getMessage());
+            }
+        }
+
+        return null;
+    }
+}
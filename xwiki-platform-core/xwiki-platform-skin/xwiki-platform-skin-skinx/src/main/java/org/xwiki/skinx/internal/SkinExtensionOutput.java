@@ -0,0 +1,90 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.skinx.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * The final (minified) content sent for a skin extension, as stored in the {@link SkinExtensionOutputCache}.
+ * 
+ * @version $Id$
+ * @since 10.1RC1
+ */
+public class SkinExtensionOutput
+{
+    private final byte[] content;
+
+    private final String hash;
+
+    private volatile byte[] gzippedContent;
+
+    /**
+     * @param content the content to send
+     */
+    public SkinExtensionOutput(byte[] content)
+    {
+        this.content = content;
+        this.hash = DigestUtils.md5Hex(content);
+    }
+
+    /**
+     * @return the content to send
+     */
+    public byte[] getContent()
+    {
+        return this.content;
+    }
+
+    /**
+     * @return the content to send, compressed with gzip (computed on first call)
+     */
+    public byte[] getGzippedContent()
+    {
+        byte[] result = this.gzippedContent;
+
+        if (result == null) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream(this.content.length / 3 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(stream)) {
+                gzip.write(this.content);
+            } catch (IOException e) {
+                // Should never happen with a memory stream
+                throw new UncheckedIOException(e);
+            }
+            result = stream.toByteArray();
+            this.gzippedContent = result;
+        }
+
+        return result;
+    }
+
+    /**
+     * @param gzipped true if the ETag of the gzipped content should be returned
+     * @return the strong ETag of the content (each content encoding has its own ETag)
+     */
+    public String getETag(boolean gzipped)
+    {
+        return '"' + this.hash + (gzipped ? "-gzip\"" : "\"");
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.skinx.internal;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.extension.event.ExtensionInstalledEvent;
+import org.xwiki.extension.event.ExtensionUninstalledEvent;
+import org.xwiki.extension.event.ExtensionUpgradedEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Keep the final output of the skin extensions (after Velocity/LESS evaluation and minification) to avoid producing it
+ * again for each request.
+ * <p>
+ * The entries are grouped by source (document or resource) and each group contains the variants of the output
+ * (document version, locale, skin, color theme, etc.). The whole group of a document is removed when the document is
+ * modified or deleted. Everything is removed when a color theme or a skin is modified since they are used by the LESS
+ * extensions.
+ * 
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Component(roles = SkinExtensionOutputCache.class)
+@Singleton
+public class SkinExtensionOutputCache implements Initializable
+{
+    /**
+     * The name of the property containing the maximum number of sources to keep in the cache.
+     */
+    public static final String CAPACITY_PROPERTY = "skinx.outputCache.capacity";
+
+    /**
+     * The maximum number of variants kept for a single source.
+     */
+    private static final int MAX_VARIANTS = 50;
+
+    private static final String RESOURCE_PREFIX = "resource:";
+
+    private static final String BUNDLE_PREFIX = "bundle:";
+
+    private static final List<LocalDocumentReference> THEME_CLASSES =
+        Arrays.asList(new LocalDocumentReference("ColorThemes", "ColorThemeClass"),
+            new LocalDocumentReference("FlamingoThemesCode", "ThemeClass"),
+            new LocalDocumentReference("XWiki", "XWikiSkins"));
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private ConfigurationSource configuration;
+
+    @Inject
+    private ObservationManager observation;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    private Cache<Map<String, SkinExtensionOutput>> cache;
+
+    /**
+     * Part of the identifier of the resources groups, incremented to invalidate all of them at once (the outdated
+     * entries are then evicted from the cache when space is needed).
+     */
+    private final AtomicLong resourcesGeneration = new AtomicLong();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        int capacity = this.configuration.getProperty(CAPACITY_PROPERTY, 500);
+        if (capacity <= 0) {
+            return;
+        }
+
+        // Initialize cache
+        try {
+            this.cache = this.cacheManager.createNewCache(new LRUCacheConfiguration("skinx.output", capacity));
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to initialize the skin extensions output cache", e);
+        }
+
+        // Initialize listeners
+        this.observation.addListener(new AbstractEventListener("skinx.output.documents",
+            new DocumentCreatedEvent(), new DocumentUpdatedEvent(), new DocumentDeletedEvent())
+        {
+            @Override
+            public void onEvent(Event event, Object source, Object data)
+            {
+                XWikiDocument document = (XWikiDocument) source;
+                if (isTheme(document) || isTheme(document.getOriginalDocument())) {
+                    cache.removeAll();
+                } else {
+                    cache.remove(getGroup(document.getDocumentReference()));
+                }
+            }
+        });
+        this.observation.addListener(new AbstractEventListener("skinx.output.extensions",
+            new ExtensionInstalledEvent(), new ExtensionUninstalledEvent(), new ExtensionUpgradedEvent())
+        {
+            @Override
+            public void onEvent(Event event, Object source, Object data)
+            {
+                // Resources skin extensions can come from extensions
+                resourcesGeneration.incrementAndGet();
+            }
+        });
+    }
+
+    private boolean isTheme(XWikiDocument document)
+    {
+        if (document != null) {
+            for (LocalDocumentReference themeClass : THEME_CLASSES) {
+                List<BaseObject> objects = document.getXObjects(themeClass);
+                if (objects != null && !objects.isEmpty()) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return true if the cache is enabled
+     */
+    public boolean isEnabled()
+    {
+        return this.cache != null;
+    }
+
+    /**
+     * @param documentReference the reference of the document containing the skin extension
+     * @return the identifier of the group of entries associated to the document
+     */
+    public String getGroup(DocumentReference documentReference)
+    {
+        return this.serializer.serialize(documentReference);
+    }
+
+    /**
+     * @param wiki the wiki where the resource is loaded (each wiki can have different extensions installed)
+     * @param resourceName the name of the resource skin extension
+     * @return the identifier of the group of entries associated to the resource
+     */
+    public String getGroup(String wiki, String resourceName)
+    {
+        return RESOURCE_PREFIX + this.resourcesGeneration.get() + ':' + wiki + ':' + resourceName;
+    }
+
+    /**
+     * @param bundleId the identifier of a bundle of skin extensions (see {@link SkinExtensionBundler})
+     * @return the identifier of the group of entries associated to the bundle
+     */
+    public String getBundleGroup(String bundleId)
+    {
+        // The identifier of a bundle changes when its content changes so there is no need to invalidate it
+        return BUNDLE_PREFIX + bundleId;
+    }
+
+    /**
+     * @param group the source of the skin extension
+     * @param variant the variant of the output
+     * @return the cached output or {@code null} if none could be found
+     */
+    public SkinExtensionOutput get(String group, String variant)
+    {
+        if (this.cache != null) {
+            Map<String, SkinExtensionOutput> variants = this.cache.get(group);
+            if (variants != null) {
+                return variants.get(variant);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param group the source of the skin extension
+     * @param variant the variant of the output
+     * @param output the output to cache
+     */
+    public void set(String group, String variant, SkinExtensionOutput output)
+    {
+        if (this.cache != null) {
+            Map<String, SkinExtensionOutput> variants = this.cache.get(group);
+            if (variants == null) {
+                variants = new ConcurrentHashMap<>();
+                this.cache.set(group, variants);
+            } else if (variants.size() >= MAX_VARIANTS) {
+                // Most probably variants produced by old versions or random query strings
+                variants.clear();
+            }
+            variants.put(variant, output);
+        }
+    }
+}
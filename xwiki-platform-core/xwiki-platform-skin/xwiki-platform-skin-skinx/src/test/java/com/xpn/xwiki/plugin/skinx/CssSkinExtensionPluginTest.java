@@ -0,0 +1,213 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.skinx;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.skinx.internal.SkinExtensionBundler;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.test.MockitoOldcoreRule;
+import com.xpn.xwiki.web.XWikiRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate the bundling of the style sheet extensions done by {@link CssSkinExtensionPlugin}.
+ *
+ * @version $Id$
+ */
+public class CssSkinExtensionPluginTest
+{
+    @Rule
+    public MockitoOldcoreRule oldcore = new MockitoOldcoreRule();
+
+    private SkinExtensionBundler bundler;
+
+    private CssSkinExtensionPlugin plugin;
+
+    private XWikiDocument documentA;
+
+    private XWikiDocument documentB;
+
+    private XWikiDocument documentC;
+
+    private Set<String> alwaysUsedExtensions = new LinkedHashSet<>();
+
+    @Before
+    public void before() throws Exception
+    {
+        this.bundler = this.oldcore.getMocker().registerMockComponent(SkinExtensionBundler.class);
+        when(this.bundler.isEnabled()).thenReturn(true);
+
+        this.oldcore.getMocker().registerMockComponent(DocumentReferenceResolver.TYPE_STRING, "current");
+        this.oldcore.getMocker().registerMockComponent(EntityReferenceSerializer.TYPE_STRING);
+        this.documentA = mockExtension("A", true);
+        this.documentB = mockExtension("B", true);
+        this.documentC = mockExtension("C", false);
+
+        when(this.oldcore.getMockContextualAuthorizationManager().hasAccess(eq(Right.VIEW), any())).thenReturn(true);
+
+        XWikiContext xcontext = this.oldcore.getXWikiContext();
+        xcontext.setRequest(mock(XWikiRequest.class));
+        xcontext.setLocale(Locale.ENGLISH);
+
+        this.plugin = new CssSkinExtensionPlugin("ssx", CssSkinExtensionPlugin.class.getName(), xcontext)
+        {
+            @Override
+            public Set<String> getAlwaysUsedExtensions(XWikiContext context)
+            {
+                return alwaysUsedExtensions;
+            }
+
+            @Override
+            public boolean hasPageExtensions(XWikiContext context)
+            {
+                return false;
+            }
+        };
+    }
+
+    private XWikiDocument mockExtension(String name, boolean bundleable) throws Exception
+    {
+        String fullName = "wiki:Space." + name;
+        DocumentReference reference = new DocumentReference("wiki", "Space", name);
+        XWikiDocument document = mock(XWikiDocument.class);
+        when(document.getDocumentReference()).thenReturn(reference);
+        when(document.getVersion()).thenReturn("1.1");
+
+        DocumentReferenceResolver<String> resolver =
+            this.oldcore.getMocker().getInstance(DocumentReferenceResolver.TYPE_STRING, "current");
+        when(resolver.resolve(fullName)).thenReturn(reference);
+        EntityReferenceSerializer<String> serializer =
+            this.oldcore.getMocker().getInstance(EntityReferenceSerializer.TYPE_STRING);
+        when(serializer.serialize(reference)).thenReturn(fullName);
+
+        doReturn(document).when(this.oldcore.getSpyXWiki()).getDocument(eq(reference), any(XWikiContext.class));
+        doReturn("/ssx/" + name).when(this.oldcore.getSpyXWiki()).getURL(eq(reference), eq("ssx"), anyString(),
+            eq(""), any(XWikiContext.class));
+
+        when(this.bundler.isBundleable(document, CssSkinExtensionPlugin.SSX_CLASS_NAME)).thenReturn(bundleable);
+
+        return document;
+    }
+
+    private void use(String... names)
+    {
+        for (String name : names) {
+            this.plugin.getPulledResources(this.oldcore.getXWikiContext()).add("wiki:Space." + name);
+        }
+    }
+
+    @Test
+    public void getImportStringWithBundle() throws Exception
+    {
+        when(this.bundler.getBundleId(CssSkinExtensionPlugin.SSX_CLASS_NAME,
+            Arrays.asList(this.documentA, this.documentB))).thenReturn("0123abcd");
+
+        use("A", "B", "C");
+
+        // The consecutive bundleable extensions are imported with a single link, before the other ones
+        assertEquals("<link rel=\"stylesheet\" type=\"text/css\" href=\"/ssx/A\" />"
+            + "<link rel=\"stylesheet\" type=\"text/css\" href=\"/ssx/C\" />",
+            this.plugin.getImportString(this.oldcore.getXWikiContext()));
+
+        ArgumentCaptor<String> queryString = ArgumentCaptor.forClass(String.class);
+        verify(this.oldcore.getSpyXWiki()).getURL(eq(this.documentA.getDocumentReference()), eq("ssx"),
+            queryString.capture(), eq(""), any(XWikiContext.class));
+        assertEquals("bundle=0123abcd&amp;language=en&amp;extension=wiki%3ASpace.A&amp;extension=wiki%3ASpace.B",
+            queryString.getValue());
+    }
+
+    @Test
+    public void getImportStringKeepsExtensionsOrder() throws Exception
+    {
+        use("A", "C", "B");
+
+        String importString = this.plugin.getImportString(this.oldcore.getXWikiContext());
+
+        // A single bundleable extension is imported with its own link
+        assertTrue(importString.indexOf("/ssx/A") < importString.indexOf("/ssx/C"));
+        assertTrue(importString.indexOf("/ssx/C") < importString.indexOf("/ssx/B"));
+        verify(this.bundler, never()).getBundleId(anyString(), any());
+    }
+
+    @Test
+    public void getImportStringWithParameters() throws Exception
+    {
+        use("A", "B");
+        this.plugin.getParametersMap(this.oldcore.getXWikiContext()).put("wiki:Space.B",
+            Collections.singletonMap("color", "red"));
+
+        this.plugin.getImportString(this.oldcore.getXWikiContext());
+
+        // The parameters are passed to the extension in the query string so it can't be bundled
+        verify(this.bundler, never()).getBundleId(anyString(), any());
+    }
+
+    @Test
+    public void getImportStringWhenDisabled() throws Exception
+    {
+        when(this.bundler.isEnabled()).thenReturn(false);
+
+        use("A", "B");
+
+        this.plugin.getImportString(this.oldcore.getXWikiContext());
+
+        verify(this.bundler, never()).getBundleId(anyString(), any());
+    }
+
+    @Test
+    public void getPulledImportString() throws Exception
+    {
+        this.alwaysUsedExtensions.add("wiki:Space.C");
+        use("A");
+
+        assertEquals("<link rel=\"stylesheet\" type=\"text/css\" href=\"/ssx/C\" />"
+            + "<link rel=\"stylesheet\" type=\"text/css\" href=\"/ssx/A\" />",
+            this.plugin.getImportString(this.oldcore.getXWikiContext()));
+
+        // The extensions which are always used are not imported again in an HTML fragment
+        assertEquals("<link rel=\"stylesheet\" type=\"text/css\" href=\"/ssx/A\" />",
+            this.plugin.getPulledImportString(this.oldcore.getXWikiContext()));
+    }
+}
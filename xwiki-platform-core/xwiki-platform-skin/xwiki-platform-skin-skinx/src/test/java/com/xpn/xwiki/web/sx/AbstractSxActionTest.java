@@ -0,0 +1,295 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.web.sx;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.skinx.internal.SkinExtensionBundler;
+import org.xwiki.skinx.internal.SkinExtensionOutput;
+import org.xwiki.skinx.internal.SkinExtensionOutputCache;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.test.MockitoOldcoreRule;
+import com.xpn.xwiki.web.JsxAction;
+import com.xpn.xwiki.web.SsxAction;
+import com.xpn.xwiki.web.XWikiRequest;
+import com.xpn.xwiki.web.XWikiResponse;
+import com.xpn.xwiki.web.sx.SxSource.CachePolicy;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate the output cache and the HTTP headers handled by {@link AbstractSxAction}.
+ *
+ * @version $Id$
+ */
+public class AbstractSxActionTest
+{
+    private static final String GROUP = "wiki:Space.Extension";
+
+    private static final byte[] CONTENT = "content\n".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public MockitoOldcoreRule oldcore = new MockitoOldcoreRule();
+
+    private SsxAction action = new SsxAction();
+
+    private SkinExtensionOutputCache cache;
+
+    private XWikiRequest request;
+
+    private XWikiResponse response;
+
+    private ServletOutputStream outputStream;
+
+    private SxDocumentSource source;
+
+    @Before
+    public void before() throws Exception
+    {
+        this.cache = this.oldcore.getMocker().registerMockComponent(SkinExtensionOutputCache.class);
+        when(this.cache.isEnabled()).thenReturn(true);
+
+        this.request = mock(XWikiRequest.class);
+        when(this.request.get("minify")).thenReturn("false");
+        this.oldcore.getXWikiContext().setRequest(this.request);
+
+        this.response = mock(XWikiResponse.class);
+        this.outputStream = mock(ServletOutputStream.class);
+        when(this.response.getOutputStream()).thenReturn(this.outputStream);
+        this.oldcore.getXWikiContext().setResponse(this.response);
+
+        doReturn("flamingo").when(this.oldcore.getSpyXWiki()).getSkin(any());
+        doReturn("").when(this.oldcore.getSpyXWiki()).getUserPreference(eq("colorTheme"), any());
+
+        DocumentReference documentReference = new DocumentReference("wiki", "Space", "Extension");
+        XWikiDocument document = mock(XWikiDocument.class);
+        when(document.getDocumentReference()).thenReturn(documentReference);
+        when(document.getVersion()).thenReturn("1.1");
+        when(this.cache.getGroup(documentReference)).thenReturn(GROUP);
+
+        this.source = mock(SxDocumentSource.class);
+        when(this.source.getDocument()).thenReturn(document);
+        when(this.source.getCachePolicy()).thenReturn(CachePolicy.LONG);
+        when(this.source.getContent()).thenReturn("content\n");
+    }
+
+    @Test
+    public void renderAndCacheOutput() throws Exception
+    {
+        this.action.renderExtension(this.source, SsxAction.CSSX, this.oldcore.getXWikiContext());
+
+        verify(this.cache).set(eq(GROUP), anyString(), any(SkinExtensionOutput.class));
+        verify(this.response).setHeader("ETag", new SkinExtensionOutput(CONTENT).getETag(false));
+        verify(this.response).addHeader("Vary", "Accept-Encoding");
+        verify(this.outputStream).write(CONTENT);
+    }
+
+    @Test
+    public void renderFromCache() throws Exception
+    {
+        when(this.cache.get(eq(GROUP), anyString())).thenReturn(new SkinExtensionOutput(CONTENT));
+
+        this.action.renderExtension(this.source, SsxAction.CSSX, this.oldcore.getXWikiContext());
+
+        verify(this.source, never()).getContent();
+        verify(this.outputStream).write(CONTENT);
+    }
+
+    @Test
+    public void renderGzippedOutput() throws Exception
+    {
+        when(this.request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+        SkinExtensionOutput output = new SkinExtensionOutput(CONTENT);
+        when(this.cache.get(eq(GROUP), anyString())).thenReturn(output);
+
+        this.action.renderExtension(this.source, SsxAction.CSSX, this.oldcore.getXWikiContext());
+
+        verify(this.response).setHeader("Content-Encoding", "gzip");
+        verify(this.response).addHeader("Vary", "Accept-Encoding");
+        verify(this.outputStream).write(output.getGzippedContent());
+    }
+
+    @Test
+    public void renderNotModified() throws Exception
+    {
+        SkinExtensionOutput output = new SkinExtensionOutput(CONTENT);
+        when(this.cache.get(eq(GROUP), anyString())).thenReturn(output);
+        when(this.request.getHeader("If-None-Match")).thenReturn(output.getETag(false));
+
+        this.action.renderExtension(this.source, SsxAction.CSSX, this.oldcore.getXWikiContext());
+
+        verify(this.response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(this.response).addHeader("Vary", "Accept-Encoding");
+        verify(this.outputStream, never()).write(any(byte[].class));
+    }
+
+    @Test
+    public void renderParsedExtensionWithoutCache() throws Exception
+    {
+        when(this.source.isParsed()).thenReturn(true);
+
+        this.action.renderExtension(this.source, SsxAction.CSSX, this.oldcore.getXWikiContext());
+
+        verify(this.cache, never()).get(anyString(), anyString());
+        verify(this.cache, never()).set(anyString(), anyString(), any(SkinExtensionOutput.class));
+        verify(this.outputStream).write(CONTENT);
+    }
+
+    @Test
+    public void renderFailedExtensionWithoutCache() throws Exception
+    {
+        when(this.source.hasFailed()).thenReturn(true);
+
+        this.action.renderExtension(this.source, SsxAction.CSSX, this.oldcore.getXWikiContext());
+
+        verify(this.cache, never()).set(anyString(), anyString(), any(SkinExtensionOutput.class));
+        verify(this.outputStream).write(CONTENT);
+    }
+
+    @Test
+    public void renderForbiddenCacheExtension() throws Exception
+    {
+        when(this.source.getCachePolicy()).thenReturn(CachePolicy.FORBID);
+
+        this.action.renderExtension(this.source, SsxAction.CSSX, this.oldcore.getXWikiContext());
+
+        verify(this.cache, never()).set(anyString(), anyString(), any(SkinExtensionOutput.class));
+        verify(this.response, never()).setHeader(eq("ETag"), anyString());
+        verify(this.response).addHeader("Vary", "Accept-Encoding");
+    }
+
+    private void mockBundle(String className, String bundleId, String... names) throws Exception
+    {
+        SkinExtensionBundler bundler = this.oldcore.getMocker().registerMockComponent(SkinExtensionBundler.class);
+        DocumentReferenceResolver<String> resolver =
+            this.oldcore.getMocker().registerMockComponent(DocumentReferenceResolver.TYPE_STRING, "current");
+
+        String[] extensions = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            extensions[i] = "wiki:Space." + names[i];
+            DocumentReference reference = new DocumentReference("wiki", "Space", names[i]);
+            when(resolver.resolve(extensions[i])).thenReturn(reference);
+            when(this.oldcore.getMockContextualAuthorizationManager().hasAccess(Right.VIEW, reference))
+                .thenReturn(true);
+
+            XWikiDocument document = mock(XWikiDocument.class);
+            when(document.getDocumentReference()).thenReturn(reference);
+            when(document.getDate()).thenReturn(new Date());
+            BaseObject object = mock(BaseObject.class);
+            when(object.getLargeStringValue("code")).thenReturn(names[i] + "();");
+            List<BaseObject> objects = Collections.singletonList(object);
+            when(document.getObjects(className)).thenReturn(objects);
+            when(bundler.isBundleable(document, className)).thenReturn(true);
+            doReturn(document).when(this.oldcore.getSpyXWiki()).getDocument(eq(reference), any(XWikiContext.class));
+        }
+
+        when(bundler.getBundleId(eq(className), any())).thenReturn(bundleId);
+        when(this.cache.getBundleGroup(bundleId)).thenReturn("bundle:" + bundleId);
+
+        XWikiDocument currentDocument = mock(XWikiDocument.class);
+        this.oldcore.getXWikiContext().setDoc(currentDocument);
+        when(this.request.getParameter("bundle")).thenReturn("0123abcd");
+        when(this.request.getParameterValues("extension")).thenReturn(extensions);
+    }
+
+    private String getWrittenContent() throws Exception
+    {
+        ArgumentCaptor<byte[]> content = ArgumentCaptor.forClass(byte[].class);
+        verify(this.outputStream).write(content.capture());
+
+        return new String(content.getValue(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void renderBundle() throws Exception
+    {
+        mockBundle("XWiki.StyleSheetExtension", "0123abcd", "A", "B");
+
+        new SsxAction().render(this.oldcore.getXWikiContext());
+
+        assertEquals("A();\nB();\n", getWrittenContent());
+        // The URL of a bundle changes as soon as its content changes
+        verify(this.response).setHeader("Cache-Control", "public, max-age=31536000, immutable");
+        verify(this.cache).set(eq("bundle:0123abcd"), anyString(), any(SkinExtensionOutput.class));
+    }
+
+    @Test
+    public void renderJavaScriptBundle() throws Exception
+    {
+        mockBundle("XWiki.JavaScriptExtension", "0123abcd", "A", "B");
+
+        new JsxAction().render(this.oldcore.getXWikiContext());
+
+        assertEquals("A();\nB();\n", getWrittenContent());
+        verify(this.response).setHeader("Cache-Control", "public, max-age=31536000, immutable");
+    }
+
+    @Test
+    public void renderStaleBundle() throws Exception
+    {
+        // The requested identifier does not match the current version of the extensions (or is unknown)
+        mockBundle("XWiki.StyleSheetExtension", "4567efgh", "A", "B");
+
+        new SsxAction().render(this.oldcore.getXWikiContext());
+
+        // The current content is sent but it's not associated with the requested identifier
+        assertEquals("A();\nB();\n", getWrittenContent());
+        verify(this.response).setHeader("Cache-Control", "no-cache, no-store, must-revalidate");
+        verify(this.response, never()).setHeader("Cache-Control", "public, max-age=31536000, immutable");
+        verify(this.cache, never()).set(anyString(), anyString(), any(SkinExtensionOutput.class));
+    }
+
+    @Test
+    public void renderBundleWithoutAccessToAnExtension() throws Exception
+    {
+        mockBundle("XWiki.StyleSheetExtension", "0123abcd", "A", "B");
+        when(this.oldcore.getMockContextualAuthorizationManager().hasAccess(Right.VIEW,
+            new DocumentReference("wiki", "Space", "B"))).thenReturn(false);
+
+        new SsxAction().render(this.oldcore.getXWikiContext());
+
+        // The extensions the current user cannot view are skipped
+        assertEquals("A();\n", getWrittenContent());
+    }
+}
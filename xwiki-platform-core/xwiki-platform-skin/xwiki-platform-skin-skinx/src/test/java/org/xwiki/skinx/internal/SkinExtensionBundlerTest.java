@@ -0,0 +1,159 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.skinx.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+
+import javax.inject.Provider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link SkinExtensionBundler}.
+ *
+ * @version $Id$
+ */
+public class SkinExtensionBundlerTest
+{
+    private static final String CLASS_NAME = "XWiki.JavaScriptExtension";
+
+    @Rule
+    public MockitoComponentMockingRule<SkinExtensionBundler> mocker =
+        new MockitoComponentMockingRule<>(SkinExtensionBundler.class);
+
+    private XWikiContext xcontext;
+
+    private XWiki xwiki;
+
+    private XWikiDocument skinDocument;
+
+    private XWikiDocument documentA;
+
+    private XWikiDocument documentB;
+
+    @Before
+    public void before() throws Exception
+    {
+        this.xcontext = mock(XWikiContext.class);
+        this.xwiki = mock(XWiki.class);
+        when(this.xcontext.getWiki()).thenReturn(this.xwiki);
+        when(this.xcontext.getLocale()).thenReturn(Locale.ENGLISH);
+        Provider<XWikiContext> xcontextProvider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
+        when(xcontextProvider.get()).thenReturn(this.xcontext);
+
+        DocumentReference skinReference = new DocumentReference("wiki", "Skins", "Flamingo");
+        when(this.xwiki.getSkin(this.xcontext)).thenReturn("Skins.Flamingo");
+        DocumentReferenceResolver<String> resolver =
+            this.mocker.getInstance(DocumentReferenceResolver.TYPE_STRING, "current");
+        when(resolver.resolve("Skins.Flamingo")).thenReturn(skinReference);
+        this.skinDocument = mock(XWikiDocument.class);
+        when(this.skinDocument.getVersion()).thenReturn("1.1");
+        when(this.xwiki.exists(skinReference, this.xcontext)).thenReturn(true);
+        when(this.xwiki.getDocument(skinReference, this.xcontext)).thenReturn(this.skinDocument);
+
+        this.documentA = mockDocument("A");
+        this.documentB = mockDocument("B");
+    }
+
+    private XWikiDocument mockDocument(String name) throws Exception
+    {
+        DocumentReference reference = new DocumentReference("wiki", "Space", name);
+        XWikiDocument document = mock(XWikiDocument.class);
+        when(document.getDocumentReference()).thenReturn(reference);
+        when(document.getVersion()).thenReturn("1.1");
+
+        EntityReferenceSerializer<String> serializer = this.mocker.getInstance(EntityReferenceSerializer.TYPE_STRING);
+        when(serializer.serialize(reference)).thenReturn("wiki:Space." + name);
+
+        return document;
+    }
+
+    private BaseObject mockObject(int parse)
+    {
+        BaseObject object = mock(BaseObject.class);
+        when(object.getIntValue("parse")).thenReturn(parse);
+
+        return object;
+    }
+
+    @Test
+    public void isBundleable() throws Exception
+    {
+        SkinExtensionBundler bundler = this.mocker.getComponentUnderTest();
+
+        when(this.documentA.getObjects(CLASS_NAME)).thenReturn(Arrays.asList(mockObject(0), null, mockObject(0)));
+        assertTrue(bundler.isBundleable(this.documentA, CLASS_NAME));
+
+        // The extensions evaluated with Velocity depend on the context
+        when(this.documentA.getObjects(CLASS_NAME)).thenReturn(Arrays.asList(mockObject(0), mockObject(1)));
+        assertFalse(bundler.isBundleable(this.documentA, CLASS_NAME));
+
+        when(this.documentB.getObjects(CLASS_NAME)).thenReturn(Collections.emptyList());
+        assertFalse(bundler.isBundleable(this.documentB, CLASS_NAME));
+    }
+
+    @Test
+    public void getBundleId() throws Exception
+    {
+        SkinExtensionBundler bundler = this.mocker.getComponentUnderTest();
+
+        String bundleId = bundler.getBundleId(CLASS_NAME, Arrays.asList(this.documentA, this.documentB));
+        assertEquals(bundleId, bundler.getBundleId(CLASS_NAME, Arrays.asList(this.documentA, this.documentB)));
+
+        // The identifier depends on the type of extension and on the order of the extensions
+        assertNotEquals(bundleId, bundler.getBundleId("XWiki.StyleSheetExtension",
+            Arrays.asList(this.documentA, this.documentB)));
+        assertNotEquals(bundleId, bundler.getBundleId(CLASS_NAME, Arrays.asList(this.documentB, this.documentA)));
+
+        // The identifier changes as soon as one of the extensions is modified
+        when(this.documentB.getVersion()).thenReturn("1.2");
+        String newBundleId = bundler.getBundleId(CLASS_NAME, Arrays.asList(this.documentA, this.documentB));
+        assertNotEquals(bundleId, newBundleId);
+
+        // or as soon as the skin is modified
+        when(this.skinDocument.getVersion()).thenReturn("2.1");
+        assertNotEquals(newBundleId, bundler.getBundleId(CLASS_NAME, Arrays.asList(this.documentA, this.documentB)));
+
+        // or when the locale changes
+        when(this.skinDocument.getVersion()).thenReturn("1.1");
+        when(this.xcontext.getLocale()).thenReturn(Locale.FRENCH);
+        assertNotEquals(newBundleId, bundler.getBundleId(CLASS_NAME, Arrays.asList(this.documentA, this.documentB)));
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.skinx.internal;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.extension.event.ExtensionInstalledEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.model.reference.LocalDocumentReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Validate {@link SkinExtensionOutputCache}.
+ *
+ * @version $Id$
+ */
+public class SkinExtensionOutputCacheTest
+{
+    @Rule
+    public MockitoComponentMockingRule<SkinExtensionOutputCache> mocker =
+        new MockitoComponentMockingRule<>(SkinExtensionOutputCache.class);
+
+    private DocumentReference documentReference = new DocumentReference("wiki", "Space", "Extension");
+
+    private DocumentReference otherDocumentReference = new DocumentReference("wiki", "Space", "Other");
+
+    private SkinExtensionOutput output = new SkinExtensionOutput(new byte[] {1, 2, 3});
+
+    private EventListener documentListener;
+
+    private EventListener extensionListener;
+
+    @Before
+    public void before() throws Exception
+    {
+        ConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class);
+        when(configuration.getProperty(SkinExtensionOutputCache.CAPACITY_PROPERTY, 500)).thenReturn(500);
+
+        EntityReferenceSerializer<String> serializer = this.mocker.getInstance(EntityReferenceSerializer.TYPE_STRING);
+        when(serializer.serialize(this.documentReference)).thenReturn("wiki:Space.Extension");
+        when(serializer.serialize(this.otherDocumentReference)).thenReturn("wiki:Space.Other");
+
+        // Use a map as cache
+        Map<String, Object> cacheContent = new HashMap<>();
+        Cache<Object> cache = mock(Cache.class);
+        when(cache.get(anyString())).then(invocation -> cacheContent.get(invocation.getArgument(0)));
+        doAnswer(invocation -> cacheContent.put(invocation.getArgument(0), invocation.getArgument(1))).when(cache)
+            .set(anyString(), any());
+        doAnswer(invocation -> cacheContent.remove(invocation.getArgument(0))).when(cache).remove(anyString());
+        doAnswer(invocation -> {
+            cacheContent.clear();
+            return null;
+        }).when(cache).removeAll();
+        CacheManager cacheManager = this.mocker.getInstance(CacheManager.class);
+        when(cacheManager.createNewCache(any(CacheConfiguration.class))).thenReturn(cache);
+
+        this.mocker.getComponentUnderTest();
+
+        ObservationManager observation = this.mocker.getInstance(ObservationManager.class);
+        ArgumentCaptor<EventListener> listenerCaptor = ArgumentCaptor.forClass(EventListener.class);
+        verify(observation, times(2)).addListener(listenerCaptor.capture());
+        this.documentListener = listenerCaptor.getAllValues().get(0);
+        this.extensionListener = listenerCaptor.getAllValues().get(1);
+    }
+
+    private XWikiDocument mockDocument(DocumentReference reference, LocalDocumentReference... classes)
+    {
+        XWikiDocument document = mock(XWikiDocument.class);
+        when(document.getDocumentReference()).thenReturn(reference);
+        for (LocalDocumentReference classReference : classes) {
+            List<BaseObject> objects = Arrays.asList(mock(BaseObject.class));
+            when(document.getXObjects(classReference)).thenReturn(objects);
+        }
+
+        return document;
+    }
+
+    @Test
+    public void setAndGet() throws Exception
+    {
+        SkinExtensionOutputCache cache = this.mocker.getComponentUnderTest();
+        String group = cache.getGroup(this.documentReference);
+
+        assertNull(cache.get(group, "variant"));
+
+        cache.set(group, "variant", this.output);
+
+        assertSame(this.output, cache.get(group, "variant"));
+        assertNull(cache.get(group, "other"));
+    }
+
+    @Test
+    public void documentUpdateRemovesOnlyItsEntries() throws Exception
+    {
+        SkinExtensionOutputCache cache = this.mocker.getComponentUnderTest();
+        cache.set(cache.getGroup(this.documentReference), "variant", this.output);
+        cache.set(cache.getGroup(this.otherDocumentReference), "variant", this.output);
+
+        this.documentListener.onEvent(new DocumentUpdatedEvent(this.documentReference),
+            mockDocument(this.documentReference), null);
+
+        assertNull(cache.get(cache.getGroup(this.documentReference), "variant"));
+        assertSame(this.output, cache.get(cache.getGroup(this.otherDocumentReference), "variant"));
+    }
+
+    @Test
+    public void colorThemeUpdateRemovesEverything() throws Exception
+    {
+        SkinExtensionOutputCache cache = this.mocker.getComponentUnderTest();
+        cache.set(cache.getGroup(this.documentReference), "variant", this.output);
+        cache.set(cache.getGroup("wiki", "resource.css"), "variant", this.output);
+
+        DocumentReference themeReference = new DocumentReference("wiki", "FlamingoThemes", "Charcoal");
+        this.documentListener.onEvent(new DocumentUpdatedEvent(themeReference),
+            mockDocument(themeReference, new LocalDocumentReference("FlamingoThemesCode", "ThemeClass")), null);
+
+        assertNull(cache.get(cache.getGroup(this.documentReference), "variant"));
+        assertNull(cache.get(cache.getGroup("wiki", "resource.css"), "variant"));
+    }
+
+    @Test
+    public void skinDeletionRemovesEverything() throws Exception
+    {
+        SkinExtensionOutputCache cache = this.mocker.getComponentUnderTest();
+        cache.set(cache.getGroup(this.documentReference), "variant", this.output);
+
+        // The objects of a deleted document are only available in the original document
+        DocumentReference skinReference = new DocumentReference("wiki", "XWiki", "MySkin");
+        XWikiDocument skinDocument = mockDocument(skinReference);
+        XWikiDocument originalSkinDocument = mockDocument(skinReference, new LocalDocumentReference("XWiki",
+            "XWikiSkins"));
+        when(skinDocument.getOriginalDocument()).thenReturn(originalSkinDocument);
+        this.documentListener.onEvent(new DocumentDeletedEvent(skinReference), skinDocument, null);
+
+        assertNull(cache.get(cache.getGroup(this.documentReference), "variant"));
+    }
+
+    @Test
+    public void extensionInstallRemovesOnlyResources() throws Exception
+    {
+        SkinExtensionOutputCache cache = this.mocker.getComponentUnderTest();
+        cache.set(cache.getGroup(this.documentReference), "variant", this.output);
+        cache.set(cache.getGroup("wiki", "resource.css"), "variant", this.output);
+
+        this.extensionListener.onEvent(new ExtensionInstalledEvent(), null, null);
+
+        assertSame(this.output, cache.get(cache.getGroup(this.documentReference), "variant"));
+        assertNull(cache.get(cache.getGroup("wiki", "resource.css"), "variant"));
+    }
+
+    @Test
+    public void tooManyVariants() throws Exception
+    {
+        SkinExtensionOutputCache cache = this.mocker.getComponentUnderTest();
+        String group = cache.getGroup(this.documentReference);
+
+        for (int i = 0; i < 50; ++i) {
+            cache.set(group, "variant" + i, this.output);
+        }
+        assertSame(this.output, cache.get(group, "variant0"));
+
+        cache.set(group, "variant50", this.output);
+
+        assertNull(cache.get(group, "variant0"));
+        assertSame(this.output, cache.get(group, "variant50"));
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.uiextension;
+
+import org.xwiki.rendering.block.Block;
+import org.xwiki.stability.Unstable;
+
+/**
+ * A {@link UIExtension} which can be declared as asynchronous: instead of being executed with the rest of the page,
+ * {@link #execute()} then returns a placeholder which is replaced by the content of the extension once the page is
+ * loaded. Useful for slow extensions, or extensions which are usually not visible (e.g. panels below the fold).
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Unstable
+public interface AsyncUIExtension extends UIExtension
+{
+    /**
+     * @return {@code true} if the extension is loaded after the rest of the page when possible
+     */
+    boolean isAsync();
+
+    /**
+     * @return the {@link Block} that must be rendered when this extension is displayed, even if the extension is
+     *         asynchronous
+     */
+    Block executeSynchronously();
+}
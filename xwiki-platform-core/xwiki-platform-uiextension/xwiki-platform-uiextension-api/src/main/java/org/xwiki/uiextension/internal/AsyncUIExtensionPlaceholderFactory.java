@@ -0,0 +1,83 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.uiextension.internal;
+
+import java.util.Collections;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.GroupBlock;
+import org.xwiki.skinx.SkinExtension;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.util.Util;
+
+/**
+ * Create the placeholders displayed instead of the asynchronous UI extensions. The placeholders are replaced by the
+ * content of the extensions, loaded with the {@code uix.vm} template, once the page is loaded.
+ *
+ * @version $Id$
+ * @since 10.1RC1
+ */
+@Component(roles = AsyncUIExtensionPlaceholderFactory.class)
+@Singleton
+public class AsyncUIExtensionPlaceholderFactory
+{
+    private static final String VIEW_ACTION = "view";
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Inject
+    @Named("jsfx")
+    private SkinExtension jsfx;
+
+    /**
+     * @param roleHint the role hint of the asynchronous UI extension component
+     * @return the placeholder to display instead of the UI extension, {@code null} if the UI extension can't be loaded
+     *         asynchronously in the current request (e.g. when the page is exported)
+     */
+    public Block create(String roleHint)
+    {
+        XWikiContext xcontext = this.xcontextProvider.get();
+
+        // The placeholders are replaced using JavaScript so it only works when the page is viewed in a browser
+        if (xcontext == null || xcontext.getDoc() == null || xcontext.getRequest() == null
+            || !VIEW_ACTION.equals(xcontext.getAction()) || xcontext.getRequest().getParameter("xpage") != null) {
+            return null;
+        }
+
+        // The extension is loaded in the context of the current document, like when it's executed synchronously
+        String url = xcontext.getDoc().getURL("get", "xpage=uix&uix=" + Util.encodeURI(roleHint, xcontext), xcontext);
+
+        this.jsfx.use("uicomponents/uix/async.js", Collections.<String, Object>singletonMap("forceSkinAction", true));
+
+        GroupBlock placeholder = new GroupBlock();
+        placeholder.setParameter("class", "uix-async loading");
+        placeholder.setParameter("data-url", url);
+
+        return placeholder;
+    }
+}
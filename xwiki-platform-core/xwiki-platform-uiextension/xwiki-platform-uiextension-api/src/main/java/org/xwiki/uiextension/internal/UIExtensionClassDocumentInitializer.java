@@ -60,5 +60,7 @@ protected void createClass(BaseClass xclass)
         xclass.addTextAreaField(PARAMETERS_PROPERTY, "Extension Parameters", 40, 10, ContentType.PURE_TEXT);
         xclass.addStaticListField(SCOPE_PROPERTY, "Extension Scope", 1, false,
             "wiki=Current Wiki|user=Current User|global=Global", "select");
+        // Slow extensions can be loaded after the rest of the page.
+        xclass.addBooleanField(ASYNC_PROPERTY, "Asynchronous Loading", "yesno", false);
     }
 }
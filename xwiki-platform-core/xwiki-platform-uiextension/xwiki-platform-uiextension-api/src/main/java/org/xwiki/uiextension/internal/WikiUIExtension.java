@@ -33,6 +33,7 @@
 import org.xwiki.rendering.block.Block;
 import org.xwiki.rendering.block.WordBlock;
 import org.xwiki.security.authorization.AuthorExecutor;
+import org.xwiki.uiextension.AsyncUIExtension;
 import org.xwiki.uiextension.UIExtension;
 
 /**
@@ -42,7 +43,7 @@
  * @version $Id$
  * @since 4.2M3
  */
-public class WikiUIExtension implements UIExtension, WikiComponent
+public class WikiUIExtension implements AsyncUIExtension, WikiComponent
 {
     /**
      * The key used for the UIX context in the script context.
@@ -95,6 +96,11 @@ public class WikiUIExtension implements UIExtension, WikiComponent
      */
     private WikiComponentScope scope = WikiComponentScope.WIKI;
 
+    /**
+     * @see #setAsync(AsyncUIExtensionPlaceholderFactory)
+     */
+    private AsyncUIExtensionPlaceholderFactory placeholderFactory;
+
     /**
      * Default constructor.
      *
@@ -147,6 +153,24 @@ public void setScope(WikiComponentScope scope)
         this.scope = scope;
     }
 
+    /**
+     * Declare the extension as asynchronous.
+     *
+     * @param placeholderFactory used to create the placeholder displayed instead of the extension, {@code null} if the
+     *            extension is not asynchronous
+     * @since 10.1RC1
+     */
+    public void setAsync(AsyncUIExtensionPlaceholderFactory placeholderFactory)
+    {
+        this.placeholderFactory = placeholderFactory;
+    }
+
+    @Override
+    public boolean isAsync()
+    {
+        return this.placeholderFactory != null;
+    }
+
     @Override
     public String getId()
     {
@@ -171,6 +195,19 @@ public Map<String, String> getParameters()
 
     @Override
     public Block execute()
+    {
+        if (isAsync()) {
+            Block placeholder = this.placeholderFactory.create(getRoleHint());
+            if (placeholder != null) {
+                return placeholder;
+            }
+        }
+
+        return executeSynchronously();
+    }
+
+    @Override
+    public Block executeSynchronously()
     {
         if (this.renderer != null) {
             try {
@@ -80,6 +80,9 @@ public class WikiUIExtensionComponentBuilder implements WikiBaseObjectComponentB
     @Inject
     private AuthorExecutor authorExecutor;
 
+    @Inject
+    private AsyncUIExtensionPlaceholderFactory placeholderFactory;
+
     @Override
     public EntityReference getClassReference()
     {
@@ -150,6 +153,9 @@ public List<WikiComponent> buildComponents(BaseObject baseObject) throws WikiCom
             new WikiUIExtensionRenderer(roleHint, content, ownerDocument, this.componentManager);
         extension.setRenderer(renderer);
         extension.setScope(scope);
+        if (baseObject.getIntValue(ASYNC_PROPERTY) == 1) {
+            extension.setAsync(this.placeholderFactory);
+        }
 
         return Collections.singletonList(extension);
     }
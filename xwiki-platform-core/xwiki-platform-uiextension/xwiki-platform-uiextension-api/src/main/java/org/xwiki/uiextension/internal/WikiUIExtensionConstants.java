@@ -68,4 +68,11 @@
      * Extension scope property.
      */
     String SCOPE_PROPERTY = "scope";
+
+    /**
+     * Extension asynchronous loading property.
+     *
+     * @since 10.1RC1
+     */
+    String ASYNC_PROPERTY = "async";
 }
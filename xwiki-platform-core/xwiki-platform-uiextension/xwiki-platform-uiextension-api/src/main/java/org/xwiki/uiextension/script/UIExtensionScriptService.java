@@ -31,7 +31,12 @@
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.wiki.WikiComponent;
 import org.xwiki.script.service.ScriptService;
+import org.xwiki.security.authorization.ContextualAuthorizationManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.stability.Unstable;
+import org.xwiki.uiextension.AsyncUIExtension;
 import org.xwiki.uiextension.UIExtension;
 import org.xwiki.uiextension.UIExtensionFilter;
 import org.xwiki.uiextension.UIExtensionManager;
@@ -68,6 +73,9 @@ public class UIExtensionScriptService implements ScriptService
     @Inject
     private UIExtensionManager uiExtensionManager;
 
+    @Inject
+    private ContextualAuthorizationManager authorization;
+
     /**
      * Utility method to split a list of extension names, for example {code}"Panels.Apps,Panels.QuickLinks"{code} to get
      * a List containing those names.
@@ -145,4 +153,33 @@ public List<UIExtension> getExtensions(String extensionPointId, Map<String, Stri
 
         return extensions;
     }
+
+    /**
+     * Retrieves an asynchronous {@link UIExtension} in order to execute it. Used to load the asynchronous
+     * {@link UIExtension}s once the rest of the page is displayed.
+     *
+     * @param roleHint the role hint of the {@link UIExtension} component
+     * @return the asynchronous {@link UIExtension}, {@code null} if it can't be found or if the current user is not
+     *         allowed to view the document defining it
+     * @since 10.1RC1
+     */
+    @Unstable
+    public AsyncUIExtension getAsyncExtension(String roleHint)
+    {
+        ComponentManager componentManager = this.contextComponentManagerProvider.get();
+        if (componentManager.hasComponent(UIExtension.class, roleHint)) {
+            try {
+                UIExtension extension = componentManager.getInstance(UIExtension.class, roleHint);
+                if (extension instanceof AsyncUIExtension && ((AsyncUIExtension) extension).isAsync()
+                    && extension instanceof WikiComponent && this.authorization.hasAccess(Right.VIEW,
+                        ((WikiComponent) extension).getDocumentReference())) {
+                    return (AsyncUIExtension) extension;
+                }
+            } catch (ComponentLookupException e) {
+                this.logger.error("Failed to lookup UI extension [{}]", roleHint, e);
+            }
+        }
+
+        return null;
+    }
 }
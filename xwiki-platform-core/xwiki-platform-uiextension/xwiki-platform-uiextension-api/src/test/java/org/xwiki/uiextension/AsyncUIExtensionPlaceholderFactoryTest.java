@@ -0,0 +1,105 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.uiextension;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.skinx.SkinExtension;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.uiextension.internal.AsyncUIExtensionPlaceholderFactory;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.web.XWikiRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link AsyncUIExtensionPlaceholderFactory}.
+ *
+ * @version $Id$
+ */
+public class AsyncUIExtensionPlaceholderFactoryTest
+{
+    @Rule
+    public MockitoComponentMockingRule<AsyncUIExtensionPlaceholderFactory> mocker =
+        new MockitoComponentMockingRule<>(AsyncUIExtensionPlaceholderFactory.class);
+
+    private XWikiContext xcontext;
+
+    private XWikiRequest request;
+
+    private SkinExtension jsfx;
+
+    @Before
+    public void configure() throws Exception
+    {
+        this.xcontext = mock(XWikiContext.class);
+        this.request = mock(XWikiRequest.class);
+        XWikiDocument document = mock(XWikiDocument.class);
+        when(this.xcontext.getDoc()).thenReturn(document);
+        when(this.xcontext.getRequest()).thenReturn(this.request);
+        when(this.xcontext.getAction()).thenReturn("view");
+        when(document.getURL(eq("get"), anyString(), eq(this.xcontext)))
+            .then(invocation -> "/xwiki/bin/get/Space/Page?" + invocation.getArgument(1));
+
+        when(this.mocker.<XWikiContext>getInstance(XWikiContext.TYPE_PROVIDER).get()).thenReturn(this.xcontext);
+
+        this.jsfx = this.mocker.getInstance(SkinExtension.class, "jsfx");
+    }
+
+    @Test
+    public void createWhenViewed() throws Exception
+    {
+        Block placeholder = this.mocker.getComponentUnderTest().create("roleHint");
+
+        assertEquals("uix-async loading", placeholder.getParameter("class"));
+        assertEquals("/xwiki/bin/get/Space/Page?xpage=uix&uix=roleHint", placeholder.getParameter("data-url"));
+        verify(this.jsfx).use("uicomponents/uix/async.js",
+            Collections.<String, Object>singletonMap("forceSkinAction", true));
+    }
+
+    @Test
+    public void createWhenNotViewed() throws Exception
+    {
+        when(this.xcontext.getAction()).thenReturn("export");
+
+        assertNull(this.mocker.getComponentUnderTest().create("roleHint"));
+
+        when(this.xcontext.getAction()).thenReturn("view");
+        when(this.request.getParameter("xpage")).thenReturn("plain");
+
+        assertNull(this.mocker.getComponentUnderTest().create("roleHint"));
+
+        verify(this.jsfx, never()).use(anyString(), any());
+    }
+}
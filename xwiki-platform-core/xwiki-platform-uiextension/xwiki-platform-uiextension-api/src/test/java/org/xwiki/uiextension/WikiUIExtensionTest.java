@@ -26,9 +26,15 @@
 import org.xwiki.component.wiki.WikiComponentScope;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.ObjectReference;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.GroupBlock;
 import org.xwiki.rendering.block.WordBlock;
+import org.xwiki.uiextension.internal.AsyncUIExtensionPlaceholderFactory;
 import org.xwiki.uiextension.internal.WikiUIExtension;
 
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
 /**
  * Unit tests for {@link WikiUIExtension}.
  *
@@ -67,4 +73,25 @@ public void createWikiUIExtension()
         Assert.assertEquals(new WordBlock(""), wikiUIX.execute());
         Assert.assertEquals(MapUtils.EMPTY_MAP, wikiUIX.getParameters());
     }
+
+    @Test
+    public void executeAsync()
+    {
+        WikiUIExtension wikiUIX =
+            new WikiUIExtension("roleHint", "id", "epId", objectReference, AUTHOR_REFERENCE, null);
+        Assert.assertFalse(wikiUIX.isAsync());
+
+        AsyncUIExtensionPlaceholderFactory placeholderFactory = mock(AsyncUIExtensionPlaceholderFactory.class);
+        Block placeholder = new GroupBlock();
+        when(placeholderFactory.create("roleHint")).thenReturn(placeholder);
+        wikiUIX.setAsync(placeholderFactory);
+
+        Assert.assertTrue(wikiUIX.isAsync());
+        Assert.assertSame(placeholder, wikiUIX.execute());
+        Assert.assertEquals(new WordBlock(""), wikiUIX.executeSynchronously());
+
+        // The extension is executed synchronously when it can't be loaded later
+        when(placeholderFactory.create("roleHint")).thenReturn(null);
+        Assert.assertEquals(new WordBlock(""), wikiUIX.execute());
+    }
 }
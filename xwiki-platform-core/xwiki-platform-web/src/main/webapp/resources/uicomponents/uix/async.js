@@ -0,0 +1,44 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+/**
+ * Replace the placeholders of the asynchronous UI extensions by their content.
+ */
+require(['jquery', 'xwiki-events-bridge'], function($) {
+  'use strict';
+
+  var loadAsyncUIExtensions = function(event, data) {
+    var container = $((data && data.elements) || document);
+    container.find('.uix-async').addBack('.uix-async').each(function() {
+      var placeholder = $(this).removeClass('uix-async');
+      $.get(placeholder.data('url')).done(function(html) {
+        // Keep the scripts so that the JavaScript skin extensions used by the UI extension are loaded.
+        var content = $($.parseHTML(html, document, true));
+        placeholder.replaceWith(content);
+        $(document).trigger('xwiki:dom:updated', {'elements': content.filter('*').toArray()});
+      }).fail(function() {
+        placeholder.remove();
+      });
+    });
+  };
+
+  $(loadAsyncUIExtensions);
+  $(document).on('xwiki:dom:updated', loadAsyncUIExtensions);
+});